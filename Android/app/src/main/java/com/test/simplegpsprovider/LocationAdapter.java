@@ -0,0 +1,59 @@
+package com.test.simplegpsprovider;
+
+import android.location.Location;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import com.test.simplegpsprovider.nmea.GpsFix;
+
+/**
+ * Copies the {@link GpsFix} of the parser into an Android {@link Location} at delivery time.
+ * <p>
+ * The location and its extras are reused from one fix to the next, they are only valid until the
+ * next call. Main thread only.
+ */
+public final class LocationAdapter {
+
+    public static final String SATELLITE_KEY = "satellites";
+    public static final String SYSTEM_TIME_FIX = "system_time_fix";
+
+    private final Location location;
+    private final Bundle extras = new Bundle();
+
+    public LocationAdapter(String provider) {
+        location = new Location(provider);
+    }
+
+    /**
+     * @return the pooled location of {@code provider} holding the values of {@code fix}
+     */
+    public Location toLocation(String provider, GpsFix fix) {
+        location.reset();
+        location.setProvider(provider);
+        location.setTime(fix.getTime());
+        // stamps are elapsed realtime nanos, the first byte of the epoch is the closest to the measurement
+        location.setElapsedRealtimeNanos(fix.getReceivedNanos() != 0
+                ? fix.getReceivedNanos() : SystemClock.elapsedRealtimeNanos());
+        location.setLatitude(fix.getLatitude());
+        location.setLongitude(fix.getLongitude());
+        if (fix.hasAltitude()) {
+            location.setAltitude(fix.getAltitude());
+        }
+        if (fix.hasSpeed()) {
+            location.setSpeed(fix.getSpeed());
+        }
+        if (fix.hasBearing()) {
+            location.setBearing(fix.getBearing());
+        }
+        if (fix.hasAccuracy()) {
+            location.setAccuracy(fix.getAccuracy());
+        }
+        extras.clear();
+        extras.putLong(SYSTEM_TIME_FIX, fix.getSystemTime());
+        if (fix.hasSatellites()) {
+            extras.putInt(SATELLITE_KEY, fix.getSatellites());
+        }
+        location.setExtras(extras);
+        return location;
+    }
+}
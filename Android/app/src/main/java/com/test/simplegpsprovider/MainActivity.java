@@ -1,39 +1,227 @@
 package com.test.simplegpsprovider;
 
-import static android.location.provider.ProviderProperties.ACCURACY_FINE;
-import static android.location.provider.ProviderProperties.POWER_USAGE_LOW;
-
-import android.location.Location;
+import android.content.Intent;
 import android.location.LocationManager;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.SystemClock;
 import android.widget.EditText;
 
 import androidx.activity.ComponentActivity;
 
-import com.test.simplegpsprovider.NmeaParser;
+import com.test.simplegpsprovider.nmea.DeliveryPolicy;
+import com.test.simplegpsprovider.nmea.EventLog;
+import com.test.simplegpsprovider.nmea.FrameRing;
+import com.test.simplegpsprovider.nmea.Geofence;
+import com.test.simplegpsprovider.nmea.GeofenceEngine;
+import com.test.simplegpsprovider.nmea.GpsFix;
+import com.test.simplegpsprovider.nmea.IngestMetrics;
+import com.test.simplegpsprovider.nmea.MetricsEndpoint;
+import com.test.simplegpsprovider.nmea.NmeaFrameDecoder;
+import com.test.simplegpsprovider.nmea.NmeaParser;
+import com.test.simplegpsprovider.nmea.ParserThread;
+import com.test.simplegpsprovider.nmea.SessionReader;
+import com.test.simplegpsprovider.nmea.SessionRecorder;
+import com.test.simplegpsprovider.nmea.SessionReplay;
+import com.test.simplegpsprovider.nmea.TrackStore;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
 
 public class MainActivity extends ComponentActivity {
 
+    /**
+     * Directory of a recording to replay into the ingest server at start, e.g.
+     * {@code adb shell am start -n com.test.simplegpsprovider/.MainActivity --es replay <dir> --ef replay_speed 4}.
+     * Copy the recording out of {@code files/sessions} first, that one keeps being rotated.
+     */
+    public static final String EXTRA_REPLAY = "replay";
+    /**
+     * Replay speed factor, 1 by default, 0 for as fast as possible.
+     */
+    public static final String EXTRA_REPLAY_SPEED = "replay_speed";
+
+    /**
+     * Delivery policy of the feeds, see {@link DeliveryPolicy}: highest rate in Hz, 0 for no cap,
+     * minimum distance in meters, bearing change in degrees, speed change in m/s, keep-alive in
+     * seconds, 0 disabling a threshold. All 0 by default, every fix is delivered; e.g.
+     * {@code --ef max_rate 10 --ef min_distance 0.5 --ef min_bearing 5 --ef min_speed_change 0.5 --ef keep_alive 1}
+     * delivers a stationary receiver once a second and a moving one up to 10 times.
+     */
+    public static final String EXTRA_MAX_RATE = "max_rate";
+    public static final String EXTRA_MIN_DISTANCE = "min_distance";
+    public static final String EXTRA_MIN_BEARING = "min_bearing";
+    public static final String EXTRA_MIN_SPEED_CHANGE = "min_speed_change";
+    public static final String EXTRA_KEEP_ALIVE = "keep_alive";
+
+    /**
+     * Fence set loaded at start if present, in {@code files}, see {@link Geofence#read}.
+     */
+    public static final String GEOFENCES_FILE = "geofences.csv";
+
+    // a second of a 10 Hz multi-constellation receiver is well under 512 sentences
+    private static final int RING_CAPACITY = 512;
+    // the selector and the main thread keep a core busy, feeds are spread on the others
+    private static final int PARSER_WORKERS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    // longest wait for a thread stopped in onDestroy, on the main thread
+    private static final long STOP_MILLIS = 1000;
+
     private LocationManager locationManager;
 
-    private NmeaParser nmeaParser;
-    private Handler mainHandler;
+    private ProviderRouter providerRouter;
+    private SessionRecorder recorder;
+    private TrackStore tracks;
+    private ParserThread[] parsers;
+    private ServerThread server;
+    private MetricsEndpoint endpoint;
+    private final GeofenceEngine geofences = new GeofenceEngine();
+    private StatusView status;
+    // written by all the threads, shown by the status view
+    private final EventLog events = new EventLog();
+    // elapsed realtime so that the trace stamps can go into the locations
+    private final IngestMetrics metrics = new IngestMetrics(SystemClock::elapsedRealtimeNanos);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mainHandler = new Handler(getMainLooper());
         EditText text = new EditText(this);
         setContentView(text);
-        nmeaParser = new NmeaParser(this);
         locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
-        locationManager.addTestProvider("SimpleGPSProvider", false, false, false, false, true, true, true, POWER_USAGE_LOW, ACCURACY_FINE);
-        locationManager.setTestProviderEnabled("SimpleGPSProvider", true);
-        new ServerThread(nmeaParser, text).start();
+        // the segments are created on the thread of the store, not on the main thread
+        tracks = new TrackStore(new File(getFilesDir(), "tracks"));
+        metrics.registerGauge("track_fixes", tracks::getWritten);
+        metrics.registerGauge("track_dropped", tracks::getDropped);
+        metrics.registerGauge("track_bytes", tracks::getBytes);
+        geofences.addListener(this::logTransition);
+        metrics.registerGauge("geofences", geofences::getFences);
+        metrics.registerGauge("geofence_tests", geofences::getTests);
+        metrics.registerGauge("geofence_transitions", geofences::getTransitions);
+        loadGeofences(new File(getFilesDir(), GEOFENCES_FILE));
+        Intent intent = getIntent();
+        // every fix is delivered unless the extras enable the thresholds
+        DeliveryPolicy policy = new DeliveryPolicy(intent.getFloatExtra(EXTRA_MAX_RATE, 0f),
+                intent.getFloatExtra(EXTRA_MIN_DISTANCE, 0f), intent.getFloatExtra(EXTRA_MIN_BEARING, 0f),
+                intent.getFloatExtra(EXTRA_MIN_SPEED_CHANGE, 0f), intent.getFloatExtra(EXTRA_KEEP_ALIVE, 0f));
+        metrics.registerGauge("fixes_forwarded", policy::getForwarded);
+        metrics.registerGauge("fixes_suppressed", policy::getSuppressed);
+        providerRouter = new ProviderRouter(locationManager, metrics, tracks, geofences, policy);
+        FrameRing[] rings = new FrameRing[PARSER_WORKERS];
+        parsers = new ParserThread[PARSER_WORKERS];
+        for (int i = 0; i < rings.length; i++) {
+            FrameRing ring = new FrameRing(RING_CAPACITY, NmeaFrameDecoder.DEFAULT_MAX_FRAME_LENGTH,
+                    FrameRing.WaitStrategy.PARK, FrameRing.OverflowPolicy.DROP_OLDEST);
+            rings[i] = ring;
+            metrics.registerGauge("ring_size{worker=" + i + "}", ring::size);
+            metrics.registerGauge("ring_dropped{worker=" + i + "}", ring::getDropped);
+            metrics.registerGauge("ring_max_occupancy{worker=" + i + "}", ring::getMaxOccupancy);
+            parsers[i] = new ParserThread("ParserThread-" + i, ring, metrics);
+            parsers[i].start();
+        }
+        metrics.registerGauge("feeds", providerRouter::getFeeds);
+        metrics.registerGauge("fixes_superseded", providerRouter::getSuperseded);
+        metrics.registerGauge("fixes_delivered", providerRouter::getDelivered);
+        // the segments are created on the thread of the recorder, not on the main thread
+        recorder = new SessionRecorder(new File(getFilesDir(), "sessions"));
+        metrics.registerGauge("recorded_frames", recorder::getRecorded);
+        metrics.registerGauge("recorder_dropped", recorder::getDropped);
+        metrics.registerGauge("recorded_segments", recorder::getSegments);
+        // one parser per connection, each one feeding the mock provider of its connection
+        server = new ServerThread(rings, providerRouter, feed -> new NmeaParser(5f, feed, metrics), metrics, recorder,
+                events);
+        server.start();
+        endpoint = new MetricsEndpoint(metrics, MetricsEndpoint.DEFAULT_PORT);
+        endpoint.start();
+        String replay = intent.getStringExtra(EXTRA_REPLAY);
+        if (replay != null) {
+            // once the server listens
+            text.postDelayed(() -> startReplay(new File(replay), intent.getFloatExtra(EXTRA_REPLAY_SPEED, 1f)), 1000);
+        }
+        status = new StatusView(text, events, metrics, providerRouter, rings);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        status.start();
+    }
+
+    @Override
+    protected void onStop() {
+        status.stop();
+        super.onStop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        // in the reverse order of onCreate, each component stops before the ones it feeds
+        endpoint.shutdown();
+        join(endpoint);
+        server.shutdown();
+        join(server);
+        recorder.close();
+        for (ParserThread parser : parsers) {
+            parser.interrupt();
+        }
+        for (ParserThread parser : parsers) {
+            join(parser);
+        }
+        // writes the open blocks, waiting a second at most
+        tracks.close();
+        super.onDestroy();
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join(STOP_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void logTransition(int feed, Geofence fence, int transition, GpsFix fix) {
+        String verb = transition == GeofenceEngine.ENTER ? " entered " : transition == GeofenceEngine.EXIT
+                ? " exited " : " dwells in ";
+        events.log("Feed " + feed + verb + fence.getId());
+    }
+
+    private void loadGeofences(File file) {
+        if (!file.isFile()) {
+            return;
+        }
+        // indexed off the main thread, then swapped in
+        new Thread(() -> {
+            try (Reader input = new FileReader(file)) {
+                List<Geofence> fences = Geofence.read(input);
+                geofences.setFences(fences);
+                events.log("Loaded " + fences.size() + " geofences from " + file);
+            } catch (IOException e) {
+                events.log("Geofences not loaded: " + e.getMessage());
+            }
+        }, "GeofenceLoader").start();
+    }
+
+    private void startReplay(File directory, float speed) {
+        SessionReplay replay = new SessionReplay(new SessionReader(directory), speed);
+        new Thread(() -> {
+            try (SessionReplay.SocketSink sink = new SessionReplay.SocketSink(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), ServerThread.PORT))) {
+                replay.run(sink);
+                events.log("Replayed " + replay.getFrames() + " frames from " + directory);
+            } catch (IOException e) {
+                events.log("Replay failed after " + replay.getFrames() + " frames: " + e.getMessage());
+            }
+        }, "SessionReplay").start();
     }
 
-    public void notifyNewLocation(final Location location) {
-        mainHandler.post(() -> locationManager.setTestProviderLocation("SimpleGPSProvider", location));
+    /**
+     * @return the counters of the ingest pipeline
+     */
+    public IngestMetrics getMetrics() {
+        return metrics;
     }
-}
\ No newline at end of file
+}
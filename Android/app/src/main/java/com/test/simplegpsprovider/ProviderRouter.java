@@ -0,0 +1,254 @@
+package com.test.simplegpsprovider;
+
+import static android.location.provider.ProviderProperties.ACCURACY_FINE;
+import static android.location.provider.ProviderProperties.POWER_USAGE_LOW;
+
+import android.location.LocationManager;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import com.test.simplegpsprovider.nmea.DeliveryPolicy;
+import com.test.simplegpsprovider.nmea.FixListener;
+import com.test.simplegpsprovider.nmea.GeofenceEngine;
+import com.test.simplegpsprovider.nmea.GpsFix;
+import com.test.simplegpsprovider.nmea.IngestMetrics;
+import com.test.simplegpsprovider.nmea.TrackStore;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Routes the fixes of every feed to its own mock provider.
+ * <p>
+ * A feed is named after the lowest free feed number, {@link #BASE_PROVIDER} for the first one and
+ * {@code SimpleGPSProvider-<n>} for the next ones, unless its stream announces a feed id with a
+ * {@code $PSGPF} sentence, which then names it {@code SimpleGPSProvider-<feed id>}. Providers are
+ * added and enabled the first time they get a fix.
+ * <p>
+ * Every feed conflates its fixes in a single slot, and at most one {@link Choreographer} frame
+ * callback is pending for all of them: each frame drains the newest fix of every feed in one pass
+ * instead of posting a message per fix per feed.
+ * <p>
+ * Every fix published is also queued, under its feed number, to the {@link TrackStore} if any, and
+ * evaluated against the fences of the {@link GeofenceEngine} if any, on the parse thread. Only then
+ * does the {@link DeliveryPolicy} of the router decide whether it is worth a delivery: a suppressed fix
+ * neither schedules a frame nor costs a call to the location manager.
+ * <p>
+ * A feed is closed on its parse thread at the end of its stream, after its last fix, which is still
+ * delivered: only then do its number and its state in the track store and the geofences go to the
+ * next feed. Its provider is removed at the frame that delivers that last fix, unless another feed
+ * took the same name meanwhile.
+ */
+public final class ProviderRouter implements Choreographer.FrameCallback {
+
+    public static final String BASE_PROVIDER = "SimpleGPSProvider";
+
+    private final LocationManager locationManager;
+    private final Choreographer choreographer;
+    private final IngestMetrics metrics;
+    private final TrackStore tracks;
+    private final GeofenceEngine geofences;
+    private final DeliveryPolicy policy;
+    private final LocationAdapter locationAdapter = new LocationAdapter(BASE_PROVIDER);
+
+    private final List<Feed> feeds = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean drainPending = new AtomicBoolean(false);
+    // opened on the selector thread, released on the parse threads
+    private final BitSet feedNumbers = new BitSet();
+    // main thread only
+    private final Set<String> providers = new HashSet<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    /**
+     * Must be created on the main thread, whose {@link Choreographer} drives the delivery.
+     *
+     * @param tracks    stores the history of the feeds, null not to store it
+     * @param geofences evaluates the fixes of the feeds, null for none
+     * @param policy    selects the fixes delivered, {@link DeliveryPolicy#FORWARD_ALL} for all
+     */
+    public ProviderRouter(LocationManager locationManager, IngestMetrics metrics, TrackStore tracks,
+                          GeofenceEngine geofences, DeliveryPolicy policy) {
+        this.locationManager = locationManager;
+        this.metrics = metrics;
+        this.tracks = tracks;
+        this.geofences = geofences;
+        this.policy = policy;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Opens the feed of a new connection. Selector thread only.
+     */
+    public Feed openFeed() {
+        int number;
+        synchronized (feedNumbers) {
+            number = feedNumbers.nextClearBit(0);
+            feedNumbers.set(number);
+        }
+        Feed feed = new Feed(number, number == 0 ? BASE_PROVIDER : BASE_PROVIDER + "-" + number);
+        feeds.add(feed);
+        return feed;
+    }
+
+    private void requestDrain() {
+        if (drainPending.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        // cleared before draining, a fix published meanwhile schedules the next frame
+        drainPending.set(false);
+        for (Feed feed : feeds) {
+            // read before draining: a feed seen closed has published its last fix
+            boolean closed = feed.closed;
+            GpsFix fix = feed.latest.getAndSet(null);
+            if (fix != null) {
+                deliver(feed.provider, fix);
+                feed.spare.compareAndSet(null, fix);
+            }
+            if (closed) {
+                feeds.remove(feed);
+                release(feed.provider);
+            }
+        }
+    }
+
+    /**
+     * Removes the provider of a closed feed, unless an open feed goes by the same name.
+     */
+    private void release(String provider) {
+        for (Feed feed : feeds) {
+            if (feed.provider.equals(provider)) {
+                return;
+            }
+        }
+        if (providers.remove(provider)) {
+            locationManager.removeTestProvider(provider);
+        }
+    }
+
+    private void deliver(String provider, GpsFix fix) {
+        if (providers.add(provider)) {
+            locationManager.addTestProvider(provider, false, false, false, false, true, true, true,
+                    POWER_USAGE_LOW, ACCURACY_FINE);
+            locationManager.setTestProviderEnabled(provider, true);
+        }
+        fix.setDeliveredNanos(metrics.nanoTime());
+        metrics.fixDelivered(fix);
+        delivered.incrementAndGet();
+        locationManager.setTestProviderLocation(provider, locationAdapter.toLocation(provider, fix));
+    }
+
+    /**
+     * @return the number of open feeds, closed ones leave at the next frame
+     */
+    public int getFeeds() {
+        return feeds.size();
+    }
+
+    /**
+     * @return the number of fixes published by all the feeds, past the delivery policy
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * @return the number of fixes replaced by a newer one of the same feed before being delivered
+     */
+    public long getSuperseded() {
+        return superseded.get();
+    }
+
+    /**
+     * @return the number of fixes delivered
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * One connection: receives the fixes of its parser and keeps the newest one until the next frame.
+     */
+    public final class Feed implements FixListener {
+        final int number;
+        final AtomicReference<GpsFix> latest = new AtomicReference<>();
+        final AtomicReference<GpsFix> spare = new AtomicReference<>();
+        // parse thread of the feed only
+        final DeliveryPolicy.Gate gate = policy.newGate();
+        volatile String provider;
+        volatile boolean closed = false;
+
+        Feed(int number, String provider) {
+            this.number = number;
+            this.provider = provider;
+        }
+
+        public String getProvider() {
+            return provider;
+        }
+
+        @Override
+        public void onFix(GpsFix fix) {
+            if (tracks != null) {
+                tracks.append(number, fix);
+            }
+            if (geofences != null) {
+                geofences.evaluate(number, fix);
+            }
+            if (!gate.test(fix, SystemClock.elapsedRealtimeNanos())) {
+                return;
+            }
+            GpsFix copy = spare.getAndSet(null);
+            if (copy == null) {
+                copy = new GpsFix();
+            }
+            copy.set(fix);
+            copy.setPostedNanos(metrics.nanoTime());
+            published.incrementAndGet();
+            GpsFix previous = latest.getAndSet(copy);
+            if (previous != null) {
+                superseded.incrementAndGet();
+                spare.set(previous);
+            }
+            requestDrain();
+        }
+
+        @Override
+        public void onFeedId(String feedId) {
+            for (int i = 0; i < feedId.length(); i++) {
+                char c = feedId.charAt(i);
+                if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') {
+                    return;
+                }
+            }
+            provider = BASE_PROVIDER + "-" + feedId;
+        }
+
+        @Override
+        public void onEndOfStream() {
+            if (tracks != null) {
+                tracks.closeFeed(number);
+            }
+            if (geofences != null) {
+                geofences.closeFeed(number);
+            }
+            synchronized (feedNumbers) {
+                feedNumbers.clear(number);
+            }
+            closed = true;
+            requestDrain();
+        }
+    }
+}
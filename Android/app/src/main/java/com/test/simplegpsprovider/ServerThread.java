@@ -1,31 +1,55 @@
 package com.test.simplegpsprovider;
 
-import android.os.Looper;
-import android.widget.EditText;
+import com.test.simplegpsprovider.nmea.EventLog;
+import com.test.simplegpsprovider.nmea.FixListener;
+import com.test.simplegpsprovider.nmea.FrameRing;
+import com.test.simplegpsprovider.nmea.IngestMetrics;
+import com.test.simplegpsprovider.nmea.IngestServer;
+import com.test.simplegpsprovider.nmea.NmeaParser;
+import com.test.simplegpsprovider.nmea.SessionRecorder;
 
-import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.util.function.Function;
 
-public class ServerThread extends Thread {
+/**
+ * The {@link IngestServer} of the app, on {@link #PORT} over TCP and UDP: every connection, and every
+ * datagram sender, feeds its own mock provider through the {@link ProviderRouter}. The connections
+ * and the errors go to the {@link EventLog} shown by the activity.
+ */
+public class ServerThread extends IngestServer<ProviderRouter.Feed> {
 
-    private NmeaParser nmeaParser;
-    private final EditText text;
+    public static final int PORT = DEFAULT_PORT;
 
-    public ServerThread(NmeaParser nmeaParser, EditText text) {
-        this.nmeaParser = nmeaParser;
-        this.text = text;
+    private final ProviderRouter router;
+    private final EventLog log;
+
+    /**
+     * @param rings    one ring per worker
+     * @param parsers  creates the parser of a new connection, notifying the given feed
+     * @param recorder records the frames of all the connections, null not to record
+     */
+    public ServerThread(FrameRing[] rings, ProviderRouter router, Function<FixListener, NmeaParser> parsers,
+                        IngestMetrics metrics, SessionRecorder recorder, EventLog log) {
+        super("ServerThread", PORT, rings, parsers, metrics, recorder, true);
+        this.router = router;
+        this.log = log;
+    }
+
+    @Override
+    protected ProviderRouter.Feed openFeed(int connection, SocketAddress remote) {
+        ProviderRouter.Feed feed = router.openFeed();
+        log.log("Connected #" + connection + " " + remote + " as " + feed.getProvider());
+        return feed;
+    }
+
+    @Override
+    protected void closeFeed(int connection, ProviderRouter.Feed feed, String summary) {
+        // the feed itself closes on its parse thread, after its last queued frame
+        log.log("Disconnected #" + connection + " " + feed.getProvider() + ", " + summary);
     }
 
     @Override
-    public void run() {
-        try (ServerSocket server = new ServerSocket(5897)) {
-            while (true) {
-                Looper.prepare();
-                new GPSReadThread(server.accept(), nmeaParser, text).start();
-                text.append("Connected\n");
-                Looper.loop();
-            }
-        } catch (Exception e) {
-            text.setText("Error read: " + e + " " + e.getMessage() + "\n");
-        }
+    protected void onError(Exception e) {
+        log.log("Error read: " + e + " " + e.getMessage());
     }
 }
@@ -0,0 +1,129 @@
+package com.test.simplegpsprovider;
+
+import android.widget.EditText;
+
+import com.test.simplegpsprovider.nmea.EventLog;
+import com.test.simplegpsprovider.nmea.FrameRing;
+import com.test.simplegpsprovider.nmea.IngestMetrics;
+import com.test.simplegpsprovider.nmea.LatencyHistogram;
+import com.test.simplegpsprovider.nmea.MetricsSnapshot;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Shows the state of the ingest on the main thread: a summary of the rates and counters followed by
+ * the latest entries of the {@link EventLog}, refreshed {@link #REFRESH_HZ} times per second while
+ * started. The threads of the pipeline only ever write to the log, and the text shown has a bounded
+ * length, so the cost of a refresh does not grow with the length or the load of the session.
+ */
+final class StatusView implements Runnable {
+
+    static final int REFRESH_HZ = 4;
+
+    // entries shown, the latest ones
+    private static final int WINDOW = 40;
+
+    private final EditText text;
+    private final EventLog log;
+    private final IngestMetrics metrics;
+    private final ProviderRouter router;
+    private final FrameRing[] rings;
+    private final EventLog.Entry[] window = new EventLog.Entry[WINDOW];
+    private final StringBuilder builder = new StringBuilder(8 * 1024);
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ROOT);
+    private final Date date = new Date();
+
+    private boolean started = false;
+    private MetricsSnapshot previous;
+    private long previousDelivered;
+    // the entries only change when something is logged
+    private long shownWritten = -1;
+    private String entries = "";
+
+    StatusView(EditText text, EventLog log, IngestMetrics metrics, ProviderRouter router, FrameRing[] rings) {
+        this.text = text;
+        this.log = log;
+        this.metrics = metrics;
+        this.router = router;
+        this.rings = rings;
+        // a display, not an input
+        text.setKeyListener(null);
+    }
+
+    /**
+     * Starts refreshing, on the main thread.
+     */
+    void start() {
+        if (!started) {
+            started = true;
+            text.post(this);
+        }
+    }
+
+    /**
+     * Stops refreshing, on the main thread, e.g. while the activity is not visible.
+     */
+    void stop() {
+        started = false;
+        text.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if (!started) {
+            return;
+        }
+        refresh();
+        text.postDelayed(this, 1000 / REFRESH_HZ);
+    }
+
+    private void refresh() {
+        MetricsSnapshot snapshot = metrics.snapshot();
+        long delivered = router.getDelivered();
+        builder.setLength(0);
+        if (previous != null) {
+            double seconds = Math.max(1e-3, (snapshot.getUptimeNanos() - previous.getUptimeNanos()) / 1e9);
+            builder.append(String.format(Locale.ROOT,
+                    "%d feeds  %.0f sentences/s  %.1f fixes/s  %.1f delivered/s  %.1f suppressed/s%n",
+                    router.getFeeds(),
+                    (snapshot.getTotalSentences() - previous.getTotalSentences()) / seconds,
+                    (snapshot.getFixes() - previous.getFixes()) / seconds,
+                    (delivered - previousDelivered) / seconds,
+                    (snapshot.getGauge("fixes_suppressed") - previous.getGauge("fixes_suppressed")) / seconds));
+        }
+        long ringDrops = 0;
+        for (FrameRing ring : rings) {
+            ringDrops += ring.getDropped();
+        }
+        LatencyHistogram.Snapshot endToEnd = snapshot.getStage(IngestMetrics.STAGE_END_TO_END);
+        builder.append(String.format(Locale.ROOT,
+                "checksum %d  rejects %d  partial %d  ring drops %d  batches lost %d  late %d  datagrams %d%n"
+                        + "end to end p50 %.1f ms  p99 %.1f ms%n%n",
+                snapshot.getChecksumFailures(), snapshot.getFrameRejects(), snapshot.getPartialFrames(), ringDrops,
+                snapshot.getLostBatches(), snapshot.getReorderedBatches(), snapshot.getDatagrams(),
+                endToEnd.valueAtPercentile(50) / 1e6, endToEnd.valueAtPercentile(99) / 1e6));
+        long written = log.getWritten();
+        if (written != shownWritten) {
+            entries = formatEntries();
+            shownWritten = written;
+        }
+        builder.append(entries);
+        text.setText(builder);
+        previous = snapshot;
+        previousDelivered = delivered;
+    }
+
+    private String formatEntries() {
+        StringBuilder lines = new StringBuilder(WINDOW * 96);
+        int count = log.latest(window);
+        // latest first, where it is seen without scrolling
+        for (int i = count - 1; i >= 0; i--) {
+            date.setTime(window[i].getTimeMillis());
+            lines.append(timeFormat.format(date)).append(' ').append(window[i].getMessage()).append('\n');
+            window[i] = null;
+        }
+        return lines.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.test.simplegpsprovider.nmea.bench;
+
+import com.test.simplegpsprovider.nmea.GpsFix;
+import com.test.simplegpsprovider.nmea.NmeaParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a whole epoch: its GGA and RMC sentences parsed into one notified fix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EpochAssemblyBenchmark {
+
+    private Corpus data;
+    // index of the GGA line of every epoch, the RMC follows it
+    private int[] epochs;
+    private NmeaParser parser;
+    private GpsFix last;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = Corpus.load(Corpus.MULTI_GNSS_10HZ);
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            if (data.lines[i].startsWith("$GNGGA")) {
+                starts.add(i);
+            }
+        }
+        epochs = new int[starts.size()];
+        for (int i = 0; i < epochs.length; i++) {
+            epochs[i] = starts.get(i);
+        }
+        parser = new NmeaParser(fix -> last = fix);
+    }
+
+    @Benchmark
+    public GpsFix ggaRmcEpoch() {
+        int line = epochs[next];
+        next = next + 1 == epochs.length ? 0 : next + 1;
+        parser.parseNmeaSentence(data.stream, data.offsets[line], data.lengths[line]);
+        parser.parseNmeaSentence(data.stream, data.offsets[line + 1], data.lengths[line + 1]);
+        return last;
+    }
+}
@@ -0,0 +1,84 @@
+package com.test.simplegpsprovider.nmea.bench;
+
+import com.test.simplegpsprovider.nmea.NmeaNumberDecoder;
+import com.test.simplegpsprovider.nmea.NmeaParser;
+import com.test.simplegpsprovider.nmea.NmeaSentence;
+import com.test.simplegpsprovider.nmea.NmeaTimeDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The building blocks of the parser on a typical RTK GGA sentence: checksum, time and
+ * coordinate decoding, on bytes and through the String helpers of {@link NmeaParser}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldDecoderBenchmark {
+
+    private static final String BODY = "GNGGA,123519.00,4807.0381234,N,01131.0004567,E,4,24,0.7,545.4,M,46.9,M,1.0,0000";
+    private static final String TIME = "123519.00";
+    private static final String LATITUDE = "4807.0381234";
+
+    private final byte[] body = BODY.getBytes(StandardCharsets.ISO_8859_1);
+    private final byte[] time = TIME.getBytes(StandardCharsets.ISO_8859_1);
+    private final byte[] latitude = LATITUDE.getBytes(StandardCharsets.ISO_8859_1);
+    private final NmeaParser parser = new NmeaParser(fix -> {
+    });
+    private final NmeaTimeDecoder timeDecoder = new NmeaTimeDecoder();
+
+    @Benchmark
+    public byte checksumString() {
+        return parser.computeChecksum(BODY);
+    }
+
+    @Benchmark
+    public byte checksumBytes() {
+        return NmeaSentence.computeChecksum(body, 0, body.length);
+    }
+
+    @Benchmark
+    public long timeString() {
+        return parser.parseNmeaTime(TIME);
+    }
+
+    @Benchmark
+    public long timeBytes() {
+        return timeDecoder.decode(time, 0, time.length);
+    }
+
+    @Benchmark
+    public double latitudeString() {
+        return parser.parseNmeaLatitude(LATITUDE, "N");
+    }
+
+    @Benchmark
+    public long latitudeBytes() {
+        return NmeaNumberDecoder.parseCoordinate(latitude, 0, latitude.length, (byte) 'N');
+    }
+
+    /**
+     * The former floating point conversion, as a reference.
+     */
+    @Benchmark
+    public double latitudeLegacy() {
+        double temp1 = Double.parseDouble(LATITUDE);
+        double temp2 = Math.floor(temp1 / 100);
+        double temp3 = (temp1 / 100 - temp2) / 0.6;
+        return temp2 + temp3;
+    }
+}
@@ -0,0 +1,60 @@
+package com.test.simplegpsprovider.nmea.bench;
+
+import com.test.simplegpsprovider.nmea.NmeaFrameDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Framing of the raw socket stream, read in chunks of {@code chunk} bytes.
+ * One operation is one chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecoderBenchmark {
+
+    @Param({Corpus.MULTI_GNSS_10HZ, Corpus.CORRUPTED_5PCT})
+    public String corpus;
+
+    @Param({"64", "1460"})
+    public int chunk;
+
+    private Corpus data;
+    private int position;
+    private long frameBytes;
+    private final NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+    private final NmeaFrameDecoder.FrameListener listener = (buffer, offset, length) -> frameBytes += length;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = Corpus.load(corpus);
+    }
+
+    @Benchmark
+    public long decodeChunk() {
+        int length = Math.min(chunk, data.stream.length - position);
+        decoder.decode(data.stream, position, length, listener);
+        position += length;
+        if (position == data.stream.length) {
+            position = 0;
+        }
+        return frameBytes;
+    }
+}
@@ -0,0 +1,342 @@
+package com.test.simplegpsprovider.nmea.bench;
+
+import com.test.simplegpsprovider.nmea.BatchFrameDecoder;
+import com.test.simplegpsprovider.nmea.FixListener;
+import com.test.simplegpsprovider.nmea.FrameRing;
+import com.test.simplegpsprovider.nmea.GpsFix;
+import com.test.simplegpsprovider.nmea.IngestMetrics;
+import com.test.simplegpsprovider.nmea.IngestServer;
+import com.test.simplegpsprovider.nmea.LatencyHistogram;
+import com.test.simplegpsprovider.nmea.MetricsSnapshot;
+import com.test.simplegpsprovider.nmea.NmeaFrameDecoder;
+import com.test.simplegpsprovider.nmea.NmeaParser;
+import com.test.simplegpsprovider.nmea.ParserThread;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end throughput harness: runs the ingest pipeline headless, the same {@link IngestServer},
+ * {@link FrameRing}s, {@link ParserThread}s and parsers as the app, and loads it over loopback with
+ * synthetic feeds standing in for the Host client.
+ * <p>
+ * Every second it reports the sentences and fixes per second sent and ingested, the drops, and the
+ * percentiles of the latency from the socket read to the fix handed to its feed. Raising the rate or
+ * the connections until the ingested rates stop following the sent ones finds the saturation point.
+ * <p>
+ * Arguments, as {@code name=value}, all optional:
+ * <ul>
+ * <li>{@code connections=4}: feeds connected at once</li>
+ * <li>{@code rate=10}: epochs per second and per feed, 1 to 50, 0 to send as fast as possible</li>
+ * <li>{@code mix=multi-gnss}: {@code minimal}, {@code gps}, {@code multi-gnss} or {@code ubx}</li>
+ * <li>{@code errors=0}: fraction of the sentences damaged</li>
+ * <li>{@code protocol=plain}: {@code plain}, one write per epoch, {@code batched}, or {@code udp}, one
+ * sequenced datagram per epoch</li>
+ * <li>{@code loss=0}: fraction of the datagrams not sent, with {@code protocol=udp}</li>
+ * <li>{@code seconds=30}: length of the run</li>
+ * <li>{@code workers=2}: parser workers</li>
+ * <li>{@code radius=500}, {@code speed=15}: track of the feeds, in meters and meters per second</li>
+ * </ul>
+ * {@code gradle :nmea-bench:ingest -Pingest.args="connections=16 rate=50"}
+ */
+public final class IngestHarness {
+
+    private static final int RING_CAPACITY = 512;
+
+    private final IngestMetrics metrics = new IngestMetrics();
+    private final AtomicLong fixes = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                System.err.println("Expected name=value: " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new IngestHarness().run(
+                Integer.parseInt(options.getOrDefault("connections", "4")),
+                Integer.parseInt(options.getOrDefault("rate", "10")),
+                options.getOrDefault("mix", TrafficGenerator.MULTI_GNSS),
+                Double.parseDouble(options.getOrDefault("errors", "0")),
+                options.getOrDefault("protocol", "plain"),
+                Double.parseDouble(options.getOrDefault("loss", "0")),
+                Integer.parseInt(options.getOrDefault("seconds", "30")),
+                Integer.parseInt(options.getOrDefault("workers", "2")),
+                Double.parseDouble(options.getOrDefault("radius", "500")),
+                Double.parseDouble(options.getOrDefault("speed", "15")));
+    }
+
+    private void run(int connections, int rate, String mix, double errors, String protocol, double loss,
+                     int seconds, int workers, double radius, double speed) throws Exception {
+        if (rate < 0 || rate > 50) {
+            throw new IllegalArgumentException("Rate out of 0..50 Hz: " + rate);
+        }
+        if (!Feed.PLAIN.equals(protocol) && !Feed.BATCHED.equals(protocol) && !Feed.UDP.equals(protocol)) {
+            throw new IllegalArgumentException("Unknown protocol " + protocol);
+        }
+        FrameRing[] rings = new FrameRing[workers];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            rings[i] = new FrameRing(RING_CAPACITY, NmeaFrameDecoder.DEFAULT_MAX_FRAME_LENGTH,
+                    FrameRing.WaitStrategy.PARK, FrameRing.OverflowPolicy.DROP_OLDEST);
+            ParserThread worker = new ParserThread("ParserThread-" + i, rings[i], metrics);
+            worker.setDaemon(true);
+            worker.start();
+            threads.add(worker);
+        }
+        HeadlessServer server = new HeadlessServer(rings);
+        server.setDaemon(true);
+        server.start();
+        int port = server.awaitBound();
+        if (port < 0) {
+            throw new IOException("Ingest server failed to start");
+        }
+        System.out.printf(Locale.ROOT, "%d feeds, %s at %s, %.1f%% errors, %s protocol, %d workers%n",
+                connections, mix, rate == 0 ? "max rate" : rate + " Hz", errors * 100, protocol, workers);
+        List<Feed> feeds = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            TrafficGenerator traffic = new TrafficGenerator(i, Math.max(rate, 10), mix, errors, radius, speed, 60);
+            Feed feed = new Feed(i, traffic, rate, protocol, loss,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            feed.setDaemon(true);
+            feeds.add(feed);
+        }
+        for (Feed feed : feeds) {
+            feed.start();
+        }
+        MetricsSnapshot previous = metrics.snapshot();
+        long previousSent = 0;
+        long previousFixes = 0;
+        System.out.println("  s  sent/s  ingested/s  fixes/s  ring_drops  checksum  rejects  partial  e2e_p50_us  e2e_p99_us  e2e_p999_us");
+        for (int second = 1; second <= seconds; second++) {
+            Thread.sleep(1000);
+            MetricsSnapshot snapshot = metrics.snapshot();
+            long sent = 0;
+            for (Feed feed : feeds) {
+                sent += feed.frames.get();
+            }
+            long fixCount = fixes.get();
+            double elapsed = (snapshot.getUptimeNanos() - previous.getUptimeNanos()) / 1e9;
+            report(second, (sent - previousSent) / elapsed,
+                    (snapshot.getTotalSentences() - previous.getTotalSentences()) / elapsed,
+                    (fixCount - previousFixes) / elapsed, snapshot, rings);
+            previous = snapshot;
+            previousSent = sent;
+            previousFixes = fixCount;
+        }
+        for (Feed feed : feeds) {
+            feed.interrupt();
+        }
+        for (Feed feed : feeds) {
+            feed.join();
+        }
+        // let the workers drain the rings
+        Thread.sleep(200);
+        MetricsSnapshot last = metrics.snapshot();
+        long sent = 0;
+        for (Feed feed : feeds) {
+            sent += feed.frames.get();
+        }
+        System.out.printf(Locale.ROOT, "total: %d frames sent, %d sentences ingested, %d fixes, %d ring drops, "
+                        + "%d checksum failures, %d rejects, %d partial frames, %d batches lost, %d reordered%n",
+                sent, last.getTotalSentences(), fixes.get(), ringDrops(rings), last.getChecksumFailures(),
+                last.getFrameRejects(), last.getPartialFrames(), last.getLostBatches(), last.getReorderedBatches());
+        for (String line : last.toText(null).split("\n")) {
+            if (line.startsWith("latency_nanos_") || line.startsWith("parse_time_nanos")) {
+                System.out.println(line);
+            }
+        }
+        server.shutdown();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private static void report(int second, double sent, double ingested, double fixes, MetricsSnapshot snapshot,
+                               FrameRing[] rings) {
+        LatencyHistogram.Snapshot endToEnd = snapshot.getStage(IngestMetrics.STAGE_END_TO_END);
+        System.out.printf(Locale.ROOT, "%3d %7.0f %11.0f %8.0f %11d %9d %8d %8d %11.1f %11.1f %12.1f%n",
+                second, sent, ingested, fixes, ringDrops(rings), snapshot.getChecksumFailures(),
+                snapshot.getFrameRejects(), snapshot.getPartialFrames(),
+                endToEnd.valueAtPercentile(50) / 1e3, endToEnd.valueAtPercentile(99) / 1e3,
+                endToEnd.valueAtPercentile(99.9) / 1e3);
+    }
+
+    private static long ringDrops(FrameRing[] rings) {
+        long drops = 0;
+        for (FrameRing ring : rings) {
+            drops += ring.getDropped();
+        }
+        return drops;
+    }
+
+    /**
+     * Delivers the fixes of a connection on the spot, where the app would post them to its main thread.
+     */
+    private final class Delivery implements FixListener {
+        @Override
+        public void onFix(GpsFix fix) {
+            long now = metrics.nanoTime();
+            fix.setPostedNanos(now);
+            fix.setDeliveredNanos(now);
+            metrics.fixDelivered(fix);
+            fixes.incrementAndGet();
+        }
+    }
+
+    private final class HeadlessServer extends IngestServer<Delivery> {
+        HeadlessServer(FrameRing[] rings) {
+            super("IngestServer", 0, rings, feed -> new NmeaParser(5f, feed, metrics), metrics, null, true);
+        }
+
+        @Override
+        protected Delivery openFeed(int connection, SocketAddress remote) {
+            return new Delivery();
+        }
+
+        @Override
+        protected void closeFeed(int connection, Delivery feed, String summary) {
+            // counted by the metrics
+        }
+
+        @Override
+        protected void onError(Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * One synthetic receiver: writes an epoch at a time on its own connection, on schedule.
+     */
+    private static final class Feed extends Thread {
+        static final String PLAIN = "plain";
+        static final String BATCHED = "batched";
+        static final String UDP = "udp";
+
+        final TrafficGenerator traffic;
+        final int rate;
+        final String protocol;
+        final double loss;
+        final SocketAddress address;
+        final AtomicLong frames = new AtomicLong();
+
+        Feed(int id, TrafficGenerator traffic, int rate, String protocol, double loss, SocketAddress address) {
+            super("Feed-" + id);
+            this.traffic = traffic;
+            this.rate = rate;
+            this.protocol = protocol;
+            this.loss = loss;
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            if (UDP.equals(protocol)) {
+                sendDatagrams();
+                return;
+            }
+            boolean batched = BATCHED.equals(protocol);
+            try (Socket socket = new Socket()) {
+                socket.setTcpNoDelay(true);
+                socket.connect(address);
+                // flushed once per epoch, a single write on the socket
+                DataOutputStream data = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+                if (batched) {
+                    data.write(BatchFrameDecoder.MAGIC);
+                    data.write(BatchFrameDecoder.VERSION);
+                }
+                long period = rate == 0 ? 0 : 1_000_000_000L / rate;
+                long start = System.nanoTime();
+                for (long epoch = 0; !isInterrupted(); epoch++) {
+                    if (period > 0) {
+                        long wait = start + epoch * period - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    int index = (int) (epoch % traffic.epochs.length);
+                    byte[] bytes = traffic.epochs[index];
+                    if (batched) {
+                        data.writeInt(BatchFrameDecoder.HEADER_LENGTH + bytes.length);
+                        data.writeInt((int) epoch);
+                        data.writeLong(System.currentTimeMillis());
+                    }
+                    data.write(bytes);
+                    data.flush();
+                    frames.addAndGet(traffic.frames[index]);
+                }
+            } catch (IOException e) {
+                if (!isInterrupted()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void sendDatagrams() {
+            Random random = new Random(getId());
+            int longest = 0;
+            for (byte[] epoch : traffic.epochs) {
+                longest = Math.max(longest, epoch.length);
+            }
+            byte[] datagram = new byte[BatchFrameDecoder.DATAGRAM_HEADER_LENGTH + longest];
+            System.arraycopy(BatchFrameDecoder.MAGIC, 0, datagram, 0, BatchFrameDecoder.MAGIC.length);
+            datagram[BatchFrameDecoder.MAGIC.length] = BatchFrameDecoder.VERSION;
+            DatagramPacket packet = new DatagramPacket(datagram, datagram.length, address);
+            try (DatagramSocket socket = new DatagramSocket()) {
+                long period = rate == 0 ? 0 : 1_000_000_000L / rate;
+                long start = System.nanoTime();
+                for (long epoch = 0; !isInterrupted(); epoch++) {
+                    if (period > 0) {
+                        long wait = start + epoch * period - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    int index = (int) (epoch % traffic.epochs.length);
+                    if (random.nextDouble() < loss) {
+                        // lost on the way, the sequence number moves on
+                        continue;
+                    }
+                    byte[] bytes = traffic.epochs[index];
+                    put(datagram, BatchFrameDecoder.MAGIC.length + 1, epoch, 4);
+                    put(datagram, BatchFrameDecoder.MAGIC.length + 5, System.currentTimeMillis(), 8);
+                    System.arraycopy(bytes, 0, datagram, BatchFrameDecoder.DATAGRAM_HEADER_LENGTH, bytes.length);
+                    packet.setLength(BatchFrameDecoder.DATAGRAM_HEADER_LENGTH + bytes.length);
+                    socket.send(packet);
+                    frames.addAndGet(traffic.frames[index]);
+                }
+            } catch (IOException e) {
+                if (!isInterrupted()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // big endian, the low bytes of value
+        private static void put(byte[] buffer, int offset, long value, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                buffer[offset + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+    }
+}
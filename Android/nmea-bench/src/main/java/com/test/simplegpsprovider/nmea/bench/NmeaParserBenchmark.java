@@ -0,0 +1,70 @@
+package com.test.simplegpsprovider.nmea.bench;
+
+import com.test.simplegpsprovider.nmea.NmeaParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full sentence parsing, one operation being one sentence of the corpus: the time per operation is
+ * the time per sentence and the gc profiler's {@code gc.alloc.rate.norm} the bytes allocated per sentence.
+ * Epoch assembly is included since the GGA and RMC sentences of the corpus build and notify fixes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NmeaParserBenchmark {
+
+    @Param({Corpus.GPS_1HZ, Corpus.MULTI_GNSS_10HZ, Corpus.CORRUPTED_5PCT})
+    public String corpus;
+
+    private Corpus data;
+    private NmeaParser parser;
+    private int next;
+    private long fixes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = Corpus.load(corpus);
+        parser = new NmeaParser(fix -> fixes++);
+    }
+
+    /**
+     * The allocation free entry point used by the ingest pipeline.
+     */
+    @Benchmark
+    public boolean parseBytes() {
+        int line = next();
+        return parser.parseNmeaSentence(data.stream, data.offsets[line], data.lengths[line]);
+    }
+
+    /**
+     * The String entry point kept for compatibility.
+     */
+    @Benchmark
+    public String parseString() {
+        return parser.parseNmeaSentence(data.lines[next()]);
+    }
+
+    private int next() {
+        int line = next;
+        next = line + 1 == data.size() ? 0 : line + 1;
+        return line;
+    }
+}
@@ -0,0 +1,166 @@
+package com.test.simplegpsprovider.nmea.bench;
+
+import com.test.simplegpsprovider.nmea.UbxMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthetic receiver output for the load harness: a vehicle driving on a circle, sampled at a given
+ * rate, with valid checksums and optionally damaged sentences.
+ * <p>
+ * Sentence mixes:
+ * <ul>
+ * <li>{@code minimal}: GGA and RMC</li>
+ * <li>{@code gps}: GGA, RMC, GSA, 3 GSV and VTG</li>
+ * <li>{@code multi-gnss}: GN solution sentences followed by the GSV bursts of 4 constellations</li>
+ * <li>{@code ubx}: a single UBX NAV-PVT message</li>
+ * </ul>
+ * The epochs are generated once, as they are sent on the socket, and replayed in a loop.
+ */
+final class TrafficGenerator {
+
+    static final String MINIMAL = "minimal";
+    static final String GPS = "gps";
+    static final String MULTI_GNSS = "multi-gnss";
+    static final String UBX = "ubx";
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    /**
+     * Bytes of every epoch, line terminators included.
+     */
+    final byte[][] epochs;
+    /**
+     * Frames of every epoch.
+     */
+    final int[] frames;
+
+    /**
+     * @param feed       shifts the track and the satellites so that every feed differs
+     * @param rate       epochs per second
+     * @param mix        one of the sentence mixes
+     * @param errors     fraction of the sentences damaged
+     * @param radius     radius of the track in meters
+     * @param speed      speed on the track in meters per second
+     * @param seconds    length of the generated loop
+     */
+    TrafficGenerator(int feed, int rate, String mix, double errors, double radius, double speed, int seconds) {
+        Random random = new Random(5897L + feed);
+        int count = Math.max(2, rate * seconds);
+        epochs = new byte[count][];
+        frames = new int[count];
+        double centerLatitude = 48.1173 + 0.01 * feed;
+        double centerLongitude = 11.5167;
+        for (int epoch = 0; epoch < count; epoch++) {
+            long millis = 43_200_000L + epoch * 1000L / rate;
+            double angle = speed / radius * millis / 1000.0;
+            double latitude = centerLatitude + radius * Math.sin(angle) / METERS_PER_DEGREE;
+            double longitude = centerLongitude
+                    + radius * Math.cos(angle) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(centerLatitude)));
+            double bearing = (Math.toDegrees(-angle) % 360.0 + 360.0) % 360.0;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (UBX.equals(mix)) {
+                byte[] message = navPvt(millis, latitude, longitude, speed, bearing);
+                if (random.nextDouble() < errors) {
+                    message[UbxMessage.HEADER_LENGTH + random.nextInt(UbxMessage.NAV_PVT_LENGTH)] ^= 0x10;
+                }
+                bytes.write(message, 0, message.length);
+                frames[epoch] = 1;
+            } else {
+                List<String> lines = sentences(mix, millis, latitude, longitude, speed, bearing, random);
+                for (String line : lines) {
+                    if (random.nextDouble() < errors) {
+                        line = Corpus.corrupt(line, random);
+                    }
+                    byte[] encoded = (line + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                    bytes.write(encoded, 0, encoded.length);
+                }
+                frames[epoch] = lines.size();
+            }
+            epochs[epoch] = bytes.toByteArray();
+        }
+    }
+
+    private static List<String> sentences(String mix, long millis, double latitude, double longitude,
+                                          double speed, double bearing, Random random) {
+        boolean multiGnss = MULTI_GNSS.equals(mix);
+        if (!multiGnss && !GPS.equals(mix) && !MINIMAL.equals(mix)) {
+            throw new IllegalArgumentException("Unknown mix " + mix);
+        }
+        String solution = multiGnss ? "GN" : "GP";
+        String time = String.format(Locale.ROOT, "%02d%02d%02d.%02d",
+                millis / 3_600_000L % 24, millis / 60_000L % 60, millis / 1000L % 60, millis % 1000 / 10);
+        String lat = Corpus.coordinate(Math.abs(latitude), 2) + (latitude < 0 ? ",S" : ",N");
+        String lon = Corpus.coordinate(Math.abs(longitude), 3) + (longitude < 0 ? ",W" : ",E");
+        double knots = speed * Corpus.KNOTS_PER_METER_PER_SECOND;
+        List<String> lines = new ArrayList<>();
+        lines.add(Corpus.sentence(solution + "GGA," + time + "," + lat + "," + lon + ",4,"
+                + (multiGnss ? "24" : "09") + ",0.7,545.4,M,46.9,M,1.0,0000"));
+        lines.add(Corpus.sentence(String.format(Locale.ROOT, "%sRMC,%s,A,%s,%s,%.3f,%.2f,230394,003.1,W,D",
+                solution, time, lat, lon, knots, bearing)));
+        if (multiGnss) {
+            lines.add(Corpus.sentence("GNGSA,A,3,02,05,07,09,13,16,20,27,30,,,,1.2,0.7,1.0,1"));
+            lines.add(Corpus.sentence("GNGSA,A,3,65,71,72,79,80,87,,,,,,,1.2,0.7,1.0,2"));
+            lines.add(Corpus.sentence("GNGSA,A,3,03,05,13,15,24,26,,,,,,,1.2,0.7,1.0,3"));
+            Corpus.satellites(lines, random, "GP", 12);
+            Corpus.satellites(lines, random, "GL", 8);
+            Corpus.satellites(lines, random, "GA", 10);
+            Corpus.satellites(lines, random, "GB", 9);
+        } else if (GPS.equals(mix)) {
+            lines.add(Corpus.sentence("GPGSA,A,3,02,05,07,09,13,16,20,27,30,,,,1.2,0.7,1.0"));
+            Corpus.satellites(lines, random, "GP", 11);
+        }
+        if (!MINIMAL.equals(mix)) {
+            lines.add(Corpus.sentence(String.format(Locale.ROOT, "%sVTG,%.2f,T,,M,%.3f,N,%.3f,K,D",
+                    solution, bearing, knots, speed * 3.6)));
+        }
+        return lines;
+    }
+
+    private static byte[] navPvt(long millis, double latitude, double longitude, double speed, double bearing) {
+        byte[] message = new byte[UbxMessage.HEADER_LENGTH + UbxMessage.NAV_PVT_LENGTH + UbxMessage.CHECKSUM_LENGTH];
+        message[0] = UbxMessage.SYNC_1;
+        message[1] = UbxMessage.SYNC_2;
+        message[2] = UbxMessage.CLASS_NAV;
+        message[3] = UbxMessage.ID_NAV_PVT;
+        message[4] = UbxMessage.NAV_PVT_LENGTH;
+        int payload = UbxMessage.HEADER_LENGTH;
+        // iTOW, then 2024-03-15 and the time of day
+        putInt(message, payload, (int) (millis + 5 * 86_400_000L));
+        message[payload + 4] = (byte) 2024;
+        message[payload + 5] = (byte) (2024 >> 8);
+        message[payload + 6] = 3;
+        message[payload + 7] = 15;
+        message[payload + 8] = (byte) (millis / 3_600_000L % 24);
+        message[payload + 9] = (byte) (millis / 60_000L % 60);
+        message[payload + 10] = (byte) (millis / 1000L % 60);
+        // valid date and time, nano, 3D fix with gnssFixOK, 24 satellites
+        message[payload + 11] = 0x07;
+        putInt(message, payload + 16, (int) (millis % 1000) * 1_000_000);
+        message[payload + 20] = 3;
+        message[payload + 21] = 0x01;
+        message[payload + 23] = 24;
+        putInt(message, payload + 24, (int) Math.round(longitude * 1e7));
+        putInt(message, payload + 28, (int) Math.round(latitude * 1e7));
+        putInt(message, payload + 36, 545_400);
+        putInt(message, payload + 40, 1_500);
+        putInt(message, payload + 60, (int) Math.round(speed * 1000));
+        putInt(message, payload + 64, (int) Math.round(bearing * 1e5));
+        int checksum = UbxMessage.checksum(message, 0, UbxMessage.NAV_PVT_LENGTH);
+        message[message.length - 2] = (byte) checksum;
+        message[message.length - 1] = (byte) (checksum >> 8);
+        return message;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -0,0 +1,338 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the optional batched protocol of a feed, in front of its {@link NmeaFrameDecoder}.
+ * <p>
+ * A sender opts in by starting the stream with the {@link #MAGIC} bytes followed by the
+ * {@link #VERSION} byte, any other start keeps the connection in plain text mode where the bytes go
+ * straight to the frame decoder. In batched mode the stream is a sequence of frames, all integers
+ * being big endian:
+ * <pre>
+ * u32 length     bytes following this field, header included
+ * u32 sequence   incremented by one per batch
+ * i64 sent       sender time, milliseconds since the epoch
+ * ...            payload: the NMEA sentences and UBX messages of one epoch, as sent in plain mode
+ * </pre>
+ * The payload is handed to the frame decoder in place, without being copied. A sequence number
+ * jumping forward counts the batches lost in between, one going backward counts a reordered batch,
+ * whose payload is dropped as its fix would be older than the ones already delivered. A jump of more
+ * than {@link #MAX_SEQUENCE_GAP} either way, or a late batch after {@link #MAX_REORDERED_RUN}
+ * reordered ones in a row, mean the sender restarted its sequence: it is counted as a restart and
+ * followed from there, instead of every later batch being dropped.
+ * <p>
+ * Datagrams go through {@link #decodeDatagram}: each one holds whole sentences, optionally after the
+ * magic, the version, the sequence number and the sender time, without length since the datagram has
+ * one. The sequence is checked the same way, a late datagram being dropped. A datagram without the
+ * header carries no sequence, so a late one can't be told apart here: it is decoded in arrival order,
+ * and only its sentences of the epoch last published are then skipped by the {@link EpochAssembler},
+ * an older epoch being published again. A sender whose datagrams may be reordered should send the
+ * header.
+ * <p>
+ * Not thread safe, one decoder per stream.
+ */
+public final class BatchFrameDecoder {
+
+    public static final byte[] MAGIC = {'S', 'G', 'P', 'B'};
+    public static final byte VERSION = 1;
+
+    /**
+     * Sequence number and sender time following the length.
+     */
+    public static final int HEADER_LENGTH = 12;
+
+    /**
+     * Magic, version, sequence number and sender time opening a sequenced datagram.
+     */
+    public static final int DATAGRAM_HEADER_LENGTH = MAGIC.length + 1 + HEADER_LENGTH;
+
+    /**
+     * Longest batch accepted, a whole epoch of a multi-constellation receiver is a few KiB. A longer
+     * length means the stream is corrupted.
+     */
+    public static final int MAX_BATCH_LENGTH = 64 * 1024;
+
+    /**
+     * Largest sequence jump taken for lost or reordered batches, a larger one is a restart.
+     */
+    public static final int MAX_SEQUENCE_GAP = 256;
+
+    /**
+     * Reordered batches in a row after which the next late one is taken for a restart.
+     */
+    public static final int MAX_REORDERED_RUN = 8;
+
+    private static final int STATE_SNIFF = 0;
+    private static final int STATE_TEXT = 1;
+    private static final int STATE_LENGTH = 2;
+    private static final int STATE_HEADER = 3;
+    private static final int STATE_PAYLOAD = 4;
+    // payload of a reordered batch
+    private static final int STATE_DISCARD = 5;
+
+    private final NmeaFrameDecoder frames;
+    private final IngestMetrics metrics;
+    // opening bytes while sniffing, then the length and the header of the current batch
+    private final byte[] header = new byte[MAGIC.length + 1 + HEADER_LENGTH];
+    private byte[] chunk;
+    private int headerLength = 0;
+    private int state = STATE_SNIFF;
+    private int remaining = 0;
+
+    private boolean sequenced = false;
+    private int nextSequence = 0;
+    private long lastSentMillis = 0;
+
+    private long batches = 0;
+    private long lostBatches = 0;
+    private long reorderedBatches = 0;
+    private long sequenceRestarts = 0;
+    // reordered batches since the last one in sequence
+    private int reorderedRun = 0;
+
+    /**
+     * @param frames  decoder of the plain stream and of the batch payloads
+     * @param metrics also counts the batches, the lost and the reordered ones and the sequence restarts
+     */
+    public BatchFrameDecoder(NmeaFrameDecoder frames, IngestMetrics metrics) {
+        this.frames = frames;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Decodes the remaining bytes of {@code buffer} and consumes them, see
+     * {@link #decode(byte[], int, int, long, NmeaFrameDecoder.FrameListener)}.
+     */
+    public void decode(ByteBuffer buffer, long receivedNanos, NmeaFrameDecoder.FrameListener listener)
+            throws ProtocolException {
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            int position = buffer.position();
+            buffer.position(buffer.limit());
+            decode(buffer.array(), buffer.arrayOffset() + position, length, receivedNanos, listener);
+            return;
+        }
+        if (chunk == null || chunk.length < length) {
+            chunk = new byte[length];
+        }
+        buffer.get(chunk, 0, length);
+        decode(chunk, 0, length, receivedNanos, listener);
+    }
+
+    /**
+     * Decodes the next chunk of the stream, calling {@code listener} for each complete frame.
+     *
+     * @throws ProtocolException when the stream announced an unknown version or a batch length out of
+     *                           bounds, it can't be decoded any further
+     */
+    public void decode(byte[] buffer, int offset, int length, long receivedNanos,
+                       NmeaFrameDecoder.FrameListener listener) throws ProtocolException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            switch (state) {
+                case STATE_TEXT:
+                    frames.decode(buffer, i, end - i, receivedNanos, listener);
+                    return;
+                case STATE_SNIFF:
+                    i = sniff(buffer, i, end, receivedNanos, listener);
+                    break;
+                case STATE_LENGTH:
+                case STATE_HEADER:
+                    header[headerLength++] = buffer[i++];
+                    if (state == STATE_LENGTH && headerLength == 4) {
+                        startBatch();
+                    } else if (state == STATE_HEADER && headerLength == 4 + HEADER_LENGTH) {
+                        startPayload();
+                    }
+                    break;
+                default:
+                    int count = Math.min(remaining, end - i);
+                    if (state == STATE_PAYLOAD) {
+                        frames.decode(buffer, i, count, receivedNanos, listener);
+                    }
+                    i += count;
+                    remaining -= count;
+                    if (remaining == 0) {
+                        state = STATE_LENGTH;
+                        headerLength = 0;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private int sniff(byte[] buffer, int i, int end, long receivedNanos, NmeaFrameDecoder.FrameListener listener)
+            throws ProtocolException {
+        while (i < end && headerLength < MAGIC.length) {
+            byte c = buffer[i];
+            if (c != MAGIC[headerLength]) {
+                // a plain stream, the bytes held so far go first
+                state = STATE_TEXT;
+                frames.decode(header, 0, headerLength, receivedNanos, listener);
+                headerLength = 0;
+                return i;
+            }
+            header[headerLength++] = c;
+            i++;
+        }
+        if (i < end) {
+            if (buffer[i] != VERSION) {
+                throw new ProtocolException("Unsupported batch protocol version " + (buffer[i] & 0xFF));
+            }
+            state = STATE_LENGTH;
+            headerLength = 0;
+            i++;
+        }
+        return i;
+    }
+
+    private void startBatch() throws ProtocolException {
+        int length = readInt(header, 0);
+        if (length < HEADER_LENGTH || length > MAX_BATCH_LENGTH) {
+            throw new ProtocolException("Batch length out of bounds: " + length);
+        }
+        remaining = length - HEADER_LENGTH;
+        state = STATE_HEADER;
+    }
+
+    private void startPayload() {
+        lastSentMillis = (long) readInt(header, 8) << 32 | readInt(header, 12) & 0xFFFFFFFFL;
+        state = inSequence(readInt(header, 4)) ? STATE_PAYLOAD : STATE_DISCARD;
+        if (remaining == 0) {
+            state = STATE_LENGTH;
+            headerLength = 0;
+        }
+    }
+
+    /**
+     * Counts a batch and checks its sequence number.
+     *
+     * @return false for a batch older than the last one, to be dropped
+     */
+    private boolean inSequence(int sequence) {
+        batches++;
+        metrics.batchReceived();
+        if (sequenced) {
+            // compared as a difference, the sequence may wrap around
+            int gap = sequence - nextSequence;
+            if (gap < -MAX_SEQUENCE_GAP || gap > MAX_SEQUENCE_GAP
+                    || (gap < 0 && reorderedRun >= MAX_REORDERED_RUN)) {
+                sequenceRestarts++;
+                metrics.sequenceRestarted();
+            } else if (gap < 0) {
+                reorderedRun++;
+                reorderedBatches++;
+                metrics.batchReordered();
+                return false;
+            } else if (gap > 0) {
+                lostBatches += gap;
+                metrics.batchesLost(gap);
+            }
+        }
+        reorderedRun = 0;
+        sequenced = true;
+        nextSequence = sequence + 1;
+        return true;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | buffer[offset + 3] & 0xFF;
+    }
+
+    /**
+     * Decodes one datagram of the feed, the frames of a datagram never continue in the next one.
+     * Unlike a stream, every datagram may or may not open with the sequence header.
+     *
+     * @throws ProtocolException when the datagram opens with the magic but an unknown version or a
+     *                           truncated header, it is dropped and the next ones can still be decoded
+     */
+    public void decodeDatagram(byte[] buffer, int offset, int length, long receivedNanos,
+                               NmeaFrameDecoder.FrameListener listener) throws ProtocolException {
+        if (startsWithMagic(buffer, offset, length)) {
+            if (length < DATAGRAM_HEADER_LENGTH) {
+                throw new ProtocolException("Truncated datagram header: " + length + " bytes");
+            }
+            int version = buffer[offset + MAGIC.length];
+            if (version != VERSION) {
+                throw new ProtocolException("Unsupported batch protocol version " + (version & 0xFF));
+            }
+            int sequence = readInt(buffer, offset + MAGIC.length + 1);
+            lastSentMillis = (long) readInt(buffer, offset + MAGIC.length + 5) << 32
+                    | readInt(buffer, offset + MAGIC.length + 9) & 0xFFFFFFFFL;
+            if (!inSequence(sequence)) {
+                return;
+            }
+            offset += DATAGRAM_HEADER_LENGTH;
+            length -= DATAGRAM_HEADER_LENGTH;
+        }
+        frames.decode(buffer, offset, length, receivedNanos, listener);
+        // a sentence cut by the end of the datagram is not completed by the next one
+        frames.endOfStream();
+    }
+
+    private static boolean startsWithMagic(byte[] buffer, int offset, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer[offset + i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Signals the end of the stream, see {@link NmeaFrameDecoder#endOfStream()}.
+     */
+    public void endOfStream() {
+        // a stream too short to tell its mode held no frame either
+        frames.endOfStream();
+    }
+
+    /**
+     * @return true once the stream announced the batched protocol
+     */
+    public boolean isBatched() {
+        return state >= STATE_LENGTH;
+    }
+
+    /**
+     * @return the number of batches received
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of batches missing from the sequence
+     */
+    public long getLostBatches() {
+        return lostBatches;
+    }
+
+    /**
+     * @return the number of batches received after a newer one, and dropped
+     */
+    public long getReorderedBatches() {
+        return reorderedBatches;
+    }
+
+    /**
+     * @return the number of times the sender restarted its sequence
+     */
+    public long getSequenceRestarts() {
+        return sequenceRestarts;
+    }
+
+    /**
+     * @return the sender time of the last batch, in milliseconds since the epoch, 0 before the first one
+     */
+    public long getLastSentMillis() {
+        return lastSentMillis;
+    }
+}
@@ -0,0 +1,141 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which fixes of a feed are worth handing to the location clients, before they cost a
+ * delivery: a stationary receiver at 10 Hz produces fixes differing by millimeters.
+ * <p>
+ * A fix is forwarded when, compared with the last forwarded one of its feed:
+ * <ul>
+ * <li>at least the minimum interval elapsed, the cap of the output rate, and</li>
+ * <li>the position moved by the minimum distance, the bearing or the speed changed by their
+ * minimum, or the fix gained or lost a position, or</li>
+ * <li>the keep-alive interval elapsed, so that the clients never see the provider go stale.</li>
+ * </ul>
+ * The bearing is only compared between fixes moving at {@link #BEARING_MIN_SPEED} at least, below
+ * that receivers report noise. A threshold of 0 disables its check; with all the motion thresholds
+ * at 0 only the rate is capped. {@link #FORWARD_ALL} forwards every fix.
+ * <p>
+ * The policy is immutable and shared, each feed tests its fixes through its own {@link Gate}.
+ */
+public final class DeliveryPolicy {
+
+    public static final DeliveryPolicy FORWARD_ALL = new DeliveryPolicy(0, 0, 0, 0, 0);
+
+    /**
+     * Meters per second.
+     */
+    public static final float BEARING_MIN_SPEED = 1f;
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    private final long minIntervalNanos;
+    private final long keepAliveNanos;
+    private final double minDistance;
+    private final float minBearing;
+    private final float minSpeedChange;
+    private final boolean motion;
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * @param maxRate        highest output rate of a feed in Hz, 0 for no cap
+     * @param minDistance    in meters
+     * @param minBearing     in degrees
+     * @param minSpeedChange in meters per second
+     * @param keepAlive      longest time between two forwarded fixes in seconds, 0 for none
+     */
+    public DeliveryPolicy(double maxRate, double minDistance, float minBearing, float minSpeedChange,
+                          double keepAlive) {
+        if (maxRate < 0 || minDistance < 0 || minBearing < 0 || minSpeedChange < 0 || keepAlive < 0) {
+            throw new IllegalArgumentException("Negative threshold");
+        }
+        this.minIntervalNanos = maxRate == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / maxRate);
+        this.keepAliveNanos = keepAlive == 0 ? Long.MAX_VALUE : (long) (keepAlive * TimeUnit.SECONDS.toNanos(1));
+        this.minDistance = minDistance;
+        this.minBearing = minBearing;
+        this.minSpeedChange = minSpeedChange;
+        this.motion = minDistance > 0 || minBearing > 0 || minSpeedChange > 0;
+    }
+
+    /**
+     * @return a gate for a new feed
+     */
+    public Gate newGate() {
+        return new Gate();
+    }
+
+    /**
+     * @return the number of fixes forwarded by all the gates
+     */
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    /**
+     * @return the number of fixes suppressed by all the gates
+     */
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Remembers the last forwarded fix of a feed. Not thread safe, one per feed.
+     */
+    public final class Gate {
+        private final GpsFix last = new GpsFix();
+        private long lastNanos;
+        private boolean forwardedOnce = false;
+
+        /**
+         * @param nowNanos monotonic time of the test
+         * @return true to forward the fix, which then becomes the reference of the next ones
+         */
+        public boolean test(GpsFix fix, long nowNanos) {
+            if (forwardedOnce) {
+                long elapsed = nowNanos - lastNanos;
+                if (elapsed < minIntervalNanos || elapsed < keepAliveNanos && !changed(fix)) {
+                    suppressed.increment();
+                    return false;
+                }
+            }
+            last.set(fix);
+            lastNanos = nowNanos;
+            forwardedOnce = true;
+            forwarded.increment();
+            return true;
+        }
+
+        private boolean changed(GpsFix fix) {
+            if (!motion || fix.hasPosition() != last.hasPosition()) {
+                return true;
+            }
+            if (minDistance > 0 && fix.hasPosition()) {
+                double x = (fix.getLongitude() - last.getLongitude())
+                        * Math.cos(Math.toRadians((fix.getLatitude() + last.getLatitude()) / 2));
+                double y = fix.getLatitude() - last.getLatitude();
+                if ((x * x + y * y) * METERS_PER_DEGREE * METERS_PER_DEGREE >= minDistance * minDistance) {
+                    return true;
+                }
+            }
+            if (minBearing > 0 && fix.hasBearing() && last.hasBearing() && moving(fix) && moving(last)) {
+                float turn = Math.abs(fix.getBearing() - last.getBearing()) % 360f;
+                if (Math.min(turn, 360f - turn) >= minBearing) {
+                    return true;
+                }
+            }
+            if (minSpeedChange > 0 && fix.hasSpeed() != last.hasSpeed()) {
+                return true;
+            }
+            return minSpeedChange > 0 && fix.hasSpeed()
+                    && Math.abs(fix.getSpeed() - last.getSpeed()) >= minSpeedChange;
+        }
+
+        private boolean moving(GpsFix fix) {
+            return fix.hasSpeed() && fix.getSpeed() >= BEARING_MIN_SPEED;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Groups the sentences of one receiver epoch into a {@link GpsFix} and decides when to publish it.
+ * <p>
+ * An epoch is the set of sentences sharing the same UTC time. Instead of waiting for the time to
+ * change, which costs a whole update period, the fix is published as soon as:
+ * <ul>
+ * <li>all the fix sentences the receiver sends every epoch (e.g. GGA and RMC, or GGA alone) were
+ * parsed, the set being learned from the previous epochs and defaulting to GGA and RMC,</li>
+ * <li>or the sentence closing the previous epochs, typically the last GSV of the burst, is seen,</li>
+ * <li>or no sentence arrived for the flush delay, checked by {@link #flushStale()},</li>
+ * <li>or the next epoch starts.</li>
+ * </ul>
+ * What the receiver sends is learned once two consecutive epochs agree, and forgotten as soon as
+ * one disagrees. A fix lacking any of the required values is dropped instead of published.
+ * <p>
+ * One instance per {@link NmeaParser}, used on its thread only.
+ */
+public final class EpochAssembler {
+    private static final Logger LOGGER = Logger.getLogger(EpochAssembler.class.getSimpleName());
+
+    /**
+     * Quiet time after which an epoch is considered complete.
+     */
+    public static final long DEFAULT_FLUSH_NANOS = 100_000_000L;
+
+    // results of startSentence
+    static final int EPOCH_NEW = 0;
+    static final int EPOCH_SAME = 1;
+    static final int EPOCH_PUBLISHED = 2;
+
+    private static final int FIX_TYPES = (1 << IngestMetrics.TYPE_GGA) | (1 << IngestMetrics.TYPE_RMC);
+
+    private final NanoClock clock;
+    private final long flushNanos;
+    private final int requiredValues;
+
+    private FixListener listener;
+    private IngestMetrics metrics = IngestMetrics.disabled();
+
+    private final GpsFix fix = new GpsFix();
+    // true while the fix of the current epoch is not published yet
+    private boolean pending = false;
+    // raw bytes of the time field of the current epoch, a length of -1 means no epoch in progress
+    private final byte[] epochTime = new byte[16];
+    private int epochTimeLength = -1;
+    // an invalid sentence broke the current epoch, it can't be learned from
+    private boolean broken = false;
+
+    // sentence types seen and fix sentences parsed in the current epoch, as 1 << TYPE_
+    private int types = 0;
+    private int fixTypes = 0;
+    private long lastSignature = 0;
+    private long lastSentenceNanos = 0;
+
+    private int previousFixTypes = 0;
+    private long previousSignature = 0;
+    private int learnedFixTypes = 0;
+    private long learnedSignature = 0;
+
+    /**
+     * Flushes after {@link #DEFAULT_FLUSH_NANOS} of silence and requires a position.
+     */
+    public EpochAssembler() {
+        this(NanoClock.SYSTEM, DEFAULT_FLUSH_NANOS, GpsFix.HAS_POSITION);
+    }
+
+    /**
+     * @param clock          time base of the flush delay
+     * @param flushNanos     quiet time after which {@link #flushStale()} publishes the epoch, 0 to disable
+     * @param requiredValues {@code GpsFix.HAS_} flags a fix needs to be published
+     */
+    public EpochAssembler(NanoClock clock, long flushNanos, int requiredValues) {
+        this.clock = clock;
+        this.flushNanos = flushNanos;
+        this.requiredValues = requiredValues;
+    }
+
+    void attach(FixListener listener, IngestMetrics metrics) {
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the time of the clock of the assembler, also the time base of its parser
+     */
+    long nanoTime() {
+        return clock.nanoTime();
+    }
+
+    /**
+     * @return the fix of the current epoch, filled by the parser
+     */
+    GpsFix getFix() {
+        return fix;
+    }
+
+    /**
+     * Called before a fix sentence fills the fix, with its time field.
+     *
+     * @return {@link #EPOCH_NEW} when the sentence starts a new epoch (the fix was reset), {@link #EPOCH_SAME}
+     * when it completes the current one, {@link #EPOCH_PUBLISHED} when the epoch is already out and the
+     * sentence must be skipped
+     */
+    int startSentence(byte[] buffer, int timeOffset, int timeLength, long receivedNanos, long framedNanos) {
+        if (timeLength == 0 || (epochTimeLength == timeLength && sameTime(buffer, timeOffset))) {
+            return pending ? EPOCH_SAME : EPOCH_PUBLISHED;
+        }
+        closeEpoch();
+        if (timeLength <= epochTime.length) {
+            System.arraycopy(buffer, timeOffset, epochTime, 0, timeLength);
+            epochTimeLength = timeLength;
+        }
+        fix.reset();
+        fix.setSystemTime(System.currentTimeMillis());
+        fix.setReceivedNanos(receivedNanos);
+        fix.setFramedNanos(framedNanos);
+        pending = true;
+        return EPOCH_NEW;
+    }
+
+    private boolean sameTime(byte[] buffer, int offset) {
+        for (int i = 0; i < epochTimeLength; i++) {
+            if (buffer[offset + i] != epochTime[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called after a fix sentence filled the fix.
+     *
+     * @param type one of the {@code IngestMetrics.TYPE_} constants
+     */
+    void fixSentence(int type) {
+        fixTypes |= 1 << type;
+        fix.setParsedNanos(metrics.nanoTime());
+        int expected = learnedFixTypes != 0 ? learnedFixTypes : FIX_TYPES;
+        if ((fixTypes & expected) == expected) {
+            publish();
+        }
+    }
+
+    /**
+     * Called after a message carrying a whole fix, such as a UBX NAV-PVT, filled the fix: the epoch is
+     * published right away.
+     *
+     * @param type one of the {@code IngestMetrics.TYPE_} constants
+     */
+    void completeSentence(int type) {
+        fixTypes |= 1 << type;
+        fix.setParsedNanos(metrics.nanoTime());
+        publish();
+    }
+
+    /**
+     * Called for every valid sentence once parsed.
+     *
+     * @param type      one of the {@code IngestMetrics.TYPE_} constants
+     * @param signature address of the sentence packed with {@link NmeaSentence#addressCode()}, 0 when the
+     *                  sentence can't close an epoch, e.g. a GSV which is not the last of its burst
+     */
+    void sentence(int type, long signature) {
+        types |= 1 << type;
+        if (signature != 0) {
+            lastSignature = signature;
+            if (signature == learnedSignature) {
+                publish();
+            }
+        }
+        if (flushNanos > 0) {
+            lastSentenceNanos = clock.nanoTime();
+        }
+    }
+
+    /**
+     * Called for an invalid sentence: the epoch in progress may miss sentences, the next fix sentence
+     * starts a new one.
+     */
+    void invalid() {
+        epochTimeLength = -1;
+        broken = true;
+    }
+
+    /**
+     * Publishes the epoch in progress when no sentence arrived for the flush delay.
+     */
+    public void flushStale() {
+        if (pending && flushNanos > 0 && clock.nanoTime() - lastSentenceNanos >= flushNanos) {
+            publish();
+        }
+    }
+
+    /**
+     * Publishes the epoch in progress now, e.g. at the end of the stream.
+     */
+    public void flush() {
+        publish();
+    }
+
+    private void closeEpoch() {
+        publish();
+        if (epochTimeLength >= 0 && !broken) {
+            int epochFixTypes = fixTypes & FIX_TYPES;
+            if (epochFixTypes != learnedFixTypes) {
+                learnedFixTypes = epochFixTypes == previousFixTypes ? epochFixTypes : 0;
+            }
+            if (lastSignature != learnedSignature) {
+                learnedSignature = lastSignature == previousSignature ? lastSignature : 0;
+            }
+            previousFixTypes = epochFixTypes;
+            previousSignature = lastSignature;
+        }
+        broken = false;
+        types = 0;
+        fixTypes = 0;
+        lastSignature = 0;
+    }
+
+    private void publish() {
+        if (!pending) {
+            return;
+        }
+        pending = false;
+        if (!fix.hasAll(requiredValues)) {
+            metrics.fixIncomplete();
+            return;
+        }
+        fix.setCompletedNanos(metrics.nanoTime());
+        listener.onFix(fix);
+        metrics.fixEmitted();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("New Fix: " + System.currentTimeMillis() + " " + fix);
+        }
+    }
+
+    /**
+     * @return the sentence types, as {@code 1 << IngestMetrics.TYPE_}, seen so far in the current epoch
+     */
+    public int getEpochTypes() {
+        return types;
+    }
+
+    /**
+     * @return the fix sentences, as {@code 1 << IngestMetrics.TYPE_}, learned to be sent every epoch,
+     * 0 while not learned
+     */
+    public int getLearnedFixTypes() {
+        return learnedFixTypes;
+    }
+
+    /**
+     * @return the packed address of the sentence learned to close every epoch, 0 while not learned
+     */
+    public long getLearnedSignature() {
+        return learnedSignature;
+    }
+}
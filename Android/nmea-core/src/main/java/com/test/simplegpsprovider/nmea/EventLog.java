@@ -0,0 +1,131 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded log of the events of the ingest pipeline (connections, errors, replays), written from any
+ * thread without locking and read by a display at its own pace.
+ * <p>
+ * A writer claims the next sequence number and stores its entry in the slot of that number, the
+ * oldest entry being overwritten once the log is full. A reader walks the last slots and keeps the
+ * entries carrying the expected sequence number, skipping a slot whose writer is not done yet or
+ * was already lapped. Writing costs one entry whatever the length of the session, and so does the
+ * display, which only ever shows a window of the latest entries.
+ */
+public final class EventLog {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * One event, immutable.
+     */
+    public static final class Entry {
+        private final long sequence;
+        private final long timeMillis;
+        private final String message;
+
+        Entry(long sequence, long timeMillis, String message) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.message = message;
+        }
+
+        /**
+         * @return the number of the entry, counting from 0 since the log was created
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the time of the event, milliseconds since the epoch
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    public EventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity entries kept, rounded up to a power of two
+     */
+    public EventLog(int capacity) {
+        if (capacity < 1 || capacity > 1 << 20) {
+            throw new IllegalArgumentException("Capacity out of 1..2^20: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Appends an event, from any thread.
+     */
+    public void log(String message) {
+        write(claim(), message);
+    }
+
+    /**
+     * First half of {@link #log}: until written, the entry of the sequence number is missing from the
+     * log.
+     */
+    long claim() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * Second half of {@link #log}.
+     */
+    void write(long sequence, String message) {
+        slots.lazySet((int) (sequence & mask), new Entry(sequence, System.currentTimeMillis(), message));
+    }
+
+    /**
+     * Copies the latest entries, oldest first.
+     *
+     * @param into receives up to its length of entries
+     * @return the number of entries copied
+     */
+    public int latest(Entry[] into) {
+        long end = next.get();
+        long start = Math.max(0, Math.max(end - slots.length(), end - into.length));
+        int count = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            Entry entry = slots.get((int) (sequence & mask));
+            // not written yet, or overwritten by a writer of the next lap
+            if (entry != null && entry.sequence == sequence) {
+                into[count++] = entry;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of entries written since the log was created, the latest ones being kept
+     */
+    public long getWritten() {
+        return next.get();
+    }
+
+    /**
+     * @return the number of entries kept
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,28 @@
+package com.test.simplegpsprovider.nmea;
+
+/**
+ * Receives the fixes assembled by a {@link NmeaParser}.
+ */
+public interface FixListener {
+
+    /**
+     * Called on the parser thread for every complete fix.
+     *
+     * @param fix only valid during the call, the parser reuses it for the next epoch
+     */
+    void onFix(GpsFix fix);
+
+    /**
+     * Called on the parser thread when the stream announces its feed id with a
+     * {@code $PSGPF,<feed id>*hh} sentence, and again only when the id changes.
+     */
+    default void onFeedId(String feedId) {
+    }
+
+    /**
+     * Called on the parser thread once the stream ended, after its last fix. The state kept for the
+     * feed can be released from there.
+     */
+    default void onEndOfStream() {
+    }
+}
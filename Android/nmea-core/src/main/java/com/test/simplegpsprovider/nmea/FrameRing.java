@@ -0,0 +1,365 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer ring of NMEA frames.
+ * <p>
+ * All the slots are allocated up front, {@link #offer(byte[], int, int)} copies a frame into the
+ * next free slot and {@link #poll(byte[])} copies the oldest one out, so neither side allocates nor
+ * locks. The consumer only commits a read by advancing the head with a CAS, which lets the producer
+ * drop the oldest frame itself when the ring is full and the policy is {@link OverflowPolicy#DROP_OLDEST}.
+ * <p>
+ * Every slot also carries the {@link NanoClock} stamps of its frame and an attachment, e.g. the state
+ * of the stream the frame belongs to, read back by the consumer with {@link #getReceivedNanos()},
+ * {@link #getFramedNanos()} and {@link #getAttachment()} after a successful poll.
+ * <p>
+ * The end of a stream is queued apart with {@link #offerEndOfStream(Object)}, so it is never dropped,
+ * and handed to the consumer by {@link #pollEndOfStream()} once the frames offered before it are gone.
+ * <p>
+ * Exactly one thread may call {@code offer} and exactly one thread may call {@code poll}/{@code take}.
+ */
+public final class FrameRing {
+
+    /**
+     * How a side waits for the other one.
+     */
+    public enum WaitStrategy {
+        /**
+         * Busy loop, lowest latency, burns a core.
+         */
+        SPIN,
+        /**
+         * {@link Thread#yield()} between attempts.
+         */
+        YIELD,
+        /**
+         * Parks the thread, the producer unparks a waiting consumer.
+         */
+        PARK
+    }
+
+    /**
+     * What the producer does when the ring is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drops the oldest unread frame, the producer never waits.
+         */
+        DROP_OLDEST,
+        /**
+         * Waits for the consumer, pushing the back pressure to the socket.
+         */
+        BLOCK
+    }
+
+    private static final long PRODUCER_PARK_NANOS = 50_000L;
+
+    private final int slotSize;
+    private final int mask;
+    private final byte[] data;
+    private final int[] lengths;
+    // received and framed stamps, two per slot
+    private final long[] stamps;
+    private final Object[] attachments;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // ends of stream with the tail they follow, rare enough to be allocated
+    private final Queue<EndOfStream> endsOfStream = new ConcurrentLinkedQueue<>();
+
+    // producer side
+    private long cachedHead = 0;
+    private volatile long offered = 0;
+    private volatile long dropped = 0;
+    private volatile long oversized = 0;
+    private volatile long blocked = 0;
+    private volatile long maxOccupancy = 0;
+
+    // consumer side
+    private volatile Thread consumer;
+    private volatile boolean consumerParked = false;
+    private long receivedNanos = 0;
+    private long framedNanos = 0;
+    private Object attachment;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     * @param slotSize largest frame accepted
+     */
+    public FrameRing(int capacity, int slotSize, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slotSize = slotSize;
+        this.mask = slots - 1;
+        this.data = new byte[slots * slotSize];
+        this.lengths = new int[slots];
+        this.stamps = new long[slots * 2];
+        this.attachments = new Object[slots];
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Copies a frame into the ring. Producer thread only.
+     *
+     * @return false when the frame is larger than a slot, or the producer was interrupted while blocked
+     */
+    public boolean offer(byte[] buffer, int offset, int length) {
+        return offer(buffer, offset, length, null, 0L, 0L);
+    }
+
+    /**
+     * Copies a frame, its attachment and its trace stamps into the ring. Producer thread only.
+     *
+     * @param attachment    handed back by {@link #getAttachment()}, the ring keeps a reference until
+     *                      the slot is reused
+     * @param receivedNanos when the first byte of the frame was read
+     * @param framedNanos   when the frame was complete
+     * @return false when the frame is larger than a slot, or the producer was interrupted while blocked
+     */
+    public boolean offer(byte[] buffer, int offset, int length, Object attachment,
+                         long receivedNanos, long framedNanos) {
+        if (length > slotSize) {
+            oversized++;
+            return false;
+        }
+        long t = tail.get();
+        int capacity = mask + 1;
+        if (t - cachedHead >= capacity) {
+            cachedHead = head.get();
+            if (t - cachedHead >= capacity) {
+                blocked++;
+            }
+            while (t - cachedHead >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    if (head.compareAndSet(cachedHead, cachedHead + 1)) {
+                        dropped++;
+                        cachedHead++;
+                    } else {
+                        cachedHead = head.get();
+                    }
+                } else {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                    idle(PRODUCER_PARK_NANOS);
+                    cachedHead = head.get();
+                }
+            }
+        }
+        int slot = (int) (t & mask);
+        System.arraycopy(buffer, offset, data, slot * slotSize, length);
+        lengths[slot] = length;
+        stamps[slot * 2] = receivedNanos;
+        stamps[slot * 2 + 1] = framedNanos;
+        attachments[slot] = attachment;
+        if (waitStrategy == WaitStrategy.PARK) {
+            // full fence so that a consumer about to park either sees the frame or is seen parked
+            tail.set(t + 1);
+            if (consumerParked) {
+                LockSupport.unpark(consumer);
+            }
+        } else {
+            tail.lazySet(t + 1);
+        }
+        offered++;
+        long occupancy = t + 1 - cachedHead;
+        if (occupancy > maxOccupancy) {
+            maxOccupancy = occupancy;
+        }
+        return true;
+    }
+
+    /**
+     * Marks the end of the stream of {@code attachment} after the frames offered so far. Producer thread
+     * only. Unlike the frames it allocates, it is meant for the close of a connection, and it does not
+     * wake a consumer waiting in {@link #take(byte[], long)}.
+     */
+    public void offerEndOfStream(Object attachment) {
+        endsOfStream.add(new EndOfStream(tail.get(), attachment));
+    }
+
+    /**
+     * Consumer thread only.
+     *
+     * @return the attachment of the oldest end of stream whose frames were all read or dropped,
+     * null if there is none
+     */
+    public Object pollEndOfStream() {
+        EndOfStream end = endsOfStream.peek();
+        if (end == null || head.get() < end.position) {
+            return null;
+        }
+        endsOfStream.poll();
+        return end.attachment;
+    }
+
+    /**
+     * Copies the oldest frame into {@code target}, which must hold at least {@link #getSlotSize()} bytes.
+     * Consumer thread only.
+     *
+     * @return the frame length, or -1 when the ring is empty
+     */
+    public int poll(byte[] target) {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return -1;
+            }
+            int slot = (int) (h & mask);
+            int length = lengths[slot];
+            System.arraycopy(data, slot * slotSize, target, 0, length);
+            long received = stamps[slot * 2];
+            long framed = stamps[slot * 2 + 1];
+            Object attached = attachments[slot];
+            // the producer may have dropped and overwritten the slot meanwhile, then the copy is discarded
+            if (head.compareAndSet(h, h + 1)) {
+                receivedNanos = received;
+                framedNanos = framed;
+                attachment = attached;
+                return length;
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #poll(byte[])} but waits up to {@code timeoutNanos} for a frame using the wait strategy.
+     *
+     * @return the frame length, or -1 on timeout or interruption
+     */
+    public int take(byte[] target, long timeoutNanos) {
+        int length = poll(target);
+        if (length >= 0) {
+            return length;
+        }
+        if (consumer == null) {
+            consumer = Thread.currentThread();
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!Thread.currentThread().isInterrupted()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return -1;
+            }
+            if (waitStrategy == WaitStrategy.PARK) {
+                consumerParked = true;
+                length = poll(target);
+                if (length < 0) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+                consumerParked = false;
+                if (length >= 0) {
+                    return length;
+                }
+            } else {
+                idle(remaining);
+            }
+            length = poll(target);
+            if (length >= 0) {
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    private void idle(long parkNanos) {
+        switch (waitStrategy) {
+            case SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            case PARK:
+                LockSupport.parkNanos(this, parkNanos);
+                break;
+        }
+    }
+
+    /**
+     * @return the received stamp of the last frame returned to the consumer, 0 if not traced
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * @return the framed stamp of the last frame returned to the consumer, 0 if not traced
+     */
+    public long getFramedNanos() {
+        return framedNanos;
+    }
+
+    /**
+     * @return the attachment of the last frame returned to the consumer
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * @return the number of frames waiting to be read
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /**
+     * @return the number of frames accepted by {@link #offer(byte[], int, int)}
+     */
+    public long getOffered() {
+        return offered;
+    }
+
+    /**
+     * @return the number of unread frames dropped to make room for newer ones
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of frames rejected because they were larger than a slot
+     */
+    public long getOversized() {
+        return oversized;
+    }
+
+    /**
+     * @return the number of times the producer found the ring full
+     */
+    public long getBlocked() {
+        return blocked;
+    }
+
+    /**
+     * @return the highest number of frames seen waiting in the ring
+     */
+    public long getMaxOccupancy() {
+        return maxOccupancy;
+    }
+
+    private static final class EndOfStream {
+
+        final long position;
+        final Object attachment;
+
+        EndOfStream(long position, Object attachment) {
+            this.position = position;
+            this.attachment = attachment;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable circle or polygon fence over latitude and longitude in degrees, evaluated by the
+ * {@link GeofenceEngine}.
+ * <p>
+ * Polygons are tested in the plane of latitude and longitude, which is exact enough for fences of a
+ * few kilometers away from the poles; they must not cross the antimeridian. Circles are tested with
+ * the equirectangular distance, within a few centimeters of the great circle one at that scale.
+ */
+public final class Geofence {
+
+    private static final double EARTH_RADIUS = 6_371_008.8;
+    private static final double METERS_PER_DEGREE = Math.toRadians(EARTH_RADIUS);
+
+    private final String id;
+    private final long dwellMillis;
+    // circle
+    private final double latitude;
+    private final double longitude;
+    private final double radius;
+    // polygon, null for a circle
+    private final double[] latitudes;
+    private final double[] longitudes;
+    // bounding box
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+
+    private Geofence(String id, long dwellMillis, double latitude, double longitude, double radius,
+                     double[] latitudes, double[] longitudes) {
+        if (dwellMillis < 0) {
+            throw new IllegalArgumentException("Negative dwell time: " + dwellMillis);
+        }
+        this.id = id;
+        this.dwellMillis = dwellMillis;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        if (latitudes == null) {
+            double latitudeSpan = radius / METERS_PER_DEGREE;
+            double longitudeSpan = latitudeSpan / Math.max(1e-6, Math.cos(Math.toRadians(latitude)));
+            minLatitude = latitude - latitudeSpan;
+            maxLatitude = latitude + latitudeSpan;
+            minLongitude = longitude - longitudeSpan;
+            maxLongitude = longitude + longitudeSpan;
+        } else {
+            double minLat = Double.POSITIVE_INFINITY;
+            double maxLat = Double.NEGATIVE_INFINITY;
+            double minLon = Double.POSITIVE_INFINITY;
+            double maxLon = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < latitudes.length; i++) {
+                minLat = Math.min(minLat, latitudes[i]);
+                maxLat = Math.max(maxLat, latitudes[i]);
+                minLon = Math.min(minLon, longitudes[i]);
+                maxLon = Math.max(maxLon, longitudes[i]);
+            }
+            minLatitude = minLat;
+            maxLatitude = maxLat;
+            minLongitude = minLon;
+            maxLongitude = maxLon;
+        }
+    }
+
+    /**
+     * @param radius      in meters
+     * @param dwellMillis time inside before a dwell event, 0 for none
+     */
+    public static Geofence circle(String id, double latitude, double longitude, double radius, long dwellMillis) {
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("Invalid radius: " + radius);
+        }
+        return new Geofence(id, dwellMillis, latitude, longitude, radius, null, null);
+    }
+
+    /**
+     * @param latitudes   vertices, the polygon closes on its own
+     * @param dwellMillis time inside before a dwell event, 0 for none
+     */
+    public static Geofence polygon(String id, double[] latitudes, double[] longitudes, long dwellMillis) {
+        if (latitudes.length != longitudes.length || latitudes.length < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices");
+        }
+        return new Geofence(id, dwellMillis, 0, 0, 0, latitudes.clone(), longitudes.clone());
+    }
+
+    /**
+     * Exact test, the bounding box first.
+     */
+    public boolean contains(double lat, double lon) {
+        if (lat < minLatitude || lat > maxLatitude || lon < minLongitude || lon > maxLongitude) {
+            return false;
+        }
+        if (latitudes == null) {
+            double x = Math.toRadians(lon - longitude) * Math.cos(Math.toRadians((lat + latitude) / 2));
+            double y = Math.toRadians(lat - latitude);
+            return (x * x + y * y) * EARTH_RADIUS * EARTH_RADIUS <= radius * radius;
+        }
+        // even-odd rule, a ray towards increasing longitude
+        boolean inside = false;
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            if ((latitudes[i] > lat) != (latitudes[j] > lat)
+                    && lon < (longitudes[j] - longitudes[i]) * (lat - latitudes[i])
+                    / (latitudes[j] - latitudes[i]) + longitudes[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the time inside before a dwell event, 0 for none
+     */
+    public long getDwellMillis() {
+        return dwellMillis;
+    }
+
+    public boolean isCircle() {
+        return latitudes == null;
+    }
+
+    double getMinLatitude() {
+        return minLatitude;
+    }
+
+    double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    double getMinLongitude() {
+        return minLongitude;
+    }
+
+    double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    /**
+     * Reads a fence set, one fence per line, blank lines and lines starting with {@code #} ignored:
+     * <pre>
+     * circle,&lt;id&gt;,&lt;dwell seconds&gt;,&lt;latitude&gt;,&lt;longitude&gt;,&lt;radius meters&gt;
+     * polygon,&lt;id&gt;,&lt;dwell seconds&gt;,&lt;latitude&gt;,&lt;longitude&gt;,&lt;latitude&gt;,&lt;longitude&gt;,...
+     * </pre>
+     *
+     * @throws IOException on a malformed line, with its number
+     */
+    public static List<Geofence> read(Reader input) throws IOException {
+        List<Geofence> fences = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(input);
+        String line;
+        for (int number = 1; (line = lines.readLine()) != null; number++) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                long dwellMillis = Math.round(Double.parseDouble(fields[2]) * 1000);
+                if ("circle".equals(fields[0]) && fields.length == 6) {
+                    fences.add(circle(fields[1], Double.parseDouble(fields[3]), Double.parseDouble(fields[4]),
+                            Double.parseDouble(fields[5]), dwellMillis));
+                } else if ("polygon".equals(fields[0]) && fields.length % 2 == 1) {
+                    int vertices = (fields.length - 3) / 2;
+                    double[] lats = new double[vertices];
+                    double[] lons = new double[vertices];
+                    for (int i = 0; i < vertices; i++) {
+                        lats[i] = Double.parseDouble(fields[3 + 2 * i]);
+                        lons[i] = Double.parseDouble(fields[4 + 2 * i]);
+                    }
+                    fences.add(polygon(fields[1], lats, lons, dwellMillis));
+                } else {
+                    throw new IOException("Line " + number + ": unknown fence " + line);
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Line " + number + ": " + e.getMessage(), e);
+            }
+        }
+        return fences;
+    }
+}
@@ -0,0 +1,205 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluates the fixes of every feed against a set of {@link Geofence}s and publishes the
+ * {@link #ENTER}, {@link #EXIT} and {@link #DWELL} transitions to its {@link Listener}s.
+ * <p>
+ * The set is held in a {@link GeofenceIndex} grid: a fix only gets the exact test of the few fences
+ * of its cell instead of all of them. {@link #setFences} builds a new index on the calling thread and
+ * swaps it in at once, the fixes being evaluated meanwhile against the previous one. The state of a
+ * feed is the fences it is inside of, by id, so a fence kept across a swap keeps its state and one
+ * dropped from the set is exited at the next fix.
+ * <p>
+ * {@link #evaluate} is called from the parse threads, a feed being evaluated from one thread at a
+ * time, and the listeners are called on that thread.
+ */
+public final class GeofenceEngine {
+
+    public static final int ENTER = 1;
+    public static final int EXIT = 2;
+    public static final int DWELL = 4;
+
+    /**
+     * Cells of about 1 km.
+     */
+    public static final double DEFAULT_CELL_DEGREES = 0.01;
+
+    /**
+     * Receives the transitions, on the thread of {@link #evaluate}.
+     */
+    public interface Listener {
+        /**
+         * @param transition {@link #ENTER}, {@link #EXIT} or {@link #DWELL}
+         * @param fix        the fix of the transition, valid during the call only
+         */
+        void onTransition(int feed, Geofence fence, int transition, GpsFix fix);
+    }
+
+    private final double cellDegrees;
+    private final AtomicReference<GeofenceIndex> index;
+    private final Map<Integer, FeedState> feeds = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong tests = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+
+    public GeofenceEngine() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * @param cellDegrees side of the cells of the grid, in degrees, about the size of the fences
+     */
+    public GeofenceEngine(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.index = new AtomicReference<>(new GeofenceIndex(Collections.<Geofence>emptyList(), cellDegrees));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Replaces the fence set, from any thread.
+     */
+    public void setFences(Collection<Geofence> fences) {
+        index.set(new GeofenceIndex(fences, cellDegrees));
+    }
+
+    /**
+     * Evaluates a fix of a feed, fixes without position are ignored.
+     */
+    public void evaluate(int feed, GpsFix fix) {
+        if (!fix.hasPosition()) {
+            return;
+        }
+        GeofenceIndex current = index.get();
+        FeedState state = feeds.get(feed);
+        if (state == null) {
+            if (current.size() == 0) {
+                return;
+            }
+            state = new FeedState();
+            feeds.put(feed, state);
+        }
+        evaluated.incrementAndGet();
+        long generation = ++state.generation;
+        double latitude = fix.getLatitude();
+        double longitude = fix.getLongitude();
+        int tested = test(feed, state, current, current.candidates(latitude, longitude), generation, fix);
+        tested += test(feed, state, current, current.large(), generation, fix);
+        tests.addAndGet(tested);
+        // the fences not seen inside this time are left
+        if (state.inside.size() > 0) {
+            Iterator<Inside> iterator = state.inside.values().iterator();
+            while (iterator.hasNext()) {
+                Inside inside = iterator.next();
+                if (inside.generation != generation) {
+                    iterator.remove();
+                    publish(feed, inside.fence, EXIT, fix);
+                }
+            }
+        }
+    }
+
+    private int test(int feed, FeedState state, GeofenceIndex current, int[] candidates, long generation, GpsFix fix) {
+        for (int candidate : candidates) {
+            Geofence fence = current.get(candidate);
+            if (!fence.contains(fix.getLatitude(), fix.getLongitude())) {
+                continue;
+            }
+            Inside inside = state.inside.get(fence.getId());
+            if (inside == null) {
+                inside = new Inside(fence, fix.getTime());
+                state.inside.put(fence.getId(), inside);
+                publish(feed, fence, ENTER, fix);
+            } else {
+                // the one of the current set, after a swap
+                inside.fence = fence;
+            }
+            inside.generation = generation;
+            if (!inside.dwelled && fence.getDwellMillis() > 0
+                    && fix.getTime() - inside.sinceMillis >= fence.getDwellMillis()) {
+                inside.dwelled = true;
+                publish(feed, fence, DWELL, fix);
+            }
+        }
+        return candidates.length;
+    }
+
+    private void publish(int feed, Geofence fence, int transition, GpsFix fix) {
+        transitions.incrementAndGet();
+        for (Listener listener : listeners) {
+            listener.onTransition(feed, fence, transition, fix);
+        }
+    }
+
+    /**
+     * Forgets the state of a closed feed, without exit events.
+     */
+    public void closeFeed(int feed) {
+        feeds.remove(feed);
+    }
+
+    /**
+     * @return the number of fences of the current set
+     */
+    public int getFences() {
+        return index.get().size();
+    }
+
+    /**
+     * @return the number of fixes evaluated
+     */
+    public long getEvaluated() {
+        return evaluated.get();
+    }
+
+    /**
+     * @return the number of exact fence tests, the candidates of the evaluated fixes
+     */
+    public long getTests() {
+        return tests.get();
+    }
+
+    /**
+     * @return the number of transitions published
+     */
+    public long getTransitions() {
+        return transitions.get();
+    }
+
+    private static final class FeedState {
+        // by fence id
+        final Map<String, Inside> inside = new HashMap<>();
+        long generation = 0;
+    }
+
+    private static final class Inside {
+        Geofence fence;
+        final long sinceMillis;
+        long generation;
+        boolean dwelled = false;
+
+        Inside(Geofence fence, long sinceMillis) {
+            this.fence = fence;
+            this.sinceMillis = sinceMillis;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable uniform grid over latitude and longitude: every fence is listed in the cells its
+ * bounding box overlaps, so the candidates of a point are the fences of its cell. Fences spanning
+ * more than {@link #MAX_CELLS_PER_FENCE} cells are kept aside and are candidates of every point, the
+ * bounding box test of {@link Geofence#contains} rejecting them cheaply.
+ * <p>
+ * The cells are kept in an open addressing table of the packed row and column, looked up without
+ * allocating. Built once, then only read, from any thread.
+ */
+final class GeofenceIndex {
+
+    static final int MAX_CELLS_PER_FENCE = 4096;
+
+    private static final int[] NONE = new int[0];
+
+    private final Geofence[] fences;
+    private final double cellDegrees;
+    private final long[] keys;
+    private final int[][] cells;
+    private final int mask;
+    private final int[] large;
+
+    /**
+     * @param cellDegrees side of a cell, in degrees
+     */
+    GeofenceIndex(Collection<Geofence> fences, double cellDegrees) {
+        if (!(cellDegrees > 0)) {
+            throw new IllegalArgumentException("Invalid cell size: " + cellDegrees);
+        }
+        this.fences = fences.toArray(new Geofence[0]);
+        this.cellDegrees = cellDegrees;
+        Map<Long, List<Integer>> grid = new HashMap<>();
+        List<Integer> largeFences = new ArrayList<>();
+        for (int i = 0; i < this.fences.length; i++) {
+            Geofence fence = this.fences[i];
+            long minRow = row(fence.getMinLatitude());
+            long maxRow = row(fence.getMaxLatitude());
+            long minColumn = column(fence.getMinLongitude());
+            long maxColumn = column(fence.getMaxLongitude());
+            if ((maxRow - minRow + 1) * (maxColumn - minColumn + 1) > MAX_CELLS_PER_FENCE) {
+                largeFences.add(i);
+                continue;
+            }
+            for (long row = minRow; row <= maxRow; row++) {
+                for (long column = minColumn; column <= maxColumn; column++) {
+                    grid.computeIfAbsent(key(row, column), k -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+        // at most half full
+        int capacity = Integer.highestOneBit(Math.max(1, grid.size()) * 2) * 2;
+        keys = new long[capacity];
+        Arrays.fill(keys, Long.MIN_VALUE);
+        cells = new int[capacity][];
+        mask = capacity - 1;
+        for (Map.Entry<Long, List<Integer>> cell : grid.entrySet()) {
+            int slot = slot(cell.getKey());
+            keys[slot] = cell.getKey();
+            cells[slot] = toArray(cell.getValue());
+        }
+        large = toArray(largeFences);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private long row(double latitude) {
+        return (long) Math.floor(latitude / cellDegrees);
+    }
+
+    private long column(double longitude) {
+        return (long) Math.floor(longitude / cellDegrees);
+    }
+
+    private static long key(long row, long column) {
+        return row << 32 | column & 0xFFFFFFFFL;
+    }
+
+    // slot of the key, or the empty one where it goes
+    private int slot(long key) {
+        int slot = (int) (key ^ key >>> 29) * 0x9E3779B9 & mask;
+        while (keys[slot] != Long.MIN_VALUE && keys[slot] != key) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return the fences whose cell holds the point, as indexes of {@link #get}, not to be modified
+     */
+    int[] candidates(double latitude, double longitude) {
+        int slot = slot(key(row(latitude), column(longitude)));
+        int[] cell = cells[slot];
+        return cell == null ? NONE : cell;
+    }
+
+    /**
+     * @return the fences candidates of every point, as indexes of {@link #get}, not to be modified
+     */
+    int[] large() {
+        return large;
+    }
+
+    Geofence get(int index) {
+        return fences[index];
+    }
+
+    int size() {
+        return fences.length;
+    }
+}
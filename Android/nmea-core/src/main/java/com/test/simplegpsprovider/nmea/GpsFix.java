@@ -0,0 +1,324 @@
+package com.test.simplegpsprovider.nmea;
+
+/**
+ * Mutable position fix made of primitives only.
+ * <p>
+ * The parser fills and reuses a single instance, consumers keeping a fix beyond the
+ * {@link FixListener#onFix(GpsFix)} call copy it with {@link #set(GpsFix)} into their own instance.
+ * Optional values come with a {@code has...()} flag, as in {@code android.location.Location}.
+ */
+public final class GpsFix {
+
+    // value flags, combined in the mask of hasAll(int)
+    public static final int HAS_POSITION = 1;
+    public static final int HAS_ALTITUDE = 1 << 1;
+    public static final int HAS_SPEED = 1 << 2;
+    public static final int HAS_BEARING = 1 << 3;
+    public static final int HAS_ACCURACY = 1 << 4;
+    public static final int HAS_SATELLITES = 1 << 5;
+    // the position is only set once both of its coordinates are
+    private static final int LATITUDE_SET = 1 << 30;
+    private static final int LONGITUDE_SET = 1 << 31;
+    private static final int COORDINATES_SET = LATITUDE_SET | LONGITUDE_SET;
+
+    private int flags;
+    private double latitude;
+    private double longitude;
+    private double altitude;
+    private float speed;
+    private float bearing;
+    private float accuracy;
+    private int satellites;
+    private long time;
+    private long systemTime;
+    // monotonic trace stamps, 0 when not traced
+    private long receivedNanos;
+    private long framedNanos;
+    private long parsedNanos;
+    private long completedNanos;
+    private long postedNanos;
+    private long deliveredNanos;
+
+    /**
+     * Clears all the values.
+     */
+    public void reset() {
+        flags = 0;
+        latitude = 0.0;
+        longitude = 0.0;
+        altitude = 0.0;
+        speed = 0.0f;
+        bearing = 0.0f;
+        accuracy = 0.0f;
+        satellites = 0;
+        time = 0;
+        systemTime = 0;
+        receivedNanos = 0;
+        framedNanos = 0;
+        parsedNanos = 0;
+        completedNanos = 0;
+        postedNanos = 0;
+        deliveredNanos = 0;
+    }
+
+    /**
+     * Copies all the values of {@code other}.
+     */
+    public void set(GpsFix other) {
+        flags = other.flags;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        altitude = other.altitude;
+        speed = other.speed;
+        bearing = other.bearing;
+        accuracy = other.accuracy;
+        satellites = other.satellites;
+        time = other.time;
+        systemTime = other.systemTime;
+        receivedNanos = other.receivedNanos;
+        framedNanos = other.framedNanos;
+        parsedNanos = other.parsedNanos;
+        completedNanos = other.completedNanos;
+        postedNanos = other.postedNanos;
+        deliveredNanos = other.deliveredNanos;
+    }
+
+    /**
+     * @param mask {@code HAS_} flags
+     * @return true when all the values of {@code mask} are set
+     */
+    public boolean hasAll(int mask) {
+        return (flags & mask) == mask;
+    }
+
+    public boolean hasPosition() {
+        return (flags & HAS_POSITION) != 0;
+    }
+
+    /**
+     * @return the latitude in degrees
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Sets the position together with {@link #setLongitude}, {@link #hasPosition()} is true once both were set.
+     */
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+        setCoordinate(LATITUDE_SET);
+    }
+
+    /**
+     * @return the longitude in degrees
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Sets the position together with {@link #setLatitude}, {@link #hasPosition()} is true once both were set.
+     */
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+        setCoordinate(LONGITUDE_SET);
+    }
+
+    private void setCoordinate(int coordinate) {
+        flags |= coordinate;
+        if ((flags & COORDINATES_SET) == COORDINATES_SET) {
+            flags |= HAS_POSITION;
+        }
+    }
+
+    public boolean hasAltitude() {
+        return (flags & HAS_ALTITUDE) != 0;
+    }
+
+    /**
+     * @return the altitude in meters above mean sea level
+     */
+    public double getAltitude() {
+        return altitude;
+    }
+
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+        flags |= HAS_ALTITUDE;
+    }
+
+    public boolean hasSpeed() {
+        return (flags & HAS_SPEED) != 0;
+    }
+
+    /**
+     * @return the speed over ground in meters per second
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        flags |= HAS_SPEED;
+    }
+
+    public boolean hasBearing() {
+        return (flags & HAS_BEARING) != 0;
+    }
+
+    /**
+     * @return the track angle in degrees true
+     */
+    public float getBearing() {
+        return bearing;
+    }
+
+    public void setBearing(float bearing) {
+        this.bearing = bearing;
+        flags |= HAS_BEARING;
+    }
+
+    public boolean hasAccuracy() {
+        return (flags & HAS_ACCURACY) != 0;
+    }
+
+    /**
+     * @return the estimated horizontal accuracy in meters
+     */
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    public void setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        flags |= HAS_ACCURACY;
+    }
+
+    public boolean hasSatellites() {
+        return (flags & HAS_SATELLITES) != 0;
+    }
+
+    /**
+     * @return the number of satellites used for the fix
+     */
+    public int getSatellites() {
+        return satellites;
+    }
+
+    public void setSatellites(int satellites) {
+        this.satellites = satellites;
+        flags |= HAS_SATELLITES;
+    }
+
+    /**
+     * @return the UTC time of the fix in epoch milliseconds, 0 if unknown
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * @return the wall clock time in epoch milliseconds when the fix started to be assembled
+     */
+    public long getSystemTime() {
+        return systemTime;
+    }
+
+    public void setSystemTime(long systemTime) {
+        this.systemTime = systemTime;
+    }
+
+    /**
+     * @return the {@link NanoClock} time when the first byte of the epoch was read from the socket
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * @return the {@link NanoClock} time when the first sentence of the epoch was cut out of the stream
+     */
+    public long getFramedNanos() {
+        return framedNanos;
+    }
+
+    public void setFramedNanos(long framedNanos) {
+        this.framedNanos = framedNanos;
+    }
+
+    /**
+     * @return the {@link NanoClock} time when the last sentence of the epoch was parsed
+     */
+    public long getParsedNanos() {
+        return parsedNanos;
+    }
+
+    public void setParsedNanos(long parsedNanos) {
+        this.parsedNanos = parsedNanos;
+    }
+
+    /**
+     * @return the {@link NanoClock} time when the parser handed out the fix
+     */
+    public long getCompletedNanos() {
+        return completedNanos;
+    }
+
+    public void setCompletedNanos(long completedNanos) {
+        this.completedNanos = completedNanos;
+    }
+
+    /**
+     * @return the {@link NanoClock} time when the fix was posted to the main thread
+     */
+    public long getPostedNanos() {
+        return postedNanos;
+    }
+
+    public void setPostedNanos(long postedNanos) {
+        this.postedNanos = postedNanos;
+    }
+
+    /**
+     * @return the {@link NanoClock} time when the main thread picked up the fix
+     */
+    public long getDeliveredNanos() {
+        return deliveredNanos;
+    }
+
+    public void setDeliveredNanos(long deliveredNanos) {
+        this.deliveredNanos = deliveredNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("GpsFix[");
+        builder.append(latitude).append(',').append(longitude);
+        if (hasAltitude()) {
+            builder.append(" alt=").append(altitude);
+        }
+        if (hasSpeed()) {
+            builder.append(" speed=").append(speed);
+        }
+        if (hasBearing()) {
+            builder.append(" bearing=").append(bearing);
+        }
+        if (hasAccuracy()) {
+            builder.append(" acc=").append(accuracy);
+        }
+        if (hasSatellites()) {
+            builder.append(" sats=").append(satellites);
+        }
+        return builder.append(" time=").append(time).append(']').toString();
+    }
+}
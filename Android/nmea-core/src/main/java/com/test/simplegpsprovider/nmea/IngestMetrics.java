@@ -0,0 +1,441 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of the ingest pipeline, read with {@link #snapshot()}.
+ * <p>
+ * Counters are striped {@link LongAdder}s so that the socket and parser threads never contend on
+ * them. The instance returned by {@link #disabled()} records nothing: every method returns on a
+ * single field test and {@link #startTimer()} doesn't even read the clock.
+ * <p>
+ * Fixes also carry trace stamps taken with the {@link NanoClock} of the metrics at every stage of
+ * the pipeline, {@link #fixDelivered(GpsFix)} turns them into one latency histogram per hop.
+ */
+public final class IngestMetrics {
+
+    public static final int TYPE_GGA = 0;
+    public static final int TYPE_RMC = 1;
+    public static final int TYPE_GSA = 2;
+    public static final int TYPE_GSV = 3;
+    public static final int TYPE_VTG = 4;
+    public static final int TYPE_GLL = 5;
+    public static final int TYPE_OTHER = 6;
+    // u-blox binary messages, NAV-PVT or not
+    public static final int TYPE_UBX = 7;
+    static final String[] TYPE_NAMES = {"GGA", "RMC", "GSA", "GSV", "VTG", "GLL", "other", "UBX"};
+
+    // talkers counted apart, BD is counted as GB
+    static final String[] TALKER_NAMES = {"GN", "GP", "GL", "GA", "GB", "GQ", "other"};
+
+    // socket read to frame complete
+    public static final int STAGE_FRAME = 0;
+    // frame complete to parse done, including the wait in the ring
+    public static final int STAGE_PARSE = 1;
+    // last sentence parsed to epoch complete
+    public static final int STAGE_EPOCH = 2;
+    // epoch complete to posted to the main thread
+    public static final int STAGE_POST = 3;
+    // posted to picked up by the main thread
+    public static final int STAGE_DELIVER = 4;
+    // socket read to picked up by the main thread
+    public static final int STAGE_END_TO_END = 5;
+    static final String[] STAGE_NAMES = {"frame", "parse", "epoch", "post", "deliver", "end_to_end"};
+
+    private static final IngestMetrics DISABLED = new IngestMetrics(false, NanoClock.SYSTEM);
+
+    private final boolean enabled;
+    private final NanoClock clock;
+    private final long createdNanos;
+
+    private final LongAdder[] sentences;
+    private final LongAdder skipped;
+    private final LongAdder[] talkerSentences;
+    private final LongAdder[] talkerDuplicates;
+    private final LongAdder checksumFailures;
+    private final LongAdder frameRejects;
+    private final LongAdder fixes;
+    private final LongAdder incompleteFixes;
+    private final LongAdder partialFrames;
+    private final LongAdder overlongFrames;
+    private final LongAdder resyncs;
+    private final LongAdder connectionsOpened;
+    private final LongAdder connectionsClosed;
+    private final LongAdder batches;
+    private final LongAdder lostBatches;
+    private final LongAdder reorderedBatches;
+    private final LongAdder sequenceRestarts;
+    private final LongAdder datagrams;
+    private final LongAdder rejectedDatagrams;
+    private final LatencyHistogram parseTime;
+    private final LatencyHistogram[] stages;
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    public IngestMetrics() {
+        this(NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param clock time base of the timers and of the trace stamps
+     */
+    public IngestMetrics(NanoClock clock) {
+        this(true, clock);
+    }
+
+    private IngestMetrics(boolean enabled, NanoClock clock) {
+        this.enabled = enabled;
+        this.clock = clock;
+        this.createdNanos = clock.nanoTime();
+        if (enabled) {
+            sentences = new LongAdder[TYPE_NAMES.length];
+            for (int i = 0; i < sentences.length; i++) {
+                sentences[i] = new LongAdder();
+            }
+            skipped = new LongAdder();
+            talkerSentences = new LongAdder[TALKER_NAMES.length];
+            talkerDuplicates = new LongAdder[TALKER_NAMES.length];
+            for (int i = 0; i < TALKER_NAMES.length; i++) {
+                talkerSentences[i] = new LongAdder();
+                talkerDuplicates[i] = new LongAdder();
+            }
+            checksumFailures = new LongAdder();
+            frameRejects = new LongAdder();
+            fixes = new LongAdder();
+            incompleteFixes = new LongAdder();
+            partialFrames = new LongAdder();
+            overlongFrames = new LongAdder();
+            resyncs = new LongAdder();
+            connectionsOpened = new LongAdder();
+            connectionsClosed = new LongAdder();
+            batches = new LongAdder();
+            lostBatches = new LongAdder();
+            reorderedBatches = new LongAdder();
+            sequenceRestarts = new LongAdder();
+            datagrams = new LongAdder();
+            rejectedDatagrams = new LongAdder();
+            parseTime = new LatencyHistogram();
+            stages = new LatencyHistogram[STAGE_NAMES.length];
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new LatencyHistogram();
+            }
+        } else {
+            sentences = null;
+            skipped = null;
+            talkerSentences = null;
+            talkerDuplicates = null;
+            checksumFailures = null;
+            frameRejects = null;
+            fixes = null;
+            incompleteFixes = null;
+            partialFrames = null;
+            overlongFrames = null;
+            resyncs = null;
+            connectionsOpened = null;
+            connectionsClosed = null;
+            batches = null;
+            lostBatches = null;
+            reorderedBatches = null;
+            sequenceRestarts = null;
+            datagrams = null;
+            rejectedDatagrams = null;
+            parseTime = null;
+            stages = null;
+        }
+    }
+
+    /**
+     * @return the shared instance recording nothing
+     */
+    public static IngestMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Exposes a value owned by another component, e.g. the drops of a {@link FrameRing}, in the snapshots.
+     */
+    public void registerGauge(String name, LongSupplier value) {
+        if (enabled) {
+            gauges.add(new Gauge(name, value));
+        }
+    }
+
+    /**
+     * Counts a sentence by type, skipped ones included.
+     *
+     * @param type one of the {@code TYPE_} constants
+     */
+    public void sentenceParsed(int type) {
+        if (enabled) {
+            sentences[type].increment();
+        }
+    }
+
+    /**
+     * Counts a sentence of a type nobody consumes, dropped on its header without being validated.
+     */
+    public void sentenceSkipped() {
+        if (enabled) {
+            skipped.increment();
+        }
+    }
+
+    /**
+     * Counts a talker sentence by talker.
+     *
+     * @param talker the 2 talker characters packed as {@code first << 8 | second}
+     */
+    public void talkerSentence(int talker) {
+        if (enabled) {
+            talkerSentences[talkerIndex(talker)].increment();
+        }
+    }
+
+    /**
+     * Counts a sentence dropped because another talker provides the same type in the epoch.
+     *
+     * @param talker the 2 talker characters packed as {@code first << 8 | second}
+     */
+    public void talkerDuplicate(int talker) {
+        if (enabled) {
+            talkerDuplicates[talkerIndex(talker)].increment();
+        }
+    }
+
+    private static int talkerIndex(int talker) {
+        switch (talker) {
+            case 'G' << 8 | 'N':
+                return 0;
+            case 'G' << 8 | 'P':
+                return 1;
+            case 'G' << 8 | 'L':
+                return 2;
+            case 'G' << 8 | 'A':
+                return 3;
+            case 'G' << 8 | 'B':
+            case 'B' << 8 | 'D':
+                return 4;
+            case 'G' << 8 | 'Q':
+                return 5;
+            default:
+                return TALKER_NAMES.length - 1;
+        }
+    }
+
+    public void checksumFailed() {
+        if (enabled) {
+            checksumFailures.increment();
+        }
+    }
+
+    public void frameRejected() {
+        if (enabled) {
+            frameRejects.increment();
+        }
+    }
+
+    public void fixEmitted() {
+        if (enabled) {
+            fixes.increment();
+        }
+    }
+
+    /**
+     * Counts an epoch dropped because it lacked the values required to publish a fix.
+     */
+    public void fixIncomplete() {
+        if (enabled) {
+            incompleteFixes.increment();
+        }
+    }
+
+    public void partialFrame() {
+        if (enabled) {
+            partialFrames.increment();
+        }
+    }
+
+    public void overlongFrame() {
+        if (enabled) {
+            overlongFrames.increment();
+        }
+    }
+
+    public void resync() {
+        if (enabled) {
+            resyncs.increment();
+        }
+    }
+
+    public void connectionOpened() {
+        if (enabled) {
+            connectionsOpened.increment();
+        }
+    }
+
+    public void connectionClosed() {
+        if (enabled) {
+            connectionsClosed.increment();
+        }
+    }
+
+    /**
+     * Counts a batch of the batched feed protocol, see {@link BatchFrameDecoder}.
+     */
+    public void batchReceived() {
+        if (enabled) {
+            batches.increment();
+        }
+    }
+
+    /**
+     * Counts the batches missing from the sequence of a feed.
+     */
+    public void batchesLost(long count) {
+        if (enabled) {
+            lostBatches.add(count);
+        }
+    }
+
+    /**
+     * Counts a batch received after a newer one of the same feed.
+     */
+    public void batchReordered() {
+        if (enabled) {
+            reorderedBatches.increment();
+        }
+    }
+
+    /**
+     * Counts a feed whose sender restarted its batch sequence.
+     */
+    public void sequenceRestarted() {
+        if (enabled) {
+            sequenceRestarts.increment();
+        }
+    }
+
+    /**
+     * Counts a datagram received on the UDP listener.
+     */
+    public void datagramReceived() {
+        if (enabled) {
+            datagrams.increment();
+        }
+    }
+
+    /**
+     * Counts a datagram dropped for an unknown protocol version or a truncated header.
+     */
+    public void datagramRejected() {
+        if (enabled) {
+            rejectedDatagrams.increment();
+        }
+    }
+
+    /**
+     * @return the time of the clock, 0 when disabled so that nothing gets traced
+     */
+    public long nanoTime() {
+        return enabled ? clock.nanoTime() : 0L;
+    }
+
+    /**
+     * @return the start of a measured section for {@link #parseDone(long)}, 0 when disabled
+     */
+    public long startTimer() {
+        return enabled ? clock.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the time spent parsing one frame.
+     *
+     * @param start value returned by {@link #startTimer()}
+     */
+    public void parseDone(long start) {
+        if (enabled) {
+            parseTime.record(clock.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the latency of every hop traced in a fix the main thread just picked up.
+     * Hops whose stamps are missing are skipped.
+     */
+    public void fixDelivered(GpsFix fix) {
+        if (enabled) {
+            hop(STAGE_FRAME, fix.getReceivedNanos(), fix.getFramedNanos());
+            hop(STAGE_PARSE, fix.getFramedNanos(), fix.getParsedNanos());
+            hop(STAGE_EPOCH, fix.getParsedNanos(), fix.getCompletedNanos());
+            hop(STAGE_POST, fix.getCompletedNanos(), fix.getPostedNanos());
+            hop(STAGE_DELIVER, fix.getPostedNanos(), fix.getDeliveredNanos());
+            hop(STAGE_END_TO_END, fix.getReceivedNanos(), fix.getDeliveredNanos());
+        }
+    }
+
+    private void hop(int stage, long from, long to) {
+        if (from != 0 && to != 0) {
+            stages[stage].record(to - from);
+        }
+    }
+
+    /**
+     * @return a copy of all the values, empty when disabled
+     */
+    public MetricsSnapshot snapshot() {
+        long now = clock.nanoTime();
+        if (!enabled) {
+            LatencyHistogram.Snapshot empty = new LatencyHistogram().snapshot();
+            LatencyHistogram.Snapshot[] emptyStages = new LatencyHistogram.Snapshot[STAGE_NAMES.length];
+            Arrays.fill(emptyStages, empty);
+            return new MetricsSnapshot(now - createdNanos, new long[TYPE_NAMES.length], 0,
+                    new long[TALKER_NAMES.length], new long[TALKER_NAMES.length],
+                    0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                    empty, emptyStages, new String[0], new long[0]);
+        }
+        long[] sentenceCounts = new long[sentences.length];
+        for (int i = 0; i < sentences.length; i++) {
+            sentenceCounts[i] = sentences[i].sum();
+        }
+        LatencyHistogram.Snapshot[] stageSnapshots = new LatencyHistogram.Snapshot[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            stageSnapshots[i] = stages[i].snapshot();
+        }
+        long[] talkerCounts = new long[TALKER_NAMES.length];
+        long[] duplicateCounts = new long[TALKER_NAMES.length];
+        for (int i = 0; i < TALKER_NAMES.length; i++) {
+            talkerCounts[i] = talkerSentences[i].sum();
+            duplicateCounts[i] = talkerDuplicates[i].sum();
+        }
+        Gauge[] gaugeArray = gauges.toArray(new Gauge[0]);
+        String[] gaugeNames = new String[gaugeArray.length];
+        long[] gaugeValues = new long[gaugeArray.length];
+        for (int i = 0; i < gaugeArray.length; i++) {
+            gaugeNames[i] = gaugeArray[i].name;
+            gaugeValues[i] = gaugeArray[i].value.getAsLong();
+        }
+        return new MetricsSnapshot(now - createdNanos, sentenceCounts, skipped.sum(), talkerCounts, duplicateCounts,
+                checksumFailures.sum(), frameRejects.sum(), fixes.sum(), incompleteFixes.sum(),
+                partialFrames.sum(), overlongFrames.sum(), resyncs.sum(),
+                connectionsOpened.sum(), connectionsClosed.sum(),
+                batches.sum(), lostBatches.sum(), reorderedBatches.sum(), sequenceRestarts.sum(),
+                datagrams.sum(), rejectedDatagrams.sum(), parseTime.snapshot(), stageSnapshots, gaugeNames, gaugeValues);
+    }
+
+    private static final class Gauge {
+        final String name;
+        final LongSupplier value;
+
+        Gauge(String name, LongSupplier value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
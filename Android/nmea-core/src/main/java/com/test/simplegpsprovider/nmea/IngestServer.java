@@ -0,0 +1,355 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Single threaded ingest server: accepts the feeds on a TCP port and multiplexes all of them on one
+ * {@link Selector}. Every connection keeps its own {@link NmeaFrameDecoder} so that a sentence split
+ * between two reads is reassembled for the right feed, and its own {@link NmeaParser} so that the
+ * epochs of two feeds never mix. The parser hands its fixes to the feed opened for the connection by
+ * {@link #openFeed}. A connection opening with the batched protocol header is read through a
+ * {@link BatchFrameDecoder}, plain text ones go through it unchanged.
+ * <p>
+ * Each connection is pinned to one of the {@link ParserThread} workers and its frames are queued,
+ * with its parser attached, on the {@link FrameRing} of that worker, this thread being the only
+ * producer of every ring. A parser is thus only ever used by one worker and needs no locking. When
+ * the connection closes, an end of stream is queued behind its last frame, and the worker ends the
+ * feed with {@link FixListener#onEndOfStream()} once that frame is parsed.
+ * <p>
+ * Optionally the server also listens for datagrams on the same UDP port, each sender address being a
+ * feed of its own, opened on its first datagram and closed after {@link #DATAGRAM_IDLE_SECONDS}
+ * without any. A datagram holds whole sentences, optionally behind a sequence header, see
+ * {@link BatchFrameDecoder#decodeDatagram}: a lost datagram only loses its own sentences instead of
+ * holding back all the later ones until it is retransmitted as on TCP, and a late sequenced one is
+ * dropped.
+ * <p>
+ * Every frame is also appended to the {@link SessionRecorder}, if any, before being queued. A frame
+ * the ring refuses is counted per connection, in the summary handed to {@link #closeFeed}.
+ * <p>
+ * Plain Java: the app binds the feeds to its mock providers, a headless harness to its own listeners.
+ *
+ * @param <F> feed of a connection
+ */
+public abstract class IngestServer<F extends FixListener> extends Thread implements NmeaFrameDecoder.FrameListener {
+
+    public static final int DEFAULT_PORT = 5897;
+
+    /**
+     * A datagram feed is closed after this long without any datagram.
+     */
+    public static final int DATAGRAM_IDLE_SECONDS = 10;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    // largest UDP payload
+    private static final int MAX_DATAGRAM_SIZE = 65_507;
+
+    private final int port;
+    private final FrameRing[] rings;
+    private final Function<FixListener, NmeaParser> parsers;
+    private final IngestMetrics metrics;
+    private final SessionRecorder recorder;
+    private final boolean datagrams;
+    // shared by all the connections, a read is fully decoded before the next one
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    // same for the datagrams, on the heap to be decoded in place
+    private final ByteBuffer datagramBuffer;
+    private final Map<SocketAddress, Connection<F>> datagramFeeds = new HashMap<>();
+    private final CountDownLatch bound = new CountDownLatch(1);
+
+    private volatile Selector selector;
+    private volatile int localPort = -1;
+    private int nextConnectionId = 0;
+    // connection being decoded, for the stamps of its frames
+    private Connection<F> current;
+
+    /**
+     * @param port     TCP port to listen on, 0 for any free port
+     * @param rings    one ring per worker
+     * @param parsers  creates the parser of a new connection, notifying the given feed
+     * @param recorder records the frames of all the connections, null not to record
+     */
+    protected IngestServer(String name, int port, FrameRing[] rings, Function<FixListener, NmeaParser> parsers,
+                           IngestMetrics metrics, SessionRecorder recorder) {
+        this(name, port, rings, parsers, metrics, recorder, false);
+    }
+
+    /**
+     * @param datagrams also listen for datagrams on the same UDP port, the TCP one if {@code port} is 0
+     */
+    protected IngestServer(String name, int port, FrameRing[] rings, Function<FixListener, NmeaParser> parsers,
+                           IngestMetrics metrics, SessionRecorder recorder, boolean datagrams) {
+        super(name);
+        this.port = port;
+        this.rings = rings;
+        this.parsers = parsers;
+        this.metrics = metrics;
+        this.recorder = recorder;
+        this.datagrams = datagrams;
+        this.datagramBuffer = datagrams ? ByteBuffer.allocate(MAX_DATAGRAM_SIZE) : null;
+    }
+
+    /**
+     * Opens the feed of a new connection, on this thread.
+     *
+     * @param connection id of the connection, counting from 0
+     */
+    protected abstract F openFeed(int connection, SocketAddress remote);
+
+    /**
+     * Tells that the connection of a feed closed, on this thread. Its last frames may still be queued,
+     * the feed itself is ended on the worker by {@link FixListener#onEndOfStream()}.
+     *
+     * @param summary counters of the connection, for the logs
+     */
+    protected abstract void closeFeed(int connection, F feed, String summary);
+
+    /**
+     * Called when the server stops on an error.
+     */
+    protected abstract void onError(Exception e);
+
+    @Override
+    public void run() {
+        try (Selector selector = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open();
+             DatagramChannel datagramChannel = datagrams ? DatagramChannel.open() : null) {
+            this.selector = selector;
+            server.configureBlocking(false);
+            server.socket().setReuseAddress(true);
+            server.socket().bind(new InetSocketAddress(port));
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            localPort = server.socket().getLocalPort();
+            if (datagramChannel != null) {
+                datagramChannel.configureBlocking(false);
+                datagramChannel.bind(new InetSocketAddress(localPort));
+                datagramChannel.register(selector, SelectionKey.OP_READ);
+            }
+            bound.countDown();
+            long sweepNanos = TimeUnit.SECONDS.toNanos(1);
+            long nextSweep = System.nanoTime() + sweepNanos;
+            while (!isInterrupted()) {
+                // woken up every second to close the idle datagram feeds
+                selector.select(datagrams ? 1000 : 0);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(server);
+                    } else if (key.channel() == datagramChannel) {
+                        receive(datagramChannel);
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+                if (datagrams && System.nanoTime() - nextSweep >= 0) {
+                    closeIdleDatagramFeeds(TimeUnit.SECONDS.toNanos(DATAGRAM_IDLE_SECONDS));
+                    nextSweep = System.nanoTime() + sweepNanos;
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close(key, connection(key));
+                }
+            }
+            closeIdleDatagramFeeds(0);
+        } catch (Exception e) {
+            onError(e);
+        } finally {
+            bound.countDown();
+        }
+    }
+
+    /**
+     * Waits until the server listens.
+     *
+     * @return the port it listens on, -1 if it failed to bind
+     */
+    public int awaitBound() throws InterruptedException {
+        bound.await();
+        return localPort;
+    }
+
+    /**
+     * Stops the event loop and closes all the connections.
+     */
+    public void shutdown() {
+        interrupt();
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection<F> connection = open(channel, channel.socket().getRemoteSocketAddress());
+            channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private Connection<F> open(SocketChannel channel, SocketAddress remote) {
+        int id = nextConnectionId++;
+        F feed = openFeed(id, remote);
+        metrics.connectionOpened();
+        return new Connection<>(id, channel, rings[id % rings.length], feed, parsers.apply(feed), metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Connection<F> connection(SelectionKey key) {
+        return (Connection<F>) key.attachment();
+    }
+
+    private void read(SelectionKey key) {
+        Connection<F> connection = connection(key);
+        current = connection;
+        try {
+            int read;
+            while ((read = connection.channel.read(readBuffer)) > 0) {
+                long receivedNanos = metrics.nanoTime();
+                readBuffer.flip();
+                connection.batches.decode(readBuffer, receivedNanos, this);
+                readBuffer.clear();
+            }
+            if (read < 0) {
+                close(key, connection);
+            }
+        } catch (IOException e) {
+            // disconnected, or a corrupted batched stream
+            readBuffer.clear();
+            close(key, connection);
+        }
+    }
+
+    private void receive(DatagramChannel channel) throws IOException {
+        SocketAddress remote;
+        while ((remote = channel.receive(datagramBuffer)) != null) {
+            long receivedNanos = metrics.nanoTime();
+            metrics.datagramReceived();
+            Connection<F> connection = datagramFeeds.get(remote);
+            if (connection == null) {
+                connection = open(null, remote);
+                datagramFeeds.put(remote, connection);
+            }
+            connection.datagrams++;
+            connection.lastDatagramNanos = System.nanoTime();
+            current = connection;
+            try {
+                connection.batches.decodeDatagram(datagramBuffer.array(), datagramBuffer.arrayOffset(),
+                        datagramBuffer.position(), receivedNanos, this);
+            } catch (ProtocolException e) {
+                // only this datagram is lost
+                metrics.datagramRejected();
+            }
+            datagramBuffer.clear();
+        }
+    }
+
+    /**
+     * Closes the datagram feeds silent for {@code idleNanos}, all of them for 0.
+     */
+    private void closeIdleDatagramFeeds(long idleNanos) {
+        long now = System.nanoTime();
+        Iterator<Connection<F>> connections = datagramFeeds.values().iterator();
+        while (connections.hasNext()) {
+            Connection<F> connection = connections.next();
+            if (idleNanos == 0 || now - connection.lastDatagramNanos >= idleNanos) {
+                connections.remove();
+                release(connection);
+            }
+        }
+    }
+
+    private void close(SelectionKey key, Connection<F> connection) {
+        key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+            // already disconnected
+        }
+        release(connection);
+    }
+
+    private void release(Connection<F> connection) {
+        NmeaFrameDecoder decoder = connection.decoder;
+        BatchFrameDecoder batches = connection.batches;
+        batches.endOfStream();
+        connection.ring.offerEndOfStream(connection.parser);
+        metrics.connectionClosed();
+        closeFeed(connection.id, connection.feed, (connection.channel == null
+                ? "datagrams: " + connection.datagrams + ", " : "")
+                + "frames: " + decoder.getFrames()
+                + " partial: " + decoder.getPartialFrames()
+                + " overlong: " + decoder.getOverlongFrames()
+                + " resyncs: " + decoder.getResyncs()
+                + (batches.getBatches() > 0 ? ", batches: " + batches.getBatches()
+                + " lost: " + batches.getLostBatches()
+                + " reordered: " + batches.getReorderedBatches()
+                + " restarts: " + batches.getSequenceRestarts() : "")
+                + ", refused: " + connection.refused
+                + ", ring dropped: " + connection.ring.getDropped()
+                + " max occupancy: " + connection.ring.getMaxOccupancy());
+    }
+
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length) {
+        long receivedNanos = current.decoder.getFrameReceivedNanos();
+        if (recorder != null) {
+            recorder.record(current.id, buffer, offset, length, receivedNanos);
+        }
+        if (!current.ring.offer(buffer, offset, length, current.parser, receivedNanos, metrics.nanoTime())) {
+            // larger than a slot, or this thread was interrupted while the ring was full
+            current.refused++;
+        }
+    }
+
+    /**
+     * Per connection state, attached to its {@link SelectionKey}, or per datagram sender.
+     */
+    private static final class Connection<F> {
+        final int id;
+        // null for a datagram feed
+        final SocketChannel channel;
+        final NmeaFrameDecoder decoder;
+        final BatchFrameDecoder batches;
+        // ring of the worker the connection is pinned to
+        final FrameRing ring;
+        final F feed;
+        final NmeaParser parser;
+        long datagrams = 0;
+        long lastDatagramNanos;
+        // frames the ring did not take
+        long refused = 0;
+
+        Connection(int id, SocketChannel channel, FrameRing ring, F feed, NmeaParser parser, IngestMetrics metrics) {
+            this.id = id;
+            this.channel = channel;
+            this.ring = ring;
+            this.feed = feed;
+            this.parser = parser;
+            this.decoder = new NmeaFrameDecoder(NmeaFrameDecoder.DEFAULT_MAX_FRAME_LENGTH, metrics);
+            this.batches = new BatchFrameDecoder(decoder, metrics);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loopback only text endpoint: every connection receives the current metrics and is closed, e.g.
+ * {@code adb forward tcp:5898 tcp:5898 && nc localhost 5898}. Rates are computed since the
+ * previous connection.
+ */
+public class MetricsEndpoint extends Thread {
+
+    public static final int DEFAULT_PORT = 5898;
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsEndpoint.class.getSimpleName());
+
+    private final IngestMetrics metrics;
+    private final int port;
+    private volatile ServerSocket server;
+    private MetricsSnapshot previous;
+
+    public MetricsEndpoint(IngestMetrics metrics, int port) {
+        super("MetricsEndpoint");
+        setDaemon(true);
+        this.metrics = metrics;
+        this.port = port;
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocket server = new ServerSocket()) {
+            this.server = server;
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            while (!isInterrupted()) {
+                try (Socket client = server.accept(); OutputStream output = client.getOutputStream()) {
+                    MetricsSnapshot snapshot = metrics.snapshot();
+                    output.write(snapshot.toText(previous).getBytes(StandardCharsets.UTF_8));
+                    previous = snapshot;
+                } catch (IOException e) {
+                    if (server.isClosed()) {
+                        break;
+                    }
+                    LOGGER.log(Level.FINE, "Metrics client failed", e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Metrics endpoint stopped", e);
+        }
+    }
+
+    public void shutdown() {
+        interrupt();
+        ServerSocket server = this.server;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.Locale;
+
+/**
+ * Values of an {@link IngestMetrics} at a point in time.
+ */
+public final class MetricsSnapshot {
+
+    private final long uptimeNanos;
+    private final long[] sentences;
+    private final long skipped;
+    private final long[] talkerSentences;
+    private final long[] talkerDuplicates;
+    private final long checksumFailures;
+    private final long frameRejects;
+    private final long fixes;
+    private final long incompleteFixes;
+    private final long partialFrames;
+    private final long overlongFrames;
+    private final long resyncs;
+    private final long connectionsOpened;
+    private final long connectionsClosed;
+    private final long batches;
+    private final long lostBatches;
+    private final long reorderedBatches;
+    private final long sequenceRestarts;
+    private final long datagrams;
+    private final long rejectedDatagrams;
+    private final LatencyHistogram.Snapshot parseTime;
+    private final LatencyHistogram.Snapshot[] stages;
+    private final String[] gaugeNames;
+    private final long[] gaugeValues;
+
+    MetricsSnapshot(long uptimeNanos, long[] sentences, long skipped, long[] talkerSentences, long[] talkerDuplicates,
+                    long checksumFailures, long frameRejects,
+                    long fixes, long incompleteFixes, long partialFrames, long overlongFrames, long resyncs,
+                    long connectionsOpened, long connectionsClosed,
+                    long batches, long lostBatches, long reorderedBatches, long sequenceRestarts,
+                    long datagrams, long rejectedDatagrams,
+                    LatencyHistogram.Snapshot parseTime, LatencyHistogram.Snapshot[] stages,
+                    String[] gaugeNames, long[] gaugeValues) {
+        this.uptimeNanos = uptimeNanos;
+        this.sentences = sentences;
+        this.skipped = skipped;
+        this.talkerSentences = talkerSentences;
+        this.talkerDuplicates = talkerDuplicates;
+        this.checksumFailures = checksumFailures;
+        this.frameRejects = frameRejects;
+        this.fixes = fixes;
+        this.incompleteFixes = incompleteFixes;
+        this.partialFrames = partialFrames;
+        this.overlongFrames = overlongFrames;
+        this.resyncs = resyncs;
+        this.connectionsOpened = connectionsOpened;
+        this.connectionsClosed = connectionsClosed;
+        this.batches = batches;
+        this.lostBatches = lostBatches;
+        this.reorderedBatches = reorderedBatches;
+        this.sequenceRestarts = sequenceRestarts;
+        this.datagrams = datagrams;
+        this.rejectedDatagrams = rejectedDatagrams;
+        this.parseTime = parseTime;
+        this.stages = stages;
+        this.gaugeNames = gaugeNames;
+        this.gaugeValues = gaugeValues;
+    }
+
+    /**
+     * @return nanoseconds since the metrics were created
+     */
+    public long getUptimeNanos() {
+        return uptimeNanos;
+    }
+
+    /**
+     * @param type one of the {@code IngestMetrics.TYPE_} constants
+     */
+    public long getSentences(int type) {
+        return sentences[type];
+    }
+
+    public long getTotalSentences() {
+        long total = 0;
+        for (long count : sentences) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of sentences dropped on their header because their type is not consumed
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @param talker e.g. {@code "GN"}
+     * @return the number of sentences received from the talker, 0 for talkers not counted apart
+     */
+    public long getTalkerSentences(String talker) {
+        int index = talkerIndex(talker);
+        return index < 0 ? 0 : talkerSentences[index];
+    }
+
+    /**
+     * @param talker e.g. {@code "GP"}
+     * @return the number of sentences of the talker dropped as duplicates of another talker
+     */
+    public long getTalkerDuplicates(String talker) {
+        int index = talkerIndex(talker);
+        return index < 0 ? 0 : talkerDuplicates[index];
+    }
+
+    private static int talkerIndex(String talker) {
+        for (int i = 0; i < IngestMetrics.TALKER_NAMES.length; i++) {
+            if (IngestMetrics.TALKER_NAMES[i].equals(talker)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getChecksumFailures() {
+        return checksumFailures;
+    }
+
+    public long getFrameRejects() {
+        return frameRejects;
+    }
+
+    public long getFixes() {
+        return fixes;
+    }
+
+    /**
+     * @return the number of epochs dropped for lack of the required values
+     */
+    public long getIncompleteFixes() {
+        return incompleteFixes;
+    }
+
+    public long getPartialFrames() {
+        return partialFrames;
+    }
+
+    public long getOverlongFrames() {
+        return overlongFrames;
+    }
+
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    public long getConnectionsClosed() {
+        return connectionsClosed;
+    }
+
+    public long getActiveConnections() {
+        return connectionsOpened - connectionsClosed;
+    }
+
+    /**
+     * @return the number of batches received from the feeds using the batched protocol
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of batches missing from the sequences of the feeds
+     */
+    public long getLostBatches() {
+        return lostBatches;
+    }
+
+    /**
+     * @return the number of batches received after a newer one, and dropped
+     */
+    public long getReorderedBatches() {
+        return reorderedBatches;
+    }
+
+    /**
+     * @return the number of times the sender of a feed restarted its batch sequence
+     */
+    public long getSequenceRestarts() {
+        return sequenceRestarts;
+    }
+
+    /**
+     * @return the number of datagrams received on the UDP listener
+     */
+    public long getDatagrams() {
+        return datagrams;
+    }
+
+    /**
+     * @return the number of datagrams dropped for a bad header
+     */
+    public long getRejectedDatagrams() {
+        return rejectedDatagrams;
+    }
+
+    public LatencyHistogram.Snapshot getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * @param stage one of the {@code IngestMetrics.STAGE_} constants
+     */
+    public LatencyHistogram.Snapshot getStage(int stage) {
+        return stages[stage];
+    }
+
+    /**
+     * @return the value of the gauge, or -1 if there is no such gauge
+     */
+    public long getGauge(String name) {
+        for (int i = 0; i < gaugeNames.length; i++) {
+            if (gaugeNames[i].equals(name)) {
+                return gaugeValues[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Renders the snapshot as {@code name value} lines, rates being computed since {@code previous}
+     * (or since the start when null).
+     */
+    public String toText(MetricsSnapshot previous) {
+        double seconds = (uptimeNanos - (previous == null ? 0 : previous.uptimeNanos)) / 1e9;
+        StringBuilder builder = new StringBuilder();
+        line(builder, "uptime_seconds", uptimeNanos / 1_000_000_000L);
+        for (int i = 0; i < sentences.length; i++) {
+            String name = IngestMetrics.TYPE_NAMES[i];
+            line(builder, "sentences{type=" + name + "}", sentences[i]);
+            long delta = sentences[i] - (previous == null ? 0 : previous.sentences[i]);
+            builder.append("sentences_per_second{type=").append(name).append("} ")
+                    .append(String.format(Locale.ROOT, "%.1f", seconds > 0 ? delta / seconds : 0.0)).append('\n');
+        }
+        line(builder, "skipped_sentences", skipped);
+        for (int i = 0; i < talkerSentences.length; i++) {
+            String name = IngestMetrics.TALKER_NAMES[i];
+            line(builder, "talker_sentences{talker=" + name + "}", talkerSentences[i]);
+            line(builder, "talker_duplicates{talker=" + name + "}", talkerDuplicates[i]);
+        }
+        line(builder, "checksum_failures", checksumFailures);
+        line(builder, "frame_rejects", frameRejects);
+        line(builder, "fixes", fixes);
+        line(builder, "incomplete_fixes", incompleteFixes);
+        line(builder, "partial_frames", partialFrames);
+        line(builder, "overlong_frames", overlongFrames);
+        line(builder, "resyncs", resyncs);
+        line(builder, "connections_opened", connectionsOpened);
+        line(builder, "connections_closed", connectionsClosed);
+        line(builder, "batches", batches);
+        line(builder, "batches_lost", lostBatches);
+        line(builder, "batches_reordered", reorderedBatches);
+        line(builder, "sequence_restarts", sequenceRestarts);
+        line(builder, "datagrams", datagrams);
+        line(builder, "datagrams_rejected", rejectedDatagrams);
+        histogram(builder, "parse_time_nanos", parseTime);
+        for (int i = 0; i < stages.length; i++) {
+            histogram(builder, "latency_nanos_" + IngestMetrics.STAGE_NAMES[i], stages[i]);
+        }
+        for (int i = 0; i < gaugeNames.length; i++) {
+            line(builder, gaugeNames[i], gaugeValues[i]);
+        }
+        return builder.toString();
+    }
+
+    static void histogram(StringBuilder builder, String name, LatencyHistogram.Snapshot histogram) {
+        line(builder, name + "_count", histogram.getCount());
+        line(builder, name + "{quantile=0.5}", histogram.valueAtPercentile(50.0));
+        line(builder, name + "{quantile=0.99}", histogram.valueAtPercentile(99.0));
+        line(builder, name + "{quantile=0.999}", histogram.valueAtPercentile(99.9));
+        line(builder, name + "_max", histogram.getMax());
+    }
+
+    private static void line(StringBuilder builder, String name, long value) {
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,14 @@
+package com.test.simplegpsprovider.nmea;
+
+/**
+ * Monotonic clock in nanoseconds, only differences between two readings are meaningful.
+ * <p>
+ * On Android pass {@code SystemClock::elapsedRealtimeNanos} so that the stamps share the time base
+ * of {@code Location.getElapsedRealtimeNanos()}.
+ */
+public interface NanoClock {
+
+    NanoClock SYSTEM = System::nanoTime;
+
+    long nanoTime();
+}
@@ -0,0 +1,321 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental decoder cutting a raw byte stream into NMEA frames and u-blox UBX messages.
+ * <p>
+ * A NMEA frame starts with {@code $} and ends with {@code \n} (the {@code \r} before it is optional).
+ * A UBX message starts with the {@code B5 62} sync bytes and its length is read from its header, its
+ * binary payload is counted, never scanned for delimiters. Both may be interleaved in the same stream,
+ * the listener tells them apart with {@link UbxMessage#isUbx(byte[], int, int)}.
+ * <p>
+ * Frames found entirely inside the chunk given to {@link #decode(byte[], int, int, FrameListener)}
+ * are handed out as slices of that chunk, only frames spanning two chunks are copied into an
+ * internal buffer. Bytes outside of a frame are skipped until the next {@code $} or sync bytes, a
+ * frame start inside a NMEA frame drops the truncated frame and restarts on the new one.
+ * <p>
+ * Not thread safe, one decoder per stream.
+ */
+public final class NmeaFrameDecoder {
+
+    /**
+     * Receives the decoded frames, without the line terminator for NMEA, sync bytes and checksum included
+     * for UBX.
+     * The slice is only valid during the call.
+     */
+    public interface FrameListener {
+        void onFrame(byte[] buffer, int offset, int length);
+    }
+
+    /**
+     * NMEA 0183 limits sentences to 82 characters, leave room for proprietary ones.
+     */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 256;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_GARBAGE = 1;
+    private static final int STATE_FRAME = 2;
+    // skipping the rest of an overlong frame
+    private static final int STATE_DISCARD = 3;
+    // 0xB5 seen, expecting the second sync byte
+    private static final int STATE_UBX_SYNC = 4;
+    // reading the UBX class, id and length
+    private static final int STATE_UBX_HEADER = 5;
+    // counting the UBX payload and checksum
+    private static final int STATE_UBX_BODY = 6;
+    // skipping a UBX message longer than the maximum frame length
+    private static final int STATE_UBX_DISCARD = 7;
+
+    /**
+     * UBX messages longer than the maximum frame length are skipped by their length up to this size.
+     * A longer one is more likely a false sync in a corrupted stream, the bytes are then scanned again.
+     */
+    private static final int MAX_UBX_DISCARD = 4096;
+
+    private final IngestMetrics metrics;
+    private final byte[] pending;
+    private byte[] chunk;
+    private int pendingLength = 0;
+    private int state = STATE_IDLE;
+    private long chunkReceivedNanos = 0;
+    private long frameReceivedNanos = 0;
+    // bytes of the UBX message read so far, its declared payload length, and bytes left to count
+    private int ubxRead = 0;
+    private int ubxLength = 0;
+    private int ubxRemaining = 0;
+
+    private long frames = 0;
+    private long ubxFrames = 0;
+    private long partialFrames = 0;
+    private long overlongFrames = 0;
+    private long resyncs = 0;
+
+    public NmeaFrameDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * @param maxFrameLength longest frame accepted, line terminator included
+     */
+    public NmeaFrameDecoder(int maxFrameLength) {
+        this(maxFrameLength, IngestMetrics.disabled());
+    }
+
+    /**
+     * @param maxFrameLength longest frame accepted, line terminator included
+     * @param metrics        also counts the partial and overlong frames and the resyncs
+     */
+    public NmeaFrameDecoder(int maxFrameLength, IngestMetrics metrics) {
+        this.metrics = metrics;
+        pending = new byte[maxFrameLength];
+    }
+
+    /**
+     * Decodes the next chunk of the stream, calling {@code listener} for each complete frame.
+     */
+    public void decode(byte[] buffer, int offset, int length, FrameListener listener) {
+        decode(buffer, offset, length, 0L, listener);
+    }
+
+    /**
+     * Same as {@link #decode(byte[], int, int, FrameListener)} for a chunk read at {@code receivedNanos},
+     * see {@link #getFrameReceivedNanos()}.
+     */
+    public void decode(byte[] buffer, int offset, int length, long receivedNanos, FrameListener listener) {
+        chunkReceivedNanos = receivedNanos;
+        int end = offset + length;
+        int frameStart = offset;
+        for (int i = offset; i < end; i++) {
+            byte c = buffer[i];
+            if (state == STATE_UBX_BODY || state == STATE_UBX_DISCARD) {
+                int count = Math.min(ubxRemaining, end - i);
+                ubxRemaining -= count;
+                i += count - 1;
+                if (ubxRemaining == 0) {
+                    if (state == STATE_UBX_BODY) {
+                        emitUbx(buffer, frameStart, i + 1, listener);
+                    }
+                    state = STATE_IDLE;
+                }
+                continue;
+            }
+            if (state == STATE_UBX_HEADER) {
+                readUbxHeader(c);
+                continue;
+            }
+            if (state == STATE_UBX_SYNC) {
+                if (c == UbxMessage.SYNC_2) {
+                    state = STATE_UBX_HEADER;
+                    ubxRead = 2;
+                    continue;
+                }
+                // a lone first sync byte, the current byte may still start a frame
+                state = STATE_GARBAGE;
+            }
+            if (c == '$' || c == UbxMessage.SYNC_1) {
+                if (state == STATE_FRAME) {
+                    // the previous sentence was cut, keep the new one
+                    partialFrames++;
+                    resyncs++;
+                    metrics.partialFrame();
+                    metrics.resync();
+                } else if (state == STATE_GARBAGE) {
+                    resyncs++;
+                    metrics.resync();
+                }
+                state = c == '$' ? STATE_FRAME : STATE_UBX_SYNC;
+                pendingLength = 0;
+                frameStart = i;
+                frameReceivedNanos = chunkReceivedNanos;
+            } else if (c == '\n') {
+                if (state == STATE_FRAME) {
+                    emit(buffer, frameStart, i, listener);
+                }
+                if (state != STATE_GARBAGE) {
+                    state = STATE_IDLE;
+                }
+            } else if (state == STATE_IDLE && c != '\r') {
+                state = STATE_GARBAGE;
+            }
+        }
+        if (state == STATE_FRAME || state == STATE_UBX_SYNC || state == STATE_UBX_HEADER || state == STATE_UBX_BODY) {
+            // a UBX message in progress always fits, its length was checked with its header
+            int remaining = end - frameStart;
+            if (pendingLength + remaining > pending.length) {
+                overlongFrames++;
+                metrics.overlongFrame();
+                pendingLength = 0;
+                state = STATE_DISCARD;
+            } else {
+                System.arraycopy(buffer, frameStart, pending, pendingLength, remaining);
+                pendingLength += remaining;
+            }
+        }
+    }
+
+    private void readUbxHeader(byte c) {
+        ubxRead++;
+        if (ubxRead == UbxMessage.HEADER_LENGTH - 1) {
+            ubxLength = c & 0xFF;
+        } else if (ubxRead == UbxMessage.HEADER_LENGTH) {
+            ubxLength |= (c & 0xFF) << 8;
+            ubxRemaining = ubxLength + UbxMessage.CHECKSUM_LENGTH;
+            if (UbxMessage.HEADER_LENGTH + ubxRemaining <= pending.length) {
+                state = STATE_UBX_BODY;
+                return;
+            }
+            overlongFrames++;
+            metrics.overlongFrame();
+            pendingLength = 0;
+            if (ubxLength <= MAX_UBX_DISCARD) {
+                state = STATE_UBX_DISCARD;
+            } else {
+                resyncs++;
+                metrics.resync();
+                state = STATE_GARBAGE;
+            }
+        }
+    }
+
+    /**
+     * Decodes the remaining bytes of {@code buffer} and consumes them.
+     * Direct buffers are bulk copied into a reusable chunk before being scanned.
+     */
+    public void decode(ByteBuffer buffer, FrameListener listener) {
+        decode(buffer, 0L, listener);
+    }
+
+    /**
+     * Same as {@link #decode(ByteBuffer, FrameListener)} for bytes read at {@code receivedNanos},
+     * see {@link #getFrameReceivedNanos()}.
+     */
+    public void decode(ByteBuffer buffer, long receivedNanos, FrameListener listener) {
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length, receivedNanos, listener);
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (chunk == null || chunk.length < length) {
+            chunk = new byte[length];
+        }
+        buffer.get(chunk, 0, length);
+        decode(chunk, 0, length, receivedNanos, listener);
+    }
+
+    private void emit(byte[] buffer, int start, int newline, FrameListener listener) {
+        if (pendingLength + newline - start + 1 > pending.length) {
+            overlongFrames++;
+            metrics.overlongFrame();
+            pendingLength = 0;
+            return;
+        }
+        byte[] frame = buffer;
+        int offset = start;
+        int length = newline - start;
+        if (pendingLength > 0) {
+            System.arraycopy(buffer, start, pending, pendingLength, length);
+            frame = pending;
+            offset = 0;
+            length += pendingLength;
+            pendingLength = 0;
+        }
+        if (length > 0 && frame[offset + length - 1] == '\r') {
+            length--;
+        }
+        frames++;
+        listener.onFrame(frame, offset, length);
+    }
+
+    private void emitUbx(byte[] buffer, int start, int end, FrameListener listener) {
+        byte[] frame = buffer;
+        int offset = start;
+        int length = end - start;
+        if (pendingLength > 0) {
+            System.arraycopy(buffer, start, pending, pendingLength, length);
+            frame = pending;
+            offset = 0;
+            length += pendingLength;
+            pendingLength = 0;
+        }
+        frames++;
+        ubxFrames++;
+        listener.onFrame(frame, offset, length);
+    }
+
+    /**
+     * Signals the end of the stream, a frame still in progress is dropped.
+     */
+    public void endOfStream() {
+        if (state == STATE_FRAME || state == STATE_UBX_SYNC || state == STATE_UBX_HEADER || state == STATE_UBX_BODY) {
+            partialFrames++;
+            metrics.partialFrame();
+        }
+        pendingLength = 0;
+        state = STATE_IDLE;
+    }
+
+    /**
+     * @return the receive stamp of the chunk holding the first byte of the frame being handed to the
+     * listener, so a frame split between two reads is stamped with the first one
+     */
+    public long getFrameReceivedNanos() {
+        return frameReceivedNanos;
+    }
+
+    /**
+     * @return the number of frames handed to the listener
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the number of UBX messages among them
+     */
+    public long getUbxFrames() {
+        return ubxFrames;
+    }
+
+    /**
+     * @return the number of frames dropped because a new one started before their end
+     */
+    public long getPartialFrames() {
+        return partialFrames;
+    }
+
+    /**
+     * @return the number of frames dropped because they exceeded the maximum length
+     */
+    public long getOverlongFrames() {
+        return overlongFrames;
+    }
+
+    /**
+     * @return the number of times the decoder had to skip bytes to find the next frame
+     */
+    public long getResyncs() {
+        return resyncs;
+    }
+}
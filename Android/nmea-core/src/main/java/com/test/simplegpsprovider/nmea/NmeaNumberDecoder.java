@@ -0,0 +1,252 @@
+package com.test.simplegpsprovider.nmea;
+
+/**
+ * Parses the numeric NMEA fields straight from the sentence bytes, without intermediate Strings.
+ * <p>
+ * Coordinates are decoded as scaled integers: whole degrees and minutes are read separately and
+ * combined in nano-degrees, rounded half-even from the exact decimal value whatever the number of
+ * minute decimals. Plain decimals are decoded to a mantissa and a power of ten, the final division
+ * being correctly rounded it gives the same bits as {@link Double#parseDouble(String)} and
+ * {@link Float#parseFloat(String)}; the rare inputs with too many digits for that fall back to them.
+ */
+public final class NmeaNumberDecoder {
+
+    /**
+     * Returned by the integer decoders when the field is empty or malformed.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    public static final long NANOS_PER_DEGREE = 1_000_000_000L;
+
+    private static final long MAX_LATITUDE = 90;
+    private static final long MAX_LONGITUDE = 180;
+
+    private static final long NANOS_PER_MINUTE = 1_000_000_000L;
+    private static final int MINUTE_DECIMALS = 9;
+    private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+    private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+    // largest powers of ten exactly representable as double and float
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    private NmeaNumberDecoder() {
+    }
+
+    /**
+     * Decodes a {@code ddmm.mmmm} latitude or {@code dddmm.mmmm} longitude.
+     *
+     * @param hemisphere 'N' or 'S' for a latitude, bounded at 90 degrees, 'E' or 'W' for a longitude,
+     *                   bounded at 180
+     * @return the signed coordinate in nano-degrees or {@link #INVALID}
+     */
+    public static long parseCoordinate(byte[] buffer, int offset, int length, byte hemisphere) {
+        int sign;
+        long maxDegrees;
+        if (hemisphere == 'N' || hemisphere == 'S') {
+            sign = hemisphere == 'N' ? 1 : -1;
+            maxDegrees = MAX_LATITUDE;
+        } else if (hemisphere == 'E' || hemisphere == 'W') {
+            sign = hemisphere == 'E' ? 1 : -1;
+            maxDegrees = MAX_LONGITUDE;
+        } else {
+            return INVALID;
+        }
+        int end = offset + length;
+        int point = offset;
+        while (point < end && buffer[point] != '.') {
+            point++;
+        }
+        // at least one digit of degrees and two of minutes
+        if (point - offset < 3) {
+            return INVALID;
+        }
+        long degrees = 0;
+        for (int i = offset; i < point - 2; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            degrees = degrees * 10 + digit;
+            if (degrees > maxDegrees) {
+                return INVALID;
+            }
+        }
+        int high = buffer[point - 2] - '0';
+        int low = buffer[point - 1] - '0';
+        if (high < 0 || high > 5 || low < 0 || low > 9) {
+            return INVALID;
+        }
+        long nanoMinutes = (high * 10 + low) * NANOS_PER_MINUTE;
+        // digits past the nanominute only matter to know whether we are exactly on a tie
+        boolean sticky = false;
+        long scale = NANOS_PER_MINUTE;
+        for (int i = point + 1; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            if (i - point <= MINUTE_DECIMALS) {
+                scale /= 10;
+                nanoMinutes += digit * scale;
+            } else if (digit != 0) {
+                sticky = true;
+            }
+        }
+        long nanoDegrees = nanoMinutes / 60;
+        long remainder = nanoMinutes % 60;
+        if (remainder > 30 || (remainder == 30 && (sticky || (nanoDegrees & 1) != 0))) {
+            nanoDegrees++;
+        }
+        long coordinate = degrees * NANOS_PER_DEGREE + nanoDegrees;
+        if (coordinate > maxDegrees * NANOS_PER_DEGREE) {
+            return INVALID;
+        }
+        return sign * coordinate;
+    }
+
+    /**
+     * @return the coordinate in degrees for a value returned by {@link #parseCoordinate}
+     */
+    public static double toDegrees(long nanoDegrees) {
+        return nanoDegrees / (double) NANOS_PER_DEGREE;
+    }
+
+    /**
+     * Decodes a decimal number such as {@code -12.345}.
+     *
+     * @return the value, bit identical to {@link Double#parseDouble(String)}, or NaN when malformed
+     */
+    public static double parseDouble(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = -1;
+        int digits = 0;
+        for (; i < end; i++) {
+            byte c = buffer[i];
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.NaN;
+            }
+            if (mantissa >= MAX_EXACT_DOUBLE_MANTISSA / 10) {
+                return fallbackDouble(buffer, offset, length);
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (decimals >= DOUBLE_POWERS_OF_TEN.length) {
+            return fallbackDouble(buffer, offset, length);
+        }
+        double value = decimals > 0 ? mantissa / DOUBLE_POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes a decimal number such as {@code 0.9}.
+     *
+     * @return the value, bit identical to {@link Float#parseFloat(String)}, or NaN when malformed
+     */
+    public static float parseFloat(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = -1;
+        int digits = 0;
+        for (; i < end; i++) {
+            byte c = buffer[i];
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                return Float.NaN;
+            }
+            if (mantissa >= MAX_EXACT_FLOAT_MANTISSA / 10) {
+                return fallbackFloat(buffer, offset, length);
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (digits == 0) {
+            return Float.NaN;
+        }
+        if (decimals >= FLOAT_POWERS_OF_TEN.length) {
+            return fallbackFloat(buffer, offset, length);
+        }
+        float value = decimals > 0 ? mantissa / FLOAT_POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes a non negative integer such as a number of satellites.
+     *
+     * @return the value or {@link #INVALID}
+     */
+    public static long parseUnsigned(byte[] buffer, int offset, int length) {
+        if (length == 0 || length > 18) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static double fallbackDouble(byte[] buffer, int offset, int length) {
+        try {
+            return Double.parseDouble(ascii(buffer, offset, length));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static float fallbackFloat(byte[] buffer, int offset, int length) {
+        try {
+            return Float.parseFloat(ascii(buffer, offset, length));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    private static String ascii(byte[] buffer, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buffer[offset + i] & 0xFF);
+        }
+        return new String(chars);
+    }
+}
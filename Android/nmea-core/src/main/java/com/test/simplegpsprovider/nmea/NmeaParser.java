@@ -0,0 +1,702 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 Herbert von Broeuschmeul
+ * Copyright (C) 2010, 2011, 2012 BluetoothGPS4Droid Project
+ * Copyright (C) 2011, 2012 UsbGPS4Droid Project
+ *
+ * This file is part of UsbGPS4Droid.
+ *
+ * UsbGPS4Droid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * UsbGPS4Droid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with UsbGPS4Droid. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.test.simplegpsprovider.nmea;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * This class is used to parse NMEA sentences an generate a {@link GpsFix} when there is a new GPS FIX,
+ * notified to a {@link FixListener}. The fix instance is recycled from one epoch to the next, its
+ * {@link EpochAssembler} decides when the epoch is complete.
+ * u-blox UBX NAV-PVT messages interleaved with the sentences fill the same fix, see
+ * {@link #parseFrame(byte[], int, int, long, long)}.
+ * It can also compute the the checksum of a NMEA sentence.
+ * <p>
+ * Plain Java on purpose: it runs the same on Android and on any JVM.
+ *
+ * @author Herbert von Broeuschmeul
+ */
+public class NmeaParser {
+    private static final Logger LOGGER = Logger.getLogger(NmeaParser.class.getSimpleName());
+
+    private final FixListener listener;
+    private final IngestMetrics metrics;
+
+    private static final int GGA_TIME = 1;
+    private static final int GGA_LAT = 2;
+    private static final int GGA_LAT_DIR = 3;
+    private static final int GGA_LON = 4;
+    private static final int GGA_LON_DIR = 5;
+    private static final int GGA_QUALITY = 6;
+    private static final int GGA_SATELLITES = 7;
+    private static final int GGA_HDOP = 8;
+    private static final int GGA_ALT = 9;
+
+    private static final int RMC_TIME = 1;
+    private static final int RMC_STATUS = 2;
+    private static final int RMC_LAT = 3;
+    private static final int RMC_LAT_DIR = 4;
+    private static final int RMC_LON = 5;
+    private static final int RMC_LON_DIR = 6;
+    private static final int RMC_SPEED = 7;
+    private static final int RMC_BEARING = 8;
+    private static final int RMC_DATE = 9;
+
+    // UBX NAV-PVT payload offsets
+    private static final int PVT_YEAR = 4;
+    private static final int PVT_MONTH = 6;
+    private static final int PVT_DAY = 7;
+    private static final int PVT_HOUR = 8;
+    private static final int PVT_MINUTE = 9;
+    private static final int PVT_SECOND = 10;
+    private static final int PVT_VALID = 11;
+    private static final int PVT_NANO = 16;
+    private static final int PVT_FIX_TYPE = 20;
+    private static final int PVT_FLAGS = 21;
+    private static final int PVT_SATELLITES = 23;
+    private static final int PVT_LON = 24;
+    private static final int PVT_LAT = 28;
+    private static final int PVT_HMSL = 36;
+    private static final int PVT_HACC = 40;
+    private static final int PVT_GROUND_SPEED = 60;
+    private static final int PVT_HEADING = 64;
+    // valid: date and time of day resolved
+    private static final int PVT_VALID_DATE_TIME = 0x03;
+    // flags: gnssFixOK
+    private static final int PVT_FIX_OK = 0x01;
+    // fixType: 2D, 3D and GNSS + dead reckoning carry a position, 3D and up an altitude
+    private static final int PVT_FIX_2D = 2;
+    private static final int PVT_FIX_3D = 3;
+    private static final int PVT_FIX_GNSS_DR = 4;
+    // fix sentences of NMEA ignored while the receiver sends NAV-PVT, that long after the last one
+    // they are used again, e.g. when the receiver was reconfigured; longer than the period of the
+    // slowest NAV-PVT rate, whatever the NMEA rate
+    private static final long NAV_PVT_LAPSE_NANOS = 3_000_000_000L;
+
+    // "$GPGSV," the number of messages starts right after
+    private static final int GSV_FIELDS = 7;
+
+    // sentence handlers by type code, open addressing
+    private static final int TABLE_BITS = 5;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int MAX_ENTRIES = TABLE_SIZE / 2;
+
+    /**
+     * Combined solution of multi-GNSS receivers, preferred over the per constellation ones.
+     */
+    public static final String DEFAULT_PREFERRED_TALKER = "GN";
+
+    // proprietary sentence of this project announcing the id of the feed: $PSGPF,<feed id>*hh
+    private static final int FEED_ID = 1;
+
+    private final NmeaSentence sentence = new NmeaSentence();
+    private final UbxMessage ubx = new UbxMessage();
+    private final NmeaTimeDecoder timeDecoder = new NmeaTimeDecoder();
+
+    private float precision = 10f;
+    private final EpochAssembler assembler;
+    private final GpsFix fix;
+
+    private final int[] codes = new int[TABLE_SIZE];
+    private final int[] metricTypes = new int[TABLE_SIZE];
+    private final SentenceHandler[] handlers = new SentenceHandler[TABLE_SIZE];
+    // fix sentences, kept from a single talker per epoch
+    private final boolean[] deduplicated = new boolean[TABLE_SIZE];
+    private int entries = 0;
+    private final TalkerFilter talkerFilter = new TalkerFilter(DEFAULT_PREFERRED_TALKER);
+    // trace stamps of the frame being parsed
+    private long frameReceivedNanos = 0;
+    private long frameFramedNanos = 0;
+    // last feed id announced by the stream
+    private final byte[] feedId = new byte[32];
+    private int feedIdLength = -1;
+    // clock of the assembler when the last NAV-PVT was received, valid once one was
+    private boolean navPvtReceived = false;
+    private long navPvtNanos = 0;
+
+    public NmeaParser(FixListener listener) {
+        this(5f, listener);
+    }
+
+    /**
+     * @param precision factor converting the HDOP to an accuracy in meters
+     */
+    public NmeaParser(float precision, FixListener listener) {
+        this(precision, listener, IngestMetrics.disabled());
+    }
+
+    /**
+     * @param precision factor converting the HDOP to an accuracy in meters
+     * @param metrics   counts the parsed sentences, the rejects and the fixes, and stamps the fixes
+     *                  with its clock
+     */
+    public NmeaParser(float precision, FixListener listener, IngestMetrics metrics) {
+        this(precision, listener, metrics, new EpochAssembler());
+    }
+
+    /**
+     * @param precision factor converting the HDOP to an accuracy in meters
+     * @param metrics   counts the parsed sentences, the rejects and the fixes, and stamps the fixes
+     *                  with its clock
+     * @param assembler decides when an epoch is published, dedicated to this parser
+     */
+    public NmeaParser(float precision, FixListener listener, IngestMetrics metrics, EpochAssembler assembler) {
+        this.precision = precision;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.assembler = assembler;
+        this.fix = assembler.getFix();
+        assembler.attach(listener, metrics);
+        Arrays.fill(codes, -1);
+        define(NmeaSentence.typeCode("GGA"), IngestMetrics.TYPE_GGA, sentence -> parseGGA(), true);
+        define(NmeaSentence.typeCode("RMC"), IngestMetrics.TYPE_RMC, sentence -> parseRMC(), true);
+        define(NmeaSentence.typeCode("PSGPF"), IngestMetrics.TYPE_OTHER, sentence -> parseFeedId(), false);
+        // known but not consumed, only counted
+        define(NmeaSentence.typeCode("GSA"), IngestMetrics.TYPE_GSA, null, false);
+        define(NmeaSentence.typeCode("GSV"), IngestMetrics.TYPE_GSV, null, false);
+        define(NmeaSentence.typeCode("VTG"), IngestMetrics.TYPE_VTG, null, false);
+        define(NmeaSentence.typeCode("GLL"), IngestMetrics.TYPE_GLL, null, false);
+    }
+
+    /**
+     * Publishes the epoch in progress if the stream went quiet, see {@link EpochAssembler#flushStale()}.
+     * To be called on the parsing thread.
+     */
+    public void flushStale() {
+        assembler.flushStale();
+    }
+
+    /**
+     * Publishes the epoch in progress and tells the listener that the stream ended, see
+     * {@link FixListener#onEndOfStream()}. To be called on the parsing thread after the last frame.
+     */
+    public void endOfStream() {
+        assembler.flush();
+        listener.onEndOfStream();
+    }
+
+    /**
+     * Parses a NMEA sentence given as a String, kept for callers that still read lines as text.
+     *
+     * @return the sentence when it is valid, null otherwise
+     */
+    public String parseNmeaSentence(String gpsSentence) {
+        byte[] bytes = gpsSentence.getBytes(StandardCharsets.ISO_8859_1);
+        return parseNmeaSentence(bytes, 0, bytes.length) ? gpsSentence : null;
+    }
+
+    /**
+     * Parses the frame found in {@code buffer[offset, offset + length)}, a UBX message when it starts with
+     * the UBX sync bytes, a NMEA sentence otherwise.
+     *
+     * @param receivedNanos when the first byte of the frame was read
+     * @param framedNanos   when the frame was complete
+     * @return true when the frame is valid
+     */
+    public boolean parseFrame(byte[] buffer, int offset, int length, long receivedNanos, long framedNanos) {
+        if (UbxMessage.isUbx(buffer, offset, length)) {
+            return parseUbxMessage(buffer, offset, length, receivedNanos, framedNanos);
+        }
+        return parseNmeaSentence(buffer, offset, length, receivedNanos, framedNanos);
+    }
+
+    /**
+     * Parses the UBX message found in {@code buffer[offset, offset + length)}, sync bytes and checksum
+     * included. NAV-PVT fills the fix, the other messages are only counted.
+     *
+     * @param receivedNanos when the first byte of the frame was read
+     * @param framedNanos   when the frame was complete
+     * @return true when the message is valid
+     */
+    public boolean parseUbxMessage(byte[] buffer, int offset, int length, long receivedNanos, long framedNanos) {
+        frameReceivedNanos = receivedNanos;
+        frameFramedNanos = framedNanos;
+        int status = ubx.parse(buffer, offset, length);
+        if (status != UbxMessage.VALID) {
+            if (status == UbxMessage.INVALID_CHECKSUM) {
+                metrics.checksumFailed();
+                log("UBX message invalid, checksums don't match");
+            } else {
+                metrics.frameRejected();
+                log("UBX message invalid");
+            }
+            assembler.invalid();
+            return false;
+        }
+        metrics.sentenceParsed(IngestMetrics.TYPE_UBX);
+        if (ubx.messageClass() == UbxMessage.CLASS_NAV && ubx.messageId() == UbxMessage.ID_NAV_PVT
+                && ubx.payloadLength() >= UbxMessage.NAV_PVT_LENGTH) {
+            parseNavPvt();
+        } else {
+            metrics.sentenceSkipped();
+        }
+        assembler.sentence(IngestMetrics.TYPE_UBX, 0);
+        return true;
+    }
+
+    /**
+     * Parses the NMEA sentence found in {@code buffer[offset, offset + length)}.
+     * The buffer is only read during the call.
+     *
+     * @return true when the sentence is valid
+     */
+    public boolean parseNmeaSentence(byte[] buffer, int offset, int length) {
+        return parseNmeaSentence(buffer, offset, length, 0L, 0L);
+    }
+
+    /**
+     * Same as {@link #parseNmeaSentence(byte[], int, int)} for a frame traced upstream, the stamps of
+     * the first frame of an epoch are carried by its fix.
+     *
+     * @param receivedNanos when the first byte of the frame was read
+     * @param framedNanos   when the frame was complete
+     */
+    public boolean parseNmeaSentence(byte[] buffer, int offset, int length, long receivedNanos, long framedNanos) {
+        frameReceivedNanos = receivedNanos;
+        frameFramedNanos = framedNanos;
+        int code = NmeaSentence.typeCode(buffer, offset, length);
+        int entry = code < 0 ? -1 : findEntry(code);
+        if (code >= 0 && (entry < 0 || handlers[entry] == null)) {
+            // nobody consumes the type: only its frame and checksum are checked, without tokenization,
+            // then it still tells the assembler where the epoch is
+            int status = NmeaSentence.check(buffer, offset, length);
+            if (status != NmeaSentence.VALID) {
+                return invalid(status);
+            }
+            int type = entry < 0 ? IngestMetrics.TYPE_OTHER : metricTypes[entry];
+            int talker = talker(code, buffer, offset);
+            if (talker != 0) {
+                metrics.talkerSentence(talker);
+            }
+            metrics.sentenceParsed(type);
+            metrics.sentenceSkipped();
+            assembler.sentence(type, signature(type, buffer, offset, length));
+            return true;
+        }
+        int status = sentence.parse(buffer, offset, length);
+        if (status == NmeaSentence.VALID) {
+            // a valid frame whose type has no handler is rejected below
+            if (entry >= 0) {
+                int type = metricTypes[entry];
+                int talker = talker(code, buffer, offset);
+                if (talker != 0) {
+                    metrics.talkerSentence(talker);
+                }
+                // only a valid sentence can win its type for the epoch, before its fields are decoded
+                if (talker != 0 && deduplicated[entry] && !talkerFilter.accept(type, talker, sentence.buffer(),
+                        sentence.fieldStart(TalkerFilter.TIME), sentence.fieldLength(TalkerFilter.TIME))) {
+                    // another talker provides the type in this epoch
+                    metrics.sentenceParsed(type);
+                    metrics.talkerDuplicate(talker);
+                    assembler.sentence(type, signature(type, buffer, offset, length));
+                    return true;
+                }
+                metrics.sentenceParsed(type);
+                handlers[entry].onSentence(sentence);
+                assembler.sentence(type, signature(type, buffer, offset, length));
+                return true;
+            }
+            metrics.frameRejected();
+            assembler.invalid();
+            return false;
+        }
+        return invalid(status);
+    }
+
+    /**
+     * Counts a sentence failing {@link NmeaSentence#parse} or {@link NmeaSentence#check} and breaks the epoch.
+     *
+     * @return false
+     */
+    private boolean invalid(int status) {
+        if (status == NmeaSentence.INVALID_CHECKSUM) {
+            metrics.checksumFailed();
+            log("Sentence invalid, checksums don't match");
+        } else {
+            metrics.frameRejected();
+            log("Sentence invalid");
+        }
+        // As we have received some awful data, it is safe to assume we have missed the
+        // current fix, so reset all of the current values and restart
+        assembler.invalid();
+        talkerFilter.invalid();
+        return false;
+    }
+
+    /**
+     * Sets the handler of a sentence type, replacing the built-in one if any. Sentences of a type
+     * without handler are skipped once their frame and checksum are checked, they are not tokenized.
+     *
+     * @param type    3 characters type of a talker sentence, e.g. {@code "GSA"} for all the talkers, or
+     *                5 characters address of a proprietary one, e.g. {@code "PGRME"}
+     * @param handler decodes the sentence, null to skip the type
+     */
+    public void registerHandler(String type, SentenceHandler handler) {
+        int code = NmeaSentence.typeCode(type);
+        int entry = findEntry(code);
+        if (entry >= 0) {
+            handlers[entry] = handler;
+        } else {
+            define(code, IngestMetrics.TYPE_OTHER, handler, false);
+        }
+    }
+
+    /**
+     * Sets the talker whose fix sentences are kept when several talkers send the same type in an epoch,
+     * {@link #DEFAULT_PREFERRED_TALKER} by default. Without it, the first talker of the epoch is kept.
+     */
+    public void setPreferredTalker(String talker) {
+        talkerFilter.setPreferred(talker);
+    }
+
+    private void define(int code, int metricType, SentenceHandler handler, boolean deduplicate) {
+        if (entries == MAX_ENTRIES) {
+            throw new IllegalStateException("Too many sentence types");
+        }
+        int i = (code * 0x9E3779B1) >>> (32 - TABLE_BITS);
+        while (codes[i] != -1) {
+            i = (i + 1) & (TABLE_SIZE - 1);
+        }
+        codes[i] = code;
+        metricTypes[i] = metricType;
+        handlers[i] = handler;
+        deduplicated[i] = deduplicate;
+        entries++;
+    }
+
+    private int findEntry(int code) {
+        int i = (code * 0x9E3779B1) >>> (32 - TABLE_BITS);
+        int candidate;
+        while ((candidate = codes[i]) != -1) {
+            if (candidate == code) {
+                return i;
+            }
+            i = (i + 1) & (TABLE_SIZE - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the talker of a sentence with a valid header, 0 for a proprietary one
+     */
+    private static int talker(int code, byte[] buffer, int offset) {
+        return (code & NmeaSentence.PROPRIETARY) == 0 ? TalkerFilter.talker(buffer, offset) : 0;
+    }
+
+    /**
+     * @return the address of the sentence packed as {@link NmeaSentence#addressCode()} does, 0 for a GSV
+     * which is not the last of its burst, as it can't close an epoch
+     */
+    private static long signature(int type, byte[] buffer, int offset, int length) {
+        if (type == IngestMetrics.TYPE_GSV && !isLastGsv(buffer, offset, length)) {
+            return 0;
+        }
+        long code = 0;
+        for (int i = 1; i <= 5; i++) {
+            code = (code << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return code;
+    }
+
+    /**
+     * @return true when the number of messages and the message number, right after the GSV header, are equal
+     */
+    private static boolean isLastGsv(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int messages = offset + GSV_FIELDS;
+        int separator = messages;
+        while (separator < end && buffer[separator] != ',') {
+            separator++;
+        }
+        int count = separator - messages;
+        if (count == 0 || separator + 1 + count >= end || buffer[separator + 1 + count] != ',') {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (buffer[messages + i] != buffer[separator + 1 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseGGA() {
+        /* $GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47
+            Where:
+                 GGA          Global Positioning System Fix Data
+                 123519       Fix taken at 12:35:19 UTC
+                 4807.038,N   Latitude 48 deg 07.038' N
+                 01131.000,E  Longitude 11 deg 31.000' E
+                 1            Fix quality: 0 = invalid
+                                           1 = GPS fix (SPS)
+                                           2 = DGPS fix
+                                           3 = PPS fix
+                                           4 = Real Time Kinematic
+                                           5 = Float RTK
+                                           6 = estimated (dead reckoning) (2.3 feature)
+                                           7 = Manual input mode
+                                           8 = Simulation mode
+                 08           Number of satellites being tracked
+                 0.9          Horizontal dilution of position
+                 545.4,M      Altitude, Meters, above mean sea level
+                 46.9,M       Height of geoid (mean sea level) above WGS84
+                                  ellipsoid
+                 (empty field) time in seconds since last DGPS update
+                 (empty field) DGPS station ID number
+                 *47          the checksum data, always begins with *
+         */
+        // fields: 1 UTC time of fix HHmmss.S, 2 latitude ddmm.M, 3 direction (N/S), 4 longitude dddmm.M,
+        // 5 direction (E/W), 6 fix quality, 7 number of satellites being tracked,
+        // 8 horizontal dilution of position (float), 9 altitude, Meters, above mean sea level
+        if (!sentence.isEmpty(GGA_QUALITY) && !sentence.fieldEquals(GGA_QUALITY, '0')) {
+            if (navPvtActive() || !startSentence(GGA_TIME)) {
+                return;
+            }
+            long latitude = coordinateField(GGA_LAT, GGA_LAT_DIR);
+            if (latitude != NmeaNumberDecoder.INVALID) {
+                fix.setLatitude(NmeaNumberDecoder.toDegrees(latitude));
+            }
+            long longitude = coordinateField(GGA_LON, GGA_LON_DIR);
+            if (longitude != NmeaNumberDecoder.INVALID) {
+                fix.setLongitude(NmeaNumberDecoder.toDegrees(longitude));
+            }
+            float hdop = floatField(GGA_HDOP);
+            if (!Float.isNaN(hdop)) {
+                fix.setAccuracy(hdop * precision);
+            }
+            double altitude = doubleField(GGA_ALT);
+            if (!Double.isNaN(altitude)) {
+                fix.setAltitude(altitude);
+            }
+            long satellites = NmeaNumberDecoder.parseUnsigned(
+                    sentence.buffer(), sentence.fieldStart(GGA_SATELLITES), sentence.fieldLength(GGA_SATELLITES));
+            if (satellites != NmeaNumberDecoder.INVALID) {
+                fix.setSatellites((int) satellites);
+            }
+            assembler.fixSentence(IngestMetrics.TYPE_GGA);
+        }
+    }
+
+    private void parseRMC() {
+        /* $GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A
+           Where:
+             RMC          Recommended Minimum sentence C
+             123519       Fix taken at 12:35:19 UTC
+             A            Status A=active or V=Void.
+             4807.038,N   Latitude 48 deg 07.038' N
+             01131.000,E  Longitude 11 deg 31.000' E
+             022.4        Speed over the ground in knots
+             084.4        Track angle in degrees True
+             230394       Date - 23rd of March 1994
+             003.1,W      Magnetic Variation
+             *6A          The checksum data, always begins with *
+        */
+        // for NMEA 0183 version 3.00 active the Mode indicator field is added
+        // Mode indicator, (A=autonomous, D=differential, E=Estimated, N=not valid, S=Simulator )
+        if (sentence.fieldEquals(RMC_STATUS, 'A')) {
+            if (navPvtActive() || !startSentence(RMC_TIME)) {
+                return;
+            }
+            if (!sentence.isEmpty(RMC_DATE)) {
+                // the date pins the day, GGA only knows the time
+                long timestamp = timeDecoder.decode(
+                        sentence.buffer(), sentence.fieldStart(RMC_TIME), sentence.fieldLength(RMC_TIME),
+                        sentence.buffer(), sentence.fieldStart(RMC_DATE), sentence.fieldLength(RMC_DATE));
+                if (timestamp != NmeaTimeDecoder.INVALID) {
+                    fix.setTime(timestamp);
+                }
+            }
+            long latitude = coordinateField(RMC_LAT, RMC_LAT_DIR);
+            if (latitude != NmeaNumberDecoder.INVALID) {
+                fix.setLatitude(NmeaNumberDecoder.toDegrees(latitude));
+            }
+            long longitude = coordinateField(RMC_LON, RMC_LON_DIR);
+            if (longitude != NmeaNumberDecoder.INVALID) {
+                fix.setLongitude(NmeaNumberDecoder.toDegrees(longitude));
+            }
+            float speed = floatField(RMC_SPEED);
+            if (!Float.isNaN(speed)) {
+                fix.setSpeed(toMeterSpeed(speed, 'N'));
+            }
+            float bearing = floatField(RMC_BEARING);
+            if (!Float.isNaN(bearing)) {
+                fix.setBearing(bearing);
+            }
+            assembler.fixSentence(IngestMetrics.TYPE_RMC);
+        }
+    }
+
+    private void parseNavPvt() {
+        // UBX-NAV-PVT, little endian: lon/lat in 1e-7 deg, hMSL and hAcc in mm, gSpeed in mm/s,
+        // headMot in 1e-5 deg
+        navPvtReceived = true;
+        navPvtNanos = assembler.nanoTime();
+        int fixType = ubx.u1(PVT_FIX_TYPE);
+        if ((ubx.u1(PVT_FLAGS) & PVT_FIX_OK) == 0
+                || (fixType != PVT_FIX_2D && fixType != PVT_FIX_3D && fixType != PVT_FIX_GNSS_DR)) {
+            return;
+        }
+        // the message holds the whole epoch, keyed by its iTOW, it starts and completes it
+        if (assembler.startSentence(ubx.buffer(), ubx.payloadStart(), 4, frameReceivedNanos, frameFramedNanos)
+                == EpochAssembler.EPOCH_PUBLISHED) {
+            return;
+        }
+        if ((ubx.u1(PVT_VALID) & PVT_VALID_DATE_TIME) == PVT_VALID_DATE_TIME) {
+            long days = NmeaTimeDecoder.daysFromCivil(ubx.u2(PVT_YEAR), ubx.u1(PVT_MONTH), ubx.u1(PVT_DAY));
+            long seconds = days * 86_400L + ubx.u1(PVT_HOUR) * 3600L + ubx.u1(PVT_MINUTE) * 60L + ubx.u1(PVT_SECOND);
+            // nano is signed, the rounded time of day is second + nano
+            fix.setTime(seconds * 1000L + Math.floorDiv(ubx.i4(PVT_NANO) + 500_000L, 1_000_000L));
+        }
+        fix.setLatitude(NmeaNumberDecoder.toDegrees(ubx.i4(PVT_LAT) * 100L));
+        fix.setLongitude(NmeaNumberDecoder.toDegrees(ubx.i4(PVT_LON) * 100L));
+        if (fixType != PVT_FIX_2D) {
+            fix.setAltitude(ubx.i4(PVT_HMSL) / 1000.0);
+        }
+        fix.setAccuracy(ubx.u4(PVT_HACC) / 1000f);
+        fix.setSpeed(ubx.i4(PVT_GROUND_SPEED) / 1000f);
+        fix.setBearing(ubx.i4(PVT_HEADING) / 100_000f);
+        fix.setSatellites(ubx.u1(PVT_SATELLITES));
+        assembler.completeSentence(IngestMetrics.TYPE_UBX);
+    }
+
+    /**
+     * NAV-PVT carries everything GGA and RMC do, with a real accuracy: while the receiver sends it,
+     * the NMEA fix sentences are ignored instead of competing for the epoch.
+     *
+     * @return true when the NMEA fix sentence being parsed must be ignored
+     */
+    private boolean navPvtActive() {
+        return navPvtReceived && assembler.nanoTime() - navPvtNanos < NAV_PVT_LAPSE_NANOS;
+    }
+
+    private void parseFeedId() {
+        int length = sentence.fieldLength(FEED_ID);
+        if (length == 0 || length > feedId.length
+                || (feedIdLength >= 0 && sentence.fieldEquals(FEED_ID, feedId, 0, feedIdLength))) {
+            return;
+        }
+        feedIdLength = sentence.copyField(FEED_ID, feedId);
+        listener.onFeedId(new String(feedId, 0, feedIdLength, StandardCharsets.ISO_8859_1));
+    }
+
+    private long coordinateField(int field, int directionField) {
+        return NmeaNumberDecoder.parseCoordinate(sentence.buffer(), sentence.fieldStart(field),
+                sentence.fieldLength(field), sentence.byteAt(directionField, 0));
+    }
+
+    private float floatField(int field) {
+        return NmeaNumberDecoder.parseFloat(sentence.buffer(), sentence.fieldStart(field), sentence.fieldLength(field));
+    }
+
+    private double doubleField(int field) {
+        return NmeaNumberDecoder.parseDouble(sentence.buffer(), sentence.fieldStart(field), sentence.fieldLength(field));
+    }
+
+    /**
+     * Joins the epoch of the time found in {@code field}, starting a new one when the time changed.
+     *
+     * @return false when the epoch was already published and the sentence must be skipped
+     */
+    private boolean startSentence(int field) {
+        int epoch = assembler.startSentence(sentence.buffer(), sentence.fieldStart(field), sentence.fieldLength(field),
+                frameReceivedNanos, frameFramedNanos);
+        if (epoch == EpochAssembler.EPOCH_NEW) {
+            long timestamp = timeDecoder.decode(sentence.buffer(), sentence.fieldStart(field), sentence.fieldLength(field));
+            if (timestamp != NmeaTimeDecoder.INVALID) {
+                fix.setTime(timestamp);
+            }
+        }
+        return epoch != EpochAssembler.EPOCH_PUBLISHED;
+    }
+
+    /**
+     * @return the latitude in degrees of a {@code ddmm.mmmm} field, 0 if invalid
+     */
+    public double parseNmeaLatitude(String lat, String orientation) {
+        return parseNmeaCoordinate(lat, orientation);
+    }
+
+    /**
+     * @return the longitude in degrees of a {@code dddmm.mmmm} field, 0 if invalid
+     */
+    public double parseNmeaLongitude(String lon, String orientation) {
+        return parseNmeaCoordinate(lon, orientation);
+    }
+
+    private double parseNmeaCoordinate(String value, String orientation) {
+        if (value == null || orientation == null || orientation.length() != 1) {
+            return 0.0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        long coordinate = NmeaNumberDecoder.parseCoordinate(bytes, 0, bytes.length, (byte) orientation.charAt(0));
+        return coordinate == NmeaNumberDecoder.INVALID ? 0.0 : NmeaNumberDecoder.toDegrees(coordinate);
+    }
+
+    /**
+     * @param metric "K" for kilometers per hour, "N" for knots
+     * @return the speed in meters per second, 0 if invalid
+     */
+    public float parseNmeaSpeed(String speed, String metric) {
+        if (speed == null || metric == null || metric.length() != 1) {
+            return 0.0f;
+        }
+        byte[] bytes = speed.getBytes(StandardCharsets.ISO_8859_1);
+        float value = NmeaNumberDecoder.parseFloat(bytes, 0, bytes.length);
+        return Float.isNaN(value) ? 0.0f : toMeterSpeed(value, metric.charAt(0));
+    }
+
+    private static float toMeterSpeed(float speed, char metric) {
+        float temp1 = speed / 3.6f;
+        if (metric == 'K') {
+            return temp1;
+        } else if (metric == 'N') {
+            return temp1 * 1.852f;
+        }
+        return 0.0f;
+    }
+
+    /**
+     * @return the epoch milliseconds of a {@code hhmmss.sss} time on the current UTC day, 0 if invalid
+     */
+    public long parseNmeaTime(String time) {
+        if (time == null) {
+            return 0;
+        }
+        byte[] bytes = time.getBytes(StandardCharsets.ISO_8859_1);
+        long timestamp = timeDecoder.decode(bytes, 0, bytes.length);
+        return timestamp == NmeaTimeDecoder.INVALID ? 0 : timestamp;
+    }
+
+    public byte computeChecksum(String s) {
+        byte checksum = 0;
+        for (int i = 0; i < s.length(); i++) {
+            checksum ^= (byte) s.charAt(i);
+        }
+        return checksum;
+    }
+
+    private void log(String message) {
+        LOGGER.fine(message);
+    }
+}
@@ -0,0 +1,297 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation-free view over a single NMEA 0183 sentence held in a byte buffer.
+ * <p>
+ * {@link #parse(byte[], int, int)} validates the {@code $...*HH} frame and the hex checksum in a
+ * single pass and records the offsets of every comma separated field. The field accessors then
+ * read straight from the caller's buffer, so nothing is allocated per sentence. The instance only
+ * keeps a reference to the buffer: its content must not change while the fields are being read.
+ */
+public final class NmeaSentence {
+
+    public static final int VALID = 0;
+    public static final int INVALID_FRAME = 1;
+    public static final int INVALID_CHECKSUM = 2;
+
+    /**
+     * Upper bound of fields kept per sentence, GSA has 18 and GSV 20, proprietary sentences may have more.
+     * Fields past this limit are ignored.
+     */
+    public static final int MAX_FIELDS = 64;
+
+    /**
+     * Set in the {@link #typeCode(byte[], int, int) type code} of proprietary {@code $P...} sentences.
+     */
+    public static final int PROPRIETARY = 1 << 24;
+
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int fieldCount = 0;
+    private byte[] buffer;
+    private byte[] scratch;
+
+    /**
+     * Parses the sentence found in {@code buffer[offset, offset + length)}.
+     * A trailing {@code \r\n} (or any of the two) is accepted and ignored.
+     *
+     * @return {@link #VALID}, {@link #INVALID_FRAME} or {@link #INVALID_CHECKSUM}
+     */
+    public int parse(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        fieldCount = 0;
+        return scan(buffer, offset, length, this);
+    }
+
+    /**
+     * Validates the frame and the checksum of the sentence found in {@code buffer[offset, offset + length)}
+     * as {@link #parse(byte[], int, int)} does, without recording its fields.
+     *
+     * @return {@link #VALID}, {@link #INVALID_FRAME} or {@link #INVALID_CHECKSUM}
+     */
+    public static int check(byte[] buffer, int offset, int length) {
+        return scan(buffer, offset, length, null);
+    }
+
+    // the fields are recorded into sentence unless null
+    private static int scan(byte[] buffer, int offset, int length, NmeaSentence sentence) {
+        int end = offset + length;
+        while (end > offset && (buffer[end - 1] == '\n' || buffer[end - 1] == '\r')) {
+            end--;
+        }
+        // smallest possible frame is "$*HH"
+        if (end - offset < 4 || buffer[offset] != '$' || buffer[end - 3] != '*') {
+            return INVALID_FRAME;
+        }
+        int high = hexValue(buffer[end - 2]);
+        int low = hexValue(buffer[end - 1]);
+        if (high < 0 || low < 0) {
+            return INVALID_FRAME;
+        }
+        int bodyEnd = end - 3;
+        int checksum = 0;
+        int start = offset + 1;
+        for (int i = start; i < bodyEnd; i++) {
+            byte c = buffer[i];
+            if (c == '$' || c == '*') {
+                return INVALID_FRAME;
+            }
+            checksum ^= c;
+            if (c == ',' && sentence != null) {
+                sentence.addField(start, i);
+                start = i + 1;
+            }
+        }
+        if (sentence != null) {
+            sentence.addField(start, bodyEnd);
+        }
+        if ((checksum & 0xFF) != ((high << 4) | low)) {
+            return INVALID_CHECKSUM;
+        }
+        return VALID;
+    }
+
+    /**
+     * Parses the remaining bytes of {@code frame} without moving its position.
+     * Buffers without an accessible array are copied once into an internal scratch array.
+     */
+    public int parse(ByteBuffer frame) {
+        int length = frame.remaining();
+        if (frame.hasArray()) {
+            return parse(frame.array(), frame.arrayOffset() + frame.position(), length);
+        }
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[Math.max(length, 128)];
+        }
+        frame.duplicate().get(scratch, 0, length);
+        return parse(scratch, 0, length);
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount < MAX_FIELDS) {
+            fieldStart[fieldCount] = start;
+            fieldEnd[fieldCount] = end;
+            fieldCount++;
+        }
+    }
+
+    /**
+     * @return the number of fields, the address field ("GPGGA") included
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the buffer the field offsets refer to
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the offset of the first byte of the field in {@link #buffer()}
+     */
+    public int fieldStart(int field) {
+        return field < fieldCount ? fieldStart[field] : 0;
+    }
+
+    /**
+     * @return the field length, missing fields have a length of 0
+     */
+    public int fieldLength(int field) {
+        return field < fieldCount ? fieldEnd[field] - fieldStart[field] : 0;
+    }
+
+    public boolean isEmpty(int field) {
+        return fieldLength(field) == 0;
+    }
+
+    /**
+     * @return the byte at {@code position} inside the field, or 0 when out of the field
+     */
+    public byte byteAt(int field, int position) {
+        if (position < 0 || position >= fieldLength(field)) {
+            return 0;
+        }
+        return buffer[fieldStart[field] + position];
+    }
+
+    /**
+     * @return true when the field is exactly the single character {@code c}
+     */
+    public boolean fieldEquals(int field, char c) {
+        return fieldLength(field) == 1 && buffer[fieldStart[field]] == c;
+    }
+
+    /**
+     * @return true when the field has the same content as {@code other[offset, offset + length)}
+     */
+    public boolean fieldEquals(int field, byte[] other, int offset, int length) {
+        if (fieldLength(field) != length) {
+            return false;
+        }
+        int start = fieldStart[field];
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != other[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the field into {@code target}.
+     *
+     * @return the field length, or -1 when it doesn't fit in {@code target}
+     */
+    public int copyField(int field, byte[] target) {
+        int length = fieldLength(field);
+        if (length > target.length) {
+            return -1;
+        }
+        if (length > 0) {
+            System.arraycopy(buffer, fieldStart[field], target, 0, length);
+        }
+        return length;
+    }
+
+    /**
+     * @return true when the address field is a standard talker sentence of the given type, e.g. "GGA"
+     */
+    public boolean isType(char a, char b, char c) {
+        if (fieldLength(0) != 5) {
+            return false;
+        }
+        int start = fieldStart[0];
+        return buffer[start + 2] == a && buffer[start + 3] == b && buffer[start + 4] == c;
+    }
+
+    /**
+     * @return the first 8 bytes of the address field packed in a long, e.g. to compare sentences by
+     * talker and type without allocating, 0 for an empty address
+     */
+    public long addressCode() {
+        int length = Math.min(fieldLength(0), 8);
+        long code = 0;
+        for (int i = 0; i < length; i++) {
+            code = (code << 8) | (buffer[fieldStart[0] + i] & 0xFF);
+        }
+        return code;
+    }
+
+    /**
+     * Allocating accessor kept for code that still works on Strings.
+     *
+     * @return the field content, "" for missing fields
+     */
+    public String fieldString(int field) {
+        int length = fieldLength(field);
+        if (length == 0) {
+            return "";
+        }
+        char[] chars = new char[length];
+        int start = fieldStart[field];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buffer[start + i] & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reads the type of the sentence from its header only, without validating the rest of it:
+     * the 3 type characters of a talker sentence packed in an int ({@code $GPGGA,} and {@code $GNGGA,}
+     * share the code of {@code GGA}), or the last 3 characters of a proprietary {@code $Pxxxx,} address
+     * with {@link #PROPRIETARY} set.
+     *
+     * @return the type code, or -1 when the sentence doesn't start with {@code $}, a 5 characters
+     * address and a {@code ,} or {@code *}
+     */
+    public static int typeCode(byte[] buffer, int offset, int length) {
+        if (length < 7 || buffer[offset] != '$' || (buffer[offset + 6] != ',' && buffer[offset + 6] != '*')) {
+            return -1;
+        }
+        int code = (buffer[offset + 3] & 0xFF) << 16 | (buffer[offset + 4] & 0xFF) << 8 | buffer[offset + 5] & 0xFF;
+        return buffer[offset + 1] == 'P' ? code | PROPRIETARY : code;
+    }
+
+    /**
+     * @param type 3 characters type of a talker sentence, e.g. {@code "GSV"}, or 5 characters address of
+     *             a proprietary one, e.g. {@code "PSGPF"}
+     * @return the code {@link #typeCode(byte[], int, int)} returns for that type
+     */
+    public static int typeCode(String type) {
+        if (type.length() == 3) {
+            return type.charAt(0) << 16 | type.charAt(1) << 8 | type.charAt(2);
+        } else if (type.length() == 5 && type.charAt(0) == 'P') {
+            return (type.charAt(2) << 16 | type.charAt(3) << 8 | type.charAt(4)) | PROPRIETARY;
+        }
+        throw new IllegalArgumentException("Not a sentence type: " + type);
+    }
+
+    /**
+     * @return XOR of all the bytes in {@code buffer[offset, offset + length)}
+     */
+    public static byte computeChecksum(byte[] buffer, int offset, int length) {
+        byte checksum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            checksum ^= buffer[i];
+        }
+        return checksum;
+    }
+
+    private static int hexValue(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+}
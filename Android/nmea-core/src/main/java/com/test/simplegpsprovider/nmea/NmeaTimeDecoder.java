@@ -0,0 +1,181 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Decodes the NMEA {@code hhmmss.sss} time and {@code ddmmyy} date fields to epoch milliseconds
+ * with integer arithmetic only.
+ * <p>
+ * The UTC day of the fixes is cached: it is taken from the RMC date whenever one is decoded and
+ * otherwise rolled over when the time of day jumps back by more than 12 hours (midnight). The
+ * clock is read only once, to guess the day when the time arrives before any date.
+ * <p>
+ * Not thread safe, one decoder per feed.
+ */
+public final class NmeaTimeDecoder {
+
+    public static final long INVALID = -1L;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long HALF_DAY = MILLIS_PER_DAY / 2;
+
+    private final LongSupplier clock;
+
+    // epoch millis of 00:00 UTC of the current day, INVALID until known
+    private long dayStart = INVALID;
+    private long lastTimeOfDay = INVALID;
+
+    public NmeaTimeDecoder() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock wall clock in epoch milliseconds, used when no date was decoded yet
+     */
+    public NmeaTimeDecoder(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Decodes a time field on the current day.
+     *
+     * @return the epoch milliseconds or {@link #INVALID}
+     */
+    public long decode(byte[] buffer, int offset, int length) {
+        long timeOfDay = parseTimeOfDay(buffer, offset, length);
+        if (timeOfDay == INVALID) {
+            return INVALID;
+        }
+        if (dayStart == INVALID) {
+            long now = clock.getAsLong();
+            long timestamp = now - Math.floorMod(now, MILLIS_PER_DAY) + timeOfDay;
+            // if we're around midnight the clock may still be on the other day
+            if (timestamp - now > HALF_DAY) {
+                timestamp -= MILLIS_PER_DAY;
+            } else if (now - timestamp > HALF_DAY) {
+                timestamp += MILLIS_PER_DAY;
+            }
+            dayStart = timestamp - timeOfDay;
+        } else if (lastTimeOfDay - timeOfDay > HALF_DAY) {
+            // passed midnight
+            dayStart += MILLIS_PER_DAY;
+        } else if (timeOfDay - lastTimeOfDay > HALF_DAY) {
+            // late sentence from before midnight, the current day doesn't change
+            return dayStart - MILLIS_PER_DAY + timeOfDay;
+        }
+        lastTimeOfDay = timeOfDay;
+        return dayStart + timeOfDay;
+    }
+
+    /**
+     * Decodes a time field with the date field that comes with it, as in RMC, and makes the date the
+     * current day. Falls back to {@link #decode(byte[], int, int)} when the date is invalid.
+     *
+     * @return the epoch milliseconds or {@link #INVALID}
+     */
+    public long decode(byte[] timeBuffer, int timeOffset, int timeLength,
+                       byte[] dateBuffer, int dateOffset, int dateLength) {
+        long date = parseDate(dateBuffer, dateOffset, dateLength);
+        if (date == INVALID) {
+            return decode(timeBuffer, timeOffset, timeLength);
+        }
+        long timeOfDay = parseTimeOfDay(timeBuffer, timeOffset, timeLength);
+        if (timeOfDay == INVALID) {
+            return INVALID;
+        }
+        dayStart = date;
+        lastTimeOfDay = timeOfDay;
+        return date + timeOfDay;
+    }
+
+    /**
+     * Forgets the current day, the next time decoded without date uses the clock again.
+     */
+    public void reset() {
+        dayStart = INVALID;
+        lastTimeOfDay = INVALID;
+    }
+
+    /**
+     * Parses {@code hhmmss} with an optional fraction of second, rounded to the millisecond.
+     *
+     * @return milliseconds since midnight or {@link #INVALID}
+     */
+    public static long parseTimeOfDay(byte[] buffer, int offset, int length) {
+        if (length < 6) {
+            return INVALID;
+        }
+        int hours = twoDigits(buffer, offset);
+        int minutes = twoDigits(buffer, offset + 2);
+        int seconds = twoDigits(buffer, offset + 4);
+        // 60 seconds happens on leap seconds
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 60) {
+            return INVALID;
+        }
+        long millis = 0;
+        if (length > 6) {
+            if (buffer[offset + 6] != '.') {
+                return INVALID;
+            }
+            int scale = 100;
+            for (int i = offset + 7; i < offset + length; i++) {
+                int digit = buffer[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return INVALID;
+                }
+                if (scale > 0) {
+                    millis += digit * scale;
+                    scale /= 10;
+                } else if (scale == 0) {
+                    // round half up on the first dropped digit
+                    if (digit >= 5) {
+                        millis++;
+                    }
+                    scale = -1;
+                }
+            }
+        }
+        return ((hours * 60L + minutes) * 60L + seconds) * 1000L + millis;
+    }
+
+    /**
+     * Parses {@code ddmmyy}, years below 80 being in the 21st century.
+     *
+     * @return epoch milliseconds of 00:00 UTC that day or {@link #INVALID}
+     */
+    public static long parseDate(byte[] buffer, int offset, int length) {
+        if (length != 6) {
+            return INVALID;
+        }
+        int day = twoDigits(buffer, offset);
+        int month = twoDigits(buffer, offset + 2);
+        int year = twoDigits(buffer, offset + 4);
+        if (day < 1 || day > 31 || month < 1 || month > 12 || year < 0) {
+            return INVALID;
+        }
+        year += year < 80 ? 2000 : 1900;
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+    }
+
+    /**
+     * @return the number of days between 1970-01-01 and the given proleptic Gregorian date
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        // shift the year to start in March so that the leap day is the last one
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    private static int twoDigits(byte[] buffer, int offset) {
+        int high = buffer[offset] - '0';
+        int low = buffer[offset + 1] - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+}
@@ -0,0 +1,67 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Worker consuming the frames queued by the {@link IngestServer} on its ring and parsing them, so
+ * that a slow parse never delays the socket reads. Every frame is parsed with the {@link NmeaParser}
+ * of its connection, attached to the frame in the ring.
+ * <p>
+ * The worker also flushes the epochs left open by feeds gone quiet, checking every parser it
+ * served at most every {@link #FLUSH_CHECK_NANOS}, whether or not other feeds keep it busy.
+ * <p>
+ * Once the last frame of a connection is parsed, the end of stream queued by the server after it
+ * ends the parser with {@link NmeaParser#endOfStream()}, still on this thread.
+ */
+public class ParserThread extends Thread {
+
+    private static final long FLUSH_CHECK_NANOS = 20_000_000L;
+
+    private final FrameRing ring;
+    private final IngestMetrics metrics;
+    // parsers of the connections pinned to this worker, released at the end of their stream
+    private final Set<NmeaParser> parsers = new HashSet<>();
+
+    public ParserThread(String name, FrameRing ring, IngestMetrics metrics) {
+        super(name);
+        this.ring = ring;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        byte[] frame = new byte[ring.getSlotSize()];
+        NmeaParser lastParser = null;
+        long nextFlushCheck = System.nanoTime() + FLUSH_CHECK_NANOS;
+        while (!isInterrupted()) {
+            int length = ring.take(frame, FLUSH_CHECK_NANOS);
+            if (length >= 0) {
+                NmeaParser parser = (NmeaParser) ring.getAttachment();
+                if (parser != lastParser) {
+                    parsers.add(parser);
+                    lastParser = parser;
+                }
+                long start = metrics.startTimer();
+                parser.parseFrame(frame, 0, length, ring.getReceivedNanos(), ring.getFramedNanos());
+                metrics.parseDone(start);
+            }
+            Object ended;
+            while ((ended = ring.pollEndOfStream()) != null) {
+                NmeaParser parser = (NmeaParser) ended;
+                parsers.remove(parser);
+                if (parser == lastParser) {
+                    lastParser = null;
+                }
+                parser.endOfStream();
+            }
+            long now = System.nanoTime();
+            if (now - nextFlushCheck >= 0) {
+                nextFlushCheck = now + FLUSH_CHECK_NANOS;
+                for (NmeaParser parser : parsers) {
+                    parser.flushStale();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.test.simplegpsprovider.nmea;
+
+/**
+ * Decodes one sentence type for a {@link NmeaParser}, see {@link NmeaParser#registerHandler(String, SentenceHandler)}.
+ */
+public interface SentenceHandler {
+
+    /**
+     * Called on the parser thread for every valid sentence of the type.
+     *
+     * @param sentence only valid during the call, fields are decoded on demand
+     */
+    void onSentence(NmeaSentence sentence);
+}
@@ -0,0 +1,148 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Reads back the records of the segments written by {@link SessionRecorder}, oldest first.
+ * <p>
+ * Segments are mapped one at a time. A segment with an unknown header, or a record running past the
+ * end of its segment, is skipped up to the next segment.
+ * <p>
+ * Not thread safe.
+ */
+public final class SessionReader implements AutoCloseable {
+
+    private final File[] files;
+    private int nextFile = 0;
+    private MappedByteBuffer segment;
+    private byte[] frame = new byte[NmeaFrameDecoder.DEFAULT_MAX_FRAME_LENGTH];
+    private int length;
+    private int feed;
+    private long receivedNanos;
+
+    /**
+     * Reads all the segments of a recording directory.
+     */
+    public SessionReader(File directory) {
+        this(segments(directory));
+    }
+
+    /**
+     * Reads the given segments, in that order.
+     */
+    public SessionReader(File[] segments) {
+        this.files = segments.clone();
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false at the end of the last segment
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (segment != null && segment.remaining() >= SessionRecorder.RECORD_HEADER_LENGTH) {
+                int position = segment.position();
+                int recordLength = segment.getInt();
+                // the feed and the stamp follow the length
+                if (recordLength > 0 && recordLength <= segment.remaining() - 12) {
+                    feed = segment.getInt();
+                    receivedNanos = segment.getLong();
+                    if (frame.length < recordLength) {
+                        frame = new byte[recordLength];
+                    }
+                    segment.get(frame, 0, recordLength);
+                    length = recordLength;
+                    return true;
+                }
+                segment.position(position);
+            }
+            if (nextFile == files.length) {
+                segment = null;
+                return false;
+            }
+            segment = map(files[nextFile++]);
+        }
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        MappedByteBuffer segment;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            segment = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+        }
+        if (segment.remaining() < SessionRecorder.SEGMENT_HEADER_LENGTH
+                || segment.getInt() != SessionRecorder.MAGIC || segment.getInt() != SessionRecorder.VERSION) {
+            return null;
+        }
+        segment.getLong();
+        return segment;
+    }
+
+    /**
+     * @return the frame of the current record, valid until the next call to {@link #next()}
+     */
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the feed the frame was received on
+     */
+    public int getFeed() {
+        return feed;
+    }
+
+    /**
+     * @return the monotonic receive stamp of the frame
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        nextFile = files.length;
+    }
+
+    /**
+     * @return the segment files of a recording directory, oldest first
+     */
+    public static File[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SessionRecorder.PREFIX)
+                && name.endsWith(SessionRecorder.SUFFIX) && number(name) >= 0);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(SessionReader::number));
+        return files;
+    }
+
+    static long number(File file) {
+        return number(file.getName());
+    }
+
+    private static long number(String name) {
+        try {
+            return Long.parseLong(name.substring(SessionRecorder.PREFIX.length(),
+                    name.length() - SessionRecorder.SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String name(long number) {
+        return String.format(Locale.ROOT, "%s%08d%s", SessionRecorder.PREFIX, number, SessionRecorder.SUFFIX);
+    }
+}
@@ -0,0 +1,193 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Always-on recorder of the received frames, appended with their feed and receive stamp to
+ * memory-mapped segment files, read back by {@link SessionReader}.
+ * <p>
+ * Recording a frame is a copy into the mapped segment, the kernel writes the pages back on its own,
+ * even if the process dies. Creating the directory, and creating, mapping and deleting the segment
+ * files, the first one included, is left to a background thread which keeps the next segment ready:
+ * neither the creating nor the recording thread waits for the file system, a frame arriving while no
+ * segment is ready is dropped from the log and counted.
+ * <p>
+ * A segment is a header ({@link #MAGIC}, version, creation time in milliseconds since the epoch)
+ * followed by records ({@code int length, int feed, long receivedNanos, byte[length] frame}), big
+ * endian. The unused tail of a segment stays zeroed, a length of 0 ends it. Segments are named
+ * {@code segment-<number>.rec}, numbered on from the ones already in the directory, and only the
+ * newest {@code maxSegments} are kept.
+ * <p>
+ * {@link #record} must always be called from the same thread, frames recorded after {@link #close}
+ * are ignored.
+ */
+public final class SessionRecorder implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(SessionRecorder.class.getSimpleName());
+
+    public static final int MAGIC = 0x53475052; // "SGPR"
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_LENGTH = 16;
+    public static final int RECORD_HEADER_LENGTH = 16;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    static final String PREFIX = "segment-";
+    static final String SUFFIX = ".rec";
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ExecutorService allocator;
+    private final AtomicReference<MappedByteBuffer> next = new AtomicReference<>();
+    private volatile boolean closed = false;
+    // allocator thread only, -1 until the directory is listed
+    private long nextNumber = -1;
+
+    // recording thread only
+    private MappedByteBuffer current;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+
+    /**
+     * Records with {@link #DEFAULT_SEGMENT_SIZE} and {@link #DEFAULT_MAX_SEGMENTS}.
+     */
+    public SessionRecorder(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Starts the background thread, which creates the directory if needed and maps the first segment.
+     *
+     * @param segmentSize size of every segment file
+     * @param maxSegments segments kept, the oldest ones are deleted, at least 2: the one being recorded and
+     *                    the one ready next
+     */
+    public SessionRecorder(File directory, int segmentSize, int maxSegments) {
+        if (segmentSize < SEGMENT_HEADER_LENGTH + RECORD_HEADER_LENGTH + NmeaFrameDecoder.DEFAULT_MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Segment too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+        allocator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SessionRecorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        allocator.execute(this::prepareNext);
+    }
+
+    /**
+     * Appends a frame to the log.
+     *
+     * @param feed          identifies the connection, replayed as one stream per feed
+     * @param receivedNanos monotonic receive stamp, paces the replay
+     */
+    public void record(int feed, byte[] buffer, int offset, int length, long receivedNanos) {
+        if (closed) {
+            return;
+        }
+        MappedByteBuffer segment = current;
+        if (segment == null || segment.remaining() < RECORD_HEADER_LENGTH + length) {
+            segment = next.getAndSet(null);
+            if (segment == null) {
+                dropped.incrementAndGet();
+                return;
+            }
+            current = segment;
+            try {
+                allocator.execute(this::prepareNext);
+            } catch (RejectedExecutionException e) {
+                // closed meanwhile, the segment taken is still recorded
+            }
+        }
+        segment.putInt(length).putInt(feed).putLong(receivedNanos).put(buffer, offset, length);
+        recorded.incrementAndGet();
+    }
+
+    private void prepareNext() {
+        if (closed) {
+            return;
+        }
+        try {
+            next.set(allocate());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Can't create the next segment", e);
+        }
+    }
+
+    private MappedByteBuffer allocate() throws IOException {
+        if (nextNumber < 0) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can't create " + directory);
+            }
+            File[] existing = SessionReader.segments(directory);
+            nextNumber = existing.length == 0 ? 0 : SessionReader.number(existing[existing.length - 1]) + 1;
+        }
+        File file = new File(directory, SessionReader.name(nextNumber++));
+        MappedByteBuffer segment;
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(segmentSize);
+            // the mapping outlives the channel
+            segment = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+        segments.incrementAndGet();
+        File[] existing = SessionReader.segments(directory);
+        // the segment being recorded and the one ready next are among the kept ones
+        for (File old : Arrays.copyOf(existing, Math.max(0, existing.length - maxSegments))) {
+            if (!old.delete()) {
+                LOGGER.warning("Can't delete " + old);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * Stops the background thread, the frames recorded afterwards are ignored. The segments recorded so
+     * far stay on disk.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        allocator.shutdown();
+        current = null;
+    }
+
+    /**
+     * @return the number of frames recorded
+     */
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    /**
+     * @return the number of frames not recorded because no segment was ready, e.g. the first ones while
+     * the first segment is mapped
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of segments created
+     */
+    public long getSegments() {
+        return segments.get();
+    }
+}
@@ -0,0 +1,139 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays back a recording of {@link SessionRecorder}, frame by frame, paced on the receive stamps.
+ * <p>
+ * At a speed of 1 the frames are handed out with the gaps they were received with, at N they come
+ * N times faster, and at {@link #AS_FAST_AS_POSSIBLE} without any wait. A frame without stamp is
+ * handed out right after the previous one, without any wait of its own. The frames go to a {@link Sink}, e.g. a parser for a regression run, or
+ * {@link SocketSink} to stream them to the ingest server like live feeds, one connection per
+ * recorded feed, through the same decoding, parsing and delivery path.
+ * <p>
+ * From the command line: {@code SessionReplay <recording directory> <host> [port] [speed]}.
+ */
+public final class SessionReplay {
+
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    /**
+     * Receives the replayed frames, the slice is only valid during the call.
+     */
+    public interface Sink {
+        void onFrame(int feed, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final SessionReader reader;
+    private final double speed;
+    private long frames = 0;
+
+    /**
+     * @param speed playback speed, {@link #AS_FAST_AS_POSSIBLE} not to wait
+     */
+    public SessionReplay(SessionReader reader, double speed) {
+        if (speed < 0 || Double.isNaN(speed)) {
+            throw new IllegalArgumentException("Invalid speed: " + speed);
+        }
+        this.reader = reader;
+        this.speed = speed;
+    }
+
+    /**
+     * Plays the whole recording on the calling thread.
+     */
+    public void run(Sink sink) throws IOException {
+        long firstStamp = 0;
+        long start = 0;
+        while (reader.next()) {
+            long stamp = reader.getReceivedNanos();
+            if (speed > 0 && stamp != 0) {
+                if (firstStamp == 0) {
+                    firstStamp = stamp;
+                    start = System.nanoTime();
+                }
+                long due = start + (long) ((stamp - firstStamp) / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new IOException("Replay interrupted");
+                    }
+                }
+            }
+            sink.onFrame(reader.getFeed(), reader.getFrame(), 0, reader.getLength());
+            frames++;
+        }
+    }
+
+    /**
+     * @return the number of frames played so far
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Streams the frames to an ingest server, one connection per recorded feed, NMEA sentences being
+     * terminated again with {@code \r\n}.
+     */
+    public static final class SocketSink implements Sink, AutoCloseable {
+        private static final byte[] TERMINATOR = {'\r', '\n'};
+
+        private final InetSocketAddress address;
+        private final Map<Integer, Socket> sockets = new HashMap<>();
+        private final Map<Integer, OutputStream> outputs = new HashMap<>();
+
+        public SocketSink(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        public void onFrame(int feed, byte[] buffer, int offset, int length) throws IOException {
+            OutputStream output = outputs.get(feed);
+            if (output == null) {
+                Socket socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(address);
+                sockets.put(feed, socket);
+                output = socket.getOutputStream();
+                outputs.put(feed, output);
+            }
+            output.write(buffer, offset, length);
+            if (!UbxMessage.isUbx(buffer, offset, length)) {
+                output.write(TERMINATOR);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Socket socket : sockets.values()) {
+                socket.close();
+            }
+            sockets.clear();
+            outputs.clear();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SessionReplay <recording directory> <host> [port] [speed, 0 for as fast as possible]");
+            System.exit(2);
+        }
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 5897;
+        double speed = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+        SessionReplay replay = new SessionReplay(new SessionReader(new File(args[0])), speed);
+        long start = System.nanoTime();
+        try (SocketSink sink = new SocketSink(new InetSocketAddress(args[1], port))) {
+            replay.run(sink);
+        }
+        System.out.printf("%d frames in %.3f s%n", replay.getFrames(), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,101 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a single talker per fix sentence type and epoch.
+ * <p>
+ * Multi-GNSS receivers may send the same sentence for the combined solution ({@code GN}) and for
+ * each constellation ({@code GP}, {@code GL}, ...). Within an epoch, recognized by the time field,
+ * the preferred talker is kept whenever it sent the type in the previous epoch, otherwise the first
+ * talker seen in the epoch is, so the fix never mixes the values of two talkers. The others are
+ * duplicates, dropped once validated, before their fields are decoded. Only valid sentences are
+ * given to the filter: a corrupted one neither wins the type nor starts an epoch.
+ * <p>
+ * Not thread safe, one instance per {@link NmeaParser}.
+ */
+final class TalkerFilter {
+
+    /**
+     * Field of the time in the fix sentences.
+     */
+    static final int TIME = 1;
+
+    private static final int TIME_CAPACITY = 16;
+
+    private int preferred;
+
+    // per IngestMetrics.TYPE_, state of the current epoch of the type
+    private final byte[][] epochTime = new byte[IngestMetrics.TYPE_NAMES.length][TIME_CAPACITY];
+    private final int[] epochTimeLength = new int[IngestMetrics.TYPE_NAMES.length];
+    private final int[] acceptedTalker = new int[IngestMetrics.TYPE_NAMES.length];
+    private final boolean[] preferredSeen = new boolean[IngestMetrics.TYPE_NAMES.length];
+    private final boolean[] preferredExpected = new boolean[IngestMetrics.TYPE_NAMES.length];
+
+    TalkerFilter(String preferredTalker) {
+        setPreferred(preferredTalker);
+    }
+
+    void setPreferred(String talker) {
+        if (talker.length() != 2) {
+            throw new IllegalArgumentException("Not a talker: " + talker);
+        }
+        preferred = talker.charAt(0) << 8 | talker.charAt(1);
+    }
+
+    /**
+     * @return the 2 talker characters of a sentence with a valid header, packed in an int
+     */
+    static int talker(byte[] buffer, int offset) {
+        return (buffer[offset + 1] & 0xFF) << 8 | buffer[offset + 2] & 0xFF;
+    }
+
+    /**
+     * @param type   one of the {@code IngestMetrics.TYPE_} constants
+     * @param talker value of {@link #talker(byte[], int)}
+     * @return false when another talker already provides the type in this epoch
+     */
+    boolean accept(int type, int talker, byte[] buffer, int timeOffset, int timeLength) {
+        if (!isEpochTime(type, buffer, timeOffset, timeLength)) {
+            int length = Math.min(timeLength, TIME_CAPACITY);
+            System.arraycopy(buffer, timeOffset, epochTime[type], 0, length);
+            epochTimeLength[type] = length;
+            preferredExpected[type] = preferredSeen[type];
+            preferredSeen[type] = false;
+            acceptedTalker[type] = 0;
+        }
+        if (talker == preferred) {
+            // expected in the next epoch, even when another talker came first in this one
+            preferredSeen[type] = true;
+        } else if (preferredExpected[type]) {
+            return false;
+        }
+        if (acceptedTalker[type] == 0) {
+            acceptedTalker[type] = talker;
+        }
+        return acceptedTalker[type] == talker;
+    }
+
+    /**
+     * Called for an invalid sentence, which may have been the one of the preferred talker: it is no
+     * longer expected, the first talker is kept again until it is seen, instead of the types being
+     * left without any sentence for the epoch.
+     */
+    void invalid() {
+        Arrays.fill(preferredExpected, false);
+        Arrays.fill(preferredSeen, false);
+    }
+
+    private boolean isEpochTime(int type, byte[] buffer, int offset, int length) {
+        if (length != epochTimeLength[type] || length == 0) {
+            return false;
+        }
+        byte[] time = epochTime[type];
+        for (int i = 0; i < length; i++) {
+            if (buffer[offset + i] != time[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
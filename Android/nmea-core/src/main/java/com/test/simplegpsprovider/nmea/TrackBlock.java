@@ -0,0 +1,233 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Columnar block of the fixes of one feed, as stored by {@link TrackStore}.
+ * <p>
+ * Every value is stored as an integer at a fixed resolution: milliseconds, 1e-7 degree for the
+ * position, centimeters, centimeters per second and centidegrees. Each one goes to its own column as
+ * the zig-zag varint of its difference with the previous value of the column, so that the slowly
+ * changing values of a track take a byte or two per fix. A value missing from a fix, as told by its
+ * flags, is not stored at all. Layout, big endian:
+ * <pre>
+ * i32 length          bytes following this field
+ * i32 feed
+ * i32 count           fixes in the block
+ * i64 firstTime       time of the first fix, milliseconds since the epoch
+ * i64 lastTime        time of the last fix
+ * i32[COLUMNS]        length of every column, in the order below
+ * ...                 flags, time, latitude, longitude, altitude, speed, bearing, accuracy, satellites
+ * </pre>
+ * Not thread safe.
+ */
+final class TrackBlock {
+
+    static final int COLUMNS = 9;
+    static final int HEADER_LENGTH = 28 + 4 * COLUMNS;
+    // the widest fix: a byte of flags and a varint of at most 10 bytes per value
+    static final int MAX_FIX_LENGTH = 1 + 10 * (COLUMNS - 1);
+
+    private static final int FLAGS = 0;
+    private static final int TIME = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 3;
+    private static final int ALTITUDE = 4;
+    private static final int SPEED = 5;
+    private static final int BEARING = 6;
+    private static final int ACCURACY = 7;
+    private static final int SATELLITES = 8;
+
+    private final int feed;
+    private final byte[][] columns = new byte[COLUMNS][];
+    private final int[] lengths = new int[COLUMNS];
+    // last value of every column, the base of the next difference
+    private final long[] previous = new long[COLUMNS];
+    private int count = 0;
+    private long firstTime;
+    private long lastTime;
+
+    TrackBlock(int feed) {
+        this.feed = feed;
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new byte[256];
+        }
+    }
+
+    void append(GpsFix fix) {
+        int flags = 0;
+        for (int flag = GpsFix.HAS_POSITION; flag <= GpsFix.HAS_SATELLITES; flag <<= 1) {
+            if (fix.hasAll(flag)) {
+                flags |= flag;
+            }
+        }
+        if (count == 0) {
+            firstTime = fix.getTime();
+        }
+        lastTime = fix.getTime();
+        count++;
+        putVarint(FLAGS, flags);
+        putDelta(TIME, fix.getTime());
+        if ((flags & GpsFix.HAS_POSITION) != 0) {
+            putDelta(LATITUDE, Math.round(fix.getLatitude() * 1e7));
+            putDelta(LONGITUDE, Math.round(fix.getLongitude() * 1e7));
+        }
+        if ((flags & GpsFix.HAS_ALTITUDE) != 0) {
+            putDelta(ALTITUDE, Math.round(fix.getAltitude() * 100));
+        }
+        if ((flags & GpsFix.HAS_SPEED) != 0) {
+            putDelta(SPEED, Math.round(fix.getSpeed() * 100.0));
+        }
+        if ((flags & GpsFix.HAS_BEARING) != 0) {
+            putDelta(BEARING, Math.round(fix.getBearing() * 100.0));
+        }
+        if ((flags & GpsFix.HAS_ACCURACY) != 0) {
+            putDelta(ACCURACY, Math.round(fix.getAccuracy() * 100.0));
+        }
+        if ((flags & GpsFix.HAS_SATELLITES) != 0) {
+            putDelta(SATELLITES, fix.getSatellites());
+        }
+    }
+
+    private void putDelta(int column, long value) {
+        long delta = value - previous[column];
+        previous[column] = value;
+        // zig-zag: small negative differences stay small
+        putVarint(column, delta << 1 ^ delta >> 63);
+    }
+
+    private void putVarint(int column, long value) {
+        byte[] bytes = columns[column];
+        int length = lengths[column];
+        if (bytes.length - length < 10) {
+            bytes = columns[column] = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        while ((value & ~0x7FL) != 0) {
+            bytes[length++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+        lengths[column] = length;
+    }
+
+    int getFeed() {
+        return feed;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getFirstTime() {
+        return firstTime;
+    }
+
+    /**
+     * @return the bytes taken by the block once written
+     */
+    int length() {
+        int length = HEADER_LENGTH;
+        for (int i = 0; i < COLUMNS; i++) {
+            length += lengths[i];
+        }
+        return length;
+    }
+
+    /**
+     * Writes the block and empties it for the next fixes. The length goes last: a block cut short by
+     * a crash keeps a length of 0 and ends its segment.
+     */
+    void writeTo(ByteBuffer output) {
+        int start = output.position();
+        int length = length();
+        output.position(start + 4);
+        output.putInt(feed).putInt(count).putLong(firstTime).putLong(lastTime);
+        for (int i = 0; i < COLUMNS; i++) {
+            output.putInt(lengths[i]);
+        }
+        for (int i = 0; i < COLUMNS; i++) {
+            output.put(columns[i], 0, lengths[i]);
+            lengths[i] = 0;
+            previous[i] = 0;
+        }
+        count = 0;
+        output.putInt(start, length - 4);
+    }
+
+    /**
+     * Decodes the block starting at the position of {@code input}, which is left after it.
+     *
+     * @param fix reused for every fix of the block
+     * @return false when the visitor stopped the decoding
+     */
+    static boolean decode(ByteBuffer input, GpsFix fix, long fromMillis, long toMillis, TrackReader.Visitor visitor)
+            throws IOException {
+        int start = input.position();
+        int end = start + 4 + input.getInt();
+        int feed = input.getInt();
+        int count = input.getInt();
+        input.position(start + 28);
+        int[] offsets = new int[COLUMNS];
+        int offset = start + HEADER_LENGTH;
+        for (int i = 0; i < COLUMNS; i++) {
+            offsets[i] = offset;
+            offset += input.getInt();
+        }
+        long[] values = new long[COLUMNS];
+        try {
+            for (int n = 0; n < count; n++) {
+                int flags = (int) getVarint(input, offsets, FLAGS);
+                long time = getDelta(input, offsets, values, TIME);
+                fix.reset();
+                fix.setTime(time);
+                if ((flags & GpsFix.HAS_POSITION) != 0) {
+                    fix.setLatitude(getDelta(input, offsets, values, LATITUDE) / 1e7);
+                    fix.setLongitude(getDelta(input, offsets, values, LONGITUDE) / 1e7);
+                }
+                if ((flags & GpsFix.HAS_ALTITUDE) != 0) {
+                    fix.setAltitude(getDelta(input, offsets, values, ALTITUDE) / 100.0);
+                }
+                if ((flags & GpsFix.HAS_SPEED) != 0) {
+                    fix.setSpeed(getDelta(input, offsets, values, SPEED) / 100f);
+                }
+                if ((flags & GpsFix.HAS_BEARING) != 0) {
+                    fix.setBearing(getDelta(input, offsets, values, BEARING) / 100f);
+                }
+                if ((flags & GpsFix.HAS_ACCURACY) != 0) {
+                    fix.setAccuracy(getDelta(input, offsets, values, ACCURACY) / 100f);
+                }
+                if ((flags & GpsFix.HAS_SATELLITES) != 0) {
+                    fix.setSatellites((int) getDelta(input, offsets, values, SATELLITES));
+                }
+                if (time >= fromMillis && time <= toMillis && !visitor.onFix(feed, fix)) {
+                    return false;
+                }
+            }
+        } finally {
+            input.position(end);
+        }
+        return true;
+    }
+
+    private static long getDelta(ByteBuffer input, int[] offsets, long[] values, int column) {
+        long zigzag = getVarint(input, offsets, column);
+        values[column] += zigzag >>> 1 ^ -(zigzag & 1);
+        return values[column];
+    }
+
+    private static long getVarint(ByteBuffer input, int[] offsets, int column) {
+        int offset = offsets[column];
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = input.get(offset++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        offsets[column] = offset;
+        return value;
+    }
+}
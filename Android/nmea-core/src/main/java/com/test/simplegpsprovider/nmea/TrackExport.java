@@ -0,0 +1,157 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Streams the fixes of a {@link TrackReader} query to CSV or GPX, a fix at a time, whatever the
+ * length of the track.
+ * <p>
+ * From the command line: {@code TrackExport <track directory> csv|gpx [feed] [from millis] [to millis]},
+ * written to the standard output.
+ */
+public final class TrackExport {
+
+    public static final String CSV = "csv";
+    public static final String GPX = "gpx";
+
+    private TrackExport() {
+    }
+
+    /**
+     * One line per fix, with a header line; missing values are left empty.
+     */
+    public static final class Csv implements TrackReader.Visitor, AutoCloseable {
+        private final Writer output;
+        private final StringBuilder line = new StringBuilder(128);
+
+        public Csv(Writer output) throws IOException {
+            this.output = output;
+            output.write("feed,time,latitude,longitude,altitude,speed,bearing,accuracy,satellites\n");
+        }
+
+        @Override
+        public boolean onFix(int feed, GpsFix fix) throws IOException {
+            line.setLength(0);
+            line.append(feed).append(',').append(fix.getTime()).append(',');
+            if (fix.hasPosition()) {
+                line.append(format("%.7f", fix.getLatitude())).append(',')
+                        .append(format("%.7f", fix.getLongitude()));
+            } else {
+                line.append(',');
+            }
+            line.append(',');
+            if (fix.hasAltitude()) {
+                line.append(format("%.2f", fix.getAltitude()));
+            }
+            line.append(',');
+            if (fix.hasSpeed()) {
+                line.append(format("%.2f", fix.getSpeed()));
+            }
+            line.append(',');
+            if (fix.hasBearing()) {
+                line.append(format("%.2f", fix.getBearing()));
+            }
+            line.append(',');
+            if (fix.hasAccuracy()) {
+                line.append(format("%.2f", fix.getAccuracy()));
+            }
+            line.append(',');
+            if (fix.hasSatellites()) {
+                line.append(fix.getSatellites());
+            }
+            output.append(line).append('\n');
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.flush();
+        }
+    }
+
+    /**
+     * A GPX 1.1 track with one segment, for the fixes of a single feed. Fixes without position are
+     * skipped, speed and bearing have no GPX 1.1 element and are left out.
+     */
+    public static final class Gpx implements TrackReader.Visitor, AutoCloseable {
+        private final Writer output;
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT);
+        private final Date date = new Date();
+
+        public Gpx(Writer output, String name) throws IOException {
+            this.output = output;
+            timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<gpx version=\"1.1\" creator=\"SimpleGPSProvider\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n"
+                    + "<trk><name>" + name.replace("&", "&amp;").replace("<", "&lt;") + "</name><trkseg>\n");
+        }
+
+        @Override
+        public boolean onFix(int feed, GpsFix fix) throws IOException {
+            if (!fix.hasPosition()) {
+                return true;
+            }
+            date.setTime(fix.getTime());
+            output.write(format("<trkpt lat=\"%.7f\" lon=\"%.7f\">", fix.getLatitude(), fix.getLongitude()));
+            if (fix.hasAltitude()) {
+                output.write(format("<ele>%.2f</ele>", fix.getAltitude()));
+            }
+            output.write("<time>" + timeFormat.format(date) + "</time>");
+            if (fix.hasSatellites()) {
+                output.write("<sat>" + fix.getSatellites() + "</sat>");
+            }
+            output.write("</trkpt>\n");
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.write("</trkseg></trk>\n</gpx>\n");
+            output.flush();
+        }
+    }
+
+    private static String format(String format, Object... values) {
+        return String.format(Locale.ROOT, format, values);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !CSV.equals(args[1]) && !GPX.equals(args[1])) {
+            System.err.println("Usage: TrackExport <track directory> csv|gpx [feed, -1 for all] [from millis] [to millis]");
+            System.exit(2);
+        }
+        int feed = args.length > 2 ? Integer.parseInt(args[2]) : TrackReader.ANY_FEED;
+        long from = args.length > 3 ? Long.parseLong(args[3]) : Long.MIN_VALUE;
+        long to = args.length > 4 ? Long.parseLong(args[4]) : Long.MAX_VALUE;
+        Writer output = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+        try (TrackReader reader = new TrackReader(new File(args[0]))) {
+            if (CSV.equals(args[1])) {
+                try (Csv csv = new Csv(output)) {
+                    reader.query(from, to, feed, csv);
+                }
+            } else {
+                if (feed == TrackReader.ANY_FEED) {
+                    int[] feeds = reader.getFeeds();
+                    if (feeds.length != 1) {
+                        System.err.println("A GPX track holds one feed, pick one of " + Arrays.toString(feeds));
+                        System.exit(2);
+                    }
+                    feed = feeds[0];
+                }
+                try (Gpx gpx = new Gpx(output, "feed " + feed)) {
+                    reader.query(from, to, feed, gpx);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Time range queries over the segments written by {@link TrackStore}.
+ * <p>
+ * Opening the reader maps the segments and walks their block headers only, skipping the columns,
+ * into a sparse time index of one entry per block sorted by the time of its first fix. A query
+ * binary searches the index for the blocks overlapping its range and only decodes those, the fixes
+ * being streamed to a {@link Visitor} through a single reused {@link GpsFix}. The fixes of a feed come
+ * in the order they were stored, blocks of several feeds may interleave.
+ * <p>
+ * The reader sees the blocks written when it was opened. A segment with an unknown header, or a
+ * block running past the end of its segment, is skipped up to the next segment. Not thread safe.
+ */
+public final class TrackReader implements AutoCloseable {
+
+    /**
+     * All the feeds, for {@link #query}.
+     */
+    public static final int ANY_FEED = -1;
+
+    /**
+     * Receives the fixes of a query, valid during the call only.
+     */
+    public interface Visitor {
+        /**
+         * @return false to stop the query
+         */
+        boolean onFix(int feed, GpsFix fix) throws IOException;
+    }
+
+    private final MappedByteBuffer[] segments;
+    // the index, sorted by first time
+    private final long[] firstTimes;
+    private final long[] lastTimes;
+    // highest last time up to every entry, the lower bound of a range is binary searched on it
+    private final long[] maxLastTimes;
+    private final int[] feeds;
+    private final int[] segmentIndexes;
+    private final int[] offsets;
+    private final int[] counts;
+    private final GpsFix fix = new GpsFix();
+
+    /**
+     * Reads all the segments of a track directory.
+     */
+    public TrackReader(File directory) throws IOException {
+        this(segments(directory));
+    }
+
+    /**
+     * Reads the given segments.
+     */
+    public TrackReader(File[] files) throws IOException {
+        List<MappedByteBuffer> mapped = new ArrayList<>();
+        List<long[]> entries = new ArrayList<>();
+        for (File file : files) {
+            MappedByteBuffer segment = map(file);
+            if (segment == null) {
+                continue;
+            }
+            int segmentIndex = mapped.size();
+            mapped.add(segment);
+            int position = TrackStore.SEGMENT_HEADER_LENGTH;
+            while (segment.limit() - position >= TrackBlock.HEADER_LENGTH) {
+                int length = segment.getInt(position);
+                if (length < TrackBlock.HEADER_LENGTH - 4 || length > segment.limit() - position - 4) {
+                    break;
+                }
+                // first time, last time, feed, segment, offset, count
+                entries.add(new long[]{segment.getLong(position + 12), segment.getLong(position + 20),
+                        segment.getInt(position + 4), segmentIndex, position, segment.getInt(position + 8)});
+                position += 4 + length;
+            }
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry[0]));
+        segments = mapped.toArray(new MappedByteBuffer[0]);
+        int size = entries.size();
+        firstTimes = new long[size];
+        lastTimes = new long[size];
+        maxLastTimes = new long[size];
+        feeds = new int[size];
+        segmentIndexes = new int[size];
+        offsets = new int[size];
+        counts = new int[size];
+        long maxLastTime = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            long[] entry = entries.get(i);
+            firstTimes[i] = entry[0];
+            lastTimes[i] = entry[1];
+            maxLastTime = Math.max(maxLastTime, entry[1]);
+            maxLastTimes[i] = maxLastTime;
+            feeds[i] = (int) entry[2];
+            segmentIndexes[i] = (int) entry[3];
+            offsets[i] = (int) entry[4];
+            counts[i] = (int) entry[5];
+        }
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        MappedByteBuffer segment;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            segment = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+        }
+        if (segment.remaining() < TrackStore.SEGMENT_HEADER_LENGTH
+                || segment.getInt(0) != TrackStore.MAGIC || segment.getInt(4) != TrackStore.VERSION) {
+            return null;
+        }
+        return segment;
+    }
+
+    /**
+     * Streams the fixes of a time range, bounds included.
+     *
+     * @param feed only the fixes of this feed, {@link #ANY_FEED} for all
+     * @return the number of fixes handed to the visitor
+     */
+    public long query(long fromMillis, long toMillis, int feed, Visitor visitor) throws IOException {
+        // first block that may end in the range
+        int low = 0;
+        int high = maxLastTimes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (maxLastTimes[middle] < fromMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        Counter counter = new Counter(visitor);
+        for (int i = low; i < firstTimes.length && firstTimes[i] <= toMillis; i++) {
+            if (lastTimes[i] < fromMillis || (feed != ANY_FEED && feeds[i] != feed)) {
+                continue;
+            }
+            MappedByteBuffer segment = segments[segmentIndexes[i]];
+            segment.position(offsets[i]);
+            if (!TrackBlock.decode(segment, fix, fromMillis, toMillis, counter)) {
+                break;
+            }
+        }
+        return counter.count;
+    }
+
+    /**
+     * @return the number of blocks in the index
+     */
+    public int getBlocks() {
+        return firstTimes.length;
+    }
+
+    /**
+     * @return the number of fixes stored
+     */
+    public long getFixes() {
+        long fixes = 0;
+        for (int count : counts) {
+            fixes += count;
+        }
+        return fixes;
+    }
+
+    /**
+     * @return the time of the first fix stored, 0 if none
+     */
+    public long getFirstTime() {
+        return firstTimes.length == 0 ? 0 : firstTimes[0];
+    }
+
+    /**
+     * @return the time of the last fix stored, 0 if none
+     */
+    public long getLastTime() {
+        return maxLastTimes.length == 0 ? 0 : maxLastTimes[maxLastTimes.length - 1];
+    }
+
+    /**
+     * @return the feeds stored, ascending
+     */
+    public int[] getFeeds() {
+        return Arrays.stream(feeds).distinct().sorted().toArray();
+    }
+
+    @Override
+    public void close() {
+        Arrays.fill(segments, null);
+    }
+
+    /**
+     * @return the segment files of a track directory, oldest first
+     */
+    public static File[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(TrackStore.PREFIX)
+                && name.endsWith(TrackStore.SUFFIX) && number(name) >= 0);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(TrackReader::number));
+        return files;
+    }
+
+    static long number(File file) {
+        return number(file.getName());
+    }
+
+    private static long number(String name) {
+        try {
+            return Long.parseLong(name.substring(TrackStore.PREFIX.length(),
+                    name.length() - TrackStore.SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String name(long number) {
+        return String.format(Locale.ROOT, "%s%08d%s", TrackStore.PREFIX, number, TrackStore.SUFFIX);
+    }
+
+    private static final class Counter implements Visitor {
+        final Visitor visitor;
+        long count = 0;
+
+        Counter(Visitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public boolean onFix(int feed, GpsFix fix) throws IOException {
+            count++;
+            return visitor.onFix(feed, fix);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only store of the fix history of every feed, at full rate, read back by {@link TrackReader}.
+ * <p>
+ * The fixes of a feed are gathered into a columnar {@link TrackBlock} of up to {@link #BLOCK_FIXES}
+ * fixes, or {@link #BLOCK_SECONDS} of wall time, then appended to memory-mapped segment files. A
+ * track at 10 Hz takes a few bytes per fix instead of the hundreds of a text log or of
+ * {@code Location} objects.
+ * <p>
+ * {@link #append} only copies the fix into a pooled slot and queues it, from any thread: the
+ * encoding and the file system work, creating the directory included, are left to the thread of the
+ * store, so neither the creating nor the parse thread waits for them. A fix arriving while all the slots are queued is dropped and counted. The open
+ * block of a feed is also written by {@link #closeFeed}, so that a block never mixes two feeds
+ * given the same number one after the other.
+ * <p>
+ * A segment is a header ({@link #MAGIC}, version, creation time in milliseconds since the epoch)
+ * followed by blocks, big endian. The unused tail of a segment stays zeroed, a length of 0 ends it.
+ * Segments are named {@code track-<number>.trk}, numbered on from the ones already in the directory,
+ * and only the newest {@code maxSegments} are kept.
+ */
+public final class TrackStore implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(TrackStore.class.getSimpleName());
+
+    public static final int MAGIC = 0x53475054; // "SGPT"
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_LENGTH = 16;
+
+    public static final int BLOCK_FIXES = 256;
+    public static final int BLOCK_SECONDS = 10;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 32;
+
+    static final String PREFIX = "track-";
+    static final String SUFFIX = ".trk";
+
+    private static final int QUEUE_CAPACITY = 1024;
+    // longest wait of close for the thread of the store, called on the main thread
+    private static final long CLOSE_MILLIS = 1000;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    // every pooled slot plus as many ends of feed
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY * 2);
+    private final BlockingQueue<Pending> pool = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    // writer thread only, the number -1 until the directory is listed
+    private long nextNumber = -1;
+    private MappedByteBuffer segment;
+    // open block of every feed, by feed number
+    private TrackBlock[] blocks = new TrackBlock[4];
+    private long[] blockStartNanos = new long[4];
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong blocksWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * Stores with {@link #DEFAULT_SEGMENT_SIZE} and {@link #DEFAULT_MAX_SEGMENTS}.
+     */
+    public TrackStore(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Starts the thread of the store, which creates the directory if needed.
+     *
+     * @param segmentSize size of every segment file, a full block must fit
+     * @param maxSegments segments kept, the oldest ones are deleted
+     */
+    public TrackStore(File directory, int segmentSize, int maxSegments) {
+        if (segmentSize < SEGMENT_HEADER_LENGTH + TrackBlock.HEADER_LENGTH + BLOCK_FIXES * TrackBlock.MAX_FIX_LENGTH) {
+            throw new IllegalArgumentException("Segment too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            pool.add(new Pending());
+        }
+        writer = new Thread(this::run, "TrackStore");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a fix of a feed, from any thread. Fixes without time are ignored.
+     *
+     * @param feed identifies the track, e.g. the feed number of the provider
+     */
+    public void append(int feed, GpsFix fix) {
+        if (closed || fix.getTime() == 0) {
+            return;
+        }
+        Pending pending = pool.poll();
+        if (pending == null) {
+            dropped.incrementAndGet();
+            return;
+        }
+        pending.feed = feed;
+        pending.fix.set(fix);
+        // as many slots as room in the queue
+        queue.offer(pending);
+        appended.incrementAndGet();
+    }
+
+    /**
+     * Writes the open block of a feed after its queued fixes, from any thread, e.g. when the feed
+     * closes and its number may go to the next one.
+     */
+    public void closeFeed(int feed) {
+        if (closed) {
+            return;
+        }
+        Pending end = new Pending();
+        end.feed = feed;
+        end.end = true;
+        // with the queue full of ends, the block only closes with the next fixes of the number
+        queue.offer(end);
+    }
+
+    private void run() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Pending pending = queue.poll(1, TimeUnit.SECONDS);
+                if (pending != null && pending.end) {
+                    writeBlock(pending.feed);
+                } else if (pending != null) {
+                    encode(pending.feed, pending.fix);
+                    pool.offer(pending);
+                }
+                flushAged(System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            // closed, the open blocks are still written
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Track store stopped", e);
+        } finally {
+            try {
+                for (TrackBlock block : blocks) {
+                    if (block != null && block.getCount() > 0) {
+                        write(block);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Can't write the last blocks", e);
+            }
+            if (segment != null) {
+                segment.force();
+                segment = null;
+            }
+        }
+    }
+
+    private void encode(int feed, GpsFix fix) throws IOException {
+        if (feed >= blocks.length) {
+            int length = Math.max(feed + 1, blocks.length * 2);
+            blocks = Arrays.copyOf(blocks, length);
+            blockStartNanos = Arrays.copyOf(blockStartNanos, length);
+        }
+        TrackBlock block = blocks[feed];
+        if (block == null) {
+            block = blocks[feed] = new TrackBlock(feed);
+        }
+        if (block.getCount() == 0) {
+            blockStartNanos[feed] = System.nanoTime();
+        }
+        block.append(fix);
+        written.incrementAndGet();
+        if (block.getCount() == BLOCK_FIXES) {
+            write(block);
+        }
+    }
+
+    private void writeBlock(int feed) throws IOException {
+        if (feed < blocks.length && blocks[feed] != null && blocks[feed].getCount() > 0) {
+            write(blocks[feed]);
+        }
+    }
+
+    /**
+     * Writes the blocks open for {@link #BLOCK_SECONDS}, so that a crash only loses the last seconds.
+     */
+    private void flushAged(long now) throws IOException {
+        for (int feed = 0; feed < blocks.length; feed++) {
+            TrackBlock block = blocks[feed];
+            if (block != null && block.getCount() > 0
+                    && now - blockStartNanos[feed] >= TimeUnit.SECONDS.toNanos(BLOCK_SECONDS)) {
+                write(block);
+            }
+        }
+    }
+
+    private void write(TrackBlock block) throws IOException {
+        int length = block.length();
+        if (segment == null || segment.remaining() < length) {
+            if (segment != null) {
+                segment.force();
+            }
+            segment = allocate();
+        }
+        block.writeTo(segment);
+        blocksWritten.incrementAndGet();
+        bytesWritten.addAndGet(length);
+    }
+
+    private MappedByteBuffer allocate() throws IOException {
+        if (nextNumber < 0) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can't create " + directory);
+            }
+            File[] existing = TrackReader.segments(directory);
+            nextNumber = existing.length == 0 ? 0 : TrackReader.number(existing[existing.length - 1]) + 1;
+        }
+        File file = new File(directory, TrackReader.name(nextNumber++));
+        MappedByteBuffer mapped;
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(segmentSize);
+            // the mapping outlives the channel
+            mapped = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        mapped.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+        File[] existing = TrackReader.segments(directory);
+        for (File old : Arrays.copyOf(existing, Math.max(0, existing.length - maxSegments))) {
+            if (!old.delete()) {
+                LOGGER.warning("Can't delete " + old);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Writes the queued fixes and the open blocks, then stops the thread of the store. Waits for it
+     * {@value #CLOSE_MILLIS} ms at most, or until the calling thread is interrupted, which keeps its
+     * interrupt status: the store then finishes on its own thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(CLOSE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            LOGGER.warning("Track store still writing");
+        }
+    }
+
+    /**
+     * @return the number of fixes queued
+     */
+    public long getAppended() {
+        return appended.get();
+    }
+
+    /**
+     * @return the number of fixes dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of fixes encoded, the ones of the open blocks included
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return the number of blocks written
+     */
+    public long getBlocks() {
+        return blocksWritten.get();
+    }
+
+    /**
+     * @return the number of bytes of the blocks written
+     */
+    public long getBytes() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Queued fix, pooled, or end of a feed.
+     */
+    private static final class Pending {
+        int feed;
+        boolean end;
+        final GpsFix fix = new GpsFix();
+    }
+}
@@ -0,0 +1,141 @@
+package com.test.simplegpsprovider.nmea;
+
+/**
+ * Allocation-free view over a single u-blox UBX message held in a byte buffer.
+ * <p>
+ * A message is {@code B5 62 <class> <id> <length, 2 bytes> <payload> <CK_A> <CK_B>}, all the
+ * multi-byte values being little endian. {@link #parse(byte[], int, int)} checks the frame and the
+ * 8-bit Fletcher checksum computed over the class, id, length and payload, the payload accessors
+ * then read straight from the caller's buffer.
+ */
+public final class UbxMessage {
+
+    public static final int VALID = 0;
+    public static final int INVALID_FRAME = 1;
+    public static final int INVALID_CHECKSUM = 2;
+
+    public static final byte SYNC_1 = (byte) 0xB5;
+    public static final byte SYNC_2 = 0x62;
+
+    /**
+     * Sync bytes, class, id and length.
+     */
+    public static final int HEADER_LENGTH = 6;
+    public static final int CHECKSUM_LENGTH = 2;
+
+    public static final int CLASS_NAV = 0x01;
+    public static final int ID_NAV_PVT = 0x07;
+    public static final int NAV_PVT_LENGTH = 92;
+
+    private byte[] buffer;
+    private int payloadStart;
+    private int payloadLength;
+    private int messageClass;
+    private int messageId;
+
+    /**
+     * @return true when {@code buffer[offset, offset + length)} starts with the UBX sync bytes
+     */
+    public static boolean isUbx(byte[] buffer, int offset, int length) {
+        return length >= 2 && buffer[offset] == SYNC_1 && buffer[offset + 1] == SYNC_2;
+    }
+
+    /**
+     * Parses the message found in {@code buffer[offset, offset + length)}.
+     *
+     * @return {@link #VALID}, {@link #INVALID_FRAME} or {@link #INVALID_CHECKSUM}
+     */
+    public int parse(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        if (length < HEADER_LENGTH + CHECKSUM_LENGTH || !isUbx(buffer, offset, length)) {
+            return INVALID_FRAME;
+        }
+        int declared = (buffer[offset + 4] & 0xFF) | (buffer[offset + 5] & 0xFF) << 8;
+        if (declared != length - HEADER_LENGTH - CHECKSUM_LENGTH) {
+            return INVALID_FRAME;
+        }
+        messageClass = buffer[offset + 2] & 0xFF;
+        messageId = buffer[offset + 3] & 0xFF;
+        payloadStart = offset + HEADER_LENGTH;
+        payloadLength = declared;
+        int checksumStart = payloadStart + declared;
+        int expected = (buffer[checksumStart] & 0xFF) | (buffer[checksumStart + 1] & 0xFF) << 8;
+        if (checksum(buffer, offset, declared) != expected) {
+            return INVALID_CHECKSUM;
+        }
+        return VALID;
+    }
+
+    public int messageClass() {
+        return messageClass;
+    }
+
+    public int messageId() {
+        return messageId;
+    }
+
+    public int payloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * @return the buffer of the last parsed message, for the payload offsets of {@link #payloadStart()}
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the absolute offset of the payload in {@link #buffer()}
+     */
+    public int payloadStart() {
+        return payloadStart;
+    }
+
+    /**
+     * @return the unsigned byte at {@code offset} in the payload
+     */
+    public int u1(int offset) {
+        return buffer[payloadStart + offset] & 0xFF;
+    }
+
+    /**
+     * @return the unsigned little endian short at {@code offset} in the payload
+     */
+    public int u2(int offset) {
+        int i = payloadStart + offset;
+        return (buffer[i] & 0xFF) | (buffer[i + 1] & 0xFF) << 8;
+    }
+
+    /**
+     * @return the signed little endian int at {@code offset} in the payload
+     */
+    public int i4(int offset) {
+        int i = payloadStart + offset;
+        return (buffer[i] & 0xFF) | (buffer[i + 1] & 0xFF) << 8 | (buffer[i + 2] & 0xFF) << 16 | buffer[i + 3] << 24;
+    }
+
+    /**
+     * @return the unsigned little endian int at {@code offset} in the payload
+     */
+    public long u4(int offset) {
+        return i4(offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Computes the checksum of a message whose header and payload are in place, e.g. to build one.
+     *
+     * @param offset offset of the first sync byte
+     * @return {@code CK_A | CK_B << 8}
+     */
+    public static int checksum(byte[] buffer, int offset, int payloadLength) {
+        int a = 0;
+        int b = 0;
+        int end = offset + HEADER_LENGTH + payloadLength;
+        for (int i = offset + 2; i < end; i++) {
+            a += buffer[i] & 0xFF;
+            b += a;
+        }
+        return (a & 0xFF) | (b & 0xFF) << 8;
+    }
+}
@@ -0,0 +1,296 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class BatchFrameDecoderTest {
+
+    private static final long SENT_MILLIS = 1_700_000_000_000L;
+
+    @Test
+    public void batchedStreamSurvivesAnyChunking() throws ProtocolException {
+        List<String> lines = NmeaCorpus.load(NmeaCorpus.MULTI_GNSS_10HZ);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BatchFrameDecoder.MAGIC, 0, BatchFrameDecoder.MAGIC.length);
+        out.write(BatchFrameDecoder.VERSION);
+        int batches = 0;
+        for (int i = 0; i < lines.size(); i += 10) {
+            byte[] batch = batch(batches, SENT_MILLIS + batches, lines.subList(i, Math.min(i + 10, lines.size())));
+            out.write(batch, 0, batch.length);
+            batches++;
+        }
+        byte[] stream = out.toByteArray();
+        Random random = new Random(5897L);
+        for (int maxChunk : new int[]{1, 7, 97, 4096}) {
+            BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+            List<String> frames = new ArrayList<>();
+            for (int offset = 0; offset < stream.length; ) {
+                int length = Math.min(stream.length - offset, 1 + random.nextInt(maxChunk));
+                decoder.decode(stream, offset, length, 0, collect(frames));
+                offset += length;
+            }
+            assertTrue(decoder.isBatched());
+            assertEquals(lines, frames);
+            assertEquals(batches, decoder.getBatches());
+            assertEquals(0, decoder.getLostBatches() + decoder.getReorderedBatches() + decoder.getSequenceRestarts());
+            assertEquals(SENT_MILLIS + batches - 1, decoder.getLastSentMillis());
+        }
+    }
+
+    @Test
+    public void directBuffersAreDecodedLikeArrays() throws ProtocolException {
+        byte[] stream = open(batch(0, SENT_MILLIS, Arrays.asList("$A*00", "$B*00")),
+                batch(1, SENT_MILLIS, Collections.singletonList("$C*00")));
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        ByteBuffer direct = ByteBuffer.allocateDirect(10);
+        for (int offset = 0; offset < stream.length; offset += 10) {
+            direct.clear();
+            direct.put(stream, offset, Math.min(10, stream.length - offset)).flip();
+            decoder.decode(direct, 0, collect(frames));
+            assertEquals(0, direct.remaining());
+        }
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$C*00"), frames);
+    }
+
+    @Test
+    public void plainStreamIsPassedThrough() throws ProtocolException {
+        List<String> lines = NmeaCorpus.load(NmeaCorpus.GPS_1HZ);
+        byte[] stream = NmeaCorpus.stream(NmeaCorpus.GPS_1HZ);
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        for (int offset = 0; offset < stream.length; offset += 1000) {
+            decoder.decode(stream, offset, Math.min(1000, stream.length - offset), 0, collect(frames));
+        }
+        assertFalse(decoder.isBatched());
+        assertEquals(lines, frames);
+        assertEquals(0, decoder.getBatches());
+    }
+
+    @Test
+    public void bytesHeldWhileSniffingGoToTheFrameDecoder() throws ProtocolException {
+        // opens like the magic, one byte at a time so that the held bytes are replayed
+        byte[] stream = NmeaCorpus.bytes("SG$A*00\r\n$B*00\r\n");
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        for (int i = 0; i < stream.length; i++) {
+            decoder.decode(stream, i, 1, 0, collect(frames));
+        }
+        assertFalse(decoder.isBatched());
+        assertEquals(Arrays.asList("$A*00", "$B*00"), frames);
+    }
+
+    @Test
+    public void lostAndReorderedBatchesAreCounted() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        byte[] stream = open(batch(0, SENT_MILLIS, "$A*00"), batch(1, SENT_MILLIS, "$B*00"),
+                batch(4, SENT_MILLIS, "$E*00"), batch(3, SENT_MILLIS, "$D*00"), batch(5, SENT_MILLIS, "$F*00"));
+        decoder.decode(stream, 0, stream.length, 0, collect(frames));
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$E*00", "$F*00"), frames);
+        assertEquals(5, decoder.getBatches());
+        assertEquals(2, decoder.getLostBatches());
+        assertEquals(1, decoder.getReorderedBatches());
+        assertEquals(0, decoder.getSequenceRestarts());
+    }
+
+    @Test
+    public void sequenceWrapsAround() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        byte[] stream = open(batch(Integer.MAX_VALUE - 1, SENT_MILLIS, "$A*00"),
+                batch(Integer.MAX_VALUE, SENT_MILLIS, "$B*00"), batch(Integer.MIN_VALUE + 1, SENT_MILLIS, "$C*00"),
+                batch(Integer.MIN_VALUE, SENT_MILLIS, "$X*00"));
+        decoder.decode(stream, 0, stream.length, 0, collect(frames));
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$C*00"), frames);
+        assertEquals(1, decoder.getLostBatches());
+        assertEquals(1, decoder.getReorderedBatches());
+        assertEquals(0, decoder.getSequenceRestarts());
+    }
+
+    @Test
+    public void largeJumpsAreRestarts() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        int gap = BatchFrameDecoder.MAX_SEQUENCE_GAP;
+        byte[] stream = open(batch(1000, SENT_MILLIS, "$A*00"), batch(1001 + gap, SENT_MILLIS, "$B*00"),
+                batch(1002 + gap + gap + 1, SENT_MILLIS, "$C*00"), batch(0, SENT_MILLIS, "$D*00"),
+                batch(1, SENT_MILLIS, "$E*00"));
+        decoder.decode(stream, 0, stream.length, 0, collect(frames));
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$C*00", "$D*00", "$E*00"), frames);
+        assertEquals(gap, decoder.getLostBatches());
+        assertEquals(0, decoder.getReorderedBatches());
+        assertEquals(2, decoder.getSequenceRestarts());
+    }
+
+    @Test
+    public void longRunOfLateBatchesIsARestart() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, batch(100, SENT_MILLIS, "$A*00"));
+        for (int i = 0; i < BatchFrameDecoder.MAX_REORDERED_RUN; i++) {
+            write(out, batch(90 + i, SENT_MILLIS, "$L*00"));
+        }
+        write(out, batch(50, SENT_MILLIS, "$B*00"));
+        write(out, batch(51, SENT_MILLIS, "$C*00"));
+        byte[] stream = open(out.toByteArray());
+        decoder.decode(stream, 0, stream.length, 0, collect(frames));
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$C*00"), frames);
+        assertEquals(BatchFrameDecoder.MAX_REORDERED_RUN, decoder.getReorderedBatches());
+        assertEquals(1, decoder.getSequenceRestarts());
+        assertEquals(0, decoder.getLostBatches());
+    }
+
+    @Test
+    public void emptyBatchesAreCounted() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        byte[] stream = open(batch(0, SENT_MILLIS, Collections.<String>emptyList()),
+                batch(1, SENT_MILLIS + 1, "$A*00"));
+        decoder.decode(stream, 0, stream.length, 0, collect(frames));
+        assertEquals(Arrays.asList("$A*00"), frames);
+        assertEquals(2, decoder.getBatches());
+        assertEquals(SENT_MILLIS + 1, decoder.getLastSentMillis());
+    }
+
+    @Test
+    public void unknownVersionIsRejected() {
+        byte[] stream = NmeaCorpus.bytes("SGPB\u0002");
+        try {
+            new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled())
+                    .decode(stream, 0, stream.length, 0, collect(new ArrayList<>()));
+            fail();
+        } catch (ProtocolException expected) {
+            // the stream can't be decoded any further
+        }
+    }
+
+    @Test
+    public void lengthOutOfBoundsIsRejected() {
+        for (int length : new int[]{0, BatchFrameDecoder.HEADER_LENGTH - 1, BatchFrameDecoder.MAX_BATCH_LENGTH + 1, -1}) {
+            byte[] stream = open(ByteBuffer.allocate(4).putInt(length).array());
+            try {
+                new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled())
+                        .decode(stream, 0, stream.length, 0, collect(new ArrayList<>()));
+                fail("length " + length);
+            } catch (ProtocolException expected) {
+                // the stream can't be decoded any further
+            }
+        }
+    }
+
+    @Test
+    public void datagramsAreDecodedWithOrWithoutHeader() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        byte[][] datagrams = {
+                NmeaCorpus.bytes("$A*00\r\n$B*00\r\n"),
+                datagram(7, SENT_MILLIS, "$C*00\r\n"),
+                datagram(9, SENT_MILLIS + 2, "$D*00\r\n"),
+                datagram(8, SENT_MILLIS + 1, "$X*00\r\n"),
+                NmeaCorpus.bytes("$E*00\r\n"),
+        };
+        for (byte[] datagram : datagrams) {
+            decoder.decodeDatagram(datagram, 0, datagram.length, 0, collect(frames));
+        }
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$C*00", "$D*00", "$E*00"), frames);
+        assertEquals(3, decoder.getBatches());
+        assertEquals(1, decoder.getLostBatches());
+        assertEquals(1, decoder.getReorderedBatches());
+        assertEquals(SENT_MILLIS + 1, decoder.getLastSentMillis());
+    }
+
+    @Test
+    public void aSentenceCutByTheDatagramIsDropped() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        byte[] first = NmeaCorpus.bytes("$A*00\r\n$GPGGA,12");
+        byte[] second = NmeaCorpus.bytes("3519*00\r\n$B*00\r\n");
+        decoder.decodeDatagram(first, 0, first.length, 0, collect(frames));
+        decoder.decodeDatagram(second, 0, second.length, 0, collect(frames));
+        assertEquals(Arrays.asList("$A*00", "$B*00"), frames);
+    }
+
+    @Test
+    public void badDatagramHeadersAreRejected() throws ProtocolException {
+        BatchFrameDecoder decoder = new BatchFrameDecoder(new NmeaFrameDecoder(), IngestMetrics.disabled());
+        List<String> frames = new ArrayList<>();
+        byte[] truncated = Arrays.copyOf(datagram(0, SENT_MILLIS, ""), BatchFrameDecoder.DATAGRAM_HEADER_LENGTH - 1);
+        byte[] version = datagram(0, SENT_MILLIS, "$X*00\r\n");
+        version[BatchFrameDecoder.MAGIC.length] = 2;
+        for (byte[] datagram : new byte[][]{truncated, version}) {
+            try {
+                decoder.decodeDatagram(datagram, 0, datagram.length, 0, collect(frames));
+                fail();
+            } catch (ProtocolException expected) {
+                // only this datagram is dropped
+            }
+        }
+        byte[] next = datagram(0, SENT_MILLIS, "$A*00\r\n");
+        decoder.decodeDatagram(next, 0, next.length, 0, collect(frames));
+        assertEquals(Arrays.asList("$A*00"), frames);
+        assertEquals(1, decoder.getBatches());
+    }
+
+    private static byte[] open(byte[]... batches) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BatchFrameDecoder.MAGIC, 0, BatchFrameDecoder.MAGIC.length);
+        out.write(BatchFrameDecoder.VERSION);
+        for (byte[] batch : batches) {
+            write(out, batch);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] batch(int sequence, long sentMillis, String line) {
+        return batch(sequence, sentMillis, Collections.singletonList(line));
+    }
+
+    private static byte[] batch(int sequence, long sentMillis, List<String> lines) {
+        StringBuilder payload = new StringBuilder();
+        for (String line : lines) {
+            payload.append(line).append("\r\n");
+        }
+        byte[] bytes = NmeaCorpus.bytes(payload.toString());
+        return ByteBuffer.allocate(4 + BatchFrameDecoder.HEADER_LENGTH + bytes.length)
+                .putInt(BatchFrameDecoder.HEADER_LENGTH + bytes.length)
+                .putInt(sequence)
+                .putLong(sentMillis)
+                .put(bytes)
+                .array();
+    }
+
+    private static byte[] datagram(int sequence, long sentMillis, String payload) {
+        byte[] bytes = NmeaCorpus.bytes(payload);
+        return ByteBuffer.allocate(BatchFrameDecoder.DATAGRAM_HEADER_LENGTH + bytes.length)
+                .put(BatchFrameDecoder.MAGIC)
+                .put(BatchFrameDecoder.VERSION)
+                .putInt(sequence)
+                .putLong(sentMillis)
+                .put(bytes)
+                .array();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static NmeaFrameDecoder.FrameListener collect(List<String> frames) {
+        return (buffer, offset, length) -> frames.add(new String(buffer, offset, length, StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,186 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DeliveryPolicyTest {
+
+    private static final long TENTH_NANOS = 100_000_000L;
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+    @Test
+    public void forwardAllForwardsEveryFix() {
+        DeliveryPolicy.Gate gate = DeliveryPolicy.FORWARD_ALL.newGate();
+        GpsFix fix = fix(48.0, 11.5);
+        for (int i = 0; i < 100; i++) {
+            // the same fix at the same time
+            assertTrue(gate.test(fix, 0));
+        }
+    }
+
+    @Test
+    public void defaultsForwardEveryFix() {
+        // the thresholds of the app when no extra is set
+        DeliveryPolicy policy = new DeliveryPolicy(0, 0, 0, 0, 0);
+        DeliveryPolicy.Gate gate = policy.newGate();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(gate.test(fix(48.0, 11.5), i));
+        }
+        assertEquals(100, policy.getForwarded());
+        assertEquals(0, policy.getSuppressed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThresholdsAreRefused() {
+        new DeliveryPolicy(0, -1, 0, 0, 0);
+    }
+
+    @Test
+    public void rateIsCapped() {
+        DeliveryPolicy policy = new DeliveryPolicy(2, 0, 0, 0, 0);
+        DeliveryPolicy.Gate gate = policy.newGate();
+        List<Integer> forwarded = new ArrayList<>();
+        // 10 Hz for 10 s, every fix moving by 10 m
+        for (int i = 0; i < 100; i++) {
+            if (gate.test(fix(48.0 + i * 10 / METERS_PER_DEGREE, 11.5), i * TENTH_NANOS)) {
+                forwarded.add(i);
+            }
+        }
+        assertEquals(20, forwarded.size());
+        for (int i = 0; i < forwarded.size(); i++) {
+            assertEquals(i * 5, (int) forwarded.get(i));
+        }
+        assertEquals(20, policy.getForwarded());
+        assertEquals(80, policy.getSuppressed());
+    }
+
+    @Test
+    public void distanceIsMeasuredFromTheLastForwardedFix() {
+        DeliveryPolicy policy = new DeliveryPolicy(0, 5, 0, 0, 0);
+        DeliveryPolicy.Gate gate = policy.newGate();
+        // 1.01 m north per fix: 4.04 m stays, 5.05 m goes
+        assertEquals(Arrays.asList(0, 5, 10, 15), forwarded(gate, 20, i -> fix(48.0 + i * 1.01 / METERS_PER_DEGREE, 11.5)));
+        // east at 60 degrees, a degree of longitude being half as long
+        DeliveryPolicy.Gate east = policy.newGate();
+        assertEquals(Arrays.asList(0, 3, 6, 9), forwarded(east, 12, i -> fix(60.0, 11.5 + i * 2.02 / (METERS_PER_DEGREE / 2))));
+    }
+
+    @Test
+    public void bearingChangesAcrossNorth() {
+        DeliveryPolicy policy = new DeliveryPolicy(0, 0, 10, 0, 0);
+        DeliveryPolicy.Gate gate = policy.newGate();
+        assertTrue(gate.test(moving(5f, 355f), 0));
+        // 8 degrees from 355
+        assertFalse(gate.test(moving(5f, 3f), TENTH_NANOS));
+        // 11 degrees from 355
+        assertTrue(gate.test(moving(5f, 6f), 2 * TENTH_NANOS));
+        assertFalse(gate.test(moving(5f, 357f), 3 * TENTH_NANOS));
+        assertTrue(gate.test(moving(5f, 356f), 4 * TENTH_NANOS));
+    }
+
+    @Test
+    public void bearingIsIgnoredBelowTheMinimumSpeed() {
+        DeliveryPolicy.Gate gate = new DeliveryPolicy(0, 0, 10, 0, 0).newGate();
+        float slow = DeliveryPolicy.BEARING_MIN_SPEED / 2;
+        assertTrue(gate.test(moving(slow, 0f), 0));
+        assertFalse(gate.test(moving(slow, 90f), TENTH_NANOS));
+        assertFalse(gate.test(moving(slow, 180f), 2 * TENTH_NANOS));
+        // the reference is still the slow one
+        assertFalse(gate.test(moving(5f, 180f), 3 * TENTH_NANOS));
+    }
+
+    @Test
+    public void speedChangesAreMeasuredFromTheLastForwardedFix() {
+        DeliveryPolicy.Gate gate = new DeliveryPolicy(0, 0, 0, 1, 0).newGate();
+        assertTrue(gate.test(moving(5f, 0f), 0));
+        assertFalse(gate.test(moving(5.5f, 0f), TENTH_NANOS));
+        assertTrue(gate.test(moving(6.1f, 0f), 2 * TENTH_NANOS));
+        assertFalse(gate.test(moving(5.2f, 0f), 3 * TENTH_NANOS));
+        assertTrue(gate.test(moving(5.0f, 0f), 4 * TENTH_NANOS));
+        // losing the speed, then gaining it back
+        assertTrue(gate.test(fix(48.0, 11.5), 5 * TENTH_NANOS));
+        assertFalse(gate.test(fix(48.0, 11.5), 6 * TENTH_NANOS));
+        assertTrue(gate.test(moving(5.0f, 0f), 7 * TENTH_NANOS));
+    }
+
+    @Test
+    public void gainingOrLosingThePositionIsForwarded() {
+        DeliveryPolicy.Gate gate = new DeliveryPolicy(0, 5, 0, 0, 0).newGate();
+        assertTrue(gate.test(fix(48.0, 11.5), 0));
+        GpsFix lost = new GpsFix();
+        lost.setTime(1);
+        assertTrue(gate.test(lost, TENTH_NANOS));
+        assertFalse(gate.test(lost, 2 * TENTH_NANOS));
+        assertTrue(gate.test(fix(48.0, 11.5), 3 * TENTH_NANOS));
+    }
+
+    @Test
+    public void keepAliveForwardsAStationaryFeed() {
+        DeliveryPolicy policy = new DeliveryPolicy(0, 5, 10, 1, 1);
+        DeliveryPolicy.Gate gate = policy.newGate();
+        // 10 Hz for 3 s without moving
+        assertEquals(Arrays.asList(0, 10, 20, 30), forwarded(gate, 31, i -> fix(48.0, 11.5)));
+        assertEquals(27, policy.getSuppressed());
+    }
+
+    @Test
+    public void rateCapHoldsBackTheKeepAliveAndTheMotion() {
+        DeliveryPolicy.Gate gate = new DeliveryPolicy(1, 5, 0, 0, 0.5).newGate();
+        // 100 m per fix, and the keep-alive shorter than the interval
+        assertEquals(Arrays.asList(0, 10, 20), forwarded(gate, 25, i -> fix(48.0 + i * 100 / METERS_PER_DEGREE, 11.5)));
+    }
+
+    @Test
+    public void everyFeedHasItsOwnGate() {
+        DeliveryPolicy policy = new DeliveryPolicy(1, 0, 0, 0, 0);
+        DeliveryPolicy.Gate first = policy.newGate();
+        DeliveryPolicy.Gate second = policy.newGate();
+        assertTrue(first.test(fix(48.0, 11.5), 0));
+        assertTrue(second.test(fix(48.0, 11.5), TENTH_NANOS));
+        assertFalse(first.test(fix(48.0, 11.5), 2 * TENTH_NANOS));
+        assertFalse(second.test(fix(48.0, 11.5), 2 * TENTH_NANOS));
+        assertEquals(2, policy.getForwarded());
+        assertEquals(2, policy.getSuppressed());
+    }
+
+    private interface Track {
+        GpsFix fix(int index);
+    }
+
+    /**
+     * Tests a fix every tenth of a second.
+     *
+     * @return the indexes of the fixes forwarded
+     */
+    private static List<Integer> forwarded(DeliveryPolicy.Gate gate, int count, Track track) {
+        List<Integer> forwarded = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (gate.test(track.fix(i), i * TENTH_NANOS)) {
+                forwarded.add(i);
+            }
+        }
+        return forwarded;
+    }
+
+    private static GpsFix fix(double latitude, double longitude) {
+        GpsFix fix = new GpsFix();
+        fix.setTime(1_700_000_000_000L);
+        fix.setLatitude(latitude);
+        fix.setLongitude(longitude);
+        return fix;
+    }
+
+    private static GpsFix moving(float speed, float bearing) {
+        GpsFix fix = fix(48.0, 11.5);
+        fix.setSpeed(speed);
+        fix.setBearing(bearing);
+        return fix;
+    }
+}
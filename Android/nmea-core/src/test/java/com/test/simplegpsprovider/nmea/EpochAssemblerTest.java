@@ -0,0 +1,167 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EpochAssemblerTest {
+
+    private static final long FLUSH_NANOS = 100_000_000L;
+    private static final int GGA_RMC = (1 << IngestMetrics.TYPE_GGA) | (1 << IngestMetrics.TYPE_RMC);
+
+    private long now = 0;
+    private final EpochAssembler assembler = new EpochAssembler(() -> now, FLUSH_NANOS, GpsFix.HAS_POSITION);
+    private final List<GpsFix> fixes = new ArrayList<>();
+    private final NmeaParser parser = new NmeaParser(5f, fix -> {
+        GpsFix copy = new GpsFix();
+        copy.set(fix);
+        fixes.add(copy);
+    }, IngestMetrics.disabled(), assembler);
+
+    @Test
+    public void anEpochIsPublishedOnceItsFixSentencesAreIn() {
+        parse(gga("120000.00"));
+        assertEquals(0, fixes.size());
+        parse(rmc("120000.00"));
+        assertEquals(1, fixes.size());
+        assertTrue(fixes.get(0).hasAll(GpsFix.HAS_POSITION | GpsFix.HAS_ALTITUDE | GpsFix.HAS_SPEED));
+        // the rest of the epoch doesn't publish it again
+        parse(rmc("120000.00"));
+        parse(vtg());
+        assertEquals(1, fixes.size());
+    }
+
+    @Test
+    public void epochsOfTheCorporaArePublishedWithTheirLastFixSentence() {
+        for (String line : NmeaCorpus.load(NmeaCorpus.MULTI_GNSS_10HZ)) {
+            int before = fixes.size();
+            parse(line);
+            if (line.startsWith("$GNRMC")) {
+                assertEquals(line, before + 1, fixes.size());
+            } else {
+                assertEquals(line, before, fixes.size());
+            }
+        }
+        assertEquals(600, fixes.size());
+        assertEquals(GGA_RMC, assembler.getLearnedFixTypes());
+        assertEquals(addressCode("GNVTG"), assembler.getLearnedSignature());
+    }
+
+    @Test
+    public void aReceiverSendingGgaAloneIsLearned() {
+        parse(gga("120000.00"));
+        parse(vtg());
+        parse(gga("120001.00"));
+        // published when the next epoch started
+        assertEquals(1, fixes.size());
+        parse(vtg());
+        // learned once two epochs agree: published with its GGA
+        parse(gga("120002.00"));
+        assertEquals(3, fixes.size());
+        assertEquals(1 << IngestMetrics.TYPE_GGA, assembler.getLearnedFixTypes());
+        parse(vtg());
+        parse(gga("120003.00"));
+        assertEquals(4, fixes.size());
+    }
+
+    @Test
+    public void theSentenceClosingEveryEpochPublishesAnIncompleteOne() {
+        // RMC every other epoch: the fix sentences can't be learned, the closing VTG can
+        for (int second = 0; second < 4; second++) {
+            String time = "12000" + second + ".00";
+            parse(gga(time));
+            if (second % 2 == 0) {
+                parse(rmc(time));
+            }
+            parse(vtg());
+        }
+        assertEquals(0, assembler.getLearnedFixTypes());
+        assertEquals(addressCode("GPVTG"), assembler.getLearnedSignature());
+        int before = fixes.size();
+        parse(gga("120004.00"));
+        assertEquals(before, fixes.size());
+        parse(vtg());
+        assertEquals(before + 1, fixes.size());
+    }
+
+    @Test
+    public void aQuietEpochIsFlushed() {
+        parse(gga("120000.00"));
+        now += FLUSH_NANOS - 1;
+        parser.flushStale();
+        assertEquals(0, fixes.size());
+        now += 1;
+        parser.flushStale();
+        assertEquals(1, fixes.size());
+        // the late RMC of the published epoch is skipped
+        parse(rmc("120000.00"));
+        now += FLUSH_NANOS;
+        parser.flushStale();
+        assertEquals(1, fixes.size());
+    }
+
+    @Test
+    public void endOfStreamPublishesTheEpochInProgress() {
+        parse(gga("120000.00"));
+        parser.endOfStream();
+        assertEquals(1, fixes.size());
+    }
+
+    @Test
+    public void fixesWithoutPositionAreDropped() {
+        parse(NmeaCorpus.sentence("GPRMC,120000.00,A,,,,,022.4,084.4,230394,003.1,W"));
+        parse(NmeaCorpus.sentence("GPGGA,120000.00,,,,,1,08,0.9,545.4,M,46.9,M,,"));
+        parse(gga("120001.00"));
+        assertEquals(0, fixes.size());
+        parser.endOfStream();
+        assertEquals(1, fixes.size());
+    }
+
+    @Test
+    public void anInvalidSentenceBreaksTheEpoch() {
+        for (int second = 0; second < 3; second++) {
+            parse(gga("12000" + second + ".00"));
+            parse(vtg());
+        }
+        assertEquals(1 << IngestMetrics.TYPE_GGA, assembler.getLearnedFixTypes());
+        // an epoch with a damaged sentence may have lost its GGA, it isn't learned from
+        parse(rmc("120003.00"));
+        parse("$GPGGA,120003.00,4807.038*00");
+        parse(vtg());
+        parse(gga("120004.00"));
+        assertEquals(1 << IngestMetrics.TYPE_GGA, assembler.getLearnedFixTypes());
+        // an intact epoch disagreeing is
+        parse(rmc("120005.00"));
+        parse(vtg());
+        parse(gga("120006.00"));
+        assertEquals(0, assembler.getLearnedFixTypes());
+    }
+
+    private void parse(String line) {
+        parser.parseNmeaSentence(line);
+    }
+
+    private static String gga(String time) {
+        return NmeaCorpus.sentence("GPGGA," + time + ",4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,");
+    }
+
+    private static String rmc(String time) {
+        return NmeaCorpus.sentence("GPRMC," + time + ",A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W");
+    }
+
+    private static String vtg() {
+        return NmeaCorpus.sentence("GPVTG,084.4,T,,M,022.4,N,041.5,K,D");
+    }
+
+    private static long addressCode(String address) {
+        long code = 0;
+        for (int i = 0; i < address.length(); i++) {
+            code = (code << 8) | address.charAt(i);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,149 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EventLogTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new EventLog(1).getCapacity());
+        assertEquals(4, new EventLog(3).getCapacity());
+        assertEquals(EventLog.DEFAULT_CAPACITY, new EventLog().getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyCapacityIsRefused() {
+        new EventLog(0);
+    }
+
+    @Test
+    public void latestEntriesComeOldestFirst() {
+        EventLog log = new EventLog(4);
+        EventLog.Entry[] into = new EventLog.Entry[8];
+        assertEquals(0, log.latest(into));
+        log.log("0");
+        log.log("1");
+        assertEquals(2, log.latest(into));
+        assertMessages(into, 2, 0);
+        // wrapped twice and a half, only the last lap is kept
+        for (int i = 2; i < 10; i++) {
+            log.log(Integer.toString(i));
+        }
+        assertEquals(10, log.getWritten());
+        assertEquals(4, log.latest(into));
+        assertMessages(into, 4, 6);
+        // a shorter window
+        EventLog.Entry[] window = new EventLog.Entry[2];
+        assertEquals(2, log.latest(window));
+        assertMessages(window, 2, 8);
+    }
+
+    @Test
+    public void entriesBeingWrittenAreSkipped() {
+        EventLog log = new EventLog(4);
+        EventLog.Entry[] into = new EventLog.Entry[4];
+        for (int i = 0; i < 6; i++) {
+            log.log(Integer.toString(i));
+        }
+        // claimed but not written yet: its slot still holds entry 2
+        long sequence = log.claim();
+        assertEquals(6, sequence);
+        assertEquals(3, log.latest(into));
+        assertMessages(into, 3, 3);
+        log.write(sequence, "6");
+        assertEquals(4, log.latest(into));
+        assertMessages(into, 4, 3);
+    }
+
+    @Test
+    public void lappedEntriesAreSkipped() {
+        EventLog log = new EventLog(4);
+        EventLog.Entry[] into = new EventLog.Entry[4];
+        // a slow writer claims 0, the others go on for a lap and more
+        long slow = log.claim();
+        for (int i = 1; i < 6; i++) {
+            log.log(Integer.toString(i));
+        }
+        assertEquals(4, log.latest(into));
+        assertMessages(into, 4, 2);
+        // its entry lands in the slot of 4, out of the window, and overwrites it
+        log.write(slow, "0");
+        assertEquals(3, log.latest(into));
+        assertEquals(2, into[0].getSequence());
+        assertEquals(3, into[1].getSequence());
+        assertEquals(5, into[2].getSequence());
+    }
+
+    @Test
+    public void concurrentWritersKeepTheReaderConsistent() throws InterruptedException {
+        EventLog log = new EventLog(64);
+        int writers = 4;
+        int messages = 50_000;
+        AtomicReference<AssertionError> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            String prefix = w + ":";
+            threads[w] = new Thread(() -> {
+                for (int i = 0; i < messages; i++) {
+                    log.log(prefix + i);
+                }
+            });
+        }
+        Thread reader = new Thread(() -> {
+            EventLog.Entry[] into = new EventLog.Entry[64];
+            try {
+                while (log.getWritten() < (long) writers * messages) {
+                    int count = log.latest(into);
+                    int[] last = new int[writers];
+                    Arrays.fill(last, -1);
+                    for (int i = 0; i < count; i++) {
+                        if (i > 0) {
+                            assertTrue(into[i].getSequence() > into[i - 1].getSequence());
+                        }
+                        String[] parts = into[i].getMessage().split(":");
+                        int writer = Integer.parseInt(parts[0]);
+                        int message = Integer.parseInt(parts[1]);
+                        // every writer claims its numbers in order
+                        assertTrue(message > last[writer]);
+                        last[writer] = message;
+                    }
+                }
+            } catch (AssertionError e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        reader.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        EventLog.Entry[] into = new EventLog.Entry[64];
+        assertEquals(writers * messages, log.getWritten());
+        assertEquals(64, log.latest(into));
+        for (int i = 0; i < 64; i++) {
+            assertEquals(writers * messages - 64 + i, into[i].getSequence());
+        }
+    }
+
+    /**
+     * Checks that the entries are numbered on from {@code first}, each one carrying its number.
+     */
+    private static void assertMessages(EventLog.Entry[] entries, int count, long first) {
+        for (int i = 0; i < count; i++) {
+            assertEquals(first + i, entries[i].getSequence());
+            assertEquals(Long.toString(first + i), entries[i].getMessage());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class FrameRingTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new FrameRing(1, 8, FrameRing.WaitStrategy.SPIN, FrameRing.OverflowPolicy.BLOCK).getCapacity());
+        assertEquals(8, new FrameRing(8, 8, FrameRing.WaitStrategy.SPIN, FrameRing.OverflowPolicy.BLOCK).getCapacity());
+        assertEquals(16, new FrameRing(9, 8, FrameRing.WaitStrategy.SPIN, FrameRing.OverflowPolicy.BLOCK).getCapacity());
+    }
+
+    @Test
+    public void framesComeOutInOrderWithTheirStamps() {
+        FrameRing ring = new FrameRing(4, 8, FrameRing.WaitStrategy.SPIN, FrameRing.OverflowPolicy.BLOCK);
+        byte[] target = new byte[8];
+        assertEquals(-1, ring.poll(target));
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                Object attachment = "feed-" + i;
+                assertTrue(ring.offer(frame(round * 4 + i), 0, 8, attachment, 10 + i, 20 + i));
+            }
+            assertEquals(4, ring.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(8, ring.poll(target));
+                assertEquals(round * 4 + i, ByteBuffer.wrap(target).getLong());
+                assertEquals("feed-" + i, ring.getAttachment());
+                assertEquals(10 + i, ring.getReceivedNanos());
+                assertEquals(20 + i, ring.getFramedNanos());
+            }
+            assertEquals(-1, ring.poll(target));
+        }
+        assertEquals(12, ring.getOffered());
+        assertEquals(4, ring.getMaxOccupancy());
+    }
+
+    @Test
+    public void oversizedFramesAreRejected() {
+        FrameRing ring = new FrameRing(4, 4, FrameRing.WaitStrategy.SPIN, FrameRing.OverflowPolicy.DROP_OLDEST);
+        assertFalse(ring.offer(new byte[5], 0, 5));
+        assertTrue(ring.offer(new byte[5], 1, 4));
+        assertEquals(1, ring.getOversized());
+        assertEquals(1, ring.size());
+    }
+
+    @Test
+    public void aFullRingDropsTheOldestFrames() {
+        FrameRing ring = new FrameRing(4, 8, FrameRing.WaitStrategy.SPIN, FrameRing.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(frame(i), 0, 8));
+        }
+        assertEquals(6, ring.getDropped());
+        assertEquals(6, ring.getBlocked());
+        byte[] target = new byte[8];
+        for (int i = 6; i < 10; i++) {
+            ring.poll(target);
+            assertEquals(i, ByteBuffer.wrap(target).getLong());
+        }
+        assertEquals(-1, ring.poll(target));
+    }
+
+    @Test
+    public void takeTimesOut() {
+        for (FrameRing.WaitStrategy strategy : FrameRing.WaitStrategy.values()) {
+            FrameRing ring = new FrameRing(4, 8, strategy, FrameRing.OverflowPolicy.BLOCK);
+            long start = System.nanoTime();
+            assertEquals(-1, ring.take(new byte[8], TimeUnit.MILLISECONDS.toNanos(20)));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        }
+    }
+
+    @Test
+    public void everyFrameCrossesThreadsWhenBlocking() throws InterruptedException {
+        for (FrameRing.WaitStrategy strategy : FrameRing.WaitStrategy.values()) {
+            assertEquals(0, transfer(strategy, FrameRing.OverflowPolicy.BLOCK, 20_000));
+        }
+    }
+
+    @Test
+    public void framesCrossThreadsInOrderWhenDropping() throws InterruptedException {
+        for (FrameRing.WaitStrategy strategy : FrameRing.WaitStrategy.values()) {
+            transfer(strategy, FrameRing.OverflowPolicy.DROP_OLDEST, 20_000);
+        }
+    }
+
+    @Test
+    public void endsOfStreamFollowTheirFrames() {
+        FrameRing ring = new FrameRing(4, 8, FrameRing.WaitStrategy.SPIN, FrameRing.OverflowPolicy.DROP_OLDEST);
+        Object first = new Object();
+        Object second = new Object();
+        ring.offer(frame(0), 0, 8, first, 0L, 0L);
+        ring.offerEndOfStream(first);
+        ring.offer(frame(1), 0, 8, second, 0L, 0L);
+        ring.offerEndOfStream(second);
+        assertEquals(null, ring.pollEndOfStream());
+        byte[] target = new byte[8];
+        ring.poll(target);
+        assertSame(first, ring.pollEndOfStream());
+        assertEquals(null, ring.pollEndOfStream());
+        // dropped frames don't hold back the end of their stream
+        for (int i = 0; i < 8; i++) {
+            ring.offer(frame(i), 0, 8, second, 0L, 0L);
+        }
+        assertSame(second, ring.pollEndOfStream());
+        assertEquals(null, ring.pollEndOfStream());
+    }
+
+    /**
+     * Moves {@code count} frames from this thread to a consumer, which checks their order.
+     *
+     * @return the number of frames dropped
+     */
+    private static long transfer(FrameRing.WaitStrategy strategy, FrameRing.OverflowPolicy policy, int count)
+            throws InterruptedException {
+        FrameRing ring = new FrameRing(64, 8, strategy, policy);
+        long[] received = new long[2];
+        Thread consumer = new Thread(() -> {
+            byte[] target = new byte[8];
+            long last = -1;
+            while (last < count - 1) {
+                if (ring.take(target, TimeUnit.SECONDS.toNanos(5)) < 0) {
+                    break;
+                }
+                long value = ByteBuffer.wrap(target).getLong();
+                if (value <= last || (long) ring.getAttachment() != value) {
+                    break;
+                }
+                last = value;
+                received[0]++;
+            }
+            received[1] = last;
+        });
+        consumer.start();
+        for (long i = 0; i < count; i++) {
+            assertTrue(ring.offer(frame(i), 0, 8, i, 0L, 0L));
+        }
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse(consumer.isAlive());
+        assertEquals(strategy.toString(), count - 1, received[1]);
+        assertEquals(strategy.toString(), count, received[0] + ring.getDropped());
+        return ring.getDropped();
+    }
+
+    private static byte[] frame(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+}
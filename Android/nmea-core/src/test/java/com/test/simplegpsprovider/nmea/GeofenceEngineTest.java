@@ -0,0 +1,141 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class GeofenceEngineTest {
+
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    private final GeofenceEngine engine = new GeofenceEngine();
+    private final List<String> events = new ArrayList<>();
+
+    public GeofenceEngineTest() {
+        engine.addListener((feed, fence, transition, fix) -> events.add(feed + " " + fence.getId() + " "
+                + (transition == GeofenceEngine.ENTER ? "enter" : transition == GeofenceEngine.EXIT ? "exit" : "dwell")
+                + " " + (fix.getTime() - START_MILLIS)));
+    }
+
+    @Test
+    public void enterDwellAndExit() {
+        engine.setFences(Collections.singletonList(Geofence.circle("home", 48.1, 11.5, 100, 2000)));
+        evaluate(0, 0, 48.102, 11.5);
+        evaluate(0, 1000, 48.1, 11.5);
+        evaluate(0, 2000, 48.1001, 11.5);
+        evaluate(0, 3000, 48.1, 11.5001);
+        evaluate(0, 4000, 48.1, 11.5);
+        evaluate(0, 5000, 48.102, 11.5);
+        evaluate(0, 6000, 48.1, 11.5);
+        assertEquals(Arrays.asList("0 home enter 1000", "0 home dwell 3000", "0 home exit 5000", "0 home enter 6000"),
+                events);
+        assertEquals(4, engine.getTransitions());
+        assertEquals(7, engine.getEvaluated());
+    }
+
+    @Test
+    public void feedsHaveTheirOwnState() {
+        engine.setFences(Collections.singletonList(Geofence.circle("home", 48.1, 11.5, 100, 0)));
+        evaluate(0, 0, 48.1, 11.5);
+        evaluate(1, 0, 48.2, 11.5);
+        evaluate(1, 100, 48.1, 11.5);
+        evaluate(0, 200, 48.2, 11.5);
+        assertEquals(Arrays.asList("0 home enter 0", "1 home enter 100", "0 home exit 200"), events);
+    }
+
+    @Test
+    public void fixesWithoutPositionAreIgnored() {
+        engine.setFences(Collections.singletonList(Geofence.circle("home", 48.1, 11.5, 100, 0)));
+        evaluate(0, 0, 48.1, 11.5);
+        GpsFix fix = new GpsFix();
+        fix.setTime(START_MILLIS + 100);
+        engine.evaluate(0, fix);
+        assertEquals(Collections.singletonList("0 home enter 0"), events);
+        assertEquals(1, engine.getEvaluated());
+    }
+
+    @Test
+    public void swappedSetsKeepTheStateOfTheirFences() {
+        Geofence home = Geofence.circle("home", 48.1, 11.5, 100, 0);
+        Geofence yard = Geofence.circle("yard", 48.1, 11.5, 200, 0);
+        engine.setFences(Arrays.asList(home, yard));
+        evaluate(0, 0, 48.1, 11.5);
+        // home is kept, with another radius, yard is dropped
+        engine.setFences(Collections.singletonList(Geofence.circle("home", 48.1, 11.5, 150, 0)));
+        assertEquals(1, engine.getFences());
+        evaluate(0, 100, 48.1, 11.5);
+        evaluate(0, 200, 48.1016, 11.5);
+        assertEquals(Arrays.asList("0 home enter 0", "0 yard enter 0", "0 yard exit 100", "0 home exit 200"),
+                sortedByTime(events));
+    }
+
+    @Test
+    public void closedFeedsAreForgottenWithoutExit() {
+        engine.setFences(Collections.singletonList(Geofence.circle("home", 48.1, 11.5, 100, 0)));
+        evaluate(0, 0, 48.1, 11.5);
+        engine.closeFeed(0);
+        // the next feed given the same number starts outside
+        evaluate(0, 100, 48.1, 11.5);
+        assertEquals(Arrays.asList("0 home enter 0", "0 home enter 100"), events);
+    }
+
+    @Test
+    public void transitionsMatchAScanOfEveryFence() {
+        Random random = new Random(5897L);
+        List<Geofence> fences = GeofenceIndexTest.fences(random, 48, 11, 1000);
+        engine.setFences(fences);
+        boolean[] inside = new boolean[fences.size()];
+        double latitude = 48;
+        double longitude = 11;
+        int fixes = 5000;
+        int transitions = 0;
+        for (int n = 0; n < fixes; n++) {
+            latitude += (random.nextDouble() - 0.5) * 0.01;
+            longitude += (random.nextDouble() - 0.5) * 0.01;
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < fences.size(); i++) {
+                boolean contains = fences.get(i).contains(latitude, longitude);
+                if (contains != inside[i]) {
+                    expected.add("0 " + fences.get(i).getId() + (contains ? " enter " : " exit ") + n);
+                    inside[i] = contains;
+                }
+            }
+            events.clear();
+            evaluate(0, n, latitude, longitude);
+            // the order of the transitions of a fix is left to the engine
+            Collections.sort(expected);
+            Collections.sort(events);
+            assertEquals("fix " + n, expected, events);
+            transitions += expected.size();
+        }
+        assertTrue(transitions > 100);
+        assertEquals(transitions, engine.getTransitions());
+        // the grid spares most of the exact tests
+        assertTrue(engine.getTests() < (long) fixes * fences.size() / 20);
+    }
+
+    private void evaluate(int feed, long millis, double latitude, double longitude) {
+        GpsFix fix = new GpsFix();
+        fix.setTime(START_MILLIS + millis);
+        fix.setLatitude(latitude);
+        fix.setLongitude(longitude);
+        engine.evaluate(feed, fix);
+    }
+
+    private static List<String> sortedByTime(List<String> events) {
+        List<String> sorted = new ArrayList<>(events);
+        sorted.sort((a, b) -> {
+            int time = Long.compare(Long.parseLong(a.substring(a.lastIndexOf(' ') + 1)),
+                    Long.parseLong(b.substring(b.lastIndexOf(' ') + 1)));
+            return time != 0 ? time : a.compareTo(b);
+        });
+        return sorted;
+    }
+}
@@ -0,0 +1,178 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class GeofenceIndexTest {
+
+    private static final double EARTH_RADIUS = 6_371_008.8;
+
+    @Test
+    public void candidatesHoldEveryFenceContainingThePoint() {
+        Random random = new Random(5897L);
+        // around the origin, so that rows and columns go negative
+        List<Geofence> fences = fences(random, 0, 0, 1000);
+        for (double cellDegrees : new double[]{0.001, GeofenceEngine.DEFAULT_CELL_DEGREES, 0.1}) {
+            GeofenceIndex index = new GeofenceIndex(fences, cellDegrees);
+            assertEquals(fences.size(), index.size());
+            for (int n = 0; n < 5000; n++) {
+                double latitude = (random.nextDouble() - 0.5) * 2;
+                double longitude = (random.nextDouble() - 0.5) * 2;
+                Set<String> expected = new TreeSet<>();
+                for (Geofence fence : fences) {
+                    if (fence.contains(latitude, longitude)) {
+                        expected.add(fence.getId());
+                    }
+                }
+                Set<String> found = new TreeSet<>();
+                for (int[] candidates : new int[][]{index.candidates(latitude, longitude), index.large()}) {
+                    for (int candidate : candidates) {
+                        Geofence fence = index.get(candidate);
+                        if (fence.contains(latitude, longitude)) {
+                            found.add(fence.getId());
+                        }
+                    }
+                }
+                assertEquals(latitude + "," + longitude + " cell " + cellDegrees, expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void fencesOverManyCellsAreKeptAside() {
+        List<Geofence> fences = new ArrayList<>();
+        fences.add(Geofence.circle("small", 48.1, 11.5, 100, 0));
+        fences.add(Geofence.circle("country", 48.1, 11.5, 300_000, 0));
+        GeofenceIndex index = new GeofenceIndex(fences, 0.01);
+        assertEquals(1, index.large().length);
+        assertEquals("country", index.get(index.large()[0]).getId());
+        assertEquals(1, index.candidates(48.1, 11.5).length);
+        assertEquals(0, index.candidates(47.0, 11.5).length);
+    }
+
+    @Test
+    public void emptyIndexHasNoCandidates() {
+        GeofenceIndex index = new GeofenceIndex(new ArrayList<>(), 0.01);
+        assertEquals(0, index.candidates(48.1, 11.5).length);
+        assertEquals(0, index.large().length);
+    }
+
+    @Test
+    public void circleMatchesTheGreatCircleDistance() {
+        Random random = new Random(5897L);
+        for (int n = 0; n < 10_000; n++) {
+            double latitude = (random.nextDouble() - 0.5) * 140;
+            double longitude = (random.nextDouble() - 0.5) * 340;
+            double radius = 10 + random.nextDouble() * 5000;
+            Geofence fence = Geofence.circle("c", latitude, longitude, radius, 0);
+            double pointLatitude = latitude + (random.nextDouble() - 0.5) * 4 * radius / 111_000;
+            double pointLongitude = longitude + (random.nextDouble() - 0.5) * 4 * radius / 111_000
+                    / Math.cos(Math.toRadians(latitude));
+            double distance = haversine(latitude, longitude, pointLatitude, pointLongitude);
+            // the equirectangular distance is off by far less than this near the border
+            if (Math.abs(distance - radius) > 0.05 + radius * 1e-6) {
+                assertEquals(distance + " m from a " + radius + " m circle",
+                        distance <= radius, fence.contains(pointLatitude, pointLongitude));
+            }
+        }
+    }
+
+    @Test
+    public void concavePolygonsFollowTheirOutline() {
+        // an L: the square 0..2 x 0..2 without its corner 1..2 x 1..2
+        Geofence fence = Geofence.polygon("l", new double[]{0, 0, 2, 2, 1, 1}, new double[]{0, 2, 2, 1, 1, 0}, 0);
+        assertTrue(fence.contains(0.5, 0.5));
+        assertTrue(fence.contains(0.5, 1.5));
+        assertTrue(fence.contains(1.5, 1.5));
+        assertFalse(fence.contains(1.5, 0.5));
+        assertFalse(fence.contains(-0.5, 0.5));
+        assertFalse(fence.contains(0.5, 2.5));
+        assertFalse(fence.isCircle());
+    }
+
+    @Test
+    public void fenceSetsAreRead() throws IOException {
+        List<Geofence> fences = Geofence.read(new StringReader("# depots\n\n"
+                + "circle,home,30,48.1173,11.5167,150\n"
+                + "  polygon,yard,0,48.0,11.0,48.0,11.1,48.1,11.1\n"));
+        assertEquals(2, fences.size());
+        assertEquals("home", fences.get(0).getId());
+        assertTrue(fences.get(0).isCircle());
+        assertEquals(30_000, fences.get(0).getDwellMillis());
+        assertTrue(fences.get(0).contains(48.1173, 11.5167));
+        assertEquals("yard", fences.get(1).getId());
+        assertTrue(fences.get(1).contains(48.05, 11.09));
+        assertFalse(fences.get(1).contains(48.09, 11.01));
+    }
+
+    @Test
+    public void malformedLinesAreReported() {
+        String[] lines = {
+                "circle,home,0,48.1,11.5",
+                "circle,home,0,48.1,11.5,-5",
+                "polygon,yard,0,48.0,11.0,48.0,11.1",
+                "polygon,yard,0,48.0,11.0,48.0,11.1,48.1",
+                "square,home,0,48.1,11.5,150",
+                "circle,home,x,48.1,11.5,150",
+        };
+        for (String line : lines) {
+            try {
+                Geofence.read(new StringReader("# fences\n" + line + "\n"));
+                fail(line);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().startsWith("Line 2: "));
+            }
+        }
+    }
+
+    /**
+     * Circles and polygons of 50 m to 5 km around a point, and a few fences larger than the grid takes.
+     */
+    static List<Geofence> fences(Random random, double latitude, double longitude, int count) {
+        List<Geofence> fences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double centerLatitude = latitude + (random.nextDouble() - 0.5) * 2;
+            double centerLongitude = longitude + (random.nextDouble() - 0.5) * 2;
+            double size = 50 + random.nextDouble() * 5000;
+            if (i % 200 == 0) {
+                size = 100_000;
+            }
+            if (random.nextBoolean()) {
+                fences.add(Geofence.circle("circle-" + i, centerLatitude, centerLongitude, size, 0));
+            } else {
+                int vertices = 3 + random.nextInt(6);
+                double[] latitudes = new double[vertices];
+                double[] longitudes = new double[vertices];
+                for (int v = 0; v < vertices; v++) {
+                    // a star, concave now and then
+                    double angle = 2 * Math.PI * v / vertices;
+                    double reach = size * (0.3 + random.nextDouble()) / 111_000;
+                    latitudes[v] = centerLatitude + reach * Math.sin(angle);
+                    longitudes[v] = centerLongitude + reach * Math.cos(angle);
+                }
+                fences.add(Geofence.polygon("polygon-" + i, latitudes, longitudes, 0));
+            }
+        }
+        return fences;
+    }
+
+    private static double haversine(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2) + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+}
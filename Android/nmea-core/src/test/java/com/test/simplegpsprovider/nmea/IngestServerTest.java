@@ -0,0 +1,211 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class IngestServerTest {
+
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Feed> feeds = new CopyOnWriteArrayList<>();
+
+    @After
+    public void stop() throws InterruptedException {
+        for (Thread thread : threads) {
+            if (thread instanceof IngestServer) {
+                ((IngestServer<?>) thread).shutdown();
+            } else {
+                thread.interrupt();
+            }
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    @Test
+    public void connectionsSharingAWorkerKeepTheirOwnEpochs() throws Exception {
+        assertFeedsApart(1);
+    }
+
+    @Test
+    public void connectionsArePinnedToOneWorker() throws Exception {
+        assertFeedsApart(2);
+    }
+
+    @Test
+    public void aFeedEndsAfterItsLastFix() throws Exception {
+        int port = start(1);
+        byte[] stream = NmeaCorpus.stream(NmeaCorpus.GPS_1HZ);
+        for (int i = 0; i < 3; i++) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket.getOutputStream().write(stream);
+            }
+        }
+        for (int i = 0; i < 3; i++) {
+            Feed feed = awaitFeed(i);
+            assertTrue(feed.ended.await(10, TimeUnit.SECONDS));
+            assertEquals(600, feed.fixes.size());
+            assertFalse(feed.fixAfterEnd);
+        }
+    }
+
+    @Test
+    public void theWorkerFlushesTheEpochOfAQuietFeed() throws Exception {
+        int port = start(1);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            // GGA alone, the epoch waits for its RMC
+            socket.getOutputStream().write(NmeaCorpus.bytes(NmeaCorpus.load(NmeaCorpus.GPS_1HZ).get(0) + "\r\n"));
+            Feed feed = awaitFeed(0);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (feed.fixes.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, feed.fixes.size());
+            assertEquals(1, feed.ended.getCount());
+        }
+    }
+
+    /**
+     * Streams the same track to two connections at once, on the northern and the southern hemisphere.
+     */
+    private void assertFeedsApart(int workers) throws Exception {
+        int port = start(workers);
+        byte[] north = NmeaCorpus.stream(NmeaCorpus.MULTI_GNSS_10HZ);
+        StringBuilder south = new StringBuilder();
+        for (String line : NmeaCorpus.load(NmeaCorpus.MULTI_GNSS_10HZ)) {
+            String body = line.substring(1, line.length() - 3);
+            south.append(NmeaCorpus.sentence(body.replace(",N,", ",S,"))).append("\r\n");
+        }
+        try (Socket first = new Socket(InetAddress.getLoopbackAddress(), port);
+             Socket second = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream northOutput = first.getOutputStream();
+            OutputStream southOutput = second.getOutputStream();
+            byte[] southBytes = NmeaCorpus.bytes(south.toString());
+            // different chunk sizes, so that the frames of the two feeds are cut at different places
+            for (int chunk = 0; chunk * 997 < Math.max(north.length, southBytes.length); chunk++) {
+                write(northOutput, north, chunk * 997, 997);
+                write(southOutput, southBytes, chunk * 1000, 1000);
+            }
+        }
+        Set<Boolean> hemispheres = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            Feed feed = awaitFeed(i);
+            assertTrue(feed.ended.await(10, TimeUnit.SECONDS));
+            assertEquals(600, feed.fixes.size());
+            boolean northern = feed.fixes.get(0).getLatitude() > 0;
+            hemispheres.add(northern);
+            for (GpsFix fix : feed.fixes) {
+                assertEquals(northern, fix.getLatitude() > 0);
+            }
+            assertEquals(1, feed.threads.size());
+        }
+        assertEquals(2, hemispheres.size());
+        if (workers > 1) {
+            assertFalse(awaitFeed(0).threads.equals(awaitFeed(1).threads));
+        }
+    }
+
+    private static void write(OutputStream output, byte[] stream, int offset, int length) throws IOException {
+        if (offset < stream.length) {
+            output.write(stream, offset, Math.min(length, stream.length - offset));
+        }
+    }
+
+    private int start(int workers) throws InterruptedException {
+        FrameRing[] rings = new FrameRing[workers];
+        for (int i = 0; i < workers; i++) {
+            rings[i] = new FrameRing(256, NmeaFrameDecoder.DEFAULT_MAX_FRAME_LENGTH, FrameRing.WaitStrategy.PARK,
+                    FrameRing.OverflowPolicy.BLOCK);
+            ParserThread worker = new ParserThread("ParserThread-" + i, rings[i], IngestMetrics.disabled());
+            worker.start();
+            threads.add(worker);
+        }
+        Server server = new Server(rings);
+        server.start();
+        threads.add(0, server);
+        int port = server.awaitBound();
+        assertTrue(port > 0);
+        return port;
+    }
+
+    private Feed awaitFeed(int connection) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (feeds.size() <= connection && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Feed feed : feeds) {
+            if (feed.connection == connection) {
+                return feed;
+            }
+        }
+        throw new AssertionError("No feed for connection " + connection);
+    }
+
+    private static final class Feed implements FixListener {
+        final int connection;
+        final List<GpsFix> fixes = new CopyOnWriteArrayList<>();
+        final Set<Thread> threads = new HashSet<>();
+        final CountDownLatch ended = new CountDownLatch(1);
+        volatile boolean fixAfterEnd = false;
+
+        Feed(int connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onFix(GpsFix fix) {
+            if (ended.getCount() == 0) {
+                fixAfterEnd = true;
+            }
+            GpsFix copy = new GpsFix();
+            copy.set(fix);
+            fixes.add(copy);
+            synchronized (threads) {
+                threads.add(Thread.currentThread());
+            }
+        }
+
+        @Override
+        public void onEndOfStream() {
+            ended.countDown();
+        }
+    }
+
+    private final class Server extends IngestServer<Feed> {
+        Server(FrameRing[] rings) {
+            super("IngestServer", 0, rings, feed -> new NmeaParser(5f, feed), IngestMetrics.disabled(), null);
+        }
+
+        @Override
+        protected Feed openFeed(int connection, SocketAddress remote) {
+            Feed feed = new Feed(connection);
+            feeds.add(feed);
+            return feed;
+        }
+
+        @Override
+        protected void closeFeed(int connection, Feed feed, String summary) {
+            // ended by its worker
+        }
+
+        @Override
+        protected void onError(Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LatencyHistogramTest {
+
+    private static final int LAST = LatencyHistogram.BUCKETS - 1;
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS * 2; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+        // two values per bucket above
+        assertEquals(32, LatencyHistogram.bucketOf(32));
+        assertEquals(32, LatencyHistogram.bucketOf(33));
+        assertEquals(33, LatencyHistogram.bucketOf(34));
+        assertEquals(33, LatencyHistogram.upperBoundOf(32));
+    }
+
+    @Test
+    public void bucketsFollowEachOther() {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        for (int bucket = 0; bucket < LAST; bucket++) {
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals("upper bound of " + bucket, bucket, LatencyHistogram.bucketOf(upper));
+            assertEquals("after " + bucket, bucket + 1, LatencyHistogram.bucketOf(upper + 1));
+        }
+    }
+
+    @Test
+    public void longValuesLandInTheLastBucket() {
+        long upper = LatencyHistogram.upperBoundOf(LAST);
+        assertEquals((1L << 41) - 1, upper);
+        assertEquals(LAST, LatencyHistogram.bucketOf(upper));
+        assertEquals(LAST, LatencyHistogram.bucketOf(upper + 1));
+        assertEquals(LAST, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        long hour = 3_600_000_000_000L;
+        histogram.record(1000);
+        histogram.record(hour);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        // the percentile stops at the bound of the last bucket, the maximum is exact
+        assertEquals(upper, snapshot.valueAtPercentile(100));
+        assertEquals(hour, snapshot.getMax());
+        assertEquals(LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(1000)), snapshot.valueAtPercentile(50));
+    }
+
+    @Test
+    public void valuesAreKnownWithinASixteenth() {
+        Random random = new Random(5897L);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (24 + random.nextInt(40));
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(value + " in " + upper, upper >= value);
+            if (value < 1L << 41) {
+                assertTrue(value + " in " + upper, upper - value <= value / LatencyHistogram.SUB_BUCKETS);
+            }
+        }
+    }
+
+    @Test
+    public void emptyHistogramReadsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean(), 0.0);
+        assertEquals(0, snapshot.valueAtPercentile(50));
+        assertEquals(0, snapshot.valueAtPercentile(99.9));
+        assertEquals(0, snapshot.valueAtPercentile(100));
+    }
+
+    @Test
+    public void negativeValuesAreCountedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MIN_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.valueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesOfAUniformDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 to 1000 us
+        for (int i = 1000; i >= 1; i--) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(500_500.0, snapshot.getMean(), 0.0);
+        assertWithin(1000, snapshot.valueAtPercentile(0));
+        assertWithin(500_000, snapshot.valueAtPercentile(50));
+        assertWithin(900_000, snapshot.valueAtPercentile(90));
+        assertWithin(990_000, snapshot.valueAtPercentile(99));
+        // capped by the maximum
+        assertEquals(1_000_000, snapshot.valueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesOfABimodalDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(1_000_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(100_000_000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        long fast = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(1_000_000));
+        assertEquals(fast, snapshot.valueAtPercentile(50));
+        assertEquals(fast, snapshot.valueAtPercentile(99));
+        assertEquals(100_000_000, snapshot.valueAtPercentile(99.1));
+        assertEquals(100_000_000, snapshot.valueAtPercentile(100));
+    }
+
+    @Test
+    public void concurrentRecordsAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i % 1000 + offset);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(400_000, snapshot.getCount());
+        assertEquals(1002, snapshot.getMax());
+        assertEquals(1002, snapshot.valueAtPercentile(100));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " read " + actual,
+                actual >= expected && actual - expected <= expected / LatencyHistogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,163 @@
+package com.test.simplegpsprovider.nmea;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The synthetic traffic of the benchmarks, generated the same way and with the same seed as the
+ * {@code gps-1hz}, {@code multi-gnss-10hz} and {@code corrupted-5pct} corpora of {@code :nmea-bench},
+ * which the tests of this module can't depend on.
+ */
+final class NmeaCorpus {
+
+    static final String GPS_1HZ = "gps-1hz";
+    static final String MULTI_GNSS_10HZ = "multi-gnss-10hz";
+    static final String CORRUPTED_5PCT = "corrupted-5pct";
+
+    private static final long SEED = 5897L;
+    private static final double KNOTS_PER_METER_PER_SECOND = 1.943844;
+
+    private NmeaCorpus() {
+    }
+
+    /**
+     * @return the lines of a corpus, without line terminator
+     */
+    static List<String> load(String name) {
+        switch (name) {
+            case GPS_1HZ:
+                return generate(600, 1, false, 0.0);
+            case MULTI_GNSS_10HZ:
+                return generate(600, 10, true, 0.0);
+            case CORRUPTED_5PCT:
+                return generate(600, 10, true, 0.05);
+            default:
+                throw new IllegalArgumentException("Unknown corpus " + name);
+        }
+    }
+
+    /**
+     * @return the lines of a corpus as received on a socket, CR/LF included
+     */
+    static byte[] stream(String name) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : load(name)) {
+            builder.append(line).append("\r\n");
+        }
+        return bytes(builder.toString());
+    }
+
+    static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return the fields of a sentence, the talker and type first, the checksum excluded
+     */
+    static String[] fields(String sentence) {
+        int star = sentence.lastIndexOf('*');
+        return sentence.substring(1, star < 0 ? sentence.length() : star).split(",", -1);
+    }
+
+    /**
+     * Generates a vehicle driving on a 500 m circle at 15 m/s.
+     */
+    private static List<String> generate(int epochs, int rate, boolean multiGnss, double corruption) {
+        Random random = new Random(SEED);
+        List<String> lines = new ArrayList<>();
+        String solution = multiGnss ? "GN" : "GP";
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            long millis = 43_200_000L + epoch * 1000L / rate;
+            String time = String.format(Locale.ROOT, "%02d%02d%02d.%02d",
+                    millis / 3_600_000L, millis / 60_000L % 60, millis / 1000L % 60, millis % 1000 / 10);
+            double angle = epoch * 0.03 / rate;
+            double latitude = 48.1173 + 0.0045 * Math.sin(angle);
+            double longitude = 11.5167 + 0.0067 * Math.cos(angle);
+            double bearing = (Math.toDegrees(angle) + 90.0) % 360.0;
+            String lat = coordinate(latitude, 2) + ",N";
+            String lon = coordinate(longitude, 3) + ",E";
+            lines.add(sentence(solution + "GGA," + time + "," + lat + "," + lon + ",4,"
+                    + (multiGnss ? "24" : "09") + ",0.7,545.4,M,46.9,M,1.0,0000"));
+            lines.add(sentence(String.format(Locale.ROOT, "%sRMC,%s,A,%s,%s,%.3f,%.2f,230394,003.1,W,D",
+                    solution, time, lat, lon, 15.0 * KNOTS_PER_METER_PER_SECOND, bearing)));
+            if (multiGnss) {
+                lines.add(sentence("GNGSA,A,3,02,05,07,09,13,16,20,27,30,,,,1.2,0.7,1.0,1"));
+                lines.add(sentence("GNGSA,A,3,65,71,72,79,80,87,,,,,,,1.2,0.7,1.0,2"));
+                lines.add(sentence("GNGSA,A,3,03,05,13,15,24,26,,,,,,,1.2,0.7,1.0,3"));
+                satellites(lines, random, "GP", 12);
+                satellites(lines, random, "GL", 8);
+                satellites(lines, random, "GA", 10);
+                satellites(lines, random, "GB", 9);
+            } else {
+                lines.add(sentence("GPGSA,A,3,02,05,07,09,13,16,20,27,30,,,,1.2,0.7,1.0"));
+                satellites(lines, random, "GP", 11);
+            }
+            lines.add(sentence(String.format(Locale.ROOT, "%sVTG,%.2f,T,,M,%.3f,N,%.3f,K,D",
+                    solution, bearing, 15.0 * KNOTS_PER_METER_PER_SECOND, 15.0 * 3.6)));
+        }
+        if (corruption > 0.0) {
+            for (int i = 0; i < lines.size(); i++) {
+                if (random.nextDouble() < corruption) {
+                    lines.set(i, corrupt(lines.get(i), random));
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static void satellites(List<String> lines, Random random, String talker, int count) {
+        int messages = (count + 3) / 4;
+        for (int message = 0; message < messages; message++) {
+            StringBuilder body = new StringBuilder(talker).append("GSV,").append(messages)
+                    .append(',').append(message + 1).append(',').append(String.format(Locale.ROOT, "%02d", count));
+            for (int i = message * 4; i < Math.min(count, message * 4 + 4); i++) {
+                body.append(String.format(Locale.ROOT, ",%02d,%02d,%03d,%02d",
+                        i + 1, random.nextInt(90), random.nextInt(360), 20 + random.nextInt(30)));
+            }
+            lines.add(sentence(body.toString()));
+        }
+    }
+
+    private static String corrupt(String line, Random random) {
+        switch (random.nextInt(3)) {
+            case 0: {
+                // flipped bit, the checksum no longer matches
+                char[] chars = line.toCharArray();
+                int position = 1 + random.nextInt(chars.length - 4);
+                chars[position] = chars[position] == '0' ? '1' : '0';
+                return new String(chars);
+            }
+            case 1:
+                // line cut in the middle
+                return line.substring(0, 1 + random.nextInt(line.length() - 1));
+            default: {
+                ByteArrayOutputStream garbage = new ByteArrayOutputStream();
+                for (int i = 0; i < line.length(); i++) {
+                    garbage.write(0x20 + random.nextInt(0x5e));
+                }
+                return new String(garbage.toByteArray(), StandardCharsets.ISO_8859_1).replace('$', '#');
+            }
+        }
+    }
+
+    static String coordinate(double degrees, int degreeDigits) {
+        int whole = (int) degrees;
+        double minutes = (degrees - whole) * 60.0;
+        return String.format(Locale.ROOT, "%0" + degreeDigits + "d%010.7f", whole, minutes);
+    }
+
+    /**
+     * @return {@code $<body>*hh} with the checksum of the body
+     */
+    static String sentence(String body) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return String.format(Locale.ROOT, "$%s*%02X", body, checksum);
+    }
+}
@@ -0,0 +1,167 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class NmeaFrameDecoderTest {
+
+    @Test
+    public void framesSurviveAnyChunking() {
+        List<String> lines = NmeaCorpus.load(NmeaCorpus.MULTI_GNSS_10HZ);
+        byte[] stream = NmeaCorpus.stream(NmeaCorpus.MULTI_GNSS_10HZ);
+        Random random = new Random(5897L);
+        for (int maxChunk : new int[]{1, 7, 97, 4096}) {
+            NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+            List<String> frames = new ArrayList<>();
+            for (int offset = 0; offset < stream.length; ) {
+                int length = Math.min(stream.length - offset, 1 + random.nextInt(maxChunk));
+                decoder.decode(stream, offset, length, collect(frames));
+                offset += length;
+            }
+            assertEquals(lines, frames);
+            assertEquals(lines.size(), decoder.getFrames());
+            assertEquals(0, decoder.getPartialFrames() + decoder.getOverlongFrames() + decoder.getResyncs());
+        }
+    }
+
+    @Test
+    public void directBuffersAreDecodedLikeArrays() {
+        byte[] stream = NmeaCorpus.stream(NmeaCorpus.GPS_1HZ);
+        NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+        List<String> frames = new ArrayList<>();
+        ByteBuffer direct = ByteBuffer.allocateDirect(1500);
+        for (int offset = 0; offset < stream.length; offset += 1500) {
+            direct.clear();
+            direct.put(stream, offset, Math.min(1500, stream.length - offset)).flip();
+            decoder.decode(direct, collect(frames));
+            assertEquals(0, direct.remaining());
+        }
+        assertEquals(NmeaCorpus.load(NmeaCorpus.GPS_1HZ), frames);
+    }
+
+    @Test
+    public void lineFeedAloneEndsAFrame() {
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$"), decode("$A*00\n$B*00\r\n$\n"));
+    }
+
+    @Test
+    public void garbageBetweenFramesIsSkipped() {
+        NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+        List<String> frames = new ArrayList<>();
+        byte[] stream = NmeaCorpus.bytes("noise\r\n$A*00\r\nmore noise $B*00\r\n\r\n\r\n$C*00\r\n");
+        decoder.decode(stream, 0, stream.length, collect(frames));
+        assertEquals(Arrays.asList("$A*00", "$B*00", "$C*00"), frames);
+        assertEquals(2, decoder.getResyncs());
+    }
+
+    @Test
+    public void aCutFrameIsDroppedForTheNextOne() {
+        NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+        List<String> frames = new ArrayList<>();
+        byte[] stream = NmeaCorpus.bytes("$GPGGA,1235$GPRMC,123519*00\r\n");
+        decoder.decode(stream, 0, 8, collect(frames));
+        decoder.decode(stream, 8, stream.length - 8, collect(frames));
+        assertEquals(Arrays.asList("$GPRMC,123519*00"), frames);
+        assertEquals(1, decoder.getPartialFrames());
+    }
+
+    @Test
+    public void overlongFramesAreDropped() {
+        NmeaFrameDecoder decoder = new NmeaFrameDecoder(16);
+        List<String> frames = new ArrayList<>();
+        byte[] stream = NmeaCorpus.bytes("$0123456789ABCDEF*00\r\n$GPGGA,1*00\r\n$0123456789AB\r\n");
+        for (int split = 0; split <= stream.length; split++) {
+            frames.clear();
+            decoder.decode(stream, 0, split, collect(frames));
+            decoder.decode(stream, split, stream.length - split, collect(frames));
+            assertEquals(Arrays.asList("$GPGGA,1*00", "$0123456789AB"), frames);
+        }
+        assertEquals(stream.length + 1, decoder.getOverlongFrames());
+    }
+
+    @Test
+    public void endOfStreamDropsTheFrameInProgress() {
+        NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+        List<String> frames = new ArrayList<>();
+        byte[] stream = NmeaCorpus.bytes("$A*00\r\n$GPGGA,12");
+        decoder.decode(stream, 0, stream.length, collect(frames));
+        decoder.endOfStream();
+        stream = NmeaCorpus.bytes("3519*00\r\n$B*00\r\n");
+        decoder.decode(stream, 0, stream.length, collect(frames));
+        assertEquals(Arrays.asList("$A*00", "$B*00"), frames);
+        assertEquals(1, decoder.getPartialFrames());
+    }
+
+    @Test
+    public void ubxMessagesAreCutByTheirLength() {
+        // the payload holds the NMEA delimiters, never scanned for
+        byte[] ubx = ubx(0x01, 0x07, NmeaCorpus.bytes("$\r\n*\n$$"));
+        byte[] nmea = NmeaCorpus.bytes("$A*00\r\n");
+        byte[] stream = new byte[nmea.length * 2 + ubx.length];
+        System.arraycopy(nmea, 0, stream, 0, nmea.length);
+        System.arraycopy(ubx, 0, stream, nmea.length, ubx.length);
+        System.arraycopy(nmea, 0, stream, nmea.length + ubx.length, nmea.length);
+        for (int split = 0; split <= stream.length; split++) {
+            NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+            List<byte[]> frames = new ArrayList<>();
+            NmeaFrameDecoder.FrameListener listener =
+                    (buffer, offset, length) -> frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+            decoder.decode(stream, 0, split, listener);
+            decoder.decode(stream, split, stream.length - split, listener);
+            assertEquals(3, frames.size());
+            assertArrayEquals(ubx, frames.get(1));
+            assertEquals("$A*00", new String(frames.get(2), StandardCharsets.ISO_8859_1));
+            assertEquals(1, decoder.getUbxFrames());
+        }
+    }
+
+    @Test
+    public void overlongUbxMessagesAreSkippedByTheirLength() {
+        NmeaFrameDecoder decoder = new NmeaFrameDecoder(64);
+        List<String> frames = new ArrayList<>();
+        byte[] payload = new byte[100];
+        Arrays.fill(payload, (byte) '$');
+        byte[] ubx = ubx(0x01, 0x07, payload);
+        decoder.decode(ubx, 0, ubx.length, collect(frames));
+        byte[] nmea = NmeaCorpus.bytes("\r\n$A*00\r\n");
+        decoder.decode(nmea, 0, nmea.length, collect(frames));
+        assertEquals(Arrays.asList("$A*00"), frames);
+        assertEquals(1, decoder.getOverlongFrames());
+        assertEquals(0, decoder.getUbxFrames());
+    }
+
+    private static List<String> decode(String text) {
+        List<String> frames = new ArrayList<>();
+        byte[] stream = NmeaCorpus.bytes(text);
+        new NmeaFrameDecoder().decode(stream, 0, stream.length, collect(frames));
+        return frames;
+    }
+
+    private static NmeaFrameDecoder.FrameListener collect(List<String> frames) {
+        return (buffer, offset, length) -> frames.add(new String(buffer, offset, length, StandardCharsets.ISO_8859_1));
+    }
+
+    static byte[] ubx(int messageClass, int messageId, byte[] payload) {
+        byte[] message = new byte[UbxMessage.HEADER_LENGTH + payload.length + UbxMessage.CHECKSUM_LENGTH];
+        message[0] = UbxMessage.SYNC_1;
+        message[1] = UbxMessage.SYNC_2;
+        message[2] = (byte) messageClass;
+        message[3] = (byte) messageId;
+        message[4] = (byte) payload.length;
+        message[5] = (byte) (payload.length >> 8);
+        System.arraycopy(payload, 0, message, UbxMessage.HEADER_LENGTH, payload.length);
+        int checksum = UbxMessage.checksum(message, 0, payload.length);
+        message[message.length - 2] = (byte) checksum;
+        message[message.length - 1] = (byte) (checksum >> 8);
+        return message;
+    }
+}
@@ -0,0 +1,188 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+public class NmeaNumberDecoderTest {
+
+    private static final String[] CORPORA = {NmeaCorpus.GPS_1HZ, NmeaCorpus.MULTI_GNSS_10HZ};
+
+    @Test
+    public void coordinatesOfTheCorporaAreExact() {
+        int coordinates = 0;
+        for (String corpus : CORPORA) {
+            for (String line : NmeaCorpus.load(corpus)) {
+                String[] fields = NmeaCorpus.fields(line);
+                int first = fields[0].endsWith("GGA") ? 2 : fields[0].endsWith("RMC") ? 3 : -1;
+                if (first < 0) {
+                    continue;
+                }
+                assertCoordinate(fields[first], fields[first + 1]);
+                assertCoordinate(fields[first + 2], fields[first + 3]);
+                coordinates += 2;
+            }
+        }
+        assertEquals(2 * 2 * (600 + 600), coordinates);
+    }
+
+    @Test
+    public void coordinatesOfEveryHemisphereAreExact() {
+        Random random = new Random(5897L);
+        for (int i = 0; i < 100_000; i++) {
+            double latitude = random.nextDouble() * 90.0;
+            double longitude = random.nextDouble() * 180.0;
+            assertCoordinate(NmeaCorpus.coordinate(latitude, 2), random.nextBoolean() ? "N" : "S");
+            assertCoordinate(NmeaCorpus.coordinate(longitude, 3), random.nextBoolean() ? "E" : "W");
+        }
+    }
+
+    @Test
+    public void coordinatesMatchTheLegacyDoubleParse() {
+        for (String corpus : CORPORA) {
+            for (String line : NmeaCorpus.load(corpus)) {
+                String[] fields = NmeaCorpus.fields(line);
+                int first = fields[0].endsWith("GGA") ? 2 : fields[0].endsWith("RMC") ? 3 : -1;
+                if (first < 0) {
+                    continue;
+                }
+                for (int i = first; i <= first + 2; i += 2) {
+                    double decoded = NmeaNumberDecoder.toDegrees(coordinate(fields[i], fields[i + 1]));
+                    assertEquals(fields[i], legacyCoordinate(fields[i], fields[i + 1]), decoded, 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void numbersOfTheCorporaAreBitIdenticalToTheJdk() {
+        int numbers = 0;
+        for (String corpus : CORPORA) {
+            for (String line : NmeaCorpus.load(corpus)) {
+                String[] fields = NmeaCorpus.fields(line);
+                for (int i = 1; i < fields.length; i++) {
+                    if (fields[i].matches("[-+]?[0-9]*\\.?[0-9]+")) {
+                        assertNumber(fields[i]);
+                        numbers++;
+                    }
+                }
+            }
+        }
+        assertTrue(numbers > 100_000);
+    }
+
+    @Test
+    public void randomNumbersAreBitIdenticalToTheJdk() {
+        Random random = new Random(5897L);
+        for (int i = 0; i < 100_000; i++) {
+            long mantissa = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int decimals = random.nextInt(12);
+            String number = BigDecimal.valueOf(mantissa, decimals).toPlainString();
+            assertNumber(random.nextBoolean() ? "-" + number : number);
+        }
+    }
+
+    @Test
+    public void emptyFieldsAreInvalid() {
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("", "N"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("", "E"));
+        assertTrue(Double.isNaN(NmeaNumberDecoder.parseDouble(new byte[0], 0, 0)));
+        assertTrue(Float.isNaN(NmeaNumberDecoder.parseFloat(new byte[0], 0, 0)));
+        assertEquals(NmeaNumberDecoder.INVALID, NmeaNumberDecoder.parseUnsigned(new byte[0], 0, 0));
+    }
+
+    @Test
+    public void coordinatesWithoutHemisphereAreInvalid() {
+        byte[] latitude = NmeaCorpus.bytes("4807.038");
+        assertEquals(NmeaNumberDecoder.INVALID, NmeaNumberDecoder.parseCoordinate(latitude, 0, latitude.length, (byte) 0));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("4807.038", "X"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("4807.038", "n"));
+    }
+
+    @Test
+    public void minutesFromSixtyAreInvalid() {
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("4860.000", "N"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("01199.5", "E"));
+        // rounds up to the next degree, but the minutes themselves are below 60
+        assertEquals(49 * NmeaNumberDecoder.NANOS_PER_DEGREE, coordinate("4859.9999999999", "N"));
+    }
+
+    @Test
+    public void latitudesAreBoundedAtNinetyDegrees() {
+        assertEquals(90 * NmeaNumberDecoder.NANOS_PER_DEGREE, coordinate("9000.000", "N"));
+        assertEquals(-90 * NmeaNumberDecoder.NANOS_PER_DEGREE, coordinate("9000.000", "S"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("9000.001", "N"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("9100.000", "S"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("12000.000", "N"));
+        // a longitude of 91 degrees is fine
+        assertEquals(91 * NmeaNumberDecoder.NANOS_PER_DEGREE, coordinate("09100.000", "E"));
+    }
+
+    @Test
+    public void longitudesAreBoundedAtOneHundredEightyDegrees() {
+        assertEquals(180 * NmeaNumberDecoder.NANOS_PER_DEGREE, coordinate("18000.000", "E"));
+        assertEquals(-180 * NmeaNumberDecoder.NANOS_PER_DEGREE, coordinate("18000.000", "W"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("18000.0001", "W"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("18100.000", "E"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("99900.000", "E"));
+    }
+
+    @Test
+    public void malformedFieldsAreInvalid() {
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("48a7.038", "N"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("4807.0-8", "N"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("07.038", "N"));
+        assertEquals(NmeaNumberDecoder.INVALID, coordinate("-4807.038", "N"));
+        assertTrue(Double.isNaN(parseDouble("1.2.3")));
+        assertTrue(Double.isNaN(parseDouble("-")));
+        assertTrue(Double.isNaN(parseDouble("1e5")));
+        assertEquals(NmeaNumberDecoder.INVALID, NmeaNumberDecoder.parseUnsigned(NmeaCorpus.bytes("-1"), 0, 2));
+    }
+
+    private static void assertCoordinate(String field, String hemisphere) {
+        int point = field.indexOf('.');
+        BigDecimal degrees = new BigDecimal(field.substring(0, point - 2));
+        BigDecimal minutes = new BigDecimal(field.substring(point - 2));
+        BigDecimal nanos = degrees.movePointRight(9)
+                .add(minutes.movePointRight(9).divide(BigDecimal.valueOf(60), 0, RoundingMode.HALF_EVEN));
+        long expected = nanos.longValueExact();
+        if (hemisphere.equals("S") || hemisphere.equals("W")) {
+            expected = -expected;
+        }
+        assertEquals(field + "," + hemisphere, expected, coordinate(field, hemisphere));
+    }
+
+    private static void assertNumber(String field) {
+        assertEquals(field, Double.doubleToRawLongBits(Double.parseDouble(field)),
+                Double.doubleToRawLongBits(parseDouble(field)));
+        byte[] bytes = NmeaCorpus.bytes(field);
+        assertEquals(field, Float.floatToRawIntBits(Float.parseFloat(field)),
+                Float.floatToRawIntBits(NmeaNumberDecoder.parseFloat(bytes, 0, bytes.length)));
+    }
+
+    private static long coordinate(String field, String hemisphere) {
+        // decoded from the middle of a sentence, as the parser does
+        byte[] bytes = NmeaCorpus.bytes("$," + field + "," + hemisphere + "*");
+        return NmeaNumberDecoder.parseCoordinate(bytes, 2, field.length(), bytes[3 + field.length()]);
+    }
+
+    private static double parseDouble(String field) {
+        byte[] bytes = NmeaCorpus.bytes(field);
+        return NmeaNumberDecoder.parseDouble(bytes, 0, bytes.length);
+    }
+
+    /**
+     * The String based decoding of the coordinates before the fixed-point one.
+     */
+    private static double legacyCoordinate(String field, String hemisphere) {
+        double temp1 = Double.parseDouble(field);
+        double temp2 = Math.floor(temp1 / 100);
+        double temp3 = (temp1 / 100 - temp2) / 0.6;
+        return hemisphere.equals("S") || hemisphere.equals("W") ? -(temp2 + temp3) : temp2 + temp3;
+    }
+}
@@ -0,0 +1,138 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NmeaParserTest {
+
+    private static final long NOON = LocalDate.of(1994, 3, 23).atStartOfDay(ZoneOffset.UTC).toInstant()
+            .toEpochMilli() + 12 * 3_600_000L;
+
+    @Test
+    public void everyEpochOfTheCorporaGivesOneFix() {
+        assertFixes(NmeaCorpus.GPS_1HZ, 1);
+        assertFixes(NmeaCorpus.MULTI_GNSS_10HZ, 10);
+    }
+
+    @Test
+    public void onlySentencesWithAValidChecksumAreAccepted() {
+        NmeaParser parser = new NmeaParser(fix -> {
+        });
+        for (String line : NmeaCorpus.load(NmeaCorpus.CORRUPTED_5PCT)) {
+            byte[] bytes = NmeaCorpus.bytes(line);
+            boolean valid = NmeaSentenceTest.expectedStatus(line) == NmeaSentence.VALID;
+            assertEquals(line, valid, parser.parseNmeaSentence(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void corruptedLinesOnlyLoseTheirOwnEpochs() {
+        List<GpsFix> fixes = parse(NmeaCorpus.CORRUPTED_5PCT);
+        assertTrue(fixes.size() > 500 && fixes.size() <= 600);
+        for (GpsFix fix : fixes) {
+            assertTrue(fix.hasPosition());
+            assertEquals(48.1173, fix.getLatitude(), 0.005);
+            assertEquals(11.5167, fix.getLongitude(), 0.007);
+        }
+    }
+
+    @Test
+    public void stringSentencesAreReturnedWhenValid() {
+        NmeaParser parser = new NmeaParser(fix -> {
+        });
+        String line = "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A";
+        assertSame(line, parser.parseNmeaSentence(line));
+        assertNull(parser.parseNmeaSentence(line.replace("*6A", "*6B")));
+        assertNull(parser.parseNmeaSentence("GPRMC,123519*6A"));
+    }
+
+    @Test
+    public void sentencesAreReadFromTheMiddleOfABuffer() {
+        List<GpsFix> fixes = new ArrayList<>();
+        NmeaParser parser = new NmeaParser(5f, fix -> fixes.add(copy(fix)));
+        String gga = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47";
+        String rmc = "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A";
+        byte[] bytes = NmeaCorpus.bytes("garbage" + gga + "\r\n" + rmc + "\r\ngarbage");
+        assertTrue(parser.parseNmeaSentence(bytes, 7, gga.length() + 2));
+        assertTrue(parser.parseNmeaSentence(bytes, 9 + gga.length(), rmc.length()));
+        parser.endOfStream();
+        assertEquals(1, fixes.size());
+        GpsFix fix = fixes.get(0);
+        assertEquals(48.1173, fix.getLatitude(), 1e-9);
+        assertEquals(11.516666667, fix.getLongitude(), 1e-9);
+        assertEquals(545.4, fix.getAltitude(), 0.0);
+        assertEquals(0.9f * 5f, fix.getAccuracy(), 0f);
+        assertEquals(8, fix.getSatellites());
+        assertEquals(22.4f * 1852f / 3600f, fix.getSpeed(), 1e-4f);
+        assertEquals(84.4f, fix.getBearing(), 0f);
+        assertEquals(NOON + (35 * 60 + 19) * 1000L, fix.getTime());
+    }
+
+    @Test
+    public void epochsWithoutFixAreNotPublished() {
+        List<GpsFix> fixes = new ArrayList<>();
+        NmeaParser parser = new NmeaParser(fix -> fixes.add(copy(fix)));
+        assertTrue(parse(parser, NmeaCorpus.sentence("GPGGA,123519,,,,,0,00,,,M,,M,,")));
+        assertTrue(parse(parser, NmeaCorpus.sentence("GPRMC,123519,V,,,,,,,230394,,")));
+        parser.endOfStream();
+        assertEquals(0, fixes.size());
+    }
+
+    private static void assertFixes(String corpus, int rate) {
+        List<GpsFix> fixes = parse(corpus);
+        assertEquals(600, fixes.size());
+        List<String> lines = NmeaCorpus.load(corpus);
+        int epoch = 0;
+        for (String line : lines) {
+            String[] fields = NmeaCorpus.fields(line);
+            if (!fields[0].endsWith("RMC")) {
+                continue;
+            }
+            GpsFix fix = fixes.get(epoch);
+            assertTrue(fix.hasAll(GpsFix.HAS_POSITION | GpsFix.HAS_ALTITUDE | GpsFix.HAS_SPEED
+                    | GpsFix.HAS_BEARING | GpsFix.HAS_ACCURACY | GpsFix.HAS_SATELLITES));
+            assertEquals(NOON + epoch * 1000L / rate, fix.getTime());
+            assertEquals(line, legacyCoordinate(fields[3]), fix.getLatitude(), 1e-9);
+            assertEquals(line, legacyCoordinate(fields[5]), fix.getLongitude(), 1e-9);
+            assertEquals(line, Float.parseFloat(fields[7]) / 3.6f * 1.852f, fix.getSpeed(), 1e-5f);
+            assertEquals(line, Float.parseFloat(fields[8]), fix.getBearing(), 0f);
+            epoch++;
+        }
+    }
+
+    private static List<GpsFix> parse(String corpus) {
+        List<GpsFix> fixes = new ArrayList<>();
+        NmeaParser parser = new NmeaParser(fix -> fixes.add(copy(fix)));
+        for (String line : NmeaCorpus.load(corpus)) {
+            byte[] bytes = NmeaCorpus.bytes(line + "\r\n");
+            parser.parseNmeaSentence(bytes, 0, bytes.length);
+        }
+        parser.endOfStream();
+        return fixes;
+    }
+
+    private static boolean parse(NmeaParser parser, String line) {
+        return parser.parseNmeaSentence(line) != null;
+    }
+
+    private static GpsFix copy(GpsFix fix) {
+        GpsFix copy = new GpsFix();
+        copy.set(fix);
+        return copy;
+    }
+
+    private static double legacyCoordinate(String field) {
+        double temp1 = Double.parseDouble(field);
+        double temp2 = Math.floor(temp1 / 100);
+        return temp2 + (temp1 / 100 - temp2) / 0.6;
+    }
+}
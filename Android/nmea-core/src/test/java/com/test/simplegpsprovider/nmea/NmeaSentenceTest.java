@@ -0,0 +1,158 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+public class NmeaSentenceTest {
+
+    @Test
+    public void fieldsMatchTheStringSplit() {
+        NmeaSentence sentence = new NmeaSentence();
+        for (String line : NmeaCorpus.load(NmeaCorpus.MULTI_GNSS_10HZ)) {
+            byte[] bytes = NmeaCorpus.bytes("\n" + line + "\r\n");
+            assertEquals(line, NmeaSentence.VALID, sentence.parse(bytes, 1, bytes.length - 1));
+            String[] fields = NmeaCorpus.fields(line);
+            assertEquals(line, fields.length, sentence.fieldCount());
+            for (int i = 0; i < fields.length; i++) {
+                assertEquals(line, fields[i], sentence.fieldString(i));
+                assertEquals(fields[i].isEmpty(), sentence.isEmpty(i));
+            }
+            assertEquals("", sentence.fieldString(fields.length));
+            assertEquals(0, sentence.fieldLength(fields.length));
+        }
+    }
+
+    @Test
+    public void statusMatchesTheChecksumOfTheCorruptedCorpus() {
+        NmeaSentence sentence = new NmeaSentence();
+        int invalid = 0;
+        List<String> lines = NmeaCorpus.load(NmeaCorpus.CORRUPTED_5PCT);
+        for (String line : lines) {
+            byte[] bytes = NmeaCorpus.bytes(line);
+            int status = sentence.parse(bytes, 0, bytes.length);
+            assertEquals(line, expectedStatus(line), status);
+            assertEquals(line, status, NmeaSentence.check(bytes, 0, bytes.length));
+            if (status != NmeaSentence.VALID) {
+                invalid++;
+            }
+        }
+        // about 5% of the lines are damaged, a few flipped bits still keep them valid
+        assertTrue(invalid > lines.size() / 25 && invalid < lines.size() / 15);
+    }
+
+    @Test
+    public void malformedFramesAreRejected() {
+        assertEquals(NmeaSentence.INVALID_FRAME, parse(""));
+        assertEquals(NmeaSentence.INVALID_FRAME, parse("$*0"));
+        assertEquals(NmeaSentence.INVALID_FRAME, parse("GPGGA,1*00"));
+        assertEquals(NmeaSentence.INVALID_FRAME, parse("$GPGGA,1"));
+        assertEquals(NmeaSentence.INVALID_FRAME, parse("$GPGGA,1*G0"));
+        assertEquals(NmeaSentence.INVALID_FRAME, parse("$GPGGA,$GPGGA,1*00"));
+        assertEquals(NmeaSentence.INVALID_FRAME, parse("$GPGGA,*1*00"));
+        assertEquals(NmeaSentence.VALID, parse("$*00"));
+    }
+
+    @Test
+    public void checksumDigitsMayBeLowerCase() {
+        // checksum 0x6A
+        String line = "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A";
+        assertEquals(NmeaSentence.VALID, parse(line));
+        assertEquals(NmeaSentence.VALID, parse(line.replace("*6A", "*6a")));
+        assertEquals(NmeaSentence.INVALID_CHECKSUM, parse(line.replace("*6A", "*6B")));
+    }
+
+    @Test
+    public void fieldsPastTheLimitAreIgnored() {
+        StringBuilder body = new StringBuilder("PXXXX");
+        for (int i = 1; i < NmeaSentence.MAX_FIELDS + 10; i++) {
+            body.append(',').append(i);
+        }
+        NmeaSentence sentence = new NmeaSentence();
+        byte[] bytes = NmeaCorpus.bytes(NmeaCorpus.sentence(body.toString()));
+        assertEquals(NmeaSentence.VALID, sentence.parse(bytes, 0, bytes.length));
+        assertEquals(NmeaSentence.MAX_FIELDS, sentence.fieldCount());
+        assertEquals(String.valueOf(NmeaSentence.MAX_FIELDS - 1), sentence.fieldString(NmeaSentence.MAX_FIELDS - 1));
+    }
+
+    @Test
+    public void directBuffersAreParsedLikeArrays() {
+        String line = NmeaCorpus.load(NmeaCorpus.GPS_1HZ).get(0);
+        byte[] bytes = NmeaCorpus.bytes(line);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 4);
+        direct.position(4);
+        direct.put(bytes).position(4);
+        NmeaSentence sentence = new NmeaSentence();
+        assertEquals(NmeaSentence.VALID, sentence.parse(direct));
+        assertEquals(4, direct.position());
+        String[] fields = NmeaCorpus.fields(line);
+        for (int i = 0; i < fields.length; i++) {
+            assertEquals(fields[i], sentence.fieldString(i));
+        }
+    }
+
+    @Test
+    public void fieldsCompareWithoutAllocating() {
+        NmeaSentence sentence = new NmeaSentence();
+        byte[] bytes = NmeaCorpus.bytes(NmeaCorpus.sentence("GNRMC,123519,A,4807.038,N"));
+        sentence.parse(bytes, 0, bytes.length);
+        assertTrue(sentence.isType('R', 'M', 'C'));
+        assertFalse(sentence.isType('G', 'G', 'A'));
+        assertTrue(sentence.fieldEquals(2, 'A'));
+        assertFalse(sentence.fieldEquals(3, '4'));
+        byte[] other = NmeaCorpus.bytes("x4807.038x");
+        assertTrue(sentence.fieldEquals(3, other, 1, 8));
+        assertFalse(sentence.fieldEquals(3, other, 0, 8));
+        assertEquals('4', sentence.byteAt(3, 0));
+        assertEquals(0, sentence.byteAt(3, 8));
+        byte[] target = new byte[8];
+        assertEquals(8, sentence.copyField(3, target));
+        assertEquals(-1, sentence.copyField(3, new byte[7]));
+        assertEquals(('G' << 24 | 'N' << 16 | 'R' << 8 | 'M') * 256L + 'C', sentence.addressCode());
+    }
+
+    @Test
+    public void typeCodesIgnoreTheTalker() {
+        assertEquals(NmeaSentence.typeCode("GGA"), typeCode("$GPGGA,1*00"));
+        assertEquals(NmeaSentence.typeCode("GGA"), typeCode("$GNGGA*00"));
+        assertNotEquals(NmeaSentence.typeCode("GGA"), typeCode("$GPRMC,1*00"));
+        assertEquals(NmeaSentence.typeCode("GPF") | NmeaSentence.PROPRIETARY, typeCode("$PSGPF,feed*00"));
+        assertEquals(-1, typeCode("$GPGGA1*00"));
+        assertEquals(-1, typeCode("#GPGGA,1*00"));
+        assertEquals(-1, typeCode("$GPGG"));
+    }
+
+    private static int parse(String line) {
+        byte[] bytes = NmeaCorpus.bytes(line);
+        return new NmeaSentence().parse(bytes, 0, bytes.length);
+    }
+
+    private static int typeCode(String line) {
+        byte[] bytes = NmeaCorpus.bytes(line);
+        return NmeaSentence.typeCode(bytes, 0, bytes.length);
+    }
+
+    static int expectedStatus(String line) {
+        int star = line.length() - 3;
+        if (line.length() < 4 || line.charAt(0) != '$' || line.charAt(star) != '*'
+                || !line.substring(star + 1).matches("[0-9A-Fa-f]{2}")) {
+            return NmeaSentence.INVALID_FRAME;
+        }
+        String body = line.substring(1, star);
+        if (body.indexOf('$') >= 0 || body.indexOf('*') >= 0) {
+            return NmeaSentence.INVALID_FRAME;
+        }
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return checksum == Integer.parseInt(line.substring(star + 1), 16)
+                ? NmeaSentence.VALID : NmeaSentence.INVALID_CHECKSUM;
+    }
+}
@@ -0,0 +1,146 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class NmeaTimeDecoderTest {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // the date of the RMC sentences of the corpora
+    private static final long CORPUS_DAY = LocalDate.of(1994, 3, 23).atStartOfDay(ZoneOffset.UTC).toInstant()
+            .toEpochMilli();
+
+    @Test
+    public void timesOfTheCorporaMatchTheLegacyParse() throws ParseException {
+        for (String corpus : new String[]{NmeaCorpus.GPS_1HZ, NmeaCorpus.MULTI_GNSS_10HZ}) {
+            long now = CORPUS_DAY + 12 * 3_600_000L + 300_000L;
+            NmeaTimeDecoder decoder = new NmeaTimeDecoder(() -> now);
+            int times = 0;
+            for (String line : NmeaCorpus.load(corpus)) {
+                String[] fields = NmeaCorpus.fields(line);
+                if (fields[0].endsWith("GGA")) {
+                    assertEquals(fields[1], legacyTime(fields[1], now), decode(decoder, fields[1]));
+                    times++;
+                }
+            }
+            assertEquals(600, times);
+        }
+    }
+
+    @Test
+    public void timesWithDateOfTheCorporaAreOnThatDate() throws ParseException {
+        NmeaTimeDecoder decoder = new NmeaTimeDecoder(() -> 0L);
+        for (String line : NmeaCorpus.load(NmeaCorpus.MULTI_GNSS_10HZ)) {
+            String[] fields = NmeaCorpus.fields(line);
+            if (fields[0].endsWith("RMC")) {
+                byte[] time = NmeaCorpus.bytes(fields[1]);
+                byte[] date = NmeaCorpus.bytes(fields[9]);
+                long expected = legacyTime(fields[1], CORPUS_DAY + MILLIS_PER_DAY / 2);
+                assertEquals(fields[1], expected, decoder.decode(time, 0, time.length, date, 0, date.length));
+            }
+        }
+    }
+
+    @Test
+    public void timesAroundMidnightMatchTheLegacyParse() throws ParseException {
+        String[] times = {"235959.90", "000000.00", "000000.10", "120000", "115959.999"};
+        long[] clocks = {CORPUS_DAY - 1000, CORPUS_DAY + 1000, CORPUS_DAY + 12 * 3_600_000L - 1, CORPUS_DAY};
+        for (long now : clocks) {
+            for (String time : times) {
+                NmeaTimeDecoder decoder = new NmeaTimeDecoder(() -> now);
+                assertEquals(time + " at " + now, legacyTime(time, now), decode(decoder, time));
+            }
+        }
+    }
+
+    @Test
+    public void dayRollsOverAtMidnight() {
+        NmeaTimeDecoder decoder = new NmeaTimeDecoder(() -> CORPUS_DAY - 60_000L);
+        assertEquals(CORPUS_DAY - 100, decode(decoder, "235959.90"));
+        assertEquals(CORPUS_DAY, decode(decoder, "000000.00"));
+        // a late sentence from before midnight stays on the previous day
+        assertEquals(CORPUS_DAY - 50, decode(decoder, "235959.95"));
+        assertEquals(CORPUS_DAY + 100, decode(decoder, "000000.10"));
+    }
+
+    @Test
+    public void dateMakesTheCurrentDay() {
+        NmeaTimeDecoder decoder = new NmeaTimeDecoder(() -> 0L);
+        byte[] time = NmeaCorpus.bytes("120000.00");
+        byte[] date = NmeaCorpus.bytes("230394");
+        assertEquals(CORPUS_DAY + MILLIS_PER_DAY / 2, decoder.decode(time, 0, time.length, date, 0, date.length));
+        assertEquals(CORPUS_DAY + MILLIS_PER_DAY / 2 + 100, decode(decoder, "120000.10"));
+        decoder.reset();
+        assertEquals(MILLIS_PER_DAY / 2, decode(decoder, "120000.00"));
+    }
+
+    @Test
+    public void yearsBeforeEightyAreInThisCentury() {
+        assertEquals(LocalDate.of(1980, 3, 23).toEpochDay() * MILLIS_PER_DAY, parseDate("230380"));
+        assertEquals(LocalDate.of(2079, 12, 31).toEpochDay() * MILLIS_PER_DAY, parseDate("311279"));
+        assertEquals(LocalDate.of(2000, 1, 1).toEpochDay() * MILLIS_PER_DAY, parseDate("010100"));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay() * MILLIS_PER_DAY, parseDate("290224"));
+    }
+
+    @Test
+    public void fractionsAreRoundedToTheMillisecond() {
+        assertEquals(43_200_000L, parseTimeOfDay("120000"));
+        assertEquals(43_200_500L, parseTimeOfDay("120000.5"));
+        assertEquals(43_200_124L, parseTimeOfDay("120000.1235"));
+        assertEquals(43_200_123L, parseTimeOfDay("120000.1234999"));
+        // leap second
+        assertEquals(MILLIS_PER_DAY, parseTimeOfDay("235960"));
+    }
+
+    @Test
+    public void malformedFieldsAreInvalid() {
+        NmeaTimeDecoder decoder = new NmeaTimeDecoder(() -> CORPUS_DAY);
+        for (String time : new String[]{"", "12000", "240000", "126000", "120061", "120000,5", "120000.5x",
+                "12a000.00", "-12000.00"}) {
+            assertEquals(time, NmeaTimeDecoder.INVALID, decode(decoder, time));
+        }
+        for (String date : new String[]{"", "23039", "320394", "231394", "000394", "2303a4"}) {
+            assertEquals(date, NmeaTimeDecoder.INVALID, parseDate(date));
+        }
+    }
+
+    private static long decode(NmeaTimeDecoder decoder, String time) {
+        byte[] bytes = NmeaCorpus.bytes(time);
+        return decoder.decode(bytes, 0, bytes.length);
+    }
+
+    private static long parseTimeOfDay(String time) {
+        byte[] bytes = NmeaCorpus.bytes(time);
+        return NmeaTimeDecoder.parseTimeOfDay(bytes, 0, bytes.length);
+    }
+
+    private static long parseDate(String date) {
+        byte[] bytes = NmeaCorpus.bytes(date);
+        return NmeaTimeDecoder.parseDate(bytes, 0, bytes.length);
+    }
+
+    /**
+     * The {@link SimpleDateFormat} based decoding of the times before the integer one.
+     */
+    private static long legacyTime(String time, long now) throws ParseException {
+        SimpleDateFormat fmt = new SimpleDateFormat("HHmmss.SSS");
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long today = now - (now % 86400000L);
+        long temp1 = fmt.parse(String.format((Locale) null, "%010.3f", Double.parseDouble(time))).getTime();
+        long temp2 = today + temp1;
+        if (temp2 - now > 43200000L) {
+            return temp2 - 86400000L;
+        } else if (now - temp2 > 43200000L) {
+            return temp2 + 86400000L;
+        }
+        return temp2;
+    }
+}
@@ -0,0 +1,190 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class SessionRecorderTest {
+
+    private static final int SEGMENT_SIZE = 8 * 1024;
+    private static final long START_NANOS = 1_000_000_000L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordedFramesAreReadBackAndReplayed() throws IOException, InterruptedException {
+        File directory = folder.newFolder("sessions");
+        List<Frame> frames = frames(new Random(5897L), 3000, 5_000_000L);
+        SessionRecorder recorder = new SessionRecorder(directory, SEGMENT_SIZE, 100);
+        for (Frame frame : frames) {
+            record(recorder, frame);
+        }
+        recorder.close();
+        assertEquals(frames.size(), recorder.getRecorded());
+        assertTrue(SessionReader.segments(directory).length > 1);
+
+        List<Frame> read = new ArrayList<>();
+        try (SessionReader reader = new SessionReader(directory)) {
+            while (reader.next()) {
+                read.add(new Frame(reader.getFeed(), Arrays.copyOf(reader.getFrame(), reader.getLength()),
+                        reader.getReceivedNanos()));
+            }
+            assertFalse(reader.next());
+        }
+        assertEquals(frames, read);
+
+        List<Frame> replayed = new ArrayList<>();
+        try (SessionReader reader = new SessionReader(directory)) {
+            SessionReplay replay = new SessionReplay(reader, SessionReplay.AS_FAST_AS_POSSIBLE);
+            replay.run((feed, buffer, offset, length) ->
+                    replayed.add(new Frame(feed, Arrays.copyOfRange(buffer, offset, offset + length), 0)));
+            assertEquals(frames.size(), replay.getFrames());
+        }
+        for (int i = 0; i < frames.size(); i++) {
+            assertEquals(frames.get(i).feed, replayed.get(i).feed);
+            assertArrayEquals(frames.get(i).bytes, replayed.get(i).bytes);
+        }
+    }
+
+    @Test
+    public void replayIsPacedOnTheStamps() throws IOException, InterruptedException {
+        File directory = folder.newFolder("sessions");
+        // 60 ms of frames, then unstamped ones handed out right after them
+        List<Frame> frames = frames(new Random(5897L), 13, 5_000_000L);
+        for (int i = 0; i < 5; i++) {
+            frames.add(new Frame(0, NmeaCorpus.bytes("$GPTXT," + i), 0));
+        }
+        try (SessionRecorder recorder = new SessionRecorder(directory, SEGMENT_SIZE, 100)) {
+            for (Frame frame : frames) {
+                record(recorder, frame);
+            }
+        }
+        long[] times = new long[frames.size()];
+        try (SessionReader reader = new SessionReader(directory)) {
+            SessionReplay replay = new SessionReplay(reader, 1);
+            int[] count = {0};
+            long start = System.nanoTime();
+            replay.run((feed, buffer, offset, length) -> times[count[0]++] = System.nanoTime() - start);
+            assertEquals(frames.size(), count[0]);
+        }
+        for (int i = 1; i < 13; i++) {
+            assertTrue("frame " + i, times[i] >= frames.get(i).stamp - frames.get(0).stamp);
+        }
+        assertTrue(times[frames.size() - 1] < 1_000_000_000L);
+    }
+
+    @Test
+    public void framesRecordedAfterCloseAreIgnored() throws IOException, InterruptedException {
+        File directory = folder.newFolder("sessions");
+        SessionRecorder recorder = new SessionRecorder(directory, SEGMENT_SIZE, 100);
+        List<Frame> frames = frames(new Random(5897L), 200, 1_000_000L);
+        for (Frame frame : frames.subList(0, 100)) {
+            record(recorder, frame);
+        }
+        recorder.close();
+        // enough to need new segments, which the closed recorder no longer prepares
+        for (Frame frame : frames.subList(100, 200)) {
+            recorder.record(frame.feed, frame.bytes, 0, frame.bytes.length, frame.stamp);
+        }
+        assertEquals(100, recorder.getRecorded());
+        int read = 0;
+        try (SessionReader reader = new SessionReader(directory)) {
+            while (reader.next()) {
+                read++;
+            }
+        }
+        assertEquals(100, read);
+    }
+
+    @Test
+    public void segmentsAreNumberedOnAfterARestart() throws IOException, InterruptedException {
+        File directory = folder.newFolder("sessions");
+        List<Frame> frames = frames(new Random(5897L), 400, 1_000_000L);
+        try (SessionRecorder recorder = new SessionRecorder(directory, SEGMENT_SIZE, 100)) {
+            for (Frame frame : frames.subList(0, 200)) {
+                record(recorder, frame);
+            }
+        }
+        try (SessionRecorder recorder = new SessionRecorder(directory, SEGMENT_SIZE, 100)) {
+            for (Frame frame : frames.subList(200, 400)) {
+                record(recorder, frame);
+            }
+        }
+        List<Frame> read = new ArrayList<>();
+        try (SessionReader reader = new SessionReader(directory)) {
+            while (reader.next()) {
+                read.add(new Frame(reader.getFeed(), Arrays.copyOf(reader.getFrame(), reader.getLength()),
+                        reader.getReceivedNanos()));
+            }
+        }
+        assertEquals(frames, read);
+    }
+
+    /**
+     * Records a frame, waiting for the background thread when no segment is ready yet.
+     */
+    private static void record(SessionRecorder recorder, Frame frame) throws InterruptedException {
+        long recorded = recorder.getRecorded();
+        recorder.record(frame.feed, frame.bytes, 0, frame.bytes.length, frame.stamp);
+        while (recorder.getRecorded() == recorded) {
+            Thread.sleep(1);
+            recorder.record(frame.feed, frame.bytes, 0, frame.bytes.length, frame.stamp);
+        }
+    }
+
+    /**
+     * Frames of three feeds, of every length up to the longest frame, stamped {@code period} apart.
+     */
+    private static List<Frame> frames(Random random, int count, long period) {
+        List<Frame> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[1 + random.nextInt(NmeaFrameDecoder.DEFAULT_MAX_FRAME_LENGTH)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = (byte) (' ' + random.nextInt(95));
+            }
+            frames.add(new Frame(random.nextInt(3), bytes, START_NANOS + i * period));
+        }
+        return frames;
+    }
+
+    private static final class Frame {
+        final int feed;
+        final byte[] bytes;
+        final long stamp;
+
+        Frame(int feed, byte[] bytes, long stamp) {
+            this.feed = feed;
+            this.bytes = bytes;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Frame && ((Frame) other).feed == feed && ((Frame) other).stamp == stamp
+                    && Arrays.equals(((Frame) other).bytes, bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return feed + "@" + stamp + ":" + new String(bytes);
+        }
+    }
+}
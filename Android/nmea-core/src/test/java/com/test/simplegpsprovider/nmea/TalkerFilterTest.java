@@ -0,0 +1,133 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TalkerFilterTest {
+
+    private static final int GGA = IngestMetrics.TYPE_GGA;
+    private static final int RMC = IngestMetrics.TYPE_RMC;
+
+    private final TalkerFilter filter = new TalkerFilter("GN");
+
+    @Test
+    public void theFirstTalkerIsKeptUntilThePreferredOneIsExpected() {
+        assertTrue(accept(GGA, "GP", "120000"));
+        assertFalse(accept(GGA, "GN", "120000"));
+        assertFalse(accept(GGA, "GL", "120000"));
+        assertTrue(accept(GGA, "GP", "120000"));
+        // GN sent the type in the previous epoch, it wins this one even when late
+        assertFalse(accept(GGA, "GP", "120001"));
+        assertTrue(accept(GGA, "GN", "120001"));
+        assertFalse(accept(GGA, "GL", "120001"));
+    }
+
+    @Test
+    public void typesAreFilteredApart() {
+        assertTrue(accept(GGA, "GP", "120000"));
+        assertTrue(accept(RMC, "GL", "120000"));
+        assertFalse(accept(GGA, "GL", "120000"));
+        assertFalse(accept(RMC, "GP", "120000"));
+    }
+
+    @Test
+    public void aPreferredTalkerGoneQuietIsNoLongerWaitedFor() {
+        accept(GGA, "GN", "120000");
+        assertFalse(accept(GGA, "GP", "120001"));
+        // without GN in 120001, GP is kept again from 120002
+        assertTrue(accept(GGA, "GP", "120002"));
+    }
+
+    @Test
+    public void anInvalidSentenceClearsTheExpectedTalker() {
+        accept(GGA, "GN", "120000");
+        accept(RMC, "GN", "120000");
+        // the GN GGA of 120001 was corrupted
+        filter.invalid();
+        assertTrue(accept(GGA, "GP", "120001"));
+        assertTrue(accept(RMC, "GP", "120001"));
+        assertFalse(accept(RMC, "GN", "120001"));
+    }
+
+    @Test
+    public void thePreferredTalkerCanChange() {
+        filter.setPreferred("GP");
+        accept(GGA, "GP", "120000");
+        assertFalse(accept(GGA, "GN", "120001"));
+        assertTrue(accept(GGA, "GP", "120001"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void talkersHaveTwoCharacters() {
+        filter.setPreferred("GPS");
+    }
+
+    @Test
+    public void fixesNeverMixTwoTalkers() {
+        List<GpsFix> fixes = new ArrayList<>();
+        NmeaParser parser = new NmeaParser(fix -> {
+            GpsFix copy = new GpsFix();
+            copy.set(fix);
+            fixes.add(copy);
+        });
+        for (int second = 0; second < 5; second++) {
+            String time = "12000" + second + ".00";
+            parser.parseNmeaSentence(gga("GP", time, "4807.000"));
+            parser.parseNmeaSentence(gga("GN", time, "4808.000"));
+            parser.parseNmeaSentence(rmc("GP", time, "4807.000"));
+            parser.parseNmeaSentence(rmc("GN", time, "4808.000"));
+        }
+        parser.endOfStream();
+        assertEquals(5, fixes.size());
+        // the first epoch goes to the first talker, then GN is expected
+        assertEquals(48 + 7 / 60.0, fixes.get(0).getLatitude(), 1e-9);
+        for (GpsFix fix : fixes.subList(1, 5)) {
+            assertEquals(48 + 8 / 60.0, fix.getLatitude(), 1e-9);
+            assertEquals(48 + 8 / 60.0, fix.getLongitude(), 1e-9);
+        }
+    }
+
+    @Test
+    public void aCorruptedPreferredSentenceFallsBackToAnotherTalker() {
+        List<GpsFix> fixes = new ArrayList<>();
+        NmeaParser parser = new NmeaParser(fix -> {
+            GpsFix copy = new GpsFix();
+            copy.set(fix);
+            fixes.add(copy);
+        });
+        parser.parseNmeaSentence(gga("GN", "120000.00", "4808.000"));
+        parser.parseNmeaSentence(rmc("GN", "120000.00", "4808.000"));
+        // altitude changed, checksum kept
+        assertNull(parser.parseNmeaSentence(gga("GN", "120001.00", "4808.000").replace("545.4", "545.5")));
+        parser.parseNmeaSentence(gga("GP", "120001.00", "4807.000"));
+        parser.parseNmeaSentence(rmc("GP", "120001.00", "4807.000"));
+        parser.parseNmeaSentence(rmc("GN", "120001.00", "4808.000"));
+        parser.endOfStream();
+        assertEquals(2, fixes.size());
+        assertEquals(48 + 7 / 60.0, fixes.get(1).getLatitude(), 1e-9);
+        assertEquals(48 + 7 / 60.0, fixes.get(1).getLongitude(), 1e-9);
+    }
+
+    private boolean accept(int type, String talker, String time) {
+        byte[] bytes = NmeaCorpus.bytes("$" + talker + "GGA," + time);
+        return filter.accept(type, TalkerFilter.talker(bytes, 0), bytes, 7, time.length());
+    }
+
+    // the same value for the latitude and the longitude, to tell the talkers apart in both
+    private static String gga(String talker, String time, String coordinate) {
+        return NmeaCorpus.sentence(talker + "GGA," + time + "," + coordinate + ",N,0" + coordinate
+                + ",E,1,08,0.9,545.4,M,46.9,M,,");
+    }
+
+    private static String rmc(String talker, String time, String coordinate) {
+        return NmeaCorpus.sentence(talker + "RMC," + time + ",A," + coordinate + ",N,0" + coordinate
+                + ",E,022.4,084.4,230394,003.1,W");
+    }
+}
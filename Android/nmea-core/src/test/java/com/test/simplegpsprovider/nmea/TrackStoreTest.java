@@ -0,0 +1,366 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TrackStoreTest {
+
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    // the smallest segment a full block fits in, a track of a few thousand fixes spans several
+    private static final int SEGMENT_SIZE =
+            TrackStore.SEGMENT_HEADER_LENGTH + TrackBlock.HEADER_LENGTH + TrackStore.BLOCK_FIXES * TrackBlock.MAX_FIX_LENGTH;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void blockRoundTripsAtItsResolution() throws IOException {
+        List<GpsFix> fixes = track(new Random(5897L), 0, 1000);
+        TrackBlock block = new TrackBlock(3);
+        for (GpsFix fix : fixes) {
+            block.append(fix);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(block.length());
+        block.writeTo(buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(0, block.getCount());
+
+        buffer.flip();
+        List<String> decoded = new ArrayList<>();
+        assertTrue(TrackBlock.decode(buffer, new GpsFix(), Long.MIN_VALUE, Long.MAX_VALUE, (feed, fix) -> {
+            assertEquals(3, feed);
+            return decoded.add(describe(fix));
+        }));
+        assertEquals(expected(fixes), decoded);
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void extremeValuesRoundTrip() throws IOException {
+        TrackBlock block = new TrackBlock(0);
+        List<GpsFix> fixes = new ArrayList<>();
+        double[][] positions = {{90, 180}, {-90, -180}, {0, 0}, {89.9999999, -179.9999999}};
+        for (int i = 0; i < positions.length; i++) {
+            GpsFix fix = new GpsFix();
+            fix.setTime(START_MILLIS + (i % 2 == 0 ? i : -i * 3_600_000L));
+            fix.setLatitude(positions[i][0]);
+            fix.setLongitude(positions[i][1]);
+            fix.setAltitude(i % 2 == 0 ? 8848.86 : -430.5);
+            fix.setSatellites(i % 2 == 0 ? 0 : 64);
+            fixes.add(fix);
+            block.append(fix);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(block.length());
+        block.writeTo(buffer);
+        buffer.flip();
+        List<String> decoded = new ArrayList<>();
+        TrackBlock.decode(buffer, new GpsFix(), Long.MIN_VALUE, Long.MAX_VALUE, (feed, fix) -> decoded.add(describe(fix)));
+        assertEquals(expected(fixes), decoded);
+    }
+
+    @Test
+    public void storedTracksAreReadBackPerFeed() throws IOException, InterruptedException {
+        Random random = new Random(5897L);
+        List<GpsFix> north = track(random, 45, 2000);
+        List<GpsFix> south = track(random, -33, 2000);
+        File directory = folder.newFolder("track");
+        TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 100);
+        for (int i = 0; i < north.size(); i++) {
+            append(store, 0, north.get(i));
+            append(store, 1, south.get(i));
+        }
+        store.close();
+        assertEquals(0, store.getDropped());
+        assertEquals(4000, store.getWritten());
+        assertTrue(TrackReader.segments(directory).length > 1);
+
+        try (TrackReader reader = new TrackReader(directory)) {
+            assertEquals(4000, reader.getFixes());
+            assertEquals(store.getBlocks(), reader.getBlocks());
+            assertArrayEquals(new int[]{0, 1}, reader.getFeeds());
+            assertEquals(north.get(0).getTime(), reader.getFirstTime());
+            assertEquals(north.get(north.size() - 1).getTime(), reader.getLastTime());
+
+            List<List<String>> decoded = new ArrayList<>();
+            decoded.add(new ArrayList<>());
+            decoded.add(new ArrayList<>());
+            assertEquals(4000, reader.query(Long.MIN_VALUE, Long.MAX_VALUE, TrackReader.ANY_FEED,
+                    (feed, fix) -> decoded.get(feed).add(describe(fix))));
+            assertEquals(expected(north), decoded.get(0));
+            assertEquals(expected(south), decoded.get(1));
+        }
+    }
+
+    @Test
+    public void queriesReturnTheFixesOfTheirRange() throws IOException, InterruptedException {
+        Random random = new Random(5897L);
+        List<GpsFix> north = track(random, 45, 3000);
+        List<GpsFix> south = track(random, -33, 3000);
+        File directory = folder.newFolder("track");
+        try (TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 0; i < north.size(); i++) {
+                append(store, 0, north.get(i));
+                append(store, 1, south.get(i));
+            }
+        }
+        try (TrackReader reader = new TrackReader(directory)) {
+            long first = north.get(0).getTime();
+            long last = north.get(north.size() - 1).getTime();
+            for (int n = 0; n < 50; n++) {
+                long from = first - 1000 + random.nextInt((int) (last - first) + 2000);
+                long to = from + random.nextInt(60_000);
+                int feed = random.nextInt(3) - 1;
+                List<String> expected = new ArrayList<>();
+                for (int i = 0; i < north.size(); i++) {
+                    long time = north.get(i).getTime();
+                    if (time >= from && time <= to && feed != 1) {
+                        expected.add(describe(quantize(north.get(i))));
+                    }
+                }
+                for (int i = 0; i < south.size(); i++) {
+                    long time = south.get(i).getTime();
+                    if (time >= from && time <= to && feed != 0) {
+                        expected.add(describe(quantize(south.get(i))));
+                    }
+                }
+                List<String> northFound = new ArrayList<>();
+                List<String> southFound = new ArrayList<>();
+                long count = reader.query(from, to, feed, (f, fix) -> (f == 0 ? northFound : southFound).add(describe(fix)));
+                northFound.addAll(southFound);
+                assertEquals(from + ".." + to + " feed " + feed, expected, northFound);
+                assertEquals(expected.size(), count);
+            }
+        }
+    }
+
+    @Test
+    public void visitorStopsTheQuery() throws IOException, InterruptedException {
+        File directory = folder.newFolder("track");
+        try (TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 100)) {
+            for (GpsFix fix : track(new Random(5897L), 45, 1000)) {
+                append(store, 0, fix);
+            }
+        }
+        try (TrackReader reader = new TrackReader(directory)) {
+            int[] visited = {0};
+            assertEquals(300, reader.query(Long.MIN_VALUE, Long.MAX_VALUE, 0, (feed, fix) -> ++visited[0] < 300));
+            assertEquals(300, visited[0]);
+        }
+    }
+
+    @Test
+    public void closingAFeedWritesItsBlock() throws IOException, InterruptedException {
+        File directory = folder.newFolder("track");
+        List<GpsFix> fixes = track(new Random(5897L), 45, 20);
+        try (TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 0; i < 10; i++) {
+                append(store, 0, fixes.get(i));
+            }
+            // the next feed given number 0 starts a block of its own
+            store.closeFeed(0);
+            for (int i = 10; i < 20; i++) {
+                append(store, 0, fixes.get(i));
+            }
+        }
+        try (TrackReader reader = new TrackReader(directory)) {
+            assertEquals(2, reader.getBlocks());
+            assertEquals(20, reader.getFixes());
+        }
+    }
+
+    @Test
+    public void onlyTheNewestSegmentsAreKept() throws IOException, InterruptedException {
+        File directory = folder.newFolder("track");
+        List<GpsFix> fixes = track(new Random(5897L), 45, 12000);
+        try (TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 2)) {
+            for (GpsFix fix : fixes.subList(0, 6000)) {
+                append(store, 0, fix);
+            }
+        }
+        File[] before = TrackReader.segments(directory);
+        assertEquals(2, before.length);
+        // numbered on after a restart
+        try (TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 2)) {
+            for (GpsFix fix : fixes.subList(6000, 12000)) {
+                append(store, 0, fix);
+            }
+        }
+        File[] after = TrackReader.segments(directory);
+        assertEquals(2, after.length);
+        assertTrue(TrackReader.number(after[0]) > TrackReader.number(before[before.length - 1]));
+        try (TrackReader reader = new TrackReader(directory)) {
+            List<String> decoded = new ArrayList<>();
+            reader.query(Long.MIN_VALUE, Long.MAX_VALUE, 0, (feed, fix) -> decoded.add(describe(fix)));
+            List<String> expected = expected(fixes);
+            // the newest fixes, in order
+            assertEquals(expected.subList(expected.size() - decoded.size(), expected.size()), decoded);
+        }
+    }
+
+    @Test
+    public void directoryIsCreatedByTheStore() throws IOException, InterruptedException {
+        File directory = new File(folder.getRoot(), "files/track");
+        try (TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 100)) {
+            assertFalse(directory.exists() && TrackReader.segments(directory).length > 0);
+            for (GpsFix fix : track(new Random(5897L), 45, 100)) {
+                append(store, 0, fix);
+            }
+        }
+        try (TrackReader reader = new TrackReader(directory)) {
+            assertEquals(100, reader.getFixes());
+        }
+    }
+
+    @Test
+    public void damagedSegmentsAreSkipped()throws IOException, InterruptedException {
+        File directory = folder.newFolder("track");
+        List<GpsFix> fixes = track(new Random(5897L), 45, 100);
+        try (TrackStore store = new TrackStore(directory, SEGMENT_SIZE, 100)) {
+            for (GpsFix fix : fixes) {
+                append(store, 0, fix);
+            }
+        }
+        File segment = TrackReader.segments(directory)[0];
+        // a copy cut in its block, then one with an unknown header
+        File cut = new File(directory, TrackReader.name(TrackReader.number(segment) + 1));
+        File unknown = new File(directory, TrackReader.name(TrackReader.number(segment) + 2));
+        try (RandomAccessFile input = new RandomAccessFile(segment, "r");
+             RandomAccessFile output = new RandomAccessFile(cut, "rw");
+             RandomAccessFile other = new RandomAccessFile(unknown, "rw")) {
+            byte[] bytes = new byte[TrackStore.SEGMENT_HEADER_LENGTH + TrackBlock.HEADER_LENGTH + 10];
+            input.readFully(bytes);
+            output.write(bytes);
+            bytes[0] = 'X';
+            other.write(bytes);
+        }
+        try (TrackReader reader = new TrackReader(directory)) {
+            assertEquals(1, reader.getBlocks());
+            assertEquals(100, reader.query(Long.MIN_VALUE, Long.MAX_VALUE, TrackReader.ANY_FEED, (feed, fix) -> true));
+        }
+    }
+
+    @Test
+    public void csvLeavesMissingValuesEmpty() throws IOException {
+        StringWriter output = new StringWriter();
+        GpsFix fix = new GpsFix();
+        fix.setTime(START_MILLIS);
+        fix.setLatitude(48.1173);
+        fix.setLongitude(-11.5166667);
+        fix.setSpeed(1.5f);
+        fix.setSatellites(8);
+        try (TrackExport.Csv csv = new TrackExport.Csv(output)) {
+            csv.onFix(2, fix);
+        }
+        String[] lines = output.toString().split("\n");
+        assertEquals("feed,time,latitude,longitude,altitude,speed,bearing,accuracy,satellites", lines[0]);
+        assertEquals("2," + START_MILLIS + ",48.1173000,-11.5166667,,1.50,,,8", lines[1]);
+    }
+
+    /**
+     * Appends without overflowing the queue, the writer thread catching up.
+     */
+    private static void append(TrackStore store, int feed, GpsFix fix) throws InterruptedException {
+        while (store.getAppended() - store.getWritten() > 512) {
+            Thread.sleep(1);
+        }
+        store.append(feed, fix);
+    }
+
+    /**
+     * A 10 Hz track around {@code latitude}, every value but the position and the time missing now and then.
+     */
+    private static List<GpsFix> track(Random random, double latitude, int count) {
+        List<GpsFix> fixes = new ArrayList<>();
+        double longitude = 11.5;
+        double altitude = 500;
+        for (int i = 0; i < count; i++) {
+            latitude += (random.nextDouble() - 0.5) * 1e-4;
+            longitude += (random.nextDouble() - 0.5) * 1e-4;
+            altitude += random.nextGaussian();
+            GpsFix fix = new GpsFix();
+            fix.setTime(START_MILLIS + i * 100L);
+            if (random.nextInt(20) != 0) {
+                fix.setLatitude(latitude);
+                fix.setLongitude(longitude);
+            }
+            if (random.nextInt(10) != 0) {
+                fix.setAltitude(altitude);
+            }
+            if (random.nextInt(10) != 0) {
+                fix.setSpeed(random.nextFloat() * 40);
+            }
+            if (random.nextInt(10) != 0) {
+                fix.setBearing(random.nextFloat() * 360);
+            }
+            if (random.nextInt(10) != 0) {
+                fix.setAccuracy(1 + random.nextFloat() * 20);
+            }
+            if (random.nextInt(10) != 0) {
+                fix.setSatellites(4 + random.nextInt(20));
+            }
+            fixes.add(fix);
+        }
+        return fixes;
+    }
+
+    private static List<String> expected(List<GpsFix> fixes) {
+        List<String> expected = new ArrayList<>();
+        for (GpsFix fix : fixes) {
+            expected.add(describe(quantize(fix)));
+        }
+        return expected;
+    }
+
+    /**
+     * @return the fix as stored, at the resolution of every column
+     */
+    private static GpsFix quantize(GpsFix fix) {
+        GpsFix stored = new GpsFix();
+        stored.setTime(fix.getTime());
+        if (fix.hasPosition()) {
+            stored.setLatitude(Math.round(fix.getLatitude() * 1e7) / 1e7);
+            stored.setLongitude(Math.round(fix.getLongitude() * 1e7) / 1e7);
+        }
+        if (fix.hasAltitude()) {
+            stored.setAltitude(Math.round(fix.getAltitude() * 100) / 100.0);
+        }
+        if (fix.hasSpeed()) {
+            stored.setSpeed(Math.round(fix.getSpeed() * 100.0) / 100f);
+        }
+        if (fix.hasBearing()) {
+            stored.setBearing(Math.round(fix.getBearing() * 100.0) / 100f);
+        }
+        if (fix.hasAccuracy()) {
+            stored.setAccuracy(Math.round(fix.getAccuracy() * 100.0) / 100f);
+        }
+        if (fix.hasSatellites()) {
+            stored.setSatellites(fix.getSatellites());
+        }
+        return stored;
+    }
+
+    private static String describe(GpsFix fix) {
+        return fix.getTime()
+                + (fix.hasPosition() ? " " + fix.getLatitude() + "," + fix.getLongitude() : " -")
+                + (fix.hasAltitude() ? " " + fix.getAltitude() : " -")
+                + (fix.hasSpeed() ? " " + fix.getSpeed() : " -")
+                + (fix.hasBearing() ? " " + fix.getBearing() : " -")
+                + (fix.hasAccuracy() ? " " + fix.getAccuracy() : " -")
+                + (fix.hasSatellites() ? " " + fix.getSatellites() : " -");
+    }
+}
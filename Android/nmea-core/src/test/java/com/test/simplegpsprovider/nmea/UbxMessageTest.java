@@ -0,0 +1,271 @@
+package com.test.simplegpsprovider.nmea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class UbxMessageTest {
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private long now = 0;
+    private final List<GpsFix> fixes = new ArrayList<>();
+    private final NmeaParser parser = new NmeaParser(5f, fix -> {
+        GpsFix copy = new GpsFix();
+        copy.set(fix);
+        fixes.add(copy);
+    }, IngestMetrics.disabled(), new EpochAssembler(() -> now, 0, GpsFix.HAS_POSITION));
+
+    @Test
+    public void checksumIsTheFletcherOfClassIdLengthAndPayload() {
+        // polls of CFG-PRT and MON-VER as listed in the u-blox protocol specification
+        byte[] cfgPrt = {(byte) 0xB5, 0x62, 0x06, 0x00, 0x00, 0x00, 0x06, 0x18};
+        byte[] monVer = {(byte) 0xB5, 0x62, 0x0A, 0x04, 0x00, 0x00, 0x0E, 0x34};
+        UbxMessage message = new UbxMessage();
+        assertEquals(UbxMessage.VALID, message.parse(cfgPrt, 0, cfgPrt.length));
+        assertEquals(0x06, message.messageClass());
+        assertEquals(0x00, message.messageId());
+        assertEquals(0, message.payloadLength());
+        assertEquals(UbxMessage.VALID, message.parse(monVer, 0, monVer.length));
+        assertEquals(0x0A, message.messageClass());
+        assertEquals(0x04, message.messageId());
+
+        // every byte covered by the checksum counts, the sync bytes aside
+        byte[] pvt = NmeaFrameDecoderTest.ubx(UbxMessage.CLASS_NAV, UbxMessage.ID_NAV_PVT, new byte[92]);
+        for (int i = 2; i < pvt.length; i++) {
+            byte[] damaged = pvt.clone();
+            damaged[i] ^= 0x10;
+            int status = message.parse(damaged, 0, damaged.length);
+            // a damaged length no longer matches the frame
+            assertEquals("byte " + i, i == 4 || i == 5 ? UbxMessage.INVALID_FRAME : UbxMessage.INVALID_CHECKSUM, status);
+        }
+    }
+
+    @Test
+    public void framesAreCheckedBeforeTheChecksum() {
+        UbxMessage message = new UbxMessage();
+        byte[] valid = NmeaFrameDecoderTest.ubx(0x01, 0x03, new byte[]{1, 2, 3});
+        assertEquals(UbxMessage.VALID, message.parse(valid, 0, valid.length));
+        assertEquals(UbxMessage.INVALID_FRAME, message.parse(valid, 0, valid.length - 1));
+        assertEquals(UbxMessage.INVALID_FRAME, message.parse(valid, 1, valid.length - 1));
+        assertEquals(UbxMessage.INVALID_FRAME, message.parse(valid, 0, 7));
+        assertFalse(UbxMessage.isUbx(valid, 0, 1));
+        assertTrue(UbxMessage.isUbx(valid, 0, 2));
+    }
+
+    @Test
+    public void payloadIsReadLittleEndian() {
+        byte[] payload = {(byte) 0xFE, (byte) 0xFF, 0x78, 0x56, 0x34, 0x12, (byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+        byte[] bytes = NmeaFrameDecoderTest.ubx(0x01, 0x03, payload);
+        // an offset in the buffer as well
+        byte[] buffer = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, buffer, 3, bytes.length);
+        UbxMessage message = new UbxMessage();
+        assertEquals(UbxMessage.VALID, message.parse(buffer, 3, bytes.length));
+        assertEquals(9, message.payloadStart());
+        assertEquals(0xFE, message.u1(0));
+        assertEquals(0xFFFE, message.u2(0));
+        assertEquals(0x12345678, message.i4(2));
+        assertEquals(-16, message.i4(6));
+        assertEquals(0xFFFFFFF0L, message.u4(6));
+    }
+
+    @Test
+    public void navPvtIsScaledIntoTheFix() {
+        NavPvt pvt = new NavPvt();
+        pvt.lat = -338_688_000;
+        pvt.lon = 1_512_093_000;
+        pvt.hMsl = -12_345;
+        pvt.hAcc = 2500;
+        pvt.gSpeed = 1234;
+        pvt.headMot = 12_345_678;
+        pvt.satellites = 17;
+        parse(pvt.bytes());
+        assertEquals(1, fixes.size());
+        GpsFix fix = fixes.get(0);
+        assertEquals(-33.8688, fix.getLatitude(), 1e-12);
+        assertEquals(151.2093, fix.getLongitude(), 1e-12);
+        assertEquals(-12.345, fix.getAltitude(), 1e-12);
+        assertEquals(2.5f, fix.getAccuracy(), 0f);
+        assertEquals(1.234f, fix.getSpeed(), 0f);
+        assertEquals(123.45678f, fix.getBearing(), 0f);
+        assertEquals(17, fix.getSatellites());
+        assertEquals(Instant.parse("2024-02-29T23:59:59Z").toEpochMilli(), fix.getTime());
+    }
+
+    @Test
+    public void unsignedAccuracyAndSignedNanosecond() {
+        NavPvt pvt = new NavPvt();
+        pvt.hAcc = 0xFFFFFFF0;
+        pvt.nano = -300_000_000;
+        parse(pvt.bytes());
+        pvt.iTow++;
+        // rounded to the next second
+        pvt.nano = 999_600_000;
+        parse(pvt.bytes());
+        assertEquals(2, fixes.size());
+        assertEquals(0xFFFFFFF0L / 1000f, fixes.get(0).getAccuracy(), 0f);
+        assertEquals(Instant.parse("2024-02-29T23:59:58.700Z").toEpochMilli(), fixes.get(0).getTime());
+        assertEquals(Instant.parse("2024-03-01T00:00:00Z").toEpochMilli(), fixes.get(1).getTime());
+    }
+
+    @Test
+    public void onlyValidFixTypesArePublished() {
+        NavPvt pvt = new NavPvt();
+        for (int fixType = 0; fixType <= 5; fixType++) {
+            for (int flags : new int[]{0, 1}) {
+                fixes.clear();
+                pvt.iTow++;
+                pvt.fixType = fixType;
+                pvt.flags = flags;
+                parse(pvt.bytes());
+                boolean published = flags == 1 && fixType >= 2 && fixType <= 4;
+                assertEquals("type " + fixType + " flags " + flags, published ? 1 : 0, fixes.size());
+                if (published) {
+                    // a 2D fix has no altitude
+                    assertEquals(fixType != 2, fixes.get(0).hasAltitude());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void timeIsLeftOutUntilResolved() {
+        NavPvt pvt = new NavPvt();
+        pvt.valid = 0x01;
+        parse(pvt.bytes());
+        assertEquals(1, fixes.size());
+        assertEquals(0, fixes.get(0).getTime());
+        assertTrue(fixes.get(0).hasPosition());
+    }
+
+    @Test
+    public void nmeaFixSentencesWaitForNavPvtToLapse() {
+        NavPvt pvt = new NavPvt();
+        // NAV-PVT at 1 Hz next to NMEA at 10 Hz: only NAV-PVT is published, however long the second
+        for (int second = 0; second < 5; second++) {
+            pvt.iTow = second * 1000;
+            now = second * SECOND_NANOS;
+            parse(pvt.bytes());
+            for (int tenth = 0; tenth < 10; tenth++) {
+                now = second * SECOND_NANOS + tenth * SECOND_NANOS / 10;
+                String time = String.format("12000%d.%d0", second, tenth);
+                parser.parseNmeaSentence(gga(time));
+                parser.parseNmeaSentence(rmc(time));
+            }
+        }
+        assertEquals(5, fixes.size());
+        for (GpsFix fix : fixes) {
+            assertEquals(2.5f, fix.getAccuracy(), 0f);
+        }
+        // NAV-PVT stopped at 4 s, NMEA is back 3 s later
+        now = 6 * SECOND_NANOS;
+        parser.parseNmeaSentence(gga("120006.00"));
+        parser.parseNmeaSentence(rmc("120006.00"));
+        assertEquals(5, fixes.size());
+        now = 7 * SECOND_NANOS;
+        parser.parseNmeaSentence(gga("120007.00"));
+        parser.parseNmeaSentence(rmc("120007.00"));
+        assertEquals(6, fixes.size());
+        assertEquals(0.9f * 5f, fixes.get(5).getAccuracy(), 1e-6f);
+    }
+
+    @Test
+    public void mixedStreamsSurviveAnyChunking() {
+        // per epoch: NAV-PVT, then NMEA around a message whose payload holds the NMEA delimiters
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NavPvt pvt = new NavPvt();
+        int epochs = 200;
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            pvt.iTow = epoch * 100;
+            pvt.lat = 480_000_000 + epoch;
+            write(out, pvt.bytes());
+            write(out, NmeaCorpus.bytes(gga(String.format("12%04d.00", epoch)) + "\r\n"));
+            write(out, NmeaFrameDecoderTest.ubx(0x01, 0x03, NmeaCorpus.bytes("$\r\n*\n$$" + epoch)));
+            write(out, NmeaCorpus.bytes(rmc(String.format("12%04d.00", epoch)) + "\r\n"));
+        }
+        byte[] stream = out.toByteArray();
+        Random random = new Random(5897L);
+        for (int maxChunk : new int[]{1, 13, 97, 4096}) {
+            fixes.clear();
+            NmeaFrameDecoder decoder = new NmeaFrameDecoder();
+            int[] invalid = {0};
+            NmeaFrameDecoder.FrameListener listener = (buffer, offset, length) -> {
+                if (!parser.parseFrame(buffer, offset, length, 0, 0)) {
+                    invalid[0]++;
+                }
+            };
+            for (int offset = 0; offset < stream.length; ) {
+                int length = Math.min(stream.length - offset, 1 + random.nextInt(maxChunk));
+                decoder.decode(stream, offset, length, listener);
+                offset += length;
+            }
+            assertEquals(0, invalid[0]);
+            assertEquals(epochs * 2L, decoder.getUbxFrames());
+            assertEquals(epochs, fixes.size());
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                assertEquals(48.0 + epoch * 1e-7, fixes.get(epoch).getLatitude(), 1e-12);
+            }
+        }
+    }
+
+    private void parse(byte[] message) {
+        assertTrue(parser.parseFrame(message, 0, message.length, 0, 0));
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String gga(String time) {
+        return NmeaCorpus.sentence("GPGGA," + time + ",4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,");
+    }
+
+    private static String rmc(String time) {
+        return NmeaCorpus.sentence("GPRMC," + time + ",A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W");
+    }
+
+    /**
+     * NAV-PVT payload fields, defaulting to a valid 3D fix.
+     */
+    private static final class NavPvt {
+        int iTow = 1000;
+        int year = 2024;
+        int month = 2;
+        int day = 29;
+        int hour = 23;
+        int minute = 59;
+        int second = 59;
+        int valid = 0x07;
+        int nano = 0;
+        int fixType = 3;
+        int flags = 0x01;
+        int satellites = 12;
+        int lon = 115_000_000;
+        int lat = 481_000_000;
+        int hMsl = 545_400;
+        int hAcc = 2500;
+        int gSpeed = 0;
+        int headMot = 0;
+
+        byte[] bytes() {
+            ByteBuffer payload = ByteBuffer.allocate(UbxMessage.NAV_PVT_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            payload.putInt(0, iTow).putShort(4, (short) year).put(6, (byte) month).put(7, (byte) day)
+                    .put(8, (byte) hour).put(9, (byte) minute).put(10, (byte) second).put(11, (byte) valid)
+                    .putInt(16, nano).put(20, (byte) fixType).put(21, (byte) flags).put(23, (byte) satellites)
+                    .putInt(24, lon).putInt(28, lat).putInt(32, hMsl + 47_000).putInt(36, hMsl)
+                    .putInt(40, hAcc).putInt(44, hAcc * 2).putInt(60, gSpeed).putInt(64, headMot);
+            return NmeaFrameDecoderTest.ubx(UbxMessage.CLASS_NAV, UbxMessage.ID_NAV_PVT, payload.array());
+        }
+    }
+}
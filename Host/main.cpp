@@ -5,7 +5,13 @@ int main(int argc, char *argv[])
 {
     QCoreApplication a(argc, argv);
 
-    new Server("192.168.240.112", "ttyUSB1", &a);
+    Server::Mode mode = Server::Plain;
+    if (a.arguments().contains("--udp")) {
+        mode = Server::Datagrams;
+    } else if (a.arguments().contains("--batch")) {
+        mode = Server::Batched;
+    }
+    new Server("192.168.240.112", "ttyUSB1", mode, &a);
 
     return a.exec();
 }
@@ -1,10 +1,23 @@
 #include "server.h"
 
-Server::Server(QString host, QString device, QObject *parent) : QObject(parent)
+// quiet time closing a burst, well under the 100 ms between two epochs of a 10 Hz receiver
+static const int BATCH_QUIET_MS = 15;
+// a batch is sent anyway past this size, the app accepts up to 64 KiB
+static const int MAX_BATCH_SIZE = 32 * 1024;
+// a datagram is kept under the MTU of the link, a fragmented one is lost with any of its fragments
+static const int MAX_DATAGRAM_PAYLOAD = 1400;
+static const quint16 PORT = 5897;
+
+Server::Server(QString host, QString device, Mode mode, QObject *parent) : QObject(parent)
 {
     this->host = host;
     this->device = device;
+    this->mode = mode;
+    batchTimer.setSingleShot(true);
+    batchTimer.setInterval(BATCH_QUIET_MS);
+    connect(&batchTimer, SIGNAL(timeout()), this, SLOT(flushBatch()));
     socket = new QTcpSocket(this);
+    udpSocket = new QUdpSocket(this);
     connect(socket, SIGNAL(connected()), this, SLOT(connected()));
     connect(socket, SIGNAL(disconnected()), this, SLOT(disconnected()));
     connect(socket, SIGNAL(errorOccurred(QAbstractSocket::SocketError)), this, SLOT(socketError(QAbstractSocket::SocketError)));
@@ -12,31 +25,124 @@ Server::Server(QString host, QString device, QObject *parent) : QObject(parent)
     serial.setBaudRate(QSerialPort::Baud115200);
     connect(&serial, SIGNAL(readyRead()), this, SLOT(sendData()));
     connect(&serial, SIGNAL(errorOccurred(QSerialPort::SerialPortError)), this, SLOT(serialError(QSerialPort::SerialPortError)));
-    socket->connectToHost(host, 5897, QIODevice::WriteOnly);
+    if (mode == Datagrams) {
+        // connectionless: nothing to wait for, a datagram sent before the app listens is just lost
+        udpSocket->connectToHost(host, PORT, QIODevice::WriteOnly);
+        sequence = 0;
+        if (!serial.open(QIODevice::ReadOnly)) {
+            qDebug("Couldn't read device.");
+        }
+        return;
+    }
+    socket->connectToHost(host, PORT, QIODevice::WriteOnly);
 }
 
 void Server::sendData()
 {
-    while (!serial.atEnd()) {
-        if (!socket->isOpen() || !socket->isWritable()) {
-            qDebug("Socket is not available. Can't write.");
-            serial.readAll();
-            return;
+    // forwarded as read: UBX binary messages have no line end, the app cuts the frames
+    QByteArray data = serial.readAll();
+    if (data.isEmpty()) {
+        return;
+    }
+    if (mode != Datagrams && (!socket->isOpen() || !socket->isWritable())) {
+        qDebug("Socket is not available. Can't write.");
+        return;
+    }
+    if (mode == Plain) {
+        socket->write(data);
+        qDebug("data sent");
+        return;
+    }
+    batch.append(data);
+    if (batch.size() >= MAX_BATCH_SIZE) {
+        flushBatch();
+    } else {
+        batchTimer.start();
+    }
+}
+
+// end of the last whole message in data[0, limit): a NMEA sentence up to its line end, or a UBX
+// message up to its checksum, whose payload may hold line ends; 0 when there is none
+static int lastMessageEnd(const QByteArray &data, int limit)
+{
+    int end = 0;
+    int i = 0;
+    while (i < limit) {
+        if (i + 1 < data.size() && (quint8) data[i] == 0xB5 && (quint8) data[i + 1] == 0x62) {
+            if (i + 6 > data.size()) {
+                break;
+            }
+            // sync, class, id and length, then the payload and the checksum
+            int next = i + 8 + qFromLittleEndian<quint16>(data.constData() + i + 4);
+            if (next > limit) {
+                break;
+            }
+            i = end = next;
+        } else {
+            int newline = data.indexOf('\n', i);
+            if (newline < 0 || newline >= limit) {
+                break;
+            }
+            i = end = newline + 1;
         }
-        if (serial.canReadLine()) {
-            QByteArray data = serial.readLine();
-            if (data.isEmpty()) {
-                continue;
+    }
+    return end;
+}
+
+void Server::flushBatch()
+{
+    batchTimer.stop();
+    if (mode == Datagrams) {
+        // cut between whole messages: the app drops a message straddling two datagrams
+        while (!batch.isEmpty()) {
+            int size = lastMessageEnd(batch, qMin(batch.size(), MAX_DATAGRAM_PAYLOAD));
+            if (size == 0) {
+                if (batch.size() <= MAX_DATAGRAM_PAYLOAD) {
+                    // a message still being read, completed by the next read
+                    return;
+                }
+                // a single message over the payload, lost anyway
+                size = MAX_DATAGRAM_PAYLOAD;
             }
-            socket->write(data);
-            qDebug("data sent");
+            sendDatagram(batch.left(size));
+            batch.remove(0, size);
         }
+        return;
     }
+    if (batch.isEmpty() || !socket->isOpen() || !socket->isWritable()) {
+        batch.clear();
+        return;
+    }
+    // big endian: length of what follows, sequence number, sender time in ms since the epoch
+    QByteArray header(16, 0);
+    qToBigEndian<quint32>(12 + batch.size(), header.data());
+    qToBigEndian<quint32>(sequence++, header.data() + 4);
+    qToBigEndian<qint64>(QDateTime::currentMSecsSinceEpoch(), header.data() + 8);
+    socket->write(header + batch);
+    batch.clear();
+    qDebug("batch sent");
+}
+
+void Server::sendDatagram(const QByteArray &payload)
+{
+    // magic and version, then big endian: sequence number, sender time in ms since the epoch
+    QByteArray header("SGPB\x01", 5);
+    header.resize(17);
+    qToBigEndian<quint32>(sequence++, header.data() + 5);
+    qToBigEndian<qint64>(QDateTime::currentMSecsSinceEpoch(), header.data() + 9);
+    udpSocket->write(header + payload);
+    qDebug("datagram sent");
 }
 
 void Server::connected()
 {
     qDebug("Socket connected.");
+    if (mode == Batched) {
+        // announces the batched protocol: magic and version
+        socket->write(QByteArray("SGPB\x01", 5));
+        sequence = 0;
+        batch.clear();
+    }
     if (!serial.open(QIODevice::ReadOnly)) {
         qDebug("Couldn't read device.");
     }
@@ -52,7 +158,7 @@ void Server::socketError(QAbstractSocket::SocketError error)
 {
     qDebug("%s", QString(error).toStdString().c_str());
     thread()->sleep(5);
-    socket->connectToHost(host, 5897, QIODevice::WriteOnly);
+    socket->connectToHost(host, PORT, QIODevice::WriteOnly);
 }
 
 void Server::serialError(QSerialPort::SerialPortError error)
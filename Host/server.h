@@ -2,30 +2,55 @@
 #define SERVER_H
 
 #include <QTcpSocket>
+#include <QUdpSocket>
 #include <QObject>
 #include <QList>
 #include <QSerialPort>
 #include <QThread>
+#include <QTimer>
+#include <QDateTime>
+#include <QtEndian>
 #include <QDebug>
 
 class Server : public QObject
 {
     Q_OBJECT
 public:
-    explicit Server(QString host, QString device, QObject *parent = nullptr);
+    enum Mode {
+        // forwards the serial data as read over TCP
+        Plain,
+        // sends it in length-prefixed batches over TCP, one per burst of the receiver
+        Batched,
+        // sends every burst as sequenced datagrams holding whole sentences and UBX messages
+        Datagrams
+    };
+
+    /**
+     * See BatchFrameDecoder on the Android side for the batched and datagram formats.
+     */
+    explicit Server(QString host, QString device, Mode mode = Plain, QObject *parent = nullptr);
 
 private slots:
     void connected();
     void disconnected();
     void sendData();
+    void flushBatch();
     void socketError(QAbstractSocket::SocketError error);
     void serialError(QSerialPort::SerialPortError error);
 
 private:
     QSerialPort serial;
     QTcpSocket *socket;
+    QUdpSocket *udpSocket;
     QString host;
     QString device;
+    Mode mode;
+    QByteArray batch;
+    // restarted by every read, fires once the receiver is done with its epoch
+    QTimer batchTimer;
+    quint32 sequence = 0;
+
+    void sendDatagram(const QByteArray &payload);
 };
 
 #endif // SERVER_H